@@ -0,0 +1,64 @@
+/*******************************************************************************
+ * Copyright 2014 Reality Warp Software
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.rws.pirkolator.benchmark;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * This class provides the payload published by the benchmarks, a text field of
+ * a configurable size.
+ *
+ * @author jpirkey
+ * @since 1.0.0
+ */
+public class BenchmarkData implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    // *************************************************************************
+    // ** Member variables
+    // *************************************************************************
+
+    private final String text;
+
+    // *************************************************************************
+    // ** Constructors
+    // *************************************************************************
+
+    public BenchmarkData () {
+
+        this (16);
+    }
+
+    public BenchmarkData (final int size) {
+
+        super ();
+
+        final char[] chars = new char[size];
+        Arrays.fill (chars, 'X');
+        text = new String (chars);
+    }
+
+    // *************************************************************************
+    // ** Member properties
+    // *************************************************************************
+
+    public String getText () {
+
+        return text;
+    }
+}
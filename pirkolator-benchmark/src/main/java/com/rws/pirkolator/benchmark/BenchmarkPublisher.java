@@ -0,0 +1,99 @@
+/*******************************************************************************
+ * Copyright 2014 Reality Warp Software
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.rws.pirkolator.benchmark;
+
+import java.io.Serializable;
+
+import javax.annotation.Nullable;
+
+import com.rws.pirkolator.core.engine.IPublisher;
+import com.rws.pirkolator.core.engine.MessageMode;
+import com.rws.pirkolator.core.engine.Publication;
+import com.rws.pirkolator.core.engine.channel.IPubSubChannel;
+import com.rws.pirkolator.model.AbstractSystemIdentifiable;
+import com.rws.pirkolator.model.filter.TypeFilter;
+import com.rws.utility.common.Preconditions;
+import com.rws.utility.common.UUIDs;
+
+/**
+ * This class provides a publisher of {@link BenchmarkData} that is added to the
+ * Local Pub/Sub directly instead of through Spring.
+ *
+ * @author jpirkey
+ * @since 1.0.0
+ */
+public class BenchmarkPublisher extends AbstractSystemIdentifiable implements IPublisher {
+
+    // *************************************************************************
+    // ** Member variables
+    // *************************************************************************
+
+    private final Publication publication;
+
+    @Nullable
+    private volatile IPubSubChannel channel;
+
+    // *************************************************************************
+    // ** Constructors
+    // *************************************************************************
+
+    public BenchmarkPublisher (final String name, final MessageMode messageMode) {
+
+        super (UUIDs.generateUUID (), name);
+
+        publication = new Publication (name + " Publication");
+        publication.setMessageMode (messageMode);
+        publication.addFilter (new TypeFilter (BenchmarkData.class));
+    }
+
+    // *************************************************************************
+    // ** Member properties
+    // *************************************************************************
+
+    @Override
+    public Publication getPublication () {
+
+        return publication;
+    }
+
+    /**
+     * @return true once the Hub has prepared this publisher's channel
+     */
+    public boolean isPrepared () {
+
+        return channel != null;
+    }
+
+    // *************************************************************************
+    // ** Member methods
+    // *************************************************************************
+
+    public void publish (final Serializable object, final boolean copy) {
+
+        Preconditions.notNull (channel, "Benchmark publisher has not been prepared by the Hub").publish (object,
+                copy);
+    }
+
+    // *************************************************************************
+    // ** IPublisher implementation
+    // *************************************************************************
+
+    @Override
+    public void prepare (final IPubSubChannel myChannel) {
+
+        channel = myChannel;
+    }
+}
@@ -0,0 +1,59 @@
+/*******************************************************************************
+ * Copyright 2014 Reality Warp Software
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.rws.pirkolator.benchmark;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * <p>This class runs the Pirkolator benchmarks and writes the results as JSON so
+ * they can be compared between releases.
+ *
+ * <pre>
+ * java -cp pirkolator-benchmark.jar:... com.rws.pirkolator.benchmark.BenchmarkRunner [result file] [benchmark regex]
+ * </pre>
+ *
+ * <p>The result file defaults to {@value #DEFAULT_RESULT_FILE} and the regex to
+ * every benchmark in this package, e.g. use {@code PubSubBenchmark} to run only
+ * the pub/sub benchmarks.
+ *
+ * @author jpirkey
+ * @since 1.0.0
+ */
+public final class BenchmarkRunner {
+
+    public static final String DEFAULT_RESULT_FILE = "pirkolator-benchmark.json";
+
+    private BenchmarkRunner () {
+
+        super ();
+    }
+
+    public static void main (final String[] args) throws RunnerException {
+
+        final String resultFile = args.length > 0 ? args[0] : DEFAULT_RESULT_FILE;
+        final String include = args.length > 1 ? args[1] : BenchmarkRunner.class.getPackage ().getName () + ".*";
+
+        final Options options =
+                new OptionsBuilder ().include (include).resultFormat (ResultFormatType.JSON).result (resultFile)
+                        .build ();
+
+        new Runner (options).run ();
+    }
+}
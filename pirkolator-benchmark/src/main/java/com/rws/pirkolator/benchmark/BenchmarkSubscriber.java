@@ -0,0 +1,130 @@
+/*******************************************************************************
+ * Copyright 2014 Reality Warp Software
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.rws.pirkolator.benchmark;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.annotation.Nullable;
+
+import com.rws.pirkolator.core.engine.ISubscriber;
+import com.rws.pirkolator.core.engine.Subscription;
+import com.rws.pirkolator.model.AbstractSystemIdentifiable;
+import com.rws.pirkolator.model.Message;
+import com.rws.pirkolator.model.filter.TypeFilter;
+import com.rws.utility.common.UUIDs;
+
+/**
+ * This class provides a subscriber that counts the {@link BenchmarkData} messages
+ * it receives so a benchmark thread can wait for a running total.  Counting is
+ * a single atomic increment so the subscriber adds as little as possible to the
+ * measured path.
+ *
+ * @author jpirkey
+ * @since 1.0.0
+ */
+public class BenchmarkSubscriber extends AbstractSystemIdentifiable implements ISubscriber {
+
+    static final long PARK_NANOS = TimeUnit.MILLISECONDS.toNanos (1);
+
+    // *************************************************************************
+    // ** Member variables
+    // *************************************************************************
+
+    private final Subscription subscription;
+    private final AtomicLong received = new AtomicLong ();
+
+    /** Waiting benchmark thread and the total it waits for **/
+    @Nullable
+    private volatile Thread waiter;
+    private volatile long target = Long.MAX_VALUE;
+
+    // *************************************************************************
+    // ** Constructors
+    // *************************************************************************
+
+    public BenchmarkSubscriber (final String name) {
+
+        super (UUIDs.generateUUID (), name);
+
+        subscription = new Subscription (name + " Subscription", UUIDs.toString (getId ()));
+        subscription.addFilter (new TypeFilter (BenchmarkData.class));
+    }
+
+    // *************************************************************************
+    // ** Member properties
+    // *************************************************************************
+
+    @Override
+    public Subscription getSubscription () {
+
+        return subscription;
+    }
+
+    public long getReceived () {
+
+        return received.get ();
+    }
+
+    // *************************************************************************
+    // ** Member methods
+    // *************************************************************************
+
+    @Override
+    public void receive (final Message message) {
+
+        if (received.incrementAndGet () == target) {
+            final Thread tmp = waiter;
+            if (tmp != null) {
+                LockSupport.unpark (tmp);
+            }
+        }
+    }
+
+    /**
+     * Waits until the subscriber has received the given total number of messages.
+     *
+     * @param total
+     * @param timeout
+     * @param unit
+     * @return false if the timeout elapsed first
+     * @throws InterruptedException
+     */
+    public boolean await (final long total, final long timeout, final TimeUnit unit) throws InterruptedException {
+
+        final long deadline = System.nanoTime () + unit.toNanos (timeout);
+
+        waiter = Thread.currentThread ();
+        target = total;
+        try {
+            while (received.get () < total) {
+                if (Thread.interrupted ()) {
+                    throw new InterruptedException ();
+                }
+                if (System.nanoTime () - deadline >= 0) {
+                    return false;
+                }
+                LockSupport.parkNanos (this, PARK_NANOS);
+            }
+        } finally {
+            target = Long.MAX_VALUE;
+            waiter = null;
+        }
+
+        return true;
+    }
+}
@@ -0,0 +1,129 @@
+/*******************************************************************************
+ * Copyright 2014 Reality Warp Software
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.rws.pirkolator.benchmark;
+
+import java.io.Serializable;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.rws.pirkolator.core.engine.Publication;
+import com.rws.pirkolator.core.engine.Subscription;
+import com.rws.pirkolator.model.Message;
+import com.rws.pirkolator.model.filter.NameFilter;
+import com.rws.pirkolator.model.filter.TypeFilter;
+import com.rws.pirkolator.model.request.Request;
+
+/**
+ * This class measures the filter matching done when publications and
+ * subscriptions are paired and when content filters are applied to a message.
+ *
+ * @author jpirkey
+ * @since 1.0.0
+ */
+@State (Scope.Thread)
+@Fork (1)
+@Warmup (iterations = 5, time = 1)
+@Measurement (iterations = 10, time = 1)
+@BenchmarkMode (Mode.AverageTime)
+@OutputTimeUnit (TimeUnit.NANOSECONDS)
+public class FilterBenchmark {
+
+    // *************************************************************************
+    // ** Member variables
+    // *************************************************************************
+
+    final TypeFilter exactTypeFilter = new TypeFilter (BenchmarkData.class);
+    final TypeFilter superTypeFilter = new TypeFilter (Serializable.class);
+    final TypeFilter otherTypeFilter = new TypeFilter (Request.class);
+    final TypeFilter publishedTypeFilter = new TypeFilter (BenchmarkData.class);
+
+    final NameFilter subscribedNameFilter = new NameFilter ();
+    final NameFilter publishedNameFilter = new NameFilter ("series-7");
+
+    final Publication publication = new Publication ("Benchmark Publication");
+    final Subscription subscription = new Subscription ("Benchmark Subscription", "Benchmark Group");
+
+    final Message message = new Message ();
+
+    // *************************************************************************
+    // ** Constructors
+    // *************************************************************************
+
+    public FilterBenchmark () {
+
+        super ();
+
+        for (int i = 0; i < 10; i++) {
+            subscribedNameFilter.addName ("series-" + i);
+        }
+
+        publication.addFilter (publishedTypeFilter);
+        publication.addFilter (publishedNameFilter);
+        subscription.addFilter (otherTypeFilter);
+        subscription.addFilter (subscribedNameFilter);
+
+        message.add (new BenchmarkData ());
+    }
+
+    // *************************************************************************
+    // ** Benchmarks
+    // *************************************************************************
+
+    @Benchmark
+    public boolean typeFilterExactMatch () {
+
+        return exactTypeFilter.match (publishedTypeFilter);
+    }
+
+    @Benchmark
+    public boolean typeFilterSuperTypeMatch () {
+
+        return superTypeFilter.match (publishedTypeFilter);
+    }
+
+    @Benchmark
+    public boolean typeFilterNoMatch () {
+
+        return otherTypeFilter.match (publishedTypeFilter);
+    }
+
+    @Benchmark
+    public boolean nameFilterMatch () {
+
+        return subscribedNameFilter.match (publishedNameFilter);
+    }
+
+    @Benchmark
+    public boolean subscriptionMatch () {
+
+        return subscription.match (publication);
+    }
+
+    @Benchmark
+    public boolean typeFilterSupportsMessage () {
+
+        return superTypeFilter.supports (message);
+    }
+}
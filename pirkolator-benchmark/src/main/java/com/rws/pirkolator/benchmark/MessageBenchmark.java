@@ -0,0 +1,122 @@
+/*******************************************************************************
+ * Copyright 2014 Reality Warp Software
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.rws.pirkolator.benchmark;
+
+import java.io.Serializable;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.rws.pirkolator.model.Message;
+
+/**
+ * This class measures building a {@link Message} and the type lookups made on
+ * every message by the subscription filters and subscribers.
+ *
+ * @author jpirkey
+ * @since 1.0.0
+ */
+@State (Scope.Thread)
+@Fork (1)
+@Warmup (iterations = 5, time = 1)
+@Measurement (iterations = 10, time = 1)
+@BenchmarkMode (Mode.AverageTime)
+@OutputTimeUnit (TimeUnit.NANOSECONDS)
+public class MessageBenchmark {
+
+    // *************************************************************************
+    // ** Member variables
+    // *************************************************************************
+
+    final BenchmarkData data = new BenchmarkData ();
+    Message message = new Message ();
+
+    // *************************************************************************
+    // ** Life-cycle
+    // *************************************************************************
+
+    @Setup
+    public void setUp () {
+
+        message = build ();
+    }
+
+    // *************************************************************************
+    // ** Benchmarks
+    // *************************************************************************
+
+    @Benchmark
+    public Message construct () {
+
+        return new Message ();
+    }
+
+    /**
+     * Builds a message the way the distributor does for each publish.
+     */
+    @Benchmark
+    public Message constructAndFill () {
+
+        return build ();
+    }
+
+    @Benchmark
+    public boolean containsExactType () {
+
+        return message.containsType (BenchmarkData.class);
+    }
+
+    @Benchmark
+    public boolean containsSuperType () {
+
+        return message.containsType (Serializable.class);
+    }
+
+    @Benchmark
+    public List<BenchmarkData> getByType () {
+
+        return message.get (BenchmarkData.class);
+    }
+
+    @Benchmark
+    public List<Serializable> getAll () {
+
+        return message.get ();
+    }
+
+    // *************************************************************************
+    // ** Member methods
+    // *************************************************************************
+
+    Message build () {
+
+        final Message tmp = new Message ();
+        tmp.add (data);
+        tmp.setCopy (false);
+        tmp.setSequence (1);
+        return tmp;
+    }
+}
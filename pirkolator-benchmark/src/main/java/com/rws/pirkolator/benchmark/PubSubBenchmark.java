@@ -0,0 +1,290 @@
+/*******************************************************************************
+ * Copyright 2014 Reality Warp Software
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.rws.pirkolator.benchmark;
+
+import static com.rws.utility.common.Preconditions.notNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nullable;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.support.GenericXmlApplicationContext;
+
+import com.rws.pirkolator.core.engine.LocalPubSub;
+import com.rws.pirkolator.core.engine.MessageMode;
+
+/**
+ * <p>This class measures publish to receive through the {@link LocalPubSub} and the
+ * Hub of a full system context, for one or more publishers and subscribers.
+ *
+ * <p><ul>
+ * <li>Reference - published with copy=false, every subscriber shares the message.</li>
+ * <li>Copy - published with copy=true, the message is copied once by the distributor.</li>
+ * <li>Immutable - the publication is {@link MessageMode#Immutable}, the message is frozen and shared.</li>
+ * </ul>
+ *
+ * <p>Throughput counts published messages per second, waiting for every
+ * subscriber to receive each burst.  Latency samples the time for one message
+ * from the first publisher to reach every subscriber.
+ *
+ * @author jpirkey
+ * @since 1.0.0
+ */
+@State (Scope.Benchmark)
+@Fork (1)
+@Warmup (iterations = 5, time = 1)
+@Measurement (iterations = 10, time = 1)
+public class PubSubBenchmark {
+
+    public enum Delivery {
+        Reference, Copy, Immutable
+    }
+
+    static final int BURST = 1000;
+    static final long TIMEOUT_SECONDS = 30;
+    static final String CONTEXT = "classpath:config/system-context.xml";
+
+    // *************************************************************************
+    // ** Parameters
+    // *************************************************************************
+
+    @Param ({ "1", "4" })
+    int publishers;
+
+    @Param ({ "1", "4" })
+    int subscribers;
+
+    @Param ({ "Reference", "Copy", "Immutable" })
+    Delivery delivery = Delivery.Reference;
+
+    @Param ({ "1024" })
+    int payloadSize;
+
+    // *************************************************************************
+    // ** Member variables
+    // *************************************************************************
+
+    @Nullable
+    GenericXmlApplicationContext context;
+    @Nullable
+    ExecutorService publishingService;
+
+    final List<BenchmarkPublisher> publisherList = new ArrayList<> ();
+    final List<BenchmarkSubscriber> subscriberList = new ArrayList<> ();
+    final List<Callable<Void>> burstList = new ArrayList<> ();
+
+    BenchmarkData data = new BenchmarkData ();
+    boolean copy;
+
+    /** Messages sent to every subscriber since routing was confirmed **/
+    long sent;
+
+    /** Messages each subscriber had received when routing was confirmed **/
+    long[] baseline = new long[0];
+
+    // *************************************************************************
+    // ** Life-cycle
+    // *************************************************************************
+
+    @Setup (Level.Trial)
+    public void setUp () throws Exception {
+
+        final GenericXmlApplicationContext tmp = new GenericXmlApplicationContext (CONTEXT);
+        tmp.start ();
+        context = tmp;
+
+        final LocalPubSub localPubSub = tmp.getBean (LocalPubSub.class);
+        for (int i = 0; i < subscribers; i++) {
+            final BenchmarkSubscriber subscriber = new BenchmarkSubscriber ("Benchmark Subscriber " + i);
+            subscriberList.add (subscriber);
+            localPubSub.addSubscriber (subscriber);
+        }
+
+        final MessageMode messageMode = delivery == Delivery.Immutable ? MessageMode.Immutable : MessageMode.Copy;
+        for (int i = 0; i < publishers; i++) {
+            final BenchmarkPublisher publisher = new BenchmarkPublisher ("Benchmark Publisher " + i, messageMode);
+            publisherList.add (publisher);
+            localPubSub.addPublisher (publisher);
+            burstList.add (new BurstTask (publisher));
+        }
+
+        data = new BenchmarkData (payloadSize);
+        copy = delivery == Delivery.Copy;
+        publishingService = Executors.newFixedThreadPool (publishers);
+
+        awaitRouting ();
+    }
+
+    @TearDown (Level.Trial)
+    public void tearDown () {
+
+        final ExecutorService service = publishingService;
+        if (service != null) {
+            service.shutdownNow ();
+        }
+
+        final GenericXmlApplicationContext tmp = context;
+        if (tmp != null) {
+            tmp.close ();
+        }
+    }
+
+    // *************************************************************************
+    // ** Benchmarks
+    // *************************************************************************
+
+    @Benchmark
+    @BenchmarkMode (Mode.Throughput)
+    @OutputTimeUnit (TimeUnit.SECONDS)
+    @OperationsPerInvocation (BURST)
+    public void throughput () throws Exception {
+
+        final int perPublisher = BURST / publishers;
+        sent += perPublisher * publishers;
+
+        if (publishers == 1) {
+            burstList.get (0).call ();
+        } else {
+            for (final Future<Void> future : notNull (publishingService).invokeAll (burstList)) {
+                future.get ();
+            }
+        }
+
+        awaitSubscribers ();
+    }
+
+    @Benchmark
+    @BenchmarkMode (Mode.SampleTime)
+    @OutputTimeUnit (TimeUnit.MICROSECONDS)
+    public void latency () throws InterruptedException {
+
+        sent++;
+        publisherList.get (0).publish (data, copy);
+
+        awaitSubscribers ();
+    }
+
+    // *************************************************************************
+    // ** Member methods
+    // *************************************************************************
+
+    /**
+     * Registration with the Hub completes asynchronously, so publish from every
+     * publisher until each subscriber has seen a message from all of them.
+     */
+    void awaitRouting () throws InterruptedException {
+
+        final long deadline = System.nanoTime () + TimeUnit.SECONDS.toNanos (TIMEOUT_SECONDS);
+        for (final BenchmarkPublisher publisher : publisherList) {
+            while (!publisher.isPrepared ()) {
+                checkDeadline (deadline);
+                Thread.sleep (10);
+            }
+
+            final long[] before = new long[subscriberList.size ()];
+            for (int i = 0; i < before.length; i++) {
+                before[i] = subscriberList.get (i).getReceived ();
+            }
+
+            boolean routed = false;
+            while (!routed) {
+                checkDeadline (deadline);
+                publisher.publish (data, copy);
+                Thread.sleep (10);
+
+                routed = true;
+                for (int i = 0; i < before.length; i++) {
+                    routed &= subscriberList.get (i).getReceived () > before[i];
+                }
+            }
+        }
+
+        // Let stray routing messages drain before the running totals are taken
+        Thread.sleep (500);
+        baseline = new long[subscriberList.size ()];
+        for (int i = 0; i < baseline.length; i++) {
+            baseline[i] = subscriberList.get (i).getReceived ();
+        }
+    }
+
+    void awaitSubscribers () throws InterruptedException {
+
+        for (int i = 0; i < baseline.length; i++) {
+            final BenchmarkSubscriber subscriber = subscriberList.get (i);
+            final long total = baseline[i] + sent;
+            if (!subscriber.await (total, TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                throw new IllegalStateException (subscriber.getName () + " received " + subscriber.getReceived ()
+                        + " of " + total + " messages");
+            }
+        }
+    }
+
+    static void checkDeadline (final long deadline) {
+
+        if (System.nanoTime () - deadline >= 0) {
+            throw new IllegalStateException ("Benchmark publishers were not routed to the subscribers within "
+                    + TIMEOUT_SECONDS + " seconds");
+        }
+    }
+
+    // *************************************************************************
+    // ** Member classes
+    // *************************************************************************
+
+    class BurstTask implements Callable<Void> {
+
+        final BenchmarkPublisher publisher;
+
+        BurstTask (final BenchmarkPublisher publisher) {
+
+            super ();
+
+            this.publisher = publisher;
+        }
+
+        @Override
+        public @Nullable
+        Void call () {
+
+            final int perPublisher = BURST / publishers;
+            for (int i = 0; i < perPublisher; i++) {
+                publisher.publish (data, copy);
+            }
+
+            return null;
+        }
+    }
+}
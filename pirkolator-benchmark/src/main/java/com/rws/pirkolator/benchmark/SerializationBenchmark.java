@@ -0,0 +1,104 @@
+/*******************************************************************************
+ * Copyright 2014 Reality Warp Software
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.rws.pirkolator.benchmark;
+
+import static com.rws.utility.common.Preconditions.notNull;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nullable;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.rws.pirkolator.core.utility.serial.KryoUtility;
+import com.rws.pirkolator.model.Message;
+
+/**
+ * This class measures the {@link KryoUtility} calls made when a message is
+ * published by copy or crosses the grid.
+ *
+ * @author jpirkey
+ * @since 1.0.0
+ */
+@State (Scope.Thread)
+@Fork (1)
+@Warmup (iterations = 5, time = 1)
+@Measurement (iterations = 10, time = 1)
+@BenchmarkMode (Mode.AverageTime)
+@OutputTimeUnit (TimeUnit.NANOSECONDS)
+public class SerializationBenchmark {
+
+    // *************************************************************************
+    // ** Parameters
+    // *************************************************************************
+
+    @Param ({ "16", "1024", "10240" })
+    int payloadSize;
+
+    // *************************************************************************
+    // ** Member variables
+    // *************************************************************************
+
+    Message message = new Message ();
+    byte[] bytes = new byte[0];
+
+    // *************************************************************************
+    // ** Life-cycle
+    // *************************************************************************
+
+    @Setup
+    public void setUp () {
+
+        message = new Message ();
+        message.add (new BenchmarkData (payloadSize));
+        message.setSequence (1);
+        bytes = notNull (KryoUtility.writeMessage (message));
+    }
+
+    // *************************************************************************
+    // ** Benchmarks
+    // *************************************************************************
+
+    @Benchmark
+    public Message copy () {
+
+        return KryoUtility.copyMessage (message);
+    }
+
+    @Benchmark
+    public @Nullable
+    byte[] serialize () {
+
+        return KryoUtility.writeMessage (message);
+    }
+
+    @Benchmark
+    public @Nullable
+    Message deserialize () {
+
+        return KryoUtility.readBytesIntoMessage (bytes);
+    }
+}
@@ -0,0 +1,388 @@
+/*******************************************************************************
+ * Copyright 2014 Reality Warp Software
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.rws.pirkolator.core.engine;
+
+import static com.rws.utility.common.Preconditions.notNull;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import com.rws.pirkolator.core.engine.execution.AbstractLoopTask;
+import com.rws.pirkolator.model.AckBatch;
+
+/**
+ * This class tracks the messages a publisher sent with acknowledgement.  Each
+ * message gets a future that completes once every hub the message was routed to
+ * has had it received by the subscriber of each matching subscription group, as
+ * counted by the hub's {@link DeliveryTracker}.  The local hub acknowledges
+ * directly; other hubs return {@link AckBatch}es on the publisher's ack queue,
+ * signed with their hub key.
+ * 
+ * <p>Only the hubs a message was routed to are counted, and each hub once; an
+ * acknowledgement from any other hub is ignored.  Hubs are named by the queues
+ * they are routed through, see {@link MessageQueue#getAckTargets()}.
+ * 
+ * <p>A message that is not fully acknowledged within the timeout fails its
+ * future with a {@link TimeoutException}.
+ * 
+ * @author jpirkey
+ * @since 1.0.0
+ */
+public class AckTracker {
+
+    private static final Logger LOG = notNull (LoggerFactory.getLogger (AckTracker.class));
+
+    /** Header holding the ack id of a message published with acknowledgement **/
+    public static final String ACK_ID = "ACK_ID";
+
+    /** Hub key the local hub acknowledges with; other hubs use their hub key, their grid member uuid **/
+    public static final String LOCAL_HUB = "local";
+
+    /** Default time a message waits for its acknowledgements **/
+    public static final long DEFAULT_TIMEOUT_MILLIS = 30000;
+
+    /** Service failing the futures whose timeout has passed **/
+    static final String EXPIRY_SERVICE = "ack-expiry";
+    private static final long EXPIRY_PERIOD_MILLIS = 1000;
+
+    /** Longest time an ack reader waits before checking it is still running **/
+    private static final long ACK_POLL_MILLIS = 100;
+
+    // *************************************************************************
+    // ** Member variables
+    // *************************************************************************
+
+    private final SystemResourceManager resourceManager;
+    private final String ackQueueName;
+    private final long timeoutMillis;
+
+    /** <p>Messages waiting for acknowledgement.
+     * <br/><b>Key = ack id</b> **/
+    private final Map<UUID, PendingAck> pendingMap = new ConcurrentHashMap<> ();
+
+    /** Readers of the ack queue on each grid **/
+    private final List<Future<?>> readerFutureList = new CopyOnWriteArrayList<> ();
+
+    @Nullable
+    private ScheduledFuture<?> expiryFuture;
+
+    // *************************************************************************
+    // ** Constructors
+    // *************************************************************************
+
+    /**
+     * @param resourceManager
+     * @param publisherKey id of the publisher
+     * @param timeoutMillis time a message waits for its acknowledgements
+     */
+    public AckTracker (final SystemResourceManager resourceManager, final String publisherKey,
+            final long timeoutMillis) {
+
+        super ();
+
+        this.resourceManager = resourceManager;
+        this.timeoutMillis = timeoutMillis;
+        ackQueueName = ackQueueName (publisherKey);
+    }
+
+    // *************************************************************************
+    // ** Member properties
+    // *************************************************************************
+
+    /**
+     * @return name of the grid queue the other hubs return acknowledgements on
+     */
+    public String getAckQueueName () {
+
+        return ackQueueName;
+    }
+
+    /**
+     * @return number of messages waiting for acknowledgement
+     */
+    public int getPendingCount () {
+
+        return pendingMap.size ();
+    }
+
+    // *************************************************************************
+    // ** Member methods
+    // *************************************************************************
+
+    /**
+     * @param ackId
+     * @return future completed with the number of hubs that acknowledged the message
+     */
+    public ListenableFuture<Integer> register (final UUID ackId) {
+
+        startExpiry ();
+
+        final PendingAck pending = new PendingAck ();
+        pendingMap.put (ackId, pending);
+        return pending.future;
+    }
+
+    /**
+     * Sets the hubs the message was routed to.  Acknowledgements may arrive
+     * before the hubs are known; those from other hubs are then discarded.  A
+     * message routed to no hub completes with 0.
+     * 
+     * @param ackId
+     * @param hubKeys keys of the hubs expected to acknowledge the message
+     */
+    public void expect (final UUID ackId, final Set<String> hubKeys) {
+
+        final PendingAck pending = pendingMap.get (ackId);
+        if (pending != null && pending.expect (hubKeys)) {
+            pendingMap.remove (ackId);
+        }
+    }
+
+    /**
+     * Counts a hub's acknowledgement of each message.
+     * 
+     * @param hubKey key of the acknowledging hub
+     * @param ackIds
+     */
+    public void ack (final String hubKey, final Collection<UUID> ackIds) {
+
+        for (final UUID ackId : ackIds) {
+            final PendingAck pending = pendingMap.get (ackId);
+            if (pending != null && pending.ack (hubKey)) {
+                pendingMap.remove (ackId);
+            }
+        }
+    }
+
+    /**
+     * Fails the future of a message that could not be published.
+     */
+    public void fail (final UUID ackId, final Throwable cause) {
+
+        final PendingAck pending = pendingMap.remove (ackId);
+        if (pending != null) {
+            pending.future.setException (cause);
+        }
+    }
+
+    /**
+     * Reads the acknowledgements returned on a grid's ack queue until the
+     * tracker is destroyed.
+     */
+    public void listen (final BlockingQueue<AckBatch> ackQueue) {
+
+        readerFutureList.add (resourceManager.submitLoop (new AckReader (ackQueue)));
+    }
+
+    /**
+     * Fails the futures of the messages whose timeout has passed.
+     */
+    void expire () {
+
+        final long expiredMillis = System.currentTimeMillis () - timeoutMillis;
+        for (final Entry<UUID, PendingAck> entry : pendingMap.entrySet ()) {
+            final PendingAck pending = entry.getValue ();
+            if (pending.registeredMillis < expiredMillis && pendingMap.remove (entry.getKey ()) != null) {
+                pending.future.setException (new TimeoutException ("Message " + entry.getKey ()
+                        + " was not acknowledged by hub(s) " + pending.getMissing ()));
+            }
+        }
+    }
+
+    /**
+     * Stops reading acknowledgements and cancels the futures still waiting.
+     */
+    public void destroy () {
+
+        synchronized (this) {
+            if (expiryFuture != null) {
+                expiryFuture.cancel (false);
+                expiryFuture = null;
+            }
+        }
+
+        for (final Future<?> future : readerFutureList) {
+            future.cancel (true);
+        }
+        readerFutureList.clear ();
+
+        for (final PendingAck pending : pendingMap.values ()) {
+            pending.future.cancel (false);
+        }
+        pendingMap.clear ();
+    }
+
+    private synchronized void startExpiry () {
+
+        if (expiryFuture == null) {
+            expiryFuture =
+                    resourceManager.getScheduledThreadExecutor (EXPIRY_SERVICE, 1).scheduleWithFixedDelay (
+                            new Runnable () {
+
+                                @Override
+                                public void run () {
+
+                                    expire ();
+                                }
+                            }, EXPIRY_PERIOD_MILLIS, EXPIRY_PERIOD_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    // *************************************************************************
+    // ** Class methods
+    // *************************************************************************
+
+    /**
+     * @return name of the grid queue acknowledgements for a publisher are returned on
+     */
+    public static String ackQueueName (final String publisherKey) {
+
+        return "ack-" + publisherKey;
+    }
+
+    // *************************************************************************
+    // ** Member classes
+    // *************************************************************************
+
+    private static final class PendingAck {
+
+        final SettableFuture<Integer> future = notNull (SettableFuture.<Integer> create ());
+        final long registeredMillis = System.currentTimeMillis ();
+
+        /** Hubs that acknowledged, and hubs expected to or null until routed **/
+        private final Set<String> received = new HashSet<> ();
+        @Nullable
+        private Set<String> expected;
+
+        PendingAck () {
+
+            super ();
+        }
+
+        /**
+         * @return hubs expected to acknowledge that have not, or every hub if not yet routed
+         */
+        synchronized String getMissing () {
+
+            final Set<String> tmp = expected;
+            if (tmp == null) {
+                return "(not routed)";
+            }
+
+            return Sets.difference (tmp, received).toString ();
+        }
+
+        /**
+         * @return true if the message is now fully acknowledged
+         */
+        synchronized boolean expect (final Set<String> hubKeys) {
+
+            expected = hubKeys;
+            received.retainAll (hubKeys);
+            return complete ();
+        }
+
+        /**
+         * @return true if the message is now fully acknowledged
+         */
+        synchronized boolean ack (final String hubKey) {
+
+            final Set<String> tmp = expected;
+            if (tmp == null || tmp.contains (hubKey)) {
+                received.add (hubKey);
+            }
+            return complete ();
+        }
+
+        private boolean complete () {
+
+            final Set<String> tmp = expected;
+            if (tmp != null && received.size () >= tmp.size ()) {
+                future.set (Integer.valueOf (received.size ()));
+                return true;
+            }
+
+            return false;
+        }
+    }
+
+    /**
+     * Counts the acknowledgements returned on one grid's ack queue.
+     */
+    private class AckReader extends AbstractLoopTask {
+
+        private final BlockingQueue<AckBatch> ackQueue;
+
+        AckReader (final BlockingQueue<AckBatch> ackQueue) {
+
+            super ();
+
+            this.ackQueue = ackQueue;
+        }
+
+        @Override
+        protected boolean pass (final boolean wait) {
+
+            try {
+                final AckBatch batch = wait ? ackQueue.poll (ACK_POLL_MILLIS, TimeUnit.MILLISECONDS) : ackQueue.poll ();
+                if (batch == null) {
+                    return false;
+                }
+
+                ack (batch.getSystemName (), batch.getAckIdList ());
+
+                if (LOG.isTraceEnabled ()) {
+                    LOG.trace ("{} acknowledged {} message(s) on {}", batch.getSystemName (),
+                            Integer.valueOf (batch.size ()), ackQueueName);
+                }
+
+                return true;
+            } catch (final InterruptedException ie) {
+                stop ();
+
+                if (LOG.isDebugEnabled ()) {
+                    LOG.debug ("Ack reader for {} interrupted", ackQueueName);
+                }
+            } catch (final Throwable ex) {
+                stop ();
+                LOG.warn ("Unable to read acknowledgements from " + ackQueueName + ":  " + ex.getLocalizedMessage (),
+                        ex);
+            }
+
+            return false;
+        }
+    }
+}
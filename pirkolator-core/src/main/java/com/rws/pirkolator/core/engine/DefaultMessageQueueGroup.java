@@ -15,16 +15,20 @@
  ******************************************************************************/
 package com.rws.pirkolator.core.engine;
 
-import static com.google.common.base.Preconditions.checkNotNull;
-
-import java.util.Iterator;
+import java.util.List;
 import java.util.Set;
 
 import com.google.common.collect.ImmutableSet;
-import com.google.common.collect.Iterators;
-import com.google.common.collect.Sets;
+import com.rws.pirkolator.core.engine.group.IQueueSelector;
+import com.rws.pirkolator.core.engine.group.RoundRobinQueueSelector;
+import com.rws.pirkolator.model.Message;
 
 /**
+ * <p>Each message delivered to the group goes to one of its queues, chosen by
+ * the group's {@link IQueueSelector}.
+ * 
+ * <p>The queues of a group are kept in a copy-on-write snapshot that is replaced
+ * when a queue is added or removed, so selecting a queue does not lock or allocate.
  * 
  * @author jpirkey
  * @since 0.1.0
@@ -35,12 +39,12 @@ public class DefaultMessageQueueGroup implements IQueueGroupManager {
     // ** Member variables
     // *************************************************************************
 
-    private final Set<MessageQueue> allQueueSet = Sets.newConcurrentHashSet ();
-    private final Set<MessageQueue> nextQueueSet = Sets.newConcurrentHashSet ();
+    private volatile ImmutableSet<MessageQueue> allQueueSet;
+    private volatile MessageQueue[] allQueues;
 
     private final String queueName;
 
-    private int currentIndex;
+    private final IQueueSelector selector;
 
     // *************************************************************************
     // ** Constructors
@@ -48,12 +52,18 @@ public class DefaultMessageQueueGroup implements IQueueGroupManager {
 
     public DefaultMessageQueueGroup (final MessageQueue firstQueue, final String queueName) {
 
+        this (firstQueue, queueName, new RoundRobinQueueSelector ());
+    }
+
+    public DefaultMessageQueueGroup (final MessageQueue firstQueue, final String queueName,
+            final IQueueSelector selector) {
+
         super ();
 
         this.queueName = queueName;
-        nextQueueSet.add (firstQueue);
-        allQueueSet.add (firstQueue);
-        currentIndex = 0;
+        this.selector = selector;
+        allQueueSet = ImmutableSet.of (firstQueue);
+        allQueues = new MessageQueue[] { firstQueue };
     }
 
     @Override
@@ -62,41 +72,60 @@ public class DefaultMessageQueueGroup implements IQueueGroupManager {
         return queueName;
     }
 
-    @Override
-    public void addQueue (final MessageQueue queue) {
+    public IQueueSelector getSelector () {
 
-        allQueueSet.add (queue);
+        return selector;
     }
 
-    public void removeQueue (final MessageQueue queue) {
+    @Override
+    public synchronized void addQueue (final MessageQueue queue) {
 
-        allQueueSet.remove (queue);
-        nextQueueSet.remove (queue);
+        if (!allQueueSet.contains (queue)) {
+            update (ImmutableSet.<MessageQueue> builder ().addAll (allQueueSet).add (queue).build ());
+        }
     }
 
     @Override
-    public Set<MessageQueue> nextQueueSet () {
-
-        return ImmutableSet.copyOf (nextQueueSet);
+    public synchronized void removeQueue (final MessageQueue queue) {
+
+        if (allQueueSet.contains (queue)) {
+            final ImmutableSet.Builder<MessageQueue> builder = ImmutableSet.builder ();
+            for (final MessageQueue existing : allQueueSet) {
+                if (!existing.equals (queue)) {
+                    builder.add (existing);
+                }
+            }
+            update (builder.build ());
+        }
     }
 
     @Override
     public Set<MessageQueue> getAllQueueSet () {
 
-        return ImmutableSet.copyOf (allQueueSet);
+        return allQueueSet;
     }
 
-    void nextQueue () {
-
-        if (allQueueSet.size () > 1) {
-
-            int index = currentIndex++;
-            if (index >= allQueueSet.size ()) {
-                index = 0;
+    @Override
+    public void put (final List<Message> batch) throws InterruptedException {
+
+        final MessageQueue[] queues = allQueues;
+
+        if (queues.length == 1) {
+            queues[0].putAll (batch);
+        } else if (queues.length > 1) {
+            if (selector.isPerMessage ()) {
+                for (final Message message : batch) {
+                    selector.select (queues, message).put (message);
+                }
+            } else if (!batch.isEmpty ()) {
+                selector.select (queues, batch.get (0)).putAll (batch);
             }
-            final Iterator<MessageQueue> it = allQueueSet.iterator ();
-            nextQueueSet.clear ();
-            nextQueueSet.add (Iterators.get (checkNotNull (it), index));
         }
     }
+
+    private void update (final ImmutableSet<MessageQueue> queueSet) {
+
+        allQueues = queueSet.toArray (new MessageQueue[queueSet.size ()]);
+        allQueueSet = queueSet;
+    }
 }
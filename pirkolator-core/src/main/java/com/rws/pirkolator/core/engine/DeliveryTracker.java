@@ -0,0 +1,196 @@
+/*******************************************************************************
+ * Copyright 2014 Reality Warp Software
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.rws.pirkolator.core.engine;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.rws.pirkolator.model.Message;
+import com.rws.utility.common.UUIDs;
+
+/**
+ * This class counts the deliveries of the messages published with
+ * acknowledgement on one hub.  The distributor, or the router for messages from
+ * other hubs, expects each message once for every subscription group it puts
+ * the message on, and each {@link MessageCarrier} reports the message once its
+ * subscriber's receive() returns.  When every group has received a message, the
+ * hub acknowledges it to the publisher.
+ * 
+ * <p>A message that a group never delivers, because an overflow policy dropped
+ * it or its subscriber threw, is not acknowledged, so the publisher's future
+ * times out.  The tracker forgets such messages once the timeout has passed.
+ * 
+ * @author jpirkey
+ * @since 1.0.0
+ */
+public class DeliveryTracker {
+
+    // *************************************************************************
+    // ** Member variables
+    // *************************************************************************
+
+    private final long timeoutMillis;
+
+    /** <p>Messages waiting for their subscription groups to receive them.
+     * <br/><b>Key = ack id</b> **/
+    private final Map<UUID, PendingDelivery> pendingMap = new ConcurrentHashMap<> ();
+
+    /** Time the next search for forgotten messages is due **/
+    private volatile long nextExpiryMillis;
+
+    // *************************************************************************
+    // ** Constructors
+    // *************************************************************************
+
+    public DeliveryTracker () {
+
+        this (AckTracker.DEFAULT_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * @param timeoutMillis time after which a message that is still not
+     *            received by every group is forgotten
+     */
+    public DeliveryTracker (final long timeoutMillis) {
+
+        super ();
+
+        this.timeoutMillis = timeoutMillis;
+        nextExpiryMillis = System.currentTimeMillis () + timeoutMillis;
+    }
+
+    // *************************************************************************
+    // ** Member properties
+    // *************************************************************************
+
+    /**
+     * @return number of messages waiting to be received
+     */
+    public int getPendingCount () {
+
+        return pendingMap.size ();
+    }
+
+    // *************************************************************************
+    // ** Member methods
+    // *************************************************************************
+
+    /**
+     * Expects each message of the batch published with acknowledgement to be
+     * received once by each group.  Call it before the batch is put on the
+     * groups, so no delivery is reported before it is expected.  A batch put on
+     * no group is acknowledged at once.
+     * 
+     * @param batch
+     * @param groupCount number of subscription groups the batch is put on
+     * @param sender returns the acknowledgements to the publisher
+     */
+    public void expect (final List<Message> batch, final int groupCount, final IAckSender sender) {
+
+        expire ();
+
+        for (int i = 0; i < batch.size (); i++) {
+            final Message message = batch.get (i);
+            final String ackQueue = message.getHeader (MessageDistributor.RECEIVE_ACK);
+            final String ackId = message.getHeader (AckTracker.ACK_ID);
+            if (ackQueue == null || ackId == null) {
+                continue;
+            }
+
+            if (groupCount == 0) {
+                sender.ack (ackQueue, UUIDs.fromString (ackId));
+            } else {
+                pendingMap.put (UUIDs.fromString (ackId), new PendingDelivery (groupCount, ackQueue, sender));
+            }
+        }
+    }
+
+    /**
+     * Counts a group's receipt of a message, and acknowledges the message
+     * once every group it was expected by has received it.
+     * 
+     * @param message as taken from the group's queue
+     */
+    public void delivered (final Message message) {
+
+        final String ackId = message.getHeader (AckTracker.ACK_ID);
+        if (ackId == null) {
+            return;
+        }
+
+        final UUID key = UUIDs.fromString (ackId);
+        final PendingDelivery pending = pendingMap.get (key);
+        if (pending != null && pending.remaining.decrementAndGet () == 0 && pendingMap.remove (key) != null) {
+            pending.sender.ack (pending.ackQueue, key);
+        }
+    }
+
+    /**
+     * Forgets the messages whose timeout has passed, at most once per timeout.
+     */
+    void expire () {
+
+        final long nowMillis = System.currentTimeMillis ();
+        if (nowMillis < nextExpiryMillis) {
+            return;
+        }
+        nextExpiryMillis = nowMillis + timeoutMillis;
+
+        final long expiredMillis = nowMillis - timeoutMillis;
+        for (final Entry<UUID, PendingDelivery> entry : pendingMap.entrySet ()) {
+            if (entry.getValue ().expectedMillis < expiredMillis) {
+                pendingMap.remove (entry.getKey ());
+            }
+        }
+    }
+
+    // *************************************************************************
+    // ** Member classes
+    // *************************************************************************
+
+    /**
+     * Returns the acknowledgements of received messages to their publishers.
+     */
+    public interface IAckSender {
+
+        /**
+         * @param ackQueue name of the publisher's ack queue
+         * @param ackId
+         */
+        void ack (String ackQueue, UUID ackId);
+    }
+
+    private static final class PendingDelivery {
+
+        final AtomicInteger remaining;
+        final String ackQueue;
+        final IAckSender sender;
+        final long expectedMillis = System.currentTimeMillis ();
+
+        PendingDelivery (final int groupCount, final String ackQueue, final IAckSender sender) {
+
+            super ();
+
+            remaining = new AtomicInteger (groupCount);
+            this.ackQueue = ackQueue;
+            this.sender = sender;
+        }
+    }
+}
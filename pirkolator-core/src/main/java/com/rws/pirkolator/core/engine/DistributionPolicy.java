@@ -0,0 +1,215 @@
+/*******************************************************************************
+ * Copyright 2014 Reality Warp Software
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.rws.pirkolator.core.engine;
+
+import com.google.common.base.Objects;
+import com.rws.pirkolator.core.engine.delivery.IDeliveryEngine;
+import com.rws.pirkolator.core.engine.delivery.MessageBatcher;
+import com.rws.pirkolator.core.engine.delivery.QueueDeliveryEngine;
+import com.rws.pirkolator.core.engine.delivery.RingBufferDeliveryEngine;
+import com.rws.pirkolator.core.engine.delivery.WaitStrategy;
+
+/**
+ * <p>This class defines how a {@link MessageDistributor} hands published messages
+ * to its delivery task and how many messages the delivery tasks fan out to the
+ * receiving queues at a time.  A default policy is held by the {@link Hub} and may be
+ * overridden per publisher name in the Spring configuration, e.g.
+ *
+ * <pre>
+ * &lt;bean id="hub" class="com.rws.pirkolator.core.engine.Hub"&gt;
+ *     &lt;constructor-arg ref="messageCopier" /&gt;
+ *     &lt;property name="distributionPolicyMap"&gt;
+ *         &lt;map&gt;
+ *             &lt;entry key="Bursty Publisher"&gt;
+ *                 &lt;bean class="com.rws.pirkolator.core.engine.DistributionPolicy"&gt;
+ *                     &lt;property name="queuePolicy"&gt;
+ *                         &lt;bean class="com.rws.pirkolator.core.engine.QueuePolicy"&gt;
+ *                             &lt;property name="capacity" value="50000" /&gt;
+ *                             &lt;property name="overflow" value="DropOldest" /&gt;
+ *                         &lt;/bean&gt;
+ *                     &lt;/property&gt;
+ *                 &lt;/bean&gt;
+ *             &lt;/entry&gt;
+ *             &lt;entry key="Fast Publisher"&gt;
+ *                 &lt;bean class="com.rws.pirkolator.core.engine.DistributionPolicy"&gt;
+ *                     &lt;property name="engineType" value="RingBuffer" /&gt;
+ *                     &lt;property name="waitStrategy" value="Park" /&gt;
+ *                     &lt;property name="batchSize" value="64" /&gt;
+ *                     &lt;property name="batchLingerMicros" value="200" /&gt;
+ *                 &lt;/bean&gt;
+ *             &lt;/entry&gt;
+ *         &lt;/map&gt;
+ *     &lt;/property&gt;
+ * &lt;/bean&gt;
+ * </pre>
+ *
+ * @author jpirkey
+ * @since 1.0.0
+ */
+public class DistributionPolicy {
+
+    public enum EngineType {
+        Queue, RingBuffer
+    }
+
+    // *************************************************************************
+    // ** Member variables
+    // *************************************************************************
+
+    private EngineType engineType = EngineType.Queue;
+    private int ringBufferSize = RingBufferDeliveryEngine.DEFAULT_BUFFER_SIZE;
+    private WaitStrategy waitStrategy = WaitStrategy.Yield;
+
+    /** Capacity and overflow of the sending queue for the Queue engine type **/
+    private QueuePolicy queuePolicy = new QueuePolicy ();
+
+    /** Maximum messages delivered per routing pass; 1 delivers each message on its own **/
+    private int batchSize = 1;
+
+    /** Maximum time to wait for a batch to fill; 0 only takes what is already queued **/
+    private long batchLingerMicros = 0;
+
+    /** Time a message published with acknowledgement waits for its acknowledgements **/
+    private long ackTimeoutMillis = AckTracker.DEFAULT_TIMEOUT_MILLIS;
+
+    // *************************************************************************
+    // ** Constructors
+    // *************************************************************************
+
+    public DistributionPolicy () {
+
+        super ();
+    }
+
+    // *************************************************************************
+    // ** Member properties
+    // *************************************************************************
+
+    public EngineType getEngineType () {
+
+        return engineType;
+    }
+
+    public void setEngineType (final EngineType engineType) {
+
+        this.engineType = engineType;
+    }
+
+    public int getRingBufferSize () {
+
+        return ringBufferSize;
+    }
+
+    /**
+     * @param ringBufferSize rounded up to the next power of two
+     */
+    public void setRingBufferSize (final int ringBufferSize) {
+
+        this.ringBufferSize = ringBufferSize;
+    }
+
+    public WaitStrategy getWaitStrategy () {
+
+        return waitStrategy;
+    }
+
+    public void setWaitStrategy (final WaitStrategy waitStrategy) {
+
+        this.waitStrategy = waitStrategy;
+    }
+
+    public QueuePolicy getQueuePolicy () {
+
+        return queuePolicy;
+    }
+
+    public void setQueuePolicy (final QueuePolicy queuePolicy) {
+
+        this.queuePolicy = queuePolicy;
+    }
+
+    public int getBatchSize () {
+
+        return batchSize;
+    }
+
+    public void setBatchSize (final int batchSize) {
+
+        this.batchSize = batchSize;
+    }
+
+    public long getBatchLingerMicros () {
+
+        return batchLingerMicros;
+    }
+
+    public void setBatchLingerMicros (final long batchLingerMicros) {
+
+        this.batchLingerMicros = batchLingerMicros;
+    }
+
+    public long getAckTimeoutMillis () {
+
+        return ackTimeoutMillis;
+    }
+
+    public void setAckTimeoutMillis (final long ackTimeoutMillis) {
+
+        this.ackTimeoutMillis = ackTimeoutMillis;
+    }
+
+    public boolean isBatching () {
+
+        return batchSize > 1;
+    }
+
+    // *************************************************************************
+    // ** Member methods
+    // *************************************************************************
+
+    /**
+     * @return a new {@link IDeliveryEngine} for a single {@link MessageDistributor}
+     */
+    public IDeliveryEngine buildDeliveryEngine () {
+
+        if (engineType == EngineType.RingBuffer) {
+            return new RingBufferDeliveryEngine (ringBufferSize, waitStrategy);
+        }
+
+        return new QueueDeliveryEngine (queuePolicy);
+    }
+
+    /**
+     * @param engine
+     * @return a new {@link MessageBatcher} that collects batches from the engine
+     */
+    public MessageBatcher buildBatcher (final IDeliveryEngine engine) {
+
+        return new MessageBatcher (engine, batchSize, batchLingerMicros);
+    }
+
+    // *************************************************************************
+    // ** Class methods
+    // *************************************************************************
+
+    @Override
+    public String toString () {
+
+        return Objects.toStringHelper (this).add ("engineType", engineType).add ("ringBufferSize", ringBufferSize)
+                .add ("waitStrategy", waitStrategy).add ("queuePolicy", queuePolicy).add ("batchSize", batchSize)
+                .add ("batchLingerMicros", batchLingerMicros).add ("ackTimeoutMillis", ackTimeoutMillis).toString ();
+    }
+}
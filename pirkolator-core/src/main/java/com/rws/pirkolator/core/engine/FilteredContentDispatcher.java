@@ -0,0 +1,271 @@
+/*******************************************************************************
+ * Copyright 2014 Reality Warp Software
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.rws.pirkolator.core.engine;
+
+import static com.rws.utility.common.Preconditions.notNull;
+
+import java.io.Serializable;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.rws.pirkolator.model.Message;
+import com.rws.pirkolator.model.filter.IContentFilter;
+
+/**
+ * <p>This class delivers the content of a message to the {@link FilteredContent}
+ * methods of a subscriber.  The annotated methods are bound to the subscriber
+ * as {@link MethodHandle}s once, and every content filter, type and method of
+ * the subscription becomes a route.  The routes for each concrete class of
+ * content are resolved the first time the class is seen, so a message is
+ * dispatched by walking its content once and looking up the class of each
+ * object.
+ * 
+ * <p>The plan is compiled from the subscriber's {@link Subscription} when the
+ * first message is dispatched and compiled again if the subscriber is given a
+ * new subscription or the version of its subscription changes, as it does when
+ * filters are added in place.  A dispatcher belongs to a single
+ * {@link MessageCarrier} and is not thread safe.
+ * 
+ * @author jpirkey
+ * @since 1.0.0
+ */
+final class FilteredContentDispatcher {
+
+    static final Logger LOG = notNull (LoggerFactory.getLogger (FilteredContentDispatcher.class));
+
+    private static final MethodType HANDLE_TYPE = notNull (MethodType.methodType (void.class, Object.class));
+    private static final Route[] NO_ROUTES = new Route[0];
+
+    /** Filter support of the current message **/
+    private static final byte UNKNOWN = 0;
+    private static final byte UNSUPPORTED = 1;
+    private static final byte SUPPORTED = 2;
+
+    // *************************************************************************
+    // ** Member variables
+    // *************************************************************************
+
+    /** define **/
+    private final ISubscriber subscriber;
+
+    /** Annotated methods bound to the subscriber, in the order of getMethods () **/
+    private final List<BoundMethod> boundMethods = new ArrayList<> ();
+
+    /** plan **/
+    @Nullable
+    private Subscription compiledSubscription;
+    private int compiledVersion;
+    private IContentFilter[] filters = new IContentFilter[0];
+    private Route[] routes = NO_ROUTES;
+    private byte[] filterSupport = new byte[0];
+
+    /** <p>Routes for each concrete content class.
+     * <br/><b>Key = content {@link Class}</b> **/
+    private final Map<Class<?>, Route[]> routeTable = new HashMap<> ();
+
+    // *************************************************************************
+    // ** Constructors
+    // *************************************************************************
+
+    FilteredContentDispatcher (final ISubscriber subscriber) {
+
+        super ();
+
+        this.subscriber = subscriber;
+        bindMethods ();
+    }
+
+    // *************************************************************************
+    // ** Member properties
+    // *************************************************************************
+
+    /**
+     * @return true if the subscriber has no annotated methods to dispatch to
+     */
+    boolean isEmpty () {
+
+        return boundMethods.isEmpty ();
+    }
+
+    // *************************************************************************
+    // ** Member methods
+    // *************************************************************************
+
+    /**
+     * Invokes the annotated methods for each object in the message that is
+     * supported by a content filter of the subscription.
+     * 
+     * @throws Throwable thrown by an annotated method
+     */
+    void dispatch (final Message message) throws Throwable {
+
+        // Read the version first, so a change made while compiling is compiled again
+        final Subscription subscription = subscriber.getSubscription ();
+        final int version = subscription.getVersion ();
+        if (subscription != compiledSubscription || version != compiledVersion) {
+            compile (subscription);
+            compiledSubscription = subscription;
+            compiledVersion = version;
+        }
+
+        if (routes.length == 0) {
+            return;
+        }
+
+        Arrays.fill (filterSupport, UNKNOWN);
+
+        final int size = message.size ();
+        for (int i = 0; i < size; i++) {
+            final Serializable obj = message.get (i);
+
+            for (final Route route : routesFor (obj.getClass ())) {
+                if (supports (route.filterIndex, message) && route.filter.supportsObject (obj, route.propertyArray)) {
+                    route.handle.invokeExact ((Object) obj);
+                }
+            }
+        }
+    }
+
+    private boolean supports (final int filterIndex, final Message message) {
+
+        byte support = filterSupport[filterIndex];
+        if (support == UNKNOWN) {
+            support = filters[filterIndex].supports (message) ? SUPPORTED : UNSUPPORTED;
+            filterSupport[filterIndex] = support;
+        }
+
+        return support == SUPPORTED;
+    }
+
+    private Route[] routesFor (final Class<?> type) {
+
+        Route[] typeRoutes = routeTable.get (type);
+        if (typeRoutes == null) {
+            final List<Route> list = new ArrayList<> ();
+            for (final Route route : routes) {
+                if (route.contentType.isAssignableFrom (type)) {
+                    list.add (route);
+                }
+            }
+
+            typeRoutes = list.isEmpty () ? NO_ROUTES : list.toArray (new Route[list.size ()]);
+            routeTable.put (type, typeRoutes);
+        }
+
+        return typeRoutes;
+    }
+
+    private void bindMethods () {
+
+        for (final Method method : subscriber.getClass ().getMethods ()) {
+            final FilteredContent ann = method.getAnnotation (FilteredContent.class);
+            if (ann == null) {
+                continue;
+            }
+
+            try {
+                // Public methods of a non-public subscriber class are still reachable
+                method.setAccessible (true);
+                final MethodHandle handle =
+                        MethodHandles.lookup ().unreflect (method).bindTo (subscriber).asType (HANDLE_TYPE);
+                boundMethods.add (new BoundMethod (notNull (handle), notNull (ann.contentType ()),
+                        notNull (ann.propertyArray ())));
+            } catch (final IllegalAccessException | RuntimeException ex) {
+                LOG.warn ("Unable to bind FilteredContent method {} on subscriber {} - {}", method.getName (),
+                        subscriber.getName (), ex.getLocalizedMessage ());
+            }
+        }
+    }
+
+    private void compile (final Subscription subscription) {
+
+        final List<IContentFilter> filterList = new ArrayList<> ();
+        final List<Route> routeList = new ArrayList<> ();
+
+        if (!boundMethods.isEmpty () && subscription.isContentDefined ()) {
+            for (final IContentFilter filter : subscription.getContentFilterSet ()) {
+                final int filterIndex = filterList.size ();
+                filterList.add (filter);
+
+                for (final Class<?> filterType : filter.getTypeSet ()) {
+                    for (final BoundMethod bound : boundMethods) {
+                        if (bound.contentType == filterType) {
+                            routeList.add (new Route (filter, filterIndex, filterType, bound));
+                        }
+                    }
+                }
+            }
+        }
+
+        filters = filterList.toArray (new IContentFilter[filterList.size ()]);
+        routes = routeList.toArray (new Route[routeList.size ()]);
+        filterSupport = new byte[filters.length];
+        routeTable.clear ();
+    }
+
+    // *************************************************************************
+    // ** Member classes
+    // *************************************************************************
+
+    static final class BoundMethod {
+
+        final MethodHandle handle;
+        final Class<?> contentType;
+        final String[] propertyArray;
+
+        BoundMethod (final MethodHandle handle, final Class<?> contentType, final String[] propertyArray) {
+
+            super ();
+
+            this.handle = handle;
+            this.contentType = contentType;
+            this.propertyArray = propertyArray;
+        }
+    }
+
+    static final class Route {
+
+        final IContentFilter filter;
+        final int filterIndex;
+        final Class<?> contentType;
+        final MethodHandle handle;
+        final String[] propertyArray;
+
+        Route (final IContentFilter filter, final int filterIndex, final Class<?> contentType,
+                final BoundMethod bound) {
+
+            super ();
+
+            this.filter = filter;
+            this.filterIndex = filterIndex;
+            this.contentType = contentType;
+            handle = bound.handle;
+            propertyArray = bound.propertyArray;
+        }
+    }
+}
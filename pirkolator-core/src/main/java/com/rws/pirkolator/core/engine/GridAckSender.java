@@ -0,0 +1,167 @@
+/*******************************************************************************
+ * Copyright 2014 Reality Warp Software
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.rws.pirkolator.core.engine;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.rws.utility.common.Preconditions.notNull;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.rws.pirkolator.core.grid.IGridQueueAdapter;
+import com.rws.pirkolator.model.AckBatch;
+
+/**
+ * This class returns a hub's acknowledgements to publishers on other hubs.
+ * The acknowledgements for each ack queue wait until the batch size is reached
+ * or the linger time passes, and are then offered on the queue in one
+ * {@link AckBatch}, signed with the hub's key.
+ * 
+ * @author jpirkey
+ * @since 1.0.0
+ */
+public class GridAckSender implements DeliveryTracker.IAckSender {
+
+    private static final Logger LOG = notNull (LoggerFactory.getLogger (GridAckSender.class));
+
+    /** Service offering the acknowledgements whose linger time has passed **/
+    static final String ACK_FLUSH_SERVICE = "ack-flush";
+
+    /** Default longest time an acknowledgement waits for its batch to fill **/
+    public static final long DEFAULT_LINGER_MILLIS = 10;
+
+    // *************************************************************************
+    // ** Member variables
+    // *************************************************************************
+
+    private final IGridQueueAdapter callbackGrid;
+    private final String hubKey;
+
+    /** Batching **/
+    private final int batchSize;
+    private final long lingerMillis;
+    private final ScheduledExecutorService flushService;
+
+    /** <p>Acknowledgements waiting to be offered, guarded by the map.
+     * <br/><b>Key = ack queue name {@link String}</b> **/
+    private final Map<String, List<UUID>> pendingMap = new HashMap<> ();
+    @Nullable
+    private ScheduledFuture<?> flushFuture;
+
+    private final Runnable flushTask = new Runnable () {
+
+        @Override
+        public void run () {
+
+            flush ();
+        }
+    };
+
+    // *************************************************************************
+    // ** Constructors
+    // *************************************************************************
+
+    /**
+     * @param callbackGrid grid holding the publishers' ack queues
+     * @param hubKey key of this hub on the grid
+     * @param batchSize most acknowledgements offered in one batch
+     * @param lingerMillis longest time an acknowledgement waits for its batch to fill
+     * @param flushService runs the linger flushes
+     */
+    public GridAckSender (final IGridQueueAdapter callbackGrid, final String hubKey, final int batchSize,
+            final long lingerMillis, final ScheduledExecutorService flushService) {
+
+        super ();
+
+        checkArgument (batchSize > 0, "Batch size must be at least 1");
+
+        this.callbackGrid = callbackGrid;
+        this.hubKey = hubKey;
+        this.batchSize = batchSize;
+        this.lingerMillis = lingerMillis;
+        this.flushService = flushService;
+    }
+
+    // *************************************************************************
+    // ** Member methods
+    // *************************************************************************
+
+    @Override
+    public void ack (final String ackQueue, final UUID ackId) {
+
+        List<UUID> full = null;
+        synchronized (pendingMap) {
+            List<UUID> ackIdList = pendingMap.get (ackQueue);
+            if (ackIdList == null) {
+                ackIdList = new ArrayList<> ();
+                pendingMap.put (ackQueue, ackIdList);
+            }
+            ackIdList.add (ackId);
+
+            if (ackIdList.size () >= batchSize) {
+                full = pendingMap.remove (ackQueue);
+            } else if (flushFuture == null) {
+                flushFuture = flushService.schedule (flushTask, lingerMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        if (full != null) {
+            offer (ackQueue, full);
+        }
+    }
+
+    /**
+     * Offers the waiting acknowledgements now.
+     */
+    public void flush () {
+
+        final Map<String, List<UUID>> flushMap;
+        synchronized (pendingMap) {
+            final ScheduledFuture<?> future = flushFuture;
+            if (future != null) {
+                future.cancel (false);
+                flushFuture = null;
+            }
+
+            flushMap = new HashMap<> (pendingMap);
+            pendingMap.clear ();
+        }
+
+        for (final Map.Entry<String, List<UUID>> entry : flushMap.entrySet ()) {
+            offer (notNull (entry.getKey ()), notNull (entry.getValue ()));
+        }
+    }
+
+    private void offer (final String ackQueue, final List<UUID> ackIdList) {
+
+        final AckBatch ackBatch = new AckBatch (hubKey, ackIdList);
+        if (!callbackGrid.<AckBatch> getQueue (ackQueue).offer (ackBatch)) {
+            LOG.warn ("Ack queue {} is full; dropped {} acknowledgement(s)", ackQueue,
+                    Integer.valueOf (ackBatch.size ()));
+        }
+    }
+}
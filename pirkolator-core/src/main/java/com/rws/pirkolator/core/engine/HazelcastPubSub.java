@@ -18,25 +18,39 @@ package com.rws.pirkolator.core.engine;
 import static com.google.common.base.Preconditions.checkNotNull;
 import static com.rws.utility.common.Preconditions.notNull;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map.Entry;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import javax.annotation.Nullable;
+import javax.annotation.PreDestroy;
 import javax.annotation.Resource;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.collect.Sets;
+import com.hazelcast.core.Cluster;
 import com.hazelcast.core.EntryEvent;
 import com.hazelcast.core.EntryListener;
+import com.hazelcast.core.HazelcastInstanceNotActiveException;
 import com.hazelcast.core.IMap;
 import com.hazelcast.core.ITopic;
 import com.hazelcast.core.MapEvent;
+import com.hazelcast.core.MemberAttributeEvent;
+import com.hazelcast.core.MembershipEvent;
+import com.hazelcast.core.MembershipListener;
+import com.hazelcast.core.MultiMap;
 import com.rws.pirkolator.core.grid.HazelcastGrid;
 import com.rws.pirkolator.core.grid.IGrid;
 import com.rws.pirkolator.model.AbstractSystemIdentifiable;
 import com.rws.pirkolator.model.Message;
+import com.rws.pirkolator.model.MessageBatch;
 import com.rws.pirkolator.model.SystemInfo;
 import com.rws.utility.common.UUIDs;
 
@@ -44,6 +58,37 @@ import com.rws.utility.common.UUIDs;
  * This class provides a default distributed pub/sub using Hazelcast to provide
  * pub/sub between distributed or scaled systems using the SystemInfo.
  * 
+ * <p>With {@link Routing#Interest} routing, the default, a hub advertises in the
+ * interest map each publisher on another hub that its subscriptions match, and
+ * the publisher puts its messages only on the Hazelcast queues of those hubs.
+ * With {@link Routing#Broadcast} routing, messages are published to a Hazelcast
+ * topic per publisher, which every hub with the publication receives.  With
+ * {@link Routing#Replay} routing, messages are written to a bounded ring per
+ * publisher that every hub reads from its own stored offset, so a hub that lags
+ * or restarts catches up on the batches still in the ring.  The routing, and
+ * the replay capacity, must be the same on every hub of the grid.
+ * 
+ * <p>A hub advertises its interest under its Hazelcast member uuid, so when a
+ * hub leaves the cluster, even by crashing, the oldest remaining member removes
+ * its interest and publishers stop sending to it.
+ * 
+ * <p>Hubs advertise their interest under every routing, though only Interest
+ * routing sends by it, so a publish with acknowledgement counts each remote hub
+ * whose subscriptions match the publication.
+ * 
+ * <p>Topic messages are published in batches.  By default each batch holds the
+ * messages of one distributor pass; a batch size and linger time coalesce more
+ * messages into each publish, at the cost of latency, e.g.
+ * 
+ * <pre>
+ * &lt;bean id="hazelcastPubSub" class="com.rws.pirkolator.core.engine.HazelcastPubSub"&gt;
+ *     &lt;constructor-arg ref="hazelcastGrid" /&gt;
+ *     &lt;property name="routing" value="Broadcast" /&gt;
+ *     &lt;property name="topicBatchSize" value="256" /&gt;
+ *     &lt;property name="topicLingerMicros" value="500" /&gt;
+ * &lt;/bean&gt;
+ * </pre>
+ * 
  * @author jpirkey
  *
  */
@@ -56,6 +101,23 @@ public final class HazelcastPubSub extends AbstractSystemIdentifiable implements
      */
     protected static final String PUBLICATION_MAP = "#PublicationMap";
 
+    /**
+     * Maps publisher ids to the member uuids of the hubs with matching subscriptions *
+     */
+    protected static final String INTEREST_MAP = "#InterestMap";
+
+    /**
+     * Maps publisher and hub ids to the last replay sequence the hub has read *
+     */
+    protected static final String REPLAY_OFFSET_MAP = "#ReplayOffsetMap";
+
+    public enum Routing {
+        Interest, Broadcast, Replay
+    }
+
+    /** Service publishing topic batches whose linger time has passed **/
+    static final String TOPIC_FLUSH_SERVICE = "hazelcast-topic-flush";
+
     // *************************************************************************
     // ** Member variables
     // *************************************************************************
@@ -65,12 +127,38 @@ public final class HazelcastPubSub extends AbstractSystemIdentifiable implements
     @Nullable
     SystemInfo systemInfo;
 
+    /** Resources **/
+    @Resource
+    @Nullable
+    SystemResourceManager resourceManager;
+
     /** Hazelcast **/
     private final HazelcastGrid grid;
+    private Routing routing = Routing.Interest;
+
+    /** Publishers on other hubs this hub has advertised interest in **/
+    private final Set<UUID> interestSet = Sets.newConcurrentHashSet ();
+
+    /** Most messages published to a topic at once **/
+    private int topicBatchSize = Integer.MAX_VALUE;
+
+    /** Longest time a message waits for its topic batch to fill; 0 publishes at the end of each put **/
+    private long topicLingerMicros = 0;
+
+    /** Number of batches kept in each publisher's replay ring **/
+    private int replayCapacity = ReplayMessageQueue.DEFAULT_CAPACITY;
+
+    /** Single thread applying Hazelcast events to the registry, resolved in prepare **/
+    @Nullable
+    private ExecutorService registrationExecutor;
 
     @Nullable
     private HazelcastPublicationListener publicationListener;
 
+    /** Registration of the listener removing the interest of departed hubs **/
+    @Nullable
+    private String membershipRegistration;
+
     /** Registry **/
     @Nullable
     private IDistributedPubSubRegistry registry;
@@ -98,12 +186,95 @@ public final class HazelcastPubSub extends AbstractSystemIdentifiable implements
         return grid;
     }
 
+    public Routing getRouting () {
+
+        return routing;
+    }
+
+    public void setRouting (final Routing routing) {
+
+        this.routing = routing;
+    }
+
+    public int getTopicBatchSize () {
+
+        return topicBatchSize;
+    }
+
+    public void setTopicBatchSize (final int topicBatchSize) {
+
+        this.topicBatchSize = topicBatchSize;
+    }
+
+    public long getTopicLingerMicros () {
+
+        return topicLingerMicros;
+    }
+
+    public void setTopicLingerMicros (final long topicLingerMicros) {
+
+        this.topicLingerMicros = topicLingerMicros;
+    }
+
+    public int getReplayCapacity () {
+
+        return replayCapacity;
+    }
+
+    public void setReplayCapacity (final int replayCapacity) {
+
+        this.replayCapacity = replayCapacity;
+    }
+
     @Override
     public MessageQueue prepareQueue (final MessageQueue queue) {
 
-        final ITopic<Message> topic = grid.getInstance ().getTopic (queue.getQueueName ());
-        return new TopicMessageQueue (checkNotNull (topic), queue.getQueueName (), "topic"
-                + queue.getQueueDescriptor ());
+        if (routing == Routing.Interest) {
+            return new InterestMessageQueue (grid, getInterestMap (), queue.getQueueName (), "interest"
+                    + queue.getQueueDescriptor ());
+        }
+
+        if (routing == Routing.Replay) {
+            final ReplayMessageQueue replayQueue =
+                    new ReplayMessageQueue (grid, queue.getQueueName (), "replay" + queue.getQueueDescriptor (),
+                            replayCapacity);
+            replayQueue.setInterestMap (getInterestMap ());
+            return replayQueue;
+        }
+
+        final ITopic<MessageBatch> topic = grid.getInstance ().getTopic (queue.getQueueName ());
+        ScheduledExecutorService flushService = null;
+        if (topicLingerMicros > 0) {
+            flushService = getSystemResourceManager ().getScheduledThreadExecutor (TOPIC_FLUSH_SERVICE, 1);
+        }
+
+        final TopicMessageQueue topicQueue =
+                new TopicMessageQueue (checkNotNull (topic), queue.getQueueName (), "topic"
+                        + queue.getQueueDescriptor (), topicBatchSize, topicLingerMicros, flushService);
+        topicQueue.setInterestMap (getInterestMap ());
+        return topicQueue;
+    }
+
+    @Override
+    public MessageQueue preparePollingQueue (final UUID publisherId, final String queueDescriptor) {
+
+        final String publisherKey = UUIDs.toString (publisherId);
+        if (routing == Routing.Broadcast) {
+            return prepareQueue (new MessageQueue (grid.<Message> getQueue (publisherKey), publisherKey,
+                    queueDescriptor));
+        }
+
+        if (routing == Routing.Replay) {
+            final ReplayMessageQueue queue =
+                    new ReplayMessageQueue (grid, publisherKey, queueDescriptor, replayCapacity);
+            // Offsets are kept by system id, so a restarted hub resumes where it left off
+            queue.startReading (getSystemResourceManager (), getReplayOffsetMap (), publisherKey + "-"
+                    + UUIDs.toString (getSystemInfo ().getId ()));
+            return queue;
+        }
+
+        return new MessageQueue (grid.<Message> getQueue (interestQueueName (publisherKey, getHubKey ())),
+                publisherKey, queueDescriptor);
     }
 
     SystemInfo getSystemInfo () {
@@ -112,6 +283,21 @@ public final class HazelcastPubSub extends AbstractSystemIdentifiable implements
                 + " that Spring has not been initialized correctly. Check the Spring configuration.");
     }
 
+    SystemResourceManager getSystemResourceManager () {
+
+        return notNull (resourceManager, "The System Resource Manager instance is undefined."
+                + " This indicates that Spring has not been initialized correctly. Check the Spring configuration.");
+    }
+
+    /**
+     * @return single thread that applies publication events from Hazelcast to the registry
+     */
+    ExecutorService getRegistrationExecutor () {
+
+        return notNull (registrationExecutor, "The registration executor is undefined. This indicates"
+                + " that the Pub/Sub has not been prepared.");
+    }
+
     IDistributedPubSubRegistry getDistributedPubSubRegistry () {
 
         return notNull (registry, "The Distributed Pub/Sub Registry instance is undefined."
@@ -176,6 +362,61 @@ public final class HazelcastPubSub extends AbstractSystemIdentifiable implements
         return checkNotNull (gp.getPublication ());
     }
 
+    // *************************************************************************
+    // ** Interest methods
+    // *************************************************************************
+
+    @Override
+    public void addInterest (final UUID publisherId) {
+
+        // Advertised under every routing, as publishers count the interested hubs' acknowledgements
+        if (interestSet.add (publisherId)) {
+            getInterestMap ().put (UUIDs.toString (publisherId), getHubKey ());
+
+            if (LOG.isDebugEnabled ()) {
+                LOG.debug ("Advertised interest in publisher {}", publisherId);
+            }
+        }
+    }
+
+    @Override
+    public void removeInterest (final UUID publisherId) {
+
+        if (interestSet.remove (publisherId)) {
+            final String publisherKey = UUIDs.toString (publisherId);
+            getInterestMap ().remove (publisherKey, getHubKey ());
+
+            // Nothing is sent to the queue once the publisher sees the interest removed
+            grid.destroyQueue (interestQueueName (publisherKey, getHubKey ()));
+
+            if (LOG.isDebugEnabled ()) {
+                LOG.debug ("Withdrew interest in publisher {}", publisherId);
+            }
+        }
+    }
+
+    public boolean containsInterest (final UUID publisherId) {
+
+        return interestSet.contains (publisherId);
+    }
+
+    /**
+     * @return name of the Hazelcast queue a hub polls for the messages of a publisher
+     */
+    static String interestQueueName (final String publisherKey, final String hubKey) {
+
+        return "interest-" + publisherKey + "-" + hubKey;
+    }
+
+    /**
+     * @return uuid of this hub's Hazelcast member, which changes when the hub restarts
+     */
+    @Override
+    public String getHubKey () {
+
+        return notNull (grid.getInstance ().getCluster ().getLocalMember ().getUuid ());
+    }
+
     // *************************************************************************
     // ** Life-cycle methods
     // *************************************************************************
@@ -184,6 +425,7 @@ public final class HazelcastPubSub extends AbstractSystemIdentifiable implements
     public void prepare (final IDistributedPubSubRegistry myRegistry) {
 
         registry = myRegistry;
+        registrationExecutor = getSystemResourceManager ().getSingleThreadExecutor ("hazelcast-registration");
 
         for (final Entry<UUID, GlobalPublication> entry : getHazelcastPublicationMap ().entrySet ()) {
 
@@ -214,6 +456,28 @@ public final class HazelcastPubSub extends AbstractSystemIdentifiable implements
         // Add listeners
         publicationListener = new HazelcastPublicationListener ();
         getHazelcastPublicationMap ().addEntryListener (publicationListener, true);
+        membershipRegistration = grid.getInstance ().getCluster ().addMembershipListener (new InterestCleaner ());
+    }
+
+    /**
+     * Withdraws this hub's interest so publishers stop sending to it.
+     */
+    @PreDestroy
+    void preDestroy () {
+
+        try {
+            final String registration = membershipRegistration;
+            if (registration != null) {
+                grid.getInstance ().getCluster ().removeMembershipListener (registration);
+                membershipRegistration = null;
+            }
+
+            for (final UUID publisherId : interestSet) {
+                removeInterest (checkNotNull (publisherId));
+            }
+        } catch (final HazelcastInstanceNotActiveException ex) {
+            LOG.warn ("Unable to withdraw interest. Hazelcast instance has already been shutdown.");
+        }
     }
 
     // *************************************************************************
@@ -276,6 +540,56 @@ public final class HazelcastPubSub extends AbstractSystemIdentifiable implements
         return grid.getMap (PUBLICATION_MAP);
     }
 
+    /**
+     * Key = Publisher id<br/>
+     * Value = ids of the hubs with matching subscriptions
+     * 
+     * @return {@link MultiMap}
+     */
+    MultiMap<String, String> getInterestMap () {
+
+        return grid.getMultiMap (INTEREST_MAP);
+    }
+
+    /**
+     * Key = Publisher id and hub id<br/>
+     * Value = last replay sequence the hub has read
+     * 
+     * @return {@link IMap}
+     */
+    IMap<String, Long> getReplayOffsetMap () {
+
+        return grid.getMap (REPLAY_OFFSET_MAP);
+    }
+
+    /**
+     * Removes the interest a departed hub left behind and destroys its interest
+     * queues.
+     * 
+     * @param hubKey member uuid of the departed hub
+     */
+    void removeInterestOf (final String hubKey) {
+
+        final MultiMap<String, String> interestMap = getInterestMap ();
+
+        final List<String> publisherKeyList = new ArrayList<> ();
+        for (final Entry<String, String> entry : interestMap.entrySet ()) {
+            if (hubKey.equals (entry.getValue ())) {
+                publisherKeyList.add (entry.getKey ());
+            }
+        }
+
+        for (final String publisherKey : publisherKeyList) {
+            interestMap.remove (publisherKey, hubKey);
+            grid.destroyQueue (interestQueueName (notNull (publisherKey), hubKey));
+        }
+
+        if (LOG.isInfoEnabled () && !publisherKeyList.isEmpty ()) {
+            LOG.info ("Removed the interest of departed hub {} in {} publisher(s)", hubKey,
+                    Integer.valueOf (publisherKeyList.size ()));
+        }
+    }
+
     void lockHazelcastPublicationMap (final UUID id) {
 
         grid.lockMapEntry (PUBLICATION_MAP, id);
@@ -290,6 +604,10 @@ public final class HazelcastPubSub extends AbstractSystemIdentifiable implements
     // ** Member Classes
     // *************************************************************************
 
+    /**
+     * Registration is handed to a single registration thread, in event order,
+     * so the Hazelcast event threads are never blocked by the Hub.
+     */
     private class HazelcastPublicationListener implements EntryListener<UUID, GlobalPublication> {
 
         HazelcastPublicationListener () {
@@ -306,23 +624,22 @@ public final class HazelcastPubSub extends AbstractSystemIdentifiable implements
                 LOG.debug ("Registering Publication from Hazelcast {}", event.getValue ());
             }
 
-            // Only register publication if Publisher is from another HUB
-            if (!getSystemInfo ().getId ().equals (event.getValue ().getSystemId ())) {
-                final UUID tmp = event.getKey ();
-                final GlobalPublication globalPub = event.getValue ();
-                getDistributedPubSubRegistry ().registerDistributedPublisher (getId (), checkNotNull (tmp),
-                        globalPub.getPublisherName (), globalPub.getPublication ());
-            } else if (LOG.isDebugEnabled ()) {
-                LOG.debug ("Publication is a member of this HUB, so registration is not needed.");
-            }
+            register (event);
         }
 
         @Override
         public void entryRemoved (final @Nullable EntryEvent<UUID, GlobalPublication> event) {
 
             checkNotNull (event);
-            final UUID tmp = event.getKey ();
-            getDistributedPubSubRegistry ().unregisterDistributedPublisher (checkNotNull (tmp));
+            final UUID publisherId = checkNotNull (event.getKey ());
+            getRegistrationExecutor ().execute (new Runnable () {
+
+                @Override
+                public void run () {
+
+                    getDistributedPubSubRegistry ().unregisterDistributedPublisher (publisherId);
+                }
+            });
         }
 
         @Override
@@ -333,15 +650,36 @@ public final class HazelcastPubSub extends AbstractSystemIdentifiable implements
             if (LOG.isDebugEnabled ()) {
                 LOG.debug ("Upating Publication from Hazelcast {}", event.getValue ());
             }
+
+            register (event);
+        }
+
+        private void register (final EntryEvent<UUID, GlobalPublication> event) {
+
+            final GlobalPublication globalPub = event.getValue ();
+
             // Only register publication if Publisher is from another HUB
-            if (!getSystemInfo ().getId ().equals (event.getValue ().getSystemId ())) {
-                final UUID tmp = event.getKey ();
-                final GlobalPublication globalPub = event.getValue ();
-                getDistributedPubSubRegistry ().registerDistributedPublisher (getId (), checkNotNull (tmp),
-                        globalPub.getPublisherName (), globalPub.getPublication ());
-            } else if (LOG.isDebugEnabled ()) {
-                LOG.debug ("Publication is a member of this HUB, so registration is not needed.");
+            if (getSystemInfo ().getId ().equals (globalPub.getSystemId ())) {
+                if (LOG.isDebugEnabled ()) {
+                    LOG.debug ("Publication is a member of this HUB, so registration is not needed.");
+                }
+                return;
             }
+
+            final UUID publisherId = checkNotNull (event.getKey ());
+            getRegistrationExecutor ().execute (new Runnable () {
+
+                @Override
+                public void run () {
+
+                    try {
+                        getDistributedPubSubRegistry ().registerDistributedPublisher (getId (), publisherId,
+                                globalPub.getPublisherName (), globalPub.getPublication ());
+                    } catch (final RuntimeException ex) {
+                        LOG.error ("Unable to register publication from Hazelcast [publisher={}]", publisherId, ex);
+                    }
+                }
+            });
         }
 
         @Override
@@ -365,4 +703,53 @@ public final class HazelcastPubSub extends AbstractSystemIdentifiable implements
         }
     }
 
+    /**
+     * Removes the interest of hubs that leave the cluster, so publishers stop
+     * routing to a crashed hub.  Only the oldest member cleans up; the removal
+     * runs on the registration thread, off the Hazelcast event thread.
+     */
+    private class InterestCleaner implements MembershipListener {
+
+        InterestCleaner () {
+
+            super ();
+        }
+
+        @Override
+        public void memberAdded (final @Nullable MembershipEvent event) {
+
+            // Do nothing
+        }
+
+        @Override
+        public void memberRemoved (final @Nullable MembershipEvent event) {
+
+            checkNotNull (event);
+
+            final Cluster cluster = event.getCluster ();
+            if (!cluster.getMembers ().iterator ().next ().localMember ()) {
+                return;
+            }
+
+            final String hubKey = notNull (event.getMember ().getUuid ());
+            getRegistrationExecutor ().execute (new Runnable () {
+
+                @Override
+                public void run () {
+
+                    try {
+                        removeInterestOf (hubKey);
+                    } catch (final RuntimeException ex) {
+                        LOG.error ("Unable to remove the interest of departed hub {}", hubKey, ex);
+                    }
+                }
+            });
+        }
+
+        @Override
+        public void memberAttributeChanged (final @Nullable MemberAttributeEvent event) {
+
+            // Do nothing
+        }
+    }
 }
@@ -20,12 +20,14 @@ import static com.rws.utility.common.Preconditions.notNull;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 import javax.annotation.Nullable;
 import javax.annotation.PostConstruct;
@@ -40,13 +42,18 @@ import org.springframework.context.ApplicationContextAware;
 
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.Striped;
 import com.rws.pirkolator.core.engine.channel.AsyncPubSubChannel;
 import com.rws.pirkolator.core.engine.exception.PublicationNotFoundException;
 import com.rws.pirkolator.core.engine.listener.IShutdownListener;
+import com.rws.pirkolator.core.engine.match.FilterIndex;
 import com.rws.pirkolator.core.grid.IGrid;
+import com.rws.pirkolator.core.metric.LatencyHistogram;
+import com.rws.pirkolator.core.registry.SeriesRegistry;
 import com.rws.pirkolator.core.registry.StatusRegistry;
 import com.rws.pirkolator.core.registry.SystemRegistry;
 import com.rws.pirkolator.core.transform.Transformer;
+import com.rws.pirkolator.model.AckBatch;
 import com.rws.pirkolator.model.Message;
 import com.rws.pirkolator.model.SystemInfo;
 import com.rws.utility.common.Globals;
@@ -67,6 +74,8 @@ public final class Hub implements ApplicationContextAware, ILocalPubSubRegistry,
 
     private final static Logger LOG = notNull (LoggerFactory.getLogger (Hub.class));
 
+    private final static int REGISTRATION_STRIPES = 64;
+
     // *************************************************************************
     // ** Member variables
     // *************************************************************************
@@ -99,6 +108,10 @@ public final class Hub implements ApplicationContextAware, ILocalPubSubRegistry,
     @Nullable
     private SystemResourceManager resourceManager;
 
+    @Resource
+    @Nullable
+    private SeriesRegistry seriesRegistry;
+
     /** <p>Map of {@link IPubSub} implementations.
      * <br/><b>Key = pub/sub {@link UUID}</b> **/
     private final Map<UUID, IPubSub> pubSubMap = new ConcurrentHashMap<> ();
@@ -115,6 +128,10 @@ public final class Hub implements ApplicationContextAware, ILocalPubSubRegistry,
      * <br/><b>Key = publisher {@link UUID}</b> **/
     private final Map<UUID, MessageDistributor> messageDistributorMap = new ConcurrentHashMap<> ();
 
+    /** <p>Distributed Pub/Subs of the publishers on other hubs.
+     * <br/><b>Key = publisher {@link UUID}</b> **/
+    private final Map<UUID, IDistributedPubSub> distributedPublisherMap = new ConcurrentHashMap<> ();
+
     /** <p>Local subscribers.
      * <br/><b>Key = subscriber {@link UUID}</b> **/
     private final Map<UUID, ISubscriber> localSubscriberMap = new ConcurrentHashMap<> ();
@@ -123,11 +140,38 @@ public final class Hub implements ApplicationContextAware, ILocalPubSubRegistry,
      * <br/><b>Key = group name {@link String}</b> **/
     private final Map<String, SubscriptionManager> subscriptionManagerMap = new ConcurrentHashMap<> ();
 
-    /** registration **/
-    private final ReentrantReadWriteLock registrationLock = new ReentrantReadWriteLock (true);
+    /** Filter indexes used to find the matching publications and subscriptions **/
+    private final FilterIndex<PublicationManager> publicationIndex = new FilterIndex<> (FilterIndex.Side.Publication);
+    private final FilterIndex<SubscriptionManager> subscriptionIndex =
+            new FilterIndex<> (FilterIndex.Side.Subscription);
+
+    /** Registration locks for each publisher {@link UUID} and subscription group name **/
+    private final Striped<Lock> publisherLocks = Striped.lock (REGISTRATION_STRIPES);
+    private final Striped<Lock> groupLocks = Striped.lock (REGISTRATION_STRIPES);
+
+    /** Held only while the filter indexes are updated and queried **/
+    private final ReentrantLock matchLock = new ReentrantLock ();
 
     private final IMessageCopier copier;
 
+    /** Counts the deliveries of the messages published with acknowledgement **/
+    private final DeliveryTracker deliveryTracker = new DeliveryTracker ();
+
+    /** <p>Delivery policies for publishers that override the default policy.
+     * <br/><b>Key = publisher name {@link String}</b> **/
+    private final Map<String, DistributionPolicy> distributionPolicyMap = new ConcurrentHashMap<> ();
+
+    private DistributionPolicy distributionPolicy = new DistributionPolicy ();
+
+    /** <p>Queue group policies for subscription groups that override the default policy.
+     * <br/><b>Key = subscription group name {@link String}</b> **/
+    private final Map<String, QueueGroupPolicy> queueGroupPolicyMap = new ConcurrentHashMap<> ();
+
+    private QueueGroupPolicy queueGroupPolicy = new QueueGroupPolicy ();
+
+    /** Period of the latency percentile series; 0 records latency without reporting it **/
+    private long latencyPeriodMillis = 15000;
+
     // *************************************************************************
     // ** Constructors
     // *************************************************************************
@@ -188,6 +232,12 @@ public final class Hub implements ApplicationContextAware, ILocalPubSubRegistry,
                 + " This indicates that Spring has not been initialized correctly. Check the Spring configuration.");
     }
 
+    SeriesRegistry getSeriesRegistry () {
+
+        return notNull (seriesRegistry, "The Series Registry instance is undefined."
+                + " This indicates that Spring has not been initialized correctly. Check the Spring configuration.");
+    }
+
     Transformer getTransformer () {
 
         return notNull (transformer, "The Transformer instance is "
@@ -204,6 +254,112 @@ public final class Hub implements ApplicationContextAware, ILocalPubSubRegistry,
         applicationContext = value;
     }
 
+    public DistributionPolicy getDistributionPolicy () {
+
+        return distributionPolicy;
+    }
+
+    /**
+     * Sets the {@link DistributionPolicy} used by publishers that do not have
+     * an entry in the distribution policy map.
+     */
+    public void setDistributionPolicy (final DistributionPolicy policy) {
+
+        distributionPolicy = policy;
+    }
+
+    public Map<String, DistributionPolicy> getDistributionPolicyMap () {
+
+        return distributionPolicyMap;
+    }
+
+    /**
+     * Sets the {@link DistributionPolicy} overrides keyed by publisher name.
+     */
+    public void setDistributionPolicyMap (final Map<String, DistributionPolicy> policyMap) {
+
+        distributionPolicyMap.clear ();
+        distributionPolicyMap.putAll (policyMap);
+    }
+
+    DistributionPolicy getDistributionPolicy (final String publisherName) {
+
+        final DistributionPolicy policy = distributionPolicyMap.get (publisherName);
+        if (policy != null) {
+            return policy;
+        }
+
+        return distributionPolicy;
+    }
+
+    public QueueGroupPolicy getQueueGroupPolicy () {
+
+        return queueGroupPolicy;
+    }
+
+    /**
+     * Sets the {@link QueueGroupPolicy} used by subscription groups that do not
+     * have an entry in the queue group policy map.
+     */
+    public void setQueueGroupPolicy (final QueueGroupPolicy policy) {
+
+        queueGroupPolicy = policy;
+    }
+
+    public Map<String, QueueGroupPolicy> getQueueGroupPolicyMap () {
+
+        return queueGroupPolicyMap;
+    }
+
+    /**
+     * Sets the {@link QueueGroupPolicy} overrides keyed by subscription group name.
+     */
+    public void setQueueGroupPolicyMap (final Map<String, QueueGroupPolicy> policyMap) {
+
+        queueGroupPolicyMap.clear ();
+        queueGroupPolicyMap.putAll (policyMap);
+    }
+
+    QueueGroupPolicy getQueueGroupPolicy (final String groupName) {
+
+        final QueueGroupPolicy policy = queueGroupPolicyMap.get (groupName);
+        if (policy != null) {
+            return policy;
+        }
+
+        return queueGroupPolicy;
+    }
+
+    public long getLatencyPeriodMillis () {
+
+        return latencyPeriodMillis;
+    }
+
+    /**
+     * Sets how often the p50, p99 and p999 latency series of the publishers and
+     * subscribers are updated.  A period of 0 does not create the series.
+     */
+    public void setLatencyPeriodMillis (final long latencyPeriodMillis) {
+
+        this.latencyPeriodMillis = latencyPeriodMillis;
+    }
+
+    private void createLatencySeries (final String sourceId, final String seriesLabel, final String seriesType,
+            final LatencyHistogram histogram) {
+
+        if (latencyPeriodMillis > 0) {
+            getSeriesRegistry ().createLatencySeries (sourceId, seriesLabel, seriesType, histogram,
+                    latencyPeriodMillis);
+        }
+    }
+
+    private void removeLatencySeries (final UUID sourceId) {
+
+        if (latencyPeriodMillis > 0) {
+            getSeriesRegistry ().removeLatencySeries (UUIDs.toString (sourceId));
+        }
+    }
+
     // *************************************************************************
     // ** Pub/Sub methods
     // *************************************************************************
@@ -229,7 +385,7 @@ public final class Hub implements ApplicationContextAware, ILocalPubSubRegistry,
 
     /**
      * <p>Register an {@link ISubscriber} from a Pub/Sub with this Hub.
-     * <p><b><i>** This method write locks the registration token.</i></b> 
+     * <p><b><i>** This method locks the subscriber's group while its manager is built.</i></b> 
      */
     @Override
     public void registerSubscriber (final UUID pubSubId, final ISubscriber subscriber) {
@@ -239,51 +395,62 @@ public final class Hub implements ApplicationContextAware, ILocalPubSubRegistry,
                     subscriber.getId ());
         }
 
-        registrationLock.writeLock ().lock ();
+        final Subscription subscription = subscriber.getSubscription ();
+        final String groupName = subscription.getGroupName ();
 
-        try {
+        if (subscription.getFilterSet ().isEmpty ()) {
+            LOG.warn ("No Filters defined for Subscription on subscriber [name={}; id={}]", subscriber.getName (),
+                    subscriber.getId ());
+        }
+
+        SubscriptionManager subscriptionManager;
+        boolean created = false;
+
+        final Lock groupLock = groupLocks.get (groupName);
+        groupLock.lock ();
 
+        try {
             if (localSubscriberMap.containsKey (subscriber.getId ())) {
                 LOG.error ("Subscriber already exists in the HUB [name={}; id={}]", subscriber.getName (),
                         subscriber.getId ());
                 return;
             }
 
-            final Subscription subscription = subscriber.getSubscription ();
-
-            if (subscription.getFilterSet ().isEmpty ()) {
-                LOG.warn ("No Filters defined for Subscription on subscriber [name={}; id={}]", subscriber.getName (),
-                        subscriber.getId ());
-            }
-
-            SubscriptionManager subscriptionManager = subscriptionManagerMap.get (subscription.getGroupName ());
+            subscriptionManager = subscriptionManagerMap.get (groupName);
             if (subscriptionManager == null) {
-                subscriptionManager = new SubscriptionManager (getSystemResourceManager (), subscriber);
-                subscriptionManagerMap.put (subscription.getGroupName (), subscriptionManager);
+                subscriptionManager =
+                        new SubscriptionManager (getSystemResourceManager (), subscriber,
+                                getQueueGroupPolicy (groupName), copier, deliveryTracker);
+                subscriptionManagerMap.put (groupName, subscriptionManager);
+                created = true;
             } else {
                 subscriptionManager.addSubscriber (subscriber);
             }
 
-            // Update Subscriptions
-            for (final PublicationManager pubMgr : publicationManagerMap.values ()) {
-                if (subscription.match (pubMgr.getPublication ())) {
-                    pubMgr.addReceivingQueueGroup (subscriptionManager.getSubscriberReceivingQueueGroupManager ());
-                    if (LOG.isDebugEnabled ()) {
-                        LOG.debug ("Matched publisher {} to subscriber {}", pubMgr.getPublisherName (),
-                                subscriber.getName ());
-                    }
-                }
-            }
-
             localSubscriberMap.put (subscriber.getId (), subscriber);
+        } finally {
+            groupLock.unlock ();
+        }
 
-            getSystemRegistry ().register (subscriber);
-            getStatusRegistry ().register (subscriber);
+        final MessageCarrier carrier = subscriptionManager.getMessageCarrier (subscriber.getId ());
+        if (carrier != null) {
+            final String sourceId = UUIDs.toString (subscriber.getId ());
+            createLatencySeries (sourceId, "Deliver Latency", "deliverLatency", carrier.getDeliverLatency ());
+            createLatencySeries (sourceId, "End-to-End Latency", "endToEndLatency", carrier.getEndToEndLatency ());
+        }
 
-        } finally {
-            registrationLock.writeLock ().unlock ();
+        // Update Subscriptions
+        for (final PublicationManager pubMgr : indexSubscription (subscriptionManager, subscription, created)) {
+            pubMgr.addReceivingQueueGroup (subscriptionManager.getSubscriberReceivingQueueGroupManager ());
+            addInterest (pubMgr.getPublisherId ());
+            if (LOG.isDebugEnabled ()) {
+                LOG.debug ("Matched publisher {} to subscriber {}", pubMgr.getPublisherName (), subscriber.getName ());
+            }
         }
 
+        getSystemRegistry ().register (subscriber);
+        getStatusRegistry ().register (subscriber);
+
         if (LOG.isInfoEnabled ()) {
             LOG.info ("HUB completed registration of subscriber [name={}; id={}]", subscriber.getName (),
                     subscriber.getId ());
@@ -292,7 +459,7 @@ public final class Hub implements ApplicationContextAware, ILocalPubSubRegistry,
 
     /**
      * <p>Unregister an {@link ISubscriber} and associated components from this Hub.
-     * <p><b><i>** This method write locks the registration token.</i></b> 
+     * <p><b><i>** This method locks the subscriber's group.</i></b> 
      */
     @Override
     public void unregisterSubscriber (final ISubscriber subscriber) {
@@ -302,7 +469,9 @@ public final class Hub implements ApplicationContextAware, ILocalPubSubRegistry,
                     subscriber.getId ());
         }
 
-        registrationLock.writeLock ().lock ();
+        final String groupName = subscriber.getSubscription ().getGroupName ();
+        final Lock groupLock = groupLocks.get (groupName);
+        groupLock.lock ();
 
         try {
             if (subscriber instanceof IShutdownListener) {
@@ -310,12 +479,21 @@ public final class Hub implements ApplicationContextAware, ILocalPubSubRegistry,
             }
 
             localSubscriberMap.remove (subscriber.getId ());
-            subscriptionManagerMap.remove (subscriber.getId ());
+            final SubscriptionManager subscriptionManager = subscriptionManagerMap.get (groupName);
+            if (subscriptionManager != null) {
+                subscriptionManager.removeSubscriber (subscriber.getId ());
+
+                // Released under the group lock, so a subscriber joining the group re-links it afterwards
+                if (!subscriptionManager.containsSubscribers ()) {
+                    releaseGroup (subscriptionManager);
+                }
+            }
 
             getSystemRegistry ().unregister (subscriber);
             getStatusRegistry ().unregister (subscriber);
+            removeLatencySeries (subscriber.getId ());
         } finally {
-            registrationLock.writeLock ().unlock ();
+            groupLock.unlock ();
         }
 
         if (LOG.isInfoEnabled ()) {
@@ -350,7 +528,7 @@ public final class Hub implements ApplicationContextAware, ILocalPubSubRegistry,
 
     /**
      * <p>Register an {@link IPublisher} from a Pub/Sub with this Hub.
-     * <p><b><i>** This method write locks the registration token.</i></b> 
+     * <p><b><i>** This method locks the publisher while its managers are built.</i></b> 
      */
     @Override
     public void registerPublisher (final UUID pubSubId, final IPublisher publisher) {
@@ -364,20 +542,26 @@ public final class Hub implements ApplicationContextAware, ILocalPubSubRegistry,
             LOG.warn ("No Filters defined for publisher [name={}; id={}]", publisher.getName (), publisher.getId ());
         }
 
-        if (localPublisherMap.containsKey (publisher.getId ())) {
-            LOG.warn ("HUB already contains publisher [name={}; id={}]", publisher.getName (), publisher.getId ());
-            return;
-        }
-
-        registrationLock.writeLock ().lock ();
+        final Lock publisherLock = publisherLocks.get (publisher.getId ());
+        publisherLock.lock ();
 
         try {
+            if (localPublisherMap.containsKey (publisher.getId ())) {
+                LOG.warn ("HUB already contains publisher [name={}; id={}]", publisher.getName (),
+                        publisher.getId ());
+                return;
+            }
+
             // Build PublicationManager
+            boolean created = false;
             PublicationManager publicationManager = publicationManagerMap.get (publisher.getId ());
             if (publicationManager == null) {
                 publicationManager =
-                        new PublicationManager (getSystemResourceManager (), publisher, getSystemInfo ().getName ());
+                        new PublicationManager (getSystemResourceManager (), publisher.getId (), publisher.getName (),
+                                publisher.getPublication (), getSystemInfo ().getName (),
+                                getDistributionPolicy (publisher.getName ()), deliveryTracker);
                 publicationManagerMap.put (publisher.getId (), publicationManager);
+                created = true;
             }
 
             // Add message queue to the publication manager from each Pub/Sub
@@ -399,8 +583,8 @@ public final class Hub implements ApplicationContextAware, ILocalPubSubRegistry,
             }
 
             // Update local subscriptions
-            for (final SubscriptionManager subMgr : subscriptionManagerMap.values ()) {
-                if (subMgr.getSubscription ().match (publicationManager.getPublication ())) {
+            for (final SubscriptionManager subMgr : indexPublication (publicationManager, created)) {
+                if (subMgr.containsSubscribers ()) {
                     publicationManager.addReceivingQueueGroup (subMgr.getSubscriberReceivingQueueGroupManager ());
                 }
             }
@@ -410,8 +594,21 @@ public final class Hub implements ApplicationContextAware, ILocalPubSubRegistry,
             if (messageDistro == null) {
                 messageDistro =
                         new MessageDistributor (copier, getSystemResourceManager (), publicationManager,
-                                getSystemInfo ().getName ());
+                                getSystemInfo ().getName (), getDistributionPolicy (publisher.getName ()),
+                                deliveryTracker);
                 messageDistributorMap.put (publisher.getId (), messageDistro);
+
+                final String sourceId = UUIDs.toString (publisher.getId ());
+                createLatencySeries (sourceId, "Publish Latency", "publishLatency", messageDistro.getPublishLatency ());
+                createLatencySeries (sourceId, "Route Latency", "routeLatency", messageDistro.getRouteLatency ());
+
+                // Read acknowledgements returned by the hubs of each distributed Pub/Sub
+                final String ackQueueName = messageDistro.getAckTracker ().getAckQueueName ();
+                for (final IPubSub pubSub : pubSubMap.values ()) {
+                    if (pubSub instanceof IDistributedPubSub) {
+                        messageDistro.getAckTracker ().listen (pubSub.getGrid ().<AckBatch> getQueue (ackQueueName));
+                    }
+                }
             }
 
             // Define Asynchronous Pub/Sub Channel used by the Publisher
@@ -426,7 +623,7 @@ public final class Hub implements ApplicationContextAware, ILocalPubSubRegistry,
             // Status Register
             getStatusRegistry ().register (publisher);
         } finally {
-            registrationLock.writeLock ().unlock ();
+            publisherLock.unlock ();
         }
 
         if (LOG.isInfoEnabled ()) {
@@ -437,89 +634,109 @@ public final class Hub implements ApplicationContextAware, ILocalPubSubRegistry,
 
     /**
      * <p>Register a {@link Publication} from a Pub/Sub with this Hub.
-     * <p><b><i>** This method write locks the registration token.</i></b> 
+     * <p><b><i>** This method locks the publisher while its manager is built.</i></b> 
      */
     @Override
     public void registerDistributedPublisher (final UUID pubSubId, final UUID publisherId, final String publisherName,
             final Publication publication) {
 
-        registrationLock.writeLock ().lock ();
+        final IPubSub pubSub = pubSubMap.get (pubSubId);
+        if (!(pubSub instanceof IDistributedPubSub)) {
+            LOG.error ("Distributed publisher {} registered from unknown Pub/Sub {}", publisherId, pubSubId);
+            return;
+        }
+
+        final IDistributedPubSub distributedPubSub = (IDistributedPubSub) pubSub;
+        final Lock publisherLock = publisherLocks.get (publisherId);
+        publisherLock.lock ();
 
         try {
-            final IPubSub pubSub = pubSubMap.get (pubSubId);
             // Build PublicationManager
+            boolean created = false;
             PublicationManager publicationManager = publicationManagerMap.get (publisherId);
             if (publicationManager == null) {
                 publicationManager =
                         new PublicationManager (getSystemResourceManager (), publisherId, publisherName
-                                + " [distributed-proxy]", publication, getSystemInfo ().getName ());
+                                + " [distributed-proxy]", publication, getSystemInfo ().getName (),
+                                getDistributionPolicy (publisherName), deliveryTracker);
                 publicationManagerMap.put (publisherId, publicationManager);
+                created = true;
             }
 
-            final BlockingQueue<Message> mq = pubSub.getGrid ().getQueue (UUIDs.toString (publisherId));
-
             final String queueDescriptor = "queue-" + pubSub.getName () + "-" + publisherId.toString ();
-            MessageQueue queue = new MessageQueue (mq, UUIDs.toString (publisherId), queueDescriptor);
-            queue = pubSub.prepareQueue (queue);
-            publicationManager.addPollingQueue (queue);
+            publicationManager.addPollingQueue (distributedPubSub.preparePollingQueue (publisherId, queueDescriptor),
+                    pubSub.getGrid (), distributedPubSub.getHubKey ());
+            distributedPublisherMap.put (publisherId, distributedPubSub);
 
             // Update local subscriptions
-            if (subscriptionManagerMap.isEmpty ()) {
-                if (LOG.isDebugEnabled ()) {
-                    LOG.debug ("No subscription managers defined on {}", getSystemInfo ().getName ());
-                }
-            } else {
-                if (LOG.isDebugEnabled ()) {
-                    LOG.debug ("Updating subscription managers on {} with distributed publisher {} from {}",
-                            getSystemInfo ().getName (), publisherId, pubSub.getName ());
-                }
-                for (final SubscriptionManager subMgr : subscriptionManagerMap.values ()) {
-                    if (subMgr.getSubscription ().match (publicationManager.getPublication ())) {
-                        publicationManager.addReceivingQueueGroup (subMgr.getSubscriberReceivingQueueGroupManager ());
-                        if (LOG.isDebugEnabled ()) {
-                            LOG.debug (
-                                    "Added receiving queue group for match on subscription {} for distributed publisher {} from {}",
-                                    subMgr.getSubscription ().getLabel (), publisherId, pubSub.getName ());
-                        }
-                    }
+            if (LOG.isDebugEnabled ()) {
+                LOG.debug ("Updating subscription managers on {} with distributed publisher {} from {}",
+                        getSystemInfo ().getName (), publisherId, pubSub.getName ());
+            }
+            for (final SubscriptionManager subMgr : indexPublication (publicationManager, created)) {
+                // A group whose subscribers have all unregistered is linked again when one joins
+                if (!subMgr.containsSubscribers ()) {
+                    continue;
                 }
+
+                publicationManager.addReceivingQueueGroup (subMgr.getSubscriberReceivingQueueGroupManager ());
                 if (LOG.isDebugEnabled ()) {
-                    LOG.debug ("Completed update of subscription managers on {} with distributed publisher {} from {}",
-                            getSystemInfo ().getName (), publisherId, pubSub.getName ());
+                    LOG.debug ("Added receiving queue group for match on subscription {} for distributed publisher"
+                            + " {} from {}", subMgr.getSubscription ().getLabel (), publisherId, pubSub.getName ());
                 }
             }
-
-            if (LOG.isInfoEnabled ()) {
-                LOG.info ("HUB completed registration of distributed publisher [id={}]", publisherId);
+            if (publicationManager.containsSubscribers ()) {
+                distributedPubSub.addInterest (publisherId);
+            }
+            if (LOG.isDebugEnabled ()) {
+                LOG.debug ("Completed update of subscription managers on {} with distributed publisher {} from {}",
+                        getSystemInfo ().getName (), publisherId, pubSub.getName ());
             }
-
         } finally {
-            registrationLock.writeLock ().unlock ();
+            publisherLock.unlock ();
+        }
+
+        if (LOG.isInfoEnabled ()) {
+            LOG.info ("HUB completed registration of distributed publisher [id={}]", publisherId);
         }
     }
 
+    /**
+     * <p>Unregister a {@link Publication} from a Pub/Sub with this Hub.
+     * <p><b><i>** This method locks the publisher.</i></b> 
+     */
     @Override
     public void unregisterDistributedPublisher (final UUID publisherId) {
 
-        registrationLock.writeLock ().lock ();
+        final Lock publisherLock = publisherLocks.get (publisherId);
+        publisherLock.lock ();
 
         try {
             final PublicationManager pubMgr = publicationManagerMap.remove (publisherId);
             if (pubMgr != null) {
-                for (final SubscriptionManager subMgr : subscriptionManagerMap.values ()) {
-                    if (subMgr.getSubscription ().match (pubMgr.getPublication ())) {
-                        pubMgr.removeReceivingQueueCollection (subMgr.getSubscriberIdSet ());
-                    }
+                for (final SubscriptionManager subMgr : unindexPublication (pubMgr)) {
+                    pubMgr.removeReceivingQueueCollection (subMgr.getSubscriberIdSet ());
+                }
+
+                // Stop polling the grid for the publisher
+                for (final MessageQueue queue : pubMgr.getPollingQueueSet ()) {
+                    pubMgr.removePollingQueue (checkNotNull (queue));
+                    queue.stop ();
                 }
             }
+
+            final IDistributedPubSub distributedPubSub = distributedPublisherMap.remove (publisherId);
+            if (distributedPubSub != null) {
+                distributedPubSub.removeInterest (publisherId);
+            }
         } finally {
-            registrationLock.writeLock ().unlock ();
+            publisherLock.unlock ();
         }
     }
 
     /**
      * <p>Unregister a publisher and associated objects from the Hub.
-     * <p><b><i>** This method write locks the registration token.</i></b> 
+     * <p><b><i>** This method locks the publisher.</i></b> 
      */
     @Override
     public void unregisterPublisher (final IPublisher publisher) {
@@ -529,7 +746,8 @@ public final class Hub implements ApplicationContextAware, ILocalPubSubRegistry,
                     publisher.getId ());
         }
 
-        registrationLock.writeLock ().lock ();
+        final Lock publisherLock = publisherLocks.get (publisher.getId ());
+        publisherLock.lock ();
 
         try {
             final MessageDistributor messageDistro = messageDistributorMap.remove (publisher.getId ());
@@ -538,13 +756,29 @@ public final class Hub implements ApplicationContextAware, ILocalPubSubRegistry,
             }
 
             localPublisherMap.remove (publisher.getId ());
-            publicationManagerMap.remove (publisher.getId ());
+            final PublicationManager pubMgr = publicationManagerMap.remove (publisher.getId ());
+            if (pubMgr != null) {
+                unindexPublication (pubMgr);
+
+                // Release the grid resources of the publishing queues
+                for (final MessageQueue queue : pubMgr.getDistributedQueueSet ()) {
+                    pubMgr.removeDistributedQueue (checkNotNull (queue));
+                    queue.stop ();
+                }
+            }
+
+            for (final IPubSub pubSub : pubSubMap.values ()) {
+                if (pubSub instanceof IDistributedPubSub) {
+                    pubSub.getGrid ().destroyQueue (AckTracker.ackQueueName (UUIDs.toString (publisher.getId ())));
+                }
+            }
 
             getSystemRegistry ().unregister (publisher);
             getStatusRegistry ().unregister (publisher);
+            removeLatencySeries (publisher.getId ());
 
         } finally {
-            registrationLock.writeLock ().lock ();
+            publisherLock.unlock ();
         }
 
         if (LOG.isInfoEnabled ()) {
@@ -584,6 +818,149 @@ public final class Hub implements ApplicationContextAware, ILocalPubSubRegistry,
         throw new PublicationNotFoundException ("Publisher with id=" + id + " was not found in the Hub.");
     }
 
+    // *************************************************************************
+    // ** Matching methods
+    // *************************************************************************
+
+    /**
+     * Advertises this hub's interest in a matched publisher on another hub.
+     * Interest is added under the publisher lock so it is not left behind by a
+     * publisher unregistering at the same time.
+     */
+    private void addInterest (final UUID publisherId) {
+
+        final Lock publisherLock = publisherLocks.get (publisherId);
+        publisherLock.lock ();
+
+        try {
+            final IDistributedPubSub distributedPubSub = distributedPublisherMap.get (publisherId);
+            if (distributedPubSub != null) {
+                distributedPubSub.addInterest (publisherId);
+            }
+        } finally {
+            publisherLock.unlock ();
+        }
+    }
+
+    /**
+     * Stops routing to a subscription group whose last subscriber has
+     * unregistered, and withdraws this hub's interest in each publisher on
+     * another hub that no other local group matches, so the publisher stops
+     * sending to this hub.  Each publisher is updated under its lock.
+     */
+    private void releaseGroup (final SubscriptionManager subscriptionManager) {
+
+        final IQueueGroupManager queueGroup = subscriptionManager.getSubscriberReceivingQueueGroupManager ();
+        for (final PublicationManager pubMgr : indexSubscription (subscriptionManager,
+                subscriptionManager.getSubscription (), false)) {
+            final UUID publisherId = pubMgr.getPublisherId ();
+            final Lock publisherLock = publisherLocks.get (publisherId);
+            publisherLock.lock ();
+
+            try {
+                pubMgr.removeReceivingQueueGroup (queueGroup);
+
+                final IDistributedPubSub distributedPubSub = distributedPublisherMap.get (publisherId);
+                if (distributedPubSub != null && !pubMgr.containsSubscribers ()) {
+                    distributedPubSub.removeInterest (publisherId);
+                }
+            } finally {
+                publisherLock.unlock ();
+            }
+        }
+    }
+
+    /**
+     * Adds a new subscription group to the subscription index and finds the
+     * publications it matches.  Both happen under the match lock, so a publisher
+     * registering at the same time either finds the group or is found by it.
+     *
+     * @param indexed true to add the group to the subscription index
+     * @return publication managers to link to the group's receiving queues
+     */
+    private List<PublicationManager> indexSubscription (final SubscriptionManager subscriptionManager,
+            final Subscription subscription, final boolean indexed) {
+
+        final List<PublicationManager> matchList = new ArrayList<> ();
+
+        matchLock.lock ();
+
+        try {
+            if (indexed) {
+                subscriptionIndex.add (subscriptionManager, subscriptionManager.getSubscription ().getFilterSet ());
+            }
+
+            for (final PublicationManager pubMgr : publicationIndex.candidates (subscription.getFilterSet ())) {
+                if (subscription.match (pubMgr.getPublication ())) {
+                    matchList.add (pubMgr);
+                }
+            }
+        } finally {
+            matchLock.unlock ();
+        }
+
+        return matchList;
+    }
+
+    /**
+     * Adds a new publication to the publication index and finds the
+     * subscription groups it matches under the match lock.
+     *
+     * @param indexed true to add the publication to the publication index
+     * @return subscription managers whose receiving queues the publication feeds
+     */
+    private List<SubscriptionManager> indexPublication (final PublicationManager publicationManager,
+            final boolean indexed) {
+
+        final Publication publication = publicationManager.getPublication ();
+        final List<SubscriptionManager> matchList = new ArrayList<> ();
+
+        matchLock.lock ();
+
+        try {
+            if (indexed) {
+                publicationIndex.add (publicationManager, publication.getFilterSet ());
+            }
+
+            for (final SubscriptionManager subMgr : subscriptionIndex.candidates (publication.getFilterSet ())) {
+                if (subMgr.getSubscription ().match (publication)) {
+                    matchList.add (subMgr);
+                }
+            }
+        } finally {
+            matchLock.unlock ();
+        }
+
+        return matchList;
+    }
+
+    /**
+     * Removes a publication from the publication index under the match lock.
+     *
+     * @return subscription managers the publication matched
+     */
+    private List<SubscriptionManager> unindexPublication (final PublicationManager publicationManager) {
+
+        final Publication publication = publicationManager.getPublication ();
+        final List<SubscriptionManager> matchList = new ArrayList<> ();
+
+        matchLock.lock ();
+
+        try {
+            publicationIndex.remove (publicationManager);
+
+            for (final SubscriptionManager subMgr : subscriptionIndex.candidates (publication.getFilterSet ())) {
+                if (subMgr.getSubscription ().match (publication)) {
+                    matchList.add (subMgr);
+                }
+            }
+        } finally {
+            matchLock.unlock ();
+        }
+
+        return matchList;
+    }
+
     // *************************************************************************
     // ** Utility methods
     // *************************************************************************
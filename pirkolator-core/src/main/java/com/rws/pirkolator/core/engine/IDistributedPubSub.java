@@ -29,6 +29,27 @@ import java.util.UUID;
 public interface IDistributedPubSub extends IPubSub {
     
     void preparePublication (UUID publisherId, String publisherName, Publication publication);
-    
+
+    /**
+     * @return the queue this hub polls for the messages of a publisher on another hub
+     */
+    MessageQueue preparePollingQueue (UUID publisherId, String queueDescriptor);
+
+    /**
+     * Advertises that this hub has subscriptions matching a publisher on another
+     * hub, so the publisher sends its messages here.
+     */
+    void addInterest (UUID publisherId);
+
+    /**
+     * Withdraws the interest of this hub in a publisher on another hub.
+     */
+    void removeInterest (UUID publisherId);
+
+    /**
+     * @return key identifying this hub in interest registrations and acknowledgements
+     */
+    String getHubKey ();
+
     void prepare (IDistributedPubSubRegistry registry);
 }
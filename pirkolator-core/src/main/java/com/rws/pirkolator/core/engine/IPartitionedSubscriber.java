@@ -0,0 +1,41 @@
+/*******************************************************************************
+ * Copyright 2014 Reality Warp Software
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.rws.pirkolator.core.engine;
+
+import javax.annotation.Nullable;
+
+import com.rws.pirkolator.model.Message;
+
+/**
+ * This interface is implemented by subscribers with a {@link Subscription}
+ * concurrency above one that partition their messages by payload instead of
+ * by the subscription's partition header.  Messages with equal keys are
+ * delivered in order by the same worker.
+ * 
+ * @author jpirkey
+ * @since 1.0.0
+ */
+public interface IPartitionedSubscriber extends ISubscriber {
+
+    /**
+     * Called on the subscriber's carrier thread, so it should be cheap.
+     * 
+     * @param message
+     * @return the partition key or null to deliver the message on the first worker
+     */
+    @Nullable
+    Object getPartitionKey (Message message);
+}
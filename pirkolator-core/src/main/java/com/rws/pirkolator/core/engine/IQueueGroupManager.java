@@ -1,15 +1,26 @@
 package com.rws.pirkolator.core.engine;
 
+import java.util.List;
 import java.util.Set;
 
+import com.rws.pirkolator.model.Message;
+
 public interface IQueueGroupManager {
 
     String getQueueName();
     
     void addQueue (MessageQueue queue);
+
+    void removeQueue (MessageQueue queue);
     
     Set<MessageQueue> getAllQueueSet ();
     
-    Set<MessageQueue> nextQueueSet ();
+    /**
+     * Delivers each message of the batch to one of the group's queues.
+     * 
+     * @param batch
+     * @throws InterruptedException
+     */
+    void put (List<Message> batch) throws InterruptedException;
 
 }
\ No newline at end of file
@@ -0,0 +1,250 @@
+/*******************************************************************************
+ * Copyright 2014 Reality Warp Software
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.rws.pirkolator.core.engine;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.rws.utility.common.Preconditions.notNull;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.ImmutableSet;
+import com.hazelcast.core.EntryEvent;
+import com.hazelcast.core.EntryListener;
+import com.hazelcast.core.IQueue;
+import com.hazelcast.core.MapEvent;
+import com.hazelcast.core.MultiMap;
+import com.rws.pirkolator.core.grid.HazelcastGrid;
+import com.rws.pirkolator.model.Message;
+
+/**
+ * This class provides the {@link MessageQueue} a publisher uses to send to the
+ * hubs that subscribe to its publication.  Each hub with a matching subscription
+ * advertises its interest in the {@link HazelcastPubSub}'s interest map, and
+ * polls its own Hazelcast queue for the publisher; this queue follows the
+ * interest map and puts each batch on the queues of the interested hubs only.
+ * Without an interested hub, messages are not sent at all.
+ * 
+ * @author jpirkey
+ * @since 1.0.0
+ */
+public class InterestMessageQueue extends MessageQueue {
+
+    private static final Logger LOG = notNull (LoggerFactory.getLogger (InterestMessageQueue.class));
+
+    // *************************************************************************
+    // ** Member variables
+    // *************************************************************************
+
+    private final HazelcastGrid grid;
+    private final MultiMap<String, String> interestMap;
+    private final String publisherKey;
+    private final String listenerId;
+
+    /** <p>Queues of the hubs interested in the publication.
+     * <br/><b>Key = hub id</b> **/
+    private final Map<String, IQueue<Message>> targetMap = new ConcurrentHashMap<> ();
+
+    private final AtomicLong droppedCount = new AtomicLong ();
+
+    // *************************************************************************
+    // ** Constructors
+    // *************************************************************************
+
+    /**
+     * @param grid
+     * @param interestMap hub ids interested in each publisher, keyed by publisher id
+     * @param publisherKey id of the publisher
+     * @param queueDescriptor
+     */
+    public InterestMessageQueue (final HazelcastGrid grid, final MultiMap<String, String> interestMap,
+            final String publisherKey, final String queueDescriptor) {
+
+        super (new LinkedBlockingQueue<Message> (), publisherKey, queueDescriptor);
+
+        this.grid = grid;
+        this.interestMap = interestMap;
+        this.publisherKey = publisherKey;
+
+        // Listen before reading the current interest so no change is missed
+        listenerId = notNull (interestMap.addEntryListener (new InterestListener (), publisherKey, true));
+        for (final String hubKey : interestMap.get (publisherKey)) {
+            addTarget (notNull (hubKey));
+        }
+    }
+
+    // *************************************************************************
+    // ** Member properties
+    // *************************************************************************
+
+    /**
+     * @return number of hubs the publication is sent to
+     */
+    public int getTargetCount () {
+
+        return targetMap.size ();
+    }
+
+    /**
+     * Each interested hub acknowledges the messages it receives.
+     */
+    @Override
+    public Set<String> getAckTargets () {
+
+        return notNull (ImmutableSet.copyOf (targetMap.keySet ()));
+    }
+
+    @Override
+    public long getDroppedCount () {
+
+        return droppedCount.get ();
+    }
+
+    // *************************************************************************
+    // ** Member methods
+    // *************************************************************************
+
+    /**
+     * Stops following the interest map.
+     */
+    @Override
+    public void stop () {
+
+        interestMap.removeEntryListener (listenerId);
+        targetMap.clear ();
+    }
+
+    @Override
+    public boolean add (final @Nullable Message message) {
+
+        put (message);
+        return message != null;
+    }
+
+    @Override
+    public void put (final @Nullable Message message) {
+
+        if (message != null) {
+            for (final IQueue<Message> target : targetMap.values ()) {
+                if (!target.offer (message)) {
+                    droppedCount.incrementAndGet ();
+                }
+            }
+        }
+    }
+
+    @Override
+    public void putAll (final Collection<? extends Message> messages) {
+
+        // Each hub gets the whole batch in one operation
+        for (final IQueue<Message> target : targetMap.values ()) {
+            try {
+                target.addAll (messages);
+            } catch (final IllegalStateException ex) {
+                droppedCount.addAndGet (messages.size ());
+                LOG.warn ("Hub queue {} is full; dropped {} message(s)", target.getName (), messages.size ());
+            }
+        }
+    }
+
+    void addTarget (final String hubKey) {
+
+        final IQueue<Message> target = grid.getQueue (HazelcastPubSub.interestQueueName (publisherKey, hubKey));
+        targetMap.put (hubKey, target);
+
+        if (LOG.isDebugEnabled ()) {
+            LOG.debug ("Hub {} is interested in publisher {}", hubKey, publisherKey);
+        }
+    }
+
+    void removeTarget (final String hubKey) {
+
+        targetMap.remove (hubKey);
+
+        if (LOG.isDebugEnabled ()) {
+            LOG.debug ("Hub {} is no longer interested in publisher {}", hubKey, publisherKey);
+        }
+    }
+
+    // *************************************************************************
+    // ** Member classes
+    // *************************************************************************
+
+    private class InterestListener implements EntryListener<String, String> {
+
+        InterestListener () {
+
+            super ();
+        }
+
+        @Override
+        public void entryAdded (final @Nullable EntryEvent<String, String> event) {
+
+            addTarget (checkNotNull (checkNotNull (event).getValue ()));
+        }
+
+        @Override
+        public void entryRemoved (final @Nullable EntryEvent<String, String> event) {
+
+            // Removal events carry the removed value as the value or the old value
+            checkNotNull (event);
+            String hubKey = event.getValue ();
+            if (hubKey == null) {
+                hubKey = event.getOldValue ();
+            }
+
+            if (hubKey == null) {
+                // Removal of the whole key
+                targetMap.clear ();
+            } else {
+                removeTarget (hubKey);
+            }
+        }
+
+        @Override
+        public void entryUpdated (final @Nullable EntryEvent<String, String> event) {
+
+            // Multi-map values are added and removed, never updated
+        }
+
+        @Override
+        public void entryEvicted (final @Nullable EntryEvent<String, String> event) {
+
+            // Interest is never evicted
+        }
+
+        @Override
+        public void mapCleared (final @Nullable MapEvent event) {
+
+            targetMap.clear ();
+        }
+
+        @Override
+        public void mapEvicted (final @Nullable MapEvent event) {
+
+            targetMap.clear ();
+        }
+    }
+}
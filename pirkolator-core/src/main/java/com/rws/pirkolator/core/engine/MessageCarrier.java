@@ -15,31 +15,45 @@
  ******************************************************************************/
 package com.rws.pirkolator.core.engine;
 
-import static com.google.common.base.Preconditions.checkNotNull;
 import static com.rws.utility.common.Preconditions.notNull;
 
-import java.lang.reflect.Method;
-import java.util.Collection;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Future;
+
+import javax.annotation.Nullable;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.google.common.collect.HashMultimap;
-import com.google.common.collect.Multimap;
+import com.esotericsoftware.kryo.KryoException;
+import com.rws.pirkolator.core.engine.execution.AbstractLoopTask;
+import com.rws.pirkolator.core.engine.execution.ManagedBlocking;
+import com.rws.pirkolator.core.engine.queue.BoundedBlockingQueue;
+import com.rws.pirkolator.core.metric.LatencyHistogram;
 import com.rws.pirkolator.model.Message;
-import com.rws.pirkolator.model.filter.IContentFilter;
 import com.rws.utility.common.UUIDs;
 
 /**
  * This class handles delivery of messages from the subscirber's receiving
- * queue to the subscriber's receive() method.
+ * queue to the subscriber's receive() method.  The carrier is run by the
+ * {@link SystemResourceManager} either on its own thread or as a cooperative
+ * task on the shared loop pool.
+ * 
+ * <p>If the subscription's concurrency is above one, the carrier partitions the
+ * messages by key across that many delivery workers.  Messages with the same
+ * key are delivered in order by the same worker, so the subscriber must be
+ * safe to call from several threads.
+ * 
+ * <p>Each message that the subscriber's receive() returns from is reported to
+ * the hub's {@link DeliveryTracker}, so messages published with acknowledgement
+ * are acknowledged only once received.
  * 
  * @author jpirkey
  * @since 0.1.0
  */
-public class MessageCarrier implements Runnable {
+public class MessageCarrier extends AbstractLoopTask {
 
     final transient static Logger LOG = notNull (LoggerFactory.getLogger (MessageCarrier.class));
 
@@ -52,13 +66,19 @@ public class MessageCarrier implements Runnable {
 
     /** class **/
     final MessageQueue subscriberReceivingQueue;
+    private final IMessageCopier copier;
+    private final DeliveryTracker deliveryTracker;
 
-    Multimap<Class<?>, MethodFilteredContent> methodAnnotationMap = HashMultimap
-            .<Class<?>, MethodFilteredContent> create ();
+    /** Delivers content to the subscriber's FilteredContent methods **/
+    private final FilteredContentDispatcher contentDispatcher;
 
-    /**life-cycle **/
-    private final AtomicBoolean running = new AtomicBoolean (false);
-    private final AtomicBoolean shutdown = new AtomicBoolean (false);
+    /** Workers delivering partitions of the messages when the concurrency is above one **/
+    private final DeliveryWorker[] workers;
+    private final List<Future<?>> workerFutureList = new CopyOnWriteArrayList<> ();
+
+    /** latency **/
+    private final LatencyHistogram deliverLatency = new LatencyHistogram ();
+    private final LatencyHistogram endToEndLatency = new LatencyHistogram ();
 
     // *************************************************************************
     // ** Constructors
@@ -66,13 +86,42 @@ public class MessageCarrier implements Runnable {
 
     public MessageCarrier (final ISubscriber subscriber) {
 
+        this (subscriber, new KryoMessageCopier ());
+    }
+
+    /**
+     * @param subscriber
+     * @param copier copies frozen messages when the subscriber wants mutable messages
+     */
+    public MessageCarrier (final ISubscriber subscriber, final IMessageCopier copier) {
+
+        this (subscriber, copier, new DeliveryTracker ());
+    }
+
+    /**
+     * @param subscriber
+     * @param copier copies frozen messages when the subscriber wants mutable messages
+     * @param deliveryTracker told of each message the subscriber has received
+     */
+    public MessageCarrier (final ISubscriber subscriber, final IMessageCopier copier,
+            final DeliveryTracker deliveryTracker) {
+
         super ();
 
         this.subscriber = subscriber;
+        this.copier = copier;
+        this.deliveryTracker = deliveryTracker;
         subscriberReceivingQueue =
-                new MessageQueue (new LinkedBlockingQueue<Message> (), UUIDs.toString (subscriber.getId ()), "queue-"
-                        + subscriber.getName () + "-" + UUIDs.toString (subscriber.getId ()));
-        initAnnotation ();
+                new MessageQueue (subscriber.getSubscription ().getQueuePolicy ().<Message> buildQueue (),
+                        UUIDs.toString (subscriber.getId ()), "queue-" + subscriber.getName () + "-"
+                                + UUIDs.toString (subscriber.getId ()));
+        contentDispatcher = new FilteredContentDispatcher (subscriber);
+
+        final int concurrency = subscriber.getSubscription ().getConcurrency ();
+        workers = new DeliveryWorker[concurrency > 1 ? concurrency : 0];
+        for (int i = 0; i < workers.length; i++) {
+            workers[i] = new DeliveryWorker ();
+        }
     }
 
     // *************************************************************************
@@ -89,136 +138,281 @@ public class MessageCarrier implements Runnable {
         return subscriber;
     }
 
-    public boolean isRunning () {
+    /**
+     * @return number of threads delivering to the subscriber
+     */
+    public int getConcurrency () {
+
+        return Math.max (1, workers.length);
+    }
+
+    /**
+     * @return time from reaching the receiving queue to being handed to the subscriber
+     */
+    public LatencyHistogram getDeliverLatency () {
 
-        return running.get ();
+        return deliverLatency;
     }
 
-    public boolean isShutdown () {
+    /**
+     * @return time from entering the publisher's channel to being handed to the subscriber
+     */
+    public LatencyHistogram getEndToEndLatency () {
 
-        return shutdown.get ();
+        return endToEndLatency;
     }
 
     // *************************************************************************
     // ** Member methods
     // *************************************************************************
 
-    private void initAnnotation () {
+    @Override
+    public void run () {
+
+        if (LOG.isDebugEnabled ()) {
+            LOG.info ("Started MessageCarrier task for subscriber [name={}]", subscriber.getName ());
+        }
+
+        super.run ();
 
-        for (final Method method : subscriber.getClass ().getMethods ()) {
-            if (method.isAnnotationPresent (FilteredContent.class)) {
-                final FilteredContent ann = method.getAnnotation (FilteredContent.class);
-                methodAnnotationMap.put (ann.contentType (),
-                        new MethodFilteredContent (method, ann.contentType (), ann.propertyArray ()));
+        if (LOG.isDebugEnabled ()) {
+            LOG.info ("Exited MessageCarrier for subscriber ", subscriber.getName ());
+        }
+    }
+
+    @Override
+    protected boolean pass (final boolean wait) {
+
+        // FIXME jpirkey exception handling shouldn't kill process
+        try {
+
+            if (LOG.isTraceEnabled ()) {
+                LOG.trace ("Listening for message on {} for {}", subscriberReceivingQueue.getQueueDescriptor (),
+                        subscriber.getName ());
+            }
+
+            final Message received = wait ? subscriberReceivingQueue.take () : subscriberReceivingQueue.poll ();
+            if (received == null) {
+                return false;
+            }
+
+            if (workers.length == 0) {
+                deliver (received, contentDispatcher);
+            } else {
+                ManagedBlocking.put (workers[partition (received)].queue, received);
+            }
+
+            if (wait) {
+                Thread.yield ();
             }
+
+            return true;
+        } catch (final InterruptedException ie) {
+            stop ();
+
+            if (LOG.isDebugEnabled ()) {
+                LOG.info ("Message delivery to subscriber {} interrupted", subscriber.getName ());
+            }
+        } catch (final KryoException ex) {
+            // Reading a partition key can decode the content; drop just that message
+            LOG.error ("Dropped a message for subscriber {}; unable to decode its content - {}",
+                    subscriber.getName (), ex.getLocalizedMessage ());
+            return true;
+        } catch (final Throwable ex) {
+            stop ();
+            LOG.warn ("MessageCarrier problem:  " + ex.getLocalizedMessage (), ex);
         }
+
+        return false;
     }
 
     @Override
-    public void run () {
+    protected void loopExited () {
 
-        if (LOG.isDebugEnabled ()) {
-            LOG.info ("Started MessageCarrier task for subscriber [name={}]", subscriber.getName ());
+        for (final Future<?> future : workerFutureList) {
+            future.cancel (true);
+        }
+        workerFutureList.clear ();
+
+        // Release the spill files of the carrier's queues
+        subscriberReceivingQueue.stop ();
+        for (final DeliveryWorker worker : workers) {
+            worker.queue.close ();
+        }
+    }
+
+    /**
+     * Starts the delivery workers of a subscription with a concurrency above
+     * one.  The workers are cancelled when the carrier exits.
+     */
+    void startWorkers (final SystemResourceManager resourceManager) {
+
+        for (final DeliveryWorker worker : workers) {
+            workerFutureList.add (resourceManager.submitLoop (worker));
+        }
+    }
+
+    /**
+     * @return index of the worker that delivers the message's partition key
+     */
+    int partition (final Message message) {
+
+        final Object key;
+        if (subscriber instanceof IPartitionedSubscriber) {
+            key = ((IPartitionedSubscriber) subscriber).getPartitionKey (message);
+        } else {
+            final String header = subscriber.getSubscription ().getPartitionHeader ();
+            key = header == null ? null : message.getHeader (header);
+        }
+
+        if (key == null) {
+            return 0;
+        }
+
+        // Spread the hash so keys that differ only in the high bits use different workers
+        final int hash = key.hashCode ();
+        return ((hash ^ (hash >>> 16)) & Integer.MAX_VALUE) % workers.length;
+    }
+
+    private void deliver (final Message received, final FilteredContentDispatcher dispatcher) {
+
+        // Decode deferred content once, so a message that cannot be decoded is dropped
+        // instead of failing each step of its delivery
+        try {
+            received.decodeContent ();
+        } catch (final KryoException ex) {
+            LOG.error ("Dropped message {} for subscriber {}; unable to decode its content - {}", received.getId (),
+                    subscriber.getName (), ex.getLocalizedMessage ());
+            return;
         }
 
-        running.set (true);
-        while (running.get ()) {
+        final Message message = prepare (received);
+        if (message == null) {
+            return;
+        }
+
+        // Stage times are not copied, so they are read from the received message
+        final long dispatchNanos = System.nanoTime ();
+        deliverLatency.recordInterval (received.getRoutedNanos (), dispatchNanos);
+        endToEndLatency.recordInterval (received.getEnteredNanos (), dispatchNanos);
 
-            // FIXME jpirkey exception handling shouldn't kill process
+        // Process annotated FilteredContent methods
+        if (!dispatcher.isEmpty ()) {
             try {
+                dispatcher.dispatch (message);
+            } catch (final Throwable ex) {
+                LOG.warn ("Unable to complete delivery of filtered content to subscriber {} - {}",
+                        subscriber.getName (), ex.getLocalizedMessage ());
+            }
+        }
 
-                if (LOG.isTraceEnabled ()) {
-                    LOG.trace ("Listening for message on {} for {}", subscriberReceivingQueue.getQueueDescriptor (),
-                            subscriber.getName ());
-                }
+        try {
+            if (subscriber.getSubscription ().isBlockingReceive ()) {
+                // A pooled carrier gets a spare pool thread while the subscriber blocks
+                ManagedBlocking.call (new Callable<Void> () {
 
-                final Message message = subscriberReceivingQueue.take ();
-                if (message != null) {
-                    // Process annotated FilteredContent methods
-                    if (!methodAnnotationMap.isEmpty () && subscriber.getSubscription ().isContentDefined ()) {
-                        for (final IContentFilter filter : subscriber.getSubscription ().getContentFilterSet ()) {
-                            // Filter message content
-                            if (filter.supports (message)) {
-
-                                // First iterate over the class types supported by the Filter
-                                for (final Class<?> filterType : filter.getTypeSet ()) {
-                                    checkNotNull (filterType);
-
-                                    // Iterate over each method that supports the contentType defined by the Filter
-                                    for (final MethodFilteredContent mfc : methodAnnotationMap.get (filterType)) {
-
-                                        // Get each object in the message of the defined type
-                                        final Collection<?> objs = message.get (filterType);
-                                        for (final Object obj : objs) {
-                                            checkNotNull (obj);
-
-                                            if (filter.supportsObject (obj, mfc.mPropertyArray)) {
-                                                mfc.mMethod.invoke (subscriber, obj);
-                                            }
-                                        }
-                                    }
-                                }
-                            }
-                        }
-                    }
+                    @Override
+                    public @Nullable
+                    Void call () throws Exception {
 
-                    try {
                         subscriber.receive (message);
-                    } catch (final Exception ex) {
-
-                        if (LOG.isInfoEnabled ()) {
-                            if (LOG.isDebugEnabled ()) {
-                                LOG.warn (
-                                        "Unable to complete delivery of message to subscriber " + subscriber.getName (),
-                                        ex);
-                            } else {
-                                LOG.warn (
-                                        "Unable to complete delivery of message to subscriber.  {} threw a problem - {}",
-                                        subscriber.getName (), ex.getLocalizedMessage ());
-                            }
-                        }
+                        return null;
                     }
+                });
+            } else {
+                subscriber.receive (message);
+            }
 
-                    if (LOG.isTraceEnabled ()) {
-                        LOG.trace ("Submitted message to be delivered to subscriber {} {}", subscriber.getName (),
-                                message.toString ());
-                    }
-                }
-
-                Thread.yield ();
-            } catch (final InterruptedException ie) {
-                running.set (false);
+            deliveryTracker.delivered (received);
+        } catch (final Exception ex) {
 
+            if (LOG.isInfoEnabled ()) {
                 if (LOG.isDebugEnabled ()) {
-                    LOG.info ("Message delivery to subscriber {} interrupted", subscriber.getName ());
+                    LOG.warn ("Unable to complete delivery of message to subscriber " + subscriber.getName (), ex);
+                } else {
+                    LOG.warn ("Unable to complete delivery of message to subscriber.  {} threw a problem - {}",
+                            subscriber.getName (), ex.getLocalizedMessage ());
                 }
-            } catch (final Throwable ex) {
-                running.set (false);
-                LOG.warn ("MessageCarrier problem:  " + ex.getLocalizedMessage (), ex);
             }
+        }
 
+        if (LOG.isTraceEnabled ()) {
+            LOG.trace ("Submitted message to be delivered to subscriber {} {}", subscriber.getName (),
+                    message.toString ());
         }
+    }
 
-        shutdown.set (true);
+    /**
+     * Frozen messages are shared with every subscriber of the publication, so a
+     * subscriber that has not declared {@link MessageMode#Immutable} gets its own
+     * mutable copy.
+     * 
+     * @return the message to deliver or null if it could not be copied
+     */
+    private @Nullable
+    Message prepare (final @Nullable Message message) {
+
+        if (message == null || !message.isFrozen ()
+                || subscriber.getSubscription ().getMessageMode () == MessageMode.Immutable) {
+            return message;
+        }
 
-        if (LOG.isDebugEnabled ()) {
-            LOG.info ("Exited MessageCarrier for subscriber ", subscriber.getName ());
+        try {
+            final Message messageCopy = copier.copy (message);
+            messageCopy.setCopy (true);
+            return messageCopy;
+        } catch (final Exception ex) {
+            LOG.error ("Message serialization problem for subscriber {} - {}", subscriber.getName (),
+                    ex.getLocalizedMessage ());
+            return null;
         }
     }
 
-    class MethodFilteredContent {
+    // *************************************************************************
+    // ** Member classes
+    // *************************************************************************
+
+    /**
+     * Delivers one partition of the subscriber's messages in the order the
+     * carrier received them.  Each worker has its own content dispatcher, as
+     * the dispatcher is not thread safe.
+     */
+    private class DeliveryWorker extends AbstractLoopTask {
 
-        public final Method mMethod;
-        public final String[] mPropertyArray;
-        public final Class<?> mContentType;
+        final BoundedBlockingQueue<Message> queue;
+        private final FilteredContentDispatcher dispatcher;
 
-        public MethodFilteredContent (final Method method, final Class<?> contentType, final String[] array) {
+        DeliveryWorker () {
 
             super ();
 
-            mMethod = method;
-            mPropertyArray = array;
-            mContentType = contentType;
+            queue = subscriber.getSubscription ().getQueuePolicy ().<Message> buildQueue ();
+            dispatcher = new FilteredContentDispatcher (subscriber);
+        }
+
+        @Override
+        protected boolean pass (final boolean wait) {
+
+            try {
+                final Message received = wait ? queue.take () : queue.poll ();
+                if (received == null) {
+                    return false;
+                }
+
+                deliver (received, dispatcher);
+                return true;
+            } catch (final InterruptedException ie) {
+                stop ();
+
+                if (LOG.isDebugEnabled ()) {
+                    LOG.info ("Message delivery worker for subscriber {} interrupted", subscriber.getName ());
+                }
+            } catch (final Throwable ex) {
+                stop ();
+                LOG.warn ("MessageCarrier worker problem:  " + ex.getLocalizedMessage (), ex);
+            }
+
+            return false;
         }
     }
 }
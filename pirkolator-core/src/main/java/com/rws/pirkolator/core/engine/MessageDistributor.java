@@ -15,24 +15,28 @@
  ******************************************************************************/
 package com.rws.pirkolator.core.engine;
 
-import static com.google.common.base.Preconditions.checkNotNull;
 import static com.rws.utility.common.Preconditions.notNull;
 
-import java.util.Collection;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Set;
-import java.util.concurrent.BlockingQueue;
+import java.util.UUID;
 import java.util.concurrent.Future;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.rws.pirkolator.core.engine.delivery.IDeliveryEngine;
+import com.rws.pirkolator.core.engine.delivery.MessageBatcher;
+import com.rws.pirkolator.core.engine.execution.AbstractLoopTask;
+import com.rws.pirkolator.core.metric.LatencyHistogram;
 import com.rws.pirkolator.model.Message;
 import com.rws.utility.common.Globals;
-
-// TODO jpirkey Add better locking for message sending
+import com.rws.utility.common.UUIDs;
 
 /**
  * <p>This class provides an implementation to either copy a message or pass by 
@@ -41,13 +45,37 @@ import com.rws.utility.common.Globals;
  * <p>This implementation supports Kryo serialization by setting the KryoEnabled
  * flag to true.
  * 
+ * <p>Publications in {@link MessageMode#Immutable} mode are never copied here; the
+ * message is frozen and shared, and only subscribers that want a mutable message
+ * receive a copy.
+ * 
+ * <p>Published messages are handed to the delivery task through the
+ * {@link IDeliveryEngine} defined by the publisher's {@link DistributionPolicy}.
+ * The engines are safe for concurrent publishers, so publishing does not lock.
+ * The delivery task drains the engine in batches of up to the policy's batch
+ * size and resolves the receiving queues once per batch.
+ * 
+ * <p>Messages are stamped as they leave the sending queue and as they are put on
+ * the local receiving queues, and the time spent in each stage is recorded in
+ * the publish and route {@link LatencyHistogram}s.
+ * 
+ * <p>Messages published with acknowledgement carry an ack id and the name of the
+ * publisher's ack queue.  The delivery task tells the {@link AckTracker} how many
+ * hubs each batch is routed to, and the local hub acknowledges a message once the
+ * subscriber of each local group has received it, as counted by the hub's
+ * {@link DeliveryTracker}.
+ * 
  * @author jpirkey
  * @since 0.1.0
  */
 public class MessageDistributor {
 
+    /** Header holding the name of the queue acknowledgements are returned on **/
     public static String RECEIVE_ACK = "RECEIVE_ACK";
 
+    /** Header marking a frozen message, so it is frozen again after crossing the grid **/
+    public static final String IMMUTABLE = "IMMUTABLE";
+
     static Logger LOG = notNull (LoggerFactory.getLogger (MessageDistributor.class));
 
     // *************************************************************************
@@ -56,11 +84,28 @@ public class MessageDistributor {
 
     /** class **/
     final PublicationManager publicationManager;
-    final BlockingQueue<Message> sendingQueue = new LinkedBlockingQueue<> ();
+    final IDeliveryEngine sendingEngine;
+    final MessageBatcher batcher;
     private final Future<?> task;
     final String systemName;
     private final IMessageCopier copier;
-    private final AtomicInteger messageCounter = new AtomicInteger ();
+    private final AtomicLong messageCounter = new AtomicLong ();
+    private final AckTracker ackTracker;
+    private final DeliveryTracker deliveryTracker;
+
+    /** Acknowledges the messages every local group has received for the local hub **/
+    private final DeliveryTracker.IAckSender localAckSender = new DeliveryTracker.IAckSender () {
+
+        @Override
+        public void ack (final String ackQueue, final UUID ackId) {
+
+            ackTracker.ack (AckTracker.LOCAL_HUB, notNull (Collections.singletonList (ackId)));
+        }
+    };
+
+    /** latency **/
+    private final LatencyHistogram publishLatency = new LatencyHistogram ();
+    private final LatencyHistogram routeLatency = new LatencyHistogram ();
 
     // *************************************************************************
     // ** Constructors
@@ -69,14 +114,79 @@ public class MessageDistributor {
     public MessageDistributor (final IMessageCopier copier, final SystemResourceManager resourceManager,
             final PublicationManager handler, final String systemName) {
 
+        this (copier, resourceManager, handler, systemName, new DistributionPolicy ());
+    }
+
+    public MessageDistributor (final IMessageCopier copier, final SystemResourceManager resourceManager,
+            final PublicationManager handler, final String systemName, final DistributionPolicy policy) {
+
+        this (copier, resourceManager, handler, systemName, policy, new DeliveryTracker ());
+    }
+
+    /**
+     * @param deliveryTracker counts the deliveries of the hub's subscription groups, so messages
+     *            published with acknowledgement are acknowledged once received
+     */
+    public MessageDistributor (final IMessageCopier copier, final SystemResourceManager resourceManager,
+            final PublicationManager handler, final String systemName, final DistributionPolicy policy,
+            final DeliveryTracker deliveryTracker) {
+
         this.copier = copier;
+        this.deliveryTracker = deliveryTracker;
         publicationManager = handler;
-        final Future<?> tmp = resourceManager.getCachedThreadExecutor ().submit (new PutTask ());
-        checkNotNull (tmp);
-        task = tmp;
+        sendingEngine = policy.buildDeliveryEngine ();
+        batcher = policy.buildBatcher (sendingEngine);
+        ackTracker =
+                new AckTracker (resourceManager, UUIDs.toString (handler.getPublisherId ()),
+                        policy.getAckTimeoutMillis ());
+        task = resourceManager.submitLoop (new PutTask ());
         this.systemName = systemName;
     }
 
+    // *************************************************************************
+    // ** Member properties
+    // *************************************************************************
+
+    /**
+     * @return number of published messages dropped by the sending queue's overflow policy
+     */
+    public long getDroppedCount () {
+
+        return sendingEngine.getDroppedCount ();
+    }
+
+    /**
+     * @return total time publishers have waited for room in the sending queue
+     */
+    public long getBlockedNanos () {
+
+        return sendingEngine.getBlockedNanos ();
+    }
+
+    /**
+     * @return tracker of the messages published with acknowledgement
+     */
+    public AckTracker getAckTracker () {
+
+        return ackTracker;
+    }
+
+    /**
+     * @return time from entering the publisher's channel to leaving the sending queue
+     */
+    public LatencyHistogram getPublishLatency () {
+
+        return publishLatency;
+    }
+
+    /**
+     * @return time from leaving the sending queue to reaching the local receiving queues
+     */
+    public LatencyHistogram getRouteLatency () {
+
+        return routeLatency;
+    }
+
     // *************************************************************************
     // ** Member methods
     // *************************************************************************
@@ -89,30 +199,71 @@ public class MessageDistributor {
         publish (message, true);
     }
 
-    public synchronized void publish (final Message msg, final boolean copy) {
+    public void publish (final Message msg, final boolean copy) {
+
+        send (msg, copy);
+    }
+
+    /**
+     * Publishes a message and tracks its acknowledgement by each hub it is
+     * routed to.
+     * 
+     * @return future completed with the number of hubs that received the message
+     */
+    public ListenableFuture<Integer> publishAndAck (final Message msg, final boolean copy) {
+
+        final UUID ackId = UUIDs.generateUUID ();
+        msg.addHeader (RECEIVE_ACK, ackTracker.getAckQueueName ());
+        msg.addHeader (AckTracker.ACK_ID, UUIDs.toString (ackId));
+
+        final ListenableFuture<Integer> future = ackTracker.register (ackId);
+        if (!send (msg, copy)) {
+            ackTracker.fail (ackId, new IllegalStateException ("Message could not be published"));
+        }
+
+        return future;
+    }
+
+    /**
+     * @return true if the message was put on the sending queue
+     */
+    private boolean send (final Message msg, final boolean copy) {
+
+        final boolean immutable = publicationManager.getPublication ().getMessageMode () == MessageMode.Immutable;
 
         final Message messageCopy;
-        if (!copy) {
+        if (immutable) {
+            // Shared by reference; frozen below once the headers are complete
             messageCopy = msg;
-            messageCopy.addHeader ("copy", "false");
+            messageCopy.setCopy (false);
+            messageCopy.addHeader (IMMUTABLE, "true");
+        } else if (!copy) {
+            messageCopy = msg;
+            messageCopy.setCopy (false);
         } else {
             try {
                 messageCopy = copier.copy (msg);
-                notNull (messageCopy).addHeader ("copy", "true");
+                notNull (messageCopy).setCopy (true);
+                messageCopy.setEnteredNanos (msg.getEnteredNanos ());
             } catch (final Exception ex) {
                 LOG.error ("Message serialization problem  {}", ex.getLocalizedMessage ());
-                return;
+                return false;
             }
         }
 
-        final String count = Integer.toString (messageCounter.get ());
-        messageCopy.addHeader ("count", notNull (count));
+        messageCopy.setSequence (messageCounter.getAndIncrement ());
+
+        if (immutable) {
+            messageCopy.freeze ();
+        }
 
         // TODO jpirkey Add more system information to message header
         try {
-            sendingQueue.put (messageCopy);
+            sendingEngine.put (messageCopy);
+            return true;
         } catch (final InterruptedException ex) {
             LOG.warn ("Message Distribution send() interrupted");
+            return false;
         }
     }
 
@@ -125,15 +276,18 @@ public class MessageDistributor {
         if (!task.isCancelled ()) {
             task.cancel (true);
         }
+
+        ackTracker.destroy ();
+        sendingEngine.close ();
     }
 
     // *************************************************************************
     // ** Member classes 
     // *************************************************************************
 
-    private class PutTask implements Runnable {
+    private class PutTask extends AbstractLoopTask {
 
-        AtomicBoolean mRunning = new AtomicBoolean ();
+        private final List<Message> batch = new ArrayList<> (batcher.getBatchSize ());
 
         public PutTask () {
 
@@ -141,110 +295,171 @@ public class MessageDistributor {
         }
 
         @Override
-        public void run () {
+        protected boolean pass (final boolean wait) {
 
             // FIXME jpirkey Exception stops distribution
-            mRunning.set (true);
-            while (mRunning.get ()) {
-                try {
-                    final Message message = sendingQueue.take ();
-
-                    if (message != null) {
-
-                        /***** Distributed Queues *****/
-                        final Set<MessageQueue> distributedQueues = publicationManager.getDistributedQueueSet ();
-
-                        if (distributedQueues.isEmpty ()) {
-                            if (LOG.isTraceEnabled ()) {
-                                LOG.warn ("No distributed queues on {} for message {}", systemName, message.toString ());
-                            }
-                        } else {
-                            if (LOG.isTraceEnabled ()) {
-                                LOG.trace ("Publishing to distributed queues on {}...", systemName);
-                            }
-                            sendToDistributedQueues (distributedQueues, message);
-                            if (LOG.isTraceEnabled ()) {
-                                LOG.trace ("Published to {} distributed queues on {}", distributedQueues.size (),
-                                        systemName);
-                            }
-                        }
-
-                        /***** Local Queues *****/
-                        final Collection<IQueueGroupManager> localQueues =
-                                publicationManager.getReceivingQueueGroupSet ();
-
-                        if (localQueues.isEmpty ()) {
-                            if (LOG.isTraceEnabled ()) {
-                                LOG.warn ("No local queues on {} for message {}", systemName, message.toString ());
-                            }
-                        } else {
-                            if (LOG.isTraceEnabled ()) {
-                                LOG.trace ("Publishing to local queues on {}...", systemName);
-                            }
-                            sendToQueues (localQueues, message);
-                            if (LOG.isTraceEnabled ()) {
-                                LOG.trace ("Published to {} local queues on {}", localQueues.size (), systemName);
-                            }
-                        }
-                    }
+            try {
+                if (wait) {
+                    batcher.next (batch);
+                } else if (!batcher.poll (batch)) {
+                    return false;
+                }
 
-                    Thread.yield ();
-                } catch (final InterruptedException ex) {
-                    LOG.warn ("Message Distribution interrupted, exiting");
-                    mRunning.set (false);
-                } catch (final Throwable ex) {
-                    LOG.warn ("Message Distribution problem", ex);
-                    mRunning.set (false);
+                final long dequeuedNanos = System.nanoTime ();
+                for (int i = 0; i < batch.size (); i++) {
+                    final Message message = batch.get (i);
+                    message.setDequeuedNanos (dequeuedNanos);
+                    publishLatency.recordInterval (message.getEnteredNanos (), dequeuedNanos);
                 }
-            }
-        }
 
-        private void sendToQueues (final Collection<IQueueGroupManager> queueGroupManagerSet, final Message message) {
+                // Routing is resolved once for the whole batch
+                final RoutingTable routingTable = publicationManager.getRoutingTable ();
+                final MessageQueue[] distributedQueues = routingTable.getDistributedQueues ();
+                final IQueueGroupManager[] localQueues = routingTable.getReceivingQueueGroups ();
+
+                // Acknowledgements are expected from each hub the batch is routed to
+                final List<UUID> ackIdList = ackIds (batch);
+                if (!ackIdList.isEmpty ()) {
+                    final ImmutableSet.Builder<String> expected = ImmutableSet.builder ();
+                    if (localQueues.length > 0) {
+                        expected.add (AckTracker.LOCAL_HUB);
+                    }
+                    for (final MessageQueue queue : distributedQueues) {
+                        expected.addAll (queue.getAckTargets ());
+                    }
+                    final Set<String> hubKeys = notNull (expected.build ());
+                    for (final UUID ackId : ackIdList) {
+                        ackTracker.expect (notNull (ackId), hubKeys);
+                    }
+                }
 
-            for (final IQueueGroupManager queueGroup : queueGroupManagerSet) {
+                /***** Distributed Queues *****/
 
-                final Set<MessageQueue> queueSet = queueGroup.nextQueueSet ();
-                for (final MessageQueue queue : queueSet) {
+                if (distributedQueues.length == 0) {
+                    if (LOG.isTraceEnabled ()) {
+                        LOG.warn ("No distributed queues on {} for {} message(s)", systemName, batch.size ());
+                    }
+                } else {
+                    if (LOG.isTraceEnabled ()) {
+                        LOG.trace ("Publishing {} message(s) to distributed queues on {}...", batch.size (),
+                                systemName);
+                    }
+                    sendToDistributedQueues (distributedQueues, batch);
+                    if (LOG.isTraceEnabled ()) {
+                        LOG.trace ("Published to {} distributed queues on {}", distributedQueues.length, systemName);
+                    }
+                }
+
+                /***** Local Queues *****/
+                if (localQueues.length == 0) {
+                    if (LOG.isTraceEnabled ()) {
+                        LOG.warn ("No local queues on {} for {} message(s)", systemName, batch.size ());
+                    }
+                } else {
                     if (LOG.isTraceEnabled ()) {
-                        LOG.trace ("Putting message on {} queue [name={}; descriptor={}; queue size={}]{}{}",
-                                systemName, queue.getQueueName (), queue.getQueueDescriptor (), queue.size (),
-                                Globals.NEW_LINE, message);
+                        LOG.trace ("Publishing {} message(s) to local queues on {}...", batch.size (), systemName);
                     }
+                    stampRouted (batch);
 
-                    try {
-                        queue.put (message);
-                    } catch (final InterruptedException ex) {
-                        LOG.warn ("MessageDistributor send interrupted");
+                    // Expected before the put, so no group can report a delivery first
+                    if (!ackIdList.isEmpty ()) {
+                        deliveryTracker.expect (batch, localQueues.length, localAckSender);
                     }
 
+                    sendToQueues (localQueues, batch);
                     if (LOG.isTraceEnabled ()) {
-                        LOG.trace ("Put message on {} queue [name={}; descriptor={}; queue size={}]", systemName,
-                                queue.getQueueName (), queue.getQueueDescriptor (), queue.size ());
+                        LOG.trace ("Published to {} local queues on {}", localQueues.length, systemName);
                     }
                 }
+
+                batch.clear ();
+
+                // Batches already amortize the hand-off, so only yield per single message
+                if (wait && batcher.getBatchSize () == 1) {
+                    Thread.yield ();
+                }
+
+                return true;
+            } catch (final InterruptedException ex) {
+                LOG.warn ("Message Distribution interrupted, exiting");
+                stop ();
+            } catch (final Throwable ex) {
+                LOG.warn ("Message Distribution problem", ex);
+                stop ();
             }
+
+            return false;
         }
 
-        private void sendToDistributedQueues (final Collection<MessageQueue> queueSet, final Message message) {
+        /**
+         * @return ack ids of the messages published with acknowledgement
+         */
+        private List<UUID> ackIds (final List<Message> batch) {
+
+            List<UUID> ackIdList = null;
+            for (int i = 0; i < batch.size (); i++) {
+                final String ackId = batch.get (i).getHeader (AckTracker.ACK_ID);
+                if (ackId != null) {
+                    if (ackIdList == null) {
+                        ackIdList = new ArrayList<> ();
+                    }
+                    ackIdList.add (UUIDs.fromString (ackId));
+                }
+            }
+
+            return ackIdList == null ? notNull (Collections.<UUID> emptyList ()) : ackIdList;
+        }
+
+        private void stampRouted (final List<Message> batch) {
+
+            final long routedNanos = System.nanoTime ();
+            for (int i = 0; i < batch.size (); i++) {
+                final Message message = batch.get (i);
+                message.setRoutedNanos (routedNanos);
+                routeLatency.recordInterval (message.getDequeuedNanos (), routedNanos);
+            }
+        }
 
-            for (final MessageQueue queue : queueSet) {
+        private void sendToQueues (final IQueueGroupManager[] queueGroups, final List<Message> batch) {
 
+            for (final IQueueGroupManager queueGroup : queueGroups) {
                 if (LOG.isTraceEnabled ()) {
-                    LOG.trace ("Putting message on {} queue [name={}; descriptor={}; queue size={}]{}{}", systemName,
-                            queue.getQueueName (), queue.getQueueDescriptor (), queue.size (), Globals.NEW_LINE,
-                            message);
+                    LOG.trace ("Putting {} message(s) on {} queue group {}", batch.size (), systemName,
+                            queueGroup.getQueueName ());
                 }
 
                 try {
-                    queue.put (message);
+                    queueGroup.put (batch);
                 } catch (final InterruptedException ex) {
                     LOG.warn ("MessageDistributor send interrupted");
                 }
+            }
+        }
 
-                if (LOG.isTraceEnabled ()) {
-                    LOG.trace ("Put message on {} queue [name={}; descriptor={}; queue size={}]", systemName,
-                            queue.getQueueName (), queue.getQueueDescriptor (), queue.size ());
-                }
+        private void sendToDistributedQueues (final MessageQueue[] queues, final List<Message> batch) {
+
+            for (final MessageQueue queue : queues) {
+                sendToQueue (queue, batch);
+            }
+        }
+
+        private void sendToQueue (final MessageQueue queue, final List<Message> batch) {
+
+            if (LOG.isTraceEnabled ()) {
+                LOG.trace ("Putting {} message(s) on {} queue [name={}; descriptor={}; queue size={}]{}{}",
+                        batch.size (), systemName, queue.getQueueName (), queue.getQueueDescriptor (), queue.size (),
+                        Globals.NEW_LINE, batch);
+            }
+
+            try {
+                queue.putAll (batch);
+            } catch (final InterruptedException ex) {
+                LOG.warn ("MessageDistributor send interrupted");
+            }
+
+            if (LOG.isTraceEnabled ()) {
+                LOG.trace ("Put {} message(s) on {} queue [name={}; descriptor={}; queue size={}]", batch.size (),
+                        systemName, queue.getQueueName (), queue.getQueueDescriptor (), queue.size ());
             }
         }
     }
@@ -0,0 +1,38 @@
+/*******************************************************************************
+ * Copyright 2014 Reality Warp Software
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.rws.pirkolator.core.engine;
+
+import com.rws.pirkolator.model.Message;
+
+/**
+ * <p>Defines how a published {@link Message} is shared with subscribers.
+ *
+ * <p><ul>
+ * <li>Copy - the message is copied or passed by reference as requested by the
+ *      publisher, and subscribers receive it as a mutable message.</li>
+ * <li>Immutable - on a {@link Publication}, the message is frozen and passed by
+ *      reference regardless of the copy flag; the publisher must not change the
+ *      published objects afterwards.  On a {@link Subscription}, the subscriber
+ *      accepts frozen messages as they are.  Subscribers in Copy mode receive
+ *      their own mutable copy of a frozen message, made on their delivery thread.</li>
+ * </ul>
+ *
+ * @author jpirkey
+ * @since 1.0.0
+ */
+public enum MessageMode {
+    Copy, Immutable
+}
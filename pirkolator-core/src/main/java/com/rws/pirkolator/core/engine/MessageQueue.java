@@ -16,9 +16,11 @@
 package com.rws.pirkolator.core.engine;
 
 import static com.google.common.base.Preconditions.checkNotNull;
+import static com.rws.utility.common.Preconditions.notNull;
 
 import java.util.Collection;
 import java.util.Iterator;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.TimeUnit;
@@ -27,6 +29,8 @@ import javax.annotation.Nullable;
 
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterators;
+import com.rws.pirkolator.core.engine.execution.ManagedBlocking;
+import com.rws.pirkolator.core.engine.queue.BoundedBlockingQueue;
 import com.rws.pirkolator.model.Message;
 import com.rws.utility.common.UUIDs;
 
@@ -83,6 +87,93 @@ public class MessageQueue implements BlockingQueue<Message> {
         return queueName;
     }
 
+    /**
+     * @return number of messages dropped by the overflow policy of a bounded queue, otherwise 0
+     */
+    public long getDroppedCount () {
+
+        if (queue instanceof BoundedBlockingQueue) {
+            return ((BoundedBlockingQueue<Message>) queue).getDroppedCount ();
+        }
+
+        return 0;
+    }
+
+    /**
+     * @return number of messages spilled to disk by a bounded queue, otherwise 0
+     */
+    public long getSpilledCount () {
+
+        if (queue instanceof BoundedBlockingQueue) {
+            return ((BoundedBlockingQueue<Message>) queue).getSpilledCount ();
+        }
+
+        return 0;
+    }
+
+    /**
+     * @return total time producers have waited for room in a bounded queue, otherwise 0
+     */
+    public long getBlockedNanos () {
+
+        if (queue instanceof BoundedBlockingQueue) {
+            return ((BoundedBlockingQueue<Message>) queue).getBlockedNanos ();
+        }
+
+        return 0;
+    }
+
+    /**
+     * A queue whose receiving hubs cannot be named returns no hubs, so
+     * acknowledgements through it are not counted.
+     * 
+     * @return keys of the hubs expected to acknowledge a message put on the queue
+     */
+    public Set<String> getAckTargets () {
+
+        return notNull (ImmutableSet.<String> of ());
+    }
+
+    // *************************************************************************
+    // ** Member methods
+    // *************************************************************************
+
+    /**
+     * Releases anything the queue holds once it is no longer used.  A local
+     * queue closes the spill file of its bounded queue.
+     */
+    public void stop () {
+
+        if (queue instanceof BoundedBlockingQueue) {
+            ((BoundedBlockingQueue<Message>) queue).close ();
+        }
+    }
+
+    /**
+     * Called by the router once it has routed messages taken from the queue.
+     * A queue that keeps a read position on the grid commits it here, so
+     * messages taken but not yet routed are read again after a restart.
+     * 
+     * @param count number of messages routed, in the order they were taken
+     */
+    public void routed (final int count) {
+
+        // Nothing to commit for a plain queue
+    }
+
+    /**
+     * Puts each message of a batch in order, waiting for space as needed.
+     * 
+     * @param messages
+     * @throws InterruptedException
+     */
+    public void putAll (final Collection<? extends Message> messages) throws InterruptedException {
+
+        for (final Message message : messages) {
+            put (message);
+        }
+    }
+
     // *************************************************************************
     // ** Blocking Queue implementation
     // *************************************************************************
@@ -197,7 +288,7 @@ public class MessageQueue implements BlockingQueue<Message> {
     @Override
     public void put (final @Nullable Message message) throws InterruptedException {
 
-        queue.put (message);
+        ManagedBlocking.put (queue, checkNotNull (message));
     }
 
     @Override
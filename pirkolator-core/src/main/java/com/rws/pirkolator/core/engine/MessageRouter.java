@@ -2,21 +2,24 @@ package com.rws.pirkolator.core.engine;
 
 import static com.rws.utility.common.Preconditions.notNull;
 
-import java.util.Collection;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
-import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Sets;
+import com.rws.pirkolator.core.engine.delivery.MessageBatcher;
+import com.rws.pirkolator.core.engine.delivery.QueueDeliveryEngine;
+import com.rws.pirkolator.core.engine.execution.AbstractLoopTask;
 import com.rws.pirkolator.core.grid.IGridQueueAdapter;
 import com.rws.pirkolator.model.Message;
 import com.rws.utility.common.Globals;
@@ -37,13 +40,19 @@ public class MessageRouter {
     /** Publisher MessageQueues that are listened to by this router **/
     final Set<MessageQueue> pollingQueueSet = Sets.newConcurrentHashSet ();
 
-    /** <p>ExecutorService used to polling a publisher queue. 
+    /** Distributed Pub/Sub MessageQueues that local publications are sent to **/
+    private final Set<MessageQueue> distributedQueueSet = new LinkedHashSet<> ();
+
+    /** Snapshot of the delivery targets, replaced under the delivery lock on each change **/
+    private volatile RoutingTable routingTable = RoutingTable.EMPTY;
+
+    /** <p>Task polling a publisher queue, run by the {@link SystemResourceManager}.
      * <br/><b>Key = Queue {@link UUID}</b> **/
-    private final Map<UUID, ExecutorService> pollingServiceMap = new ConcurrentHashMap<> ();
+    private final Map<UUID, Future<?>> pollingTaskMap = new ConcurrentHashMap<> ();
 
-    /** <p> Callback Grid used to get queues for return ACKs.
+    /** <p>Senders returning the ACKs of each polled queue on its callback grid.
      * <br/><b>Key = Queue {@link UUID}</b> **/
-    final Map<UUID, IGridQueueAdapter> callbackGridMap = new ConcurrentHashMap<> ();
+    final Map<UUID, GridAckSender> ackSenderMap = new ConcurrentHashMap<> ();
 
     /** Registration management **/
     final ReentrantReadWriteLock deliveryLock = new ReentrantReadWriteLock (true);
@@ -52,30 +61,54 @@ public class MessageRouter {
 
     private final SystemResourceManager resourceManager;
 
+    /** Batch size and linger used when draining the polling queues **/
+    private final DistributionPolicy policy;
+
+    /** Counts the deliveries of the polled messages published with acknowledgement **/
+    private final DeliveryTracker deliveryTracker;
+
     // *************************************************************************
     // ** Constructors
     // *************************************************************************
 
     public MessageRouter (final SystemResourceManager resourceManager, final String systemName) {
 
+        this (resourceManager, systemName, new DistributionPolicy ());
+    }
+
+    public MessageRouter (final SystemResourceManager resourceManager, final String systemName,
+            final DistributionPolicy policy) {
+
+        this (resourceManager, systemName, policy, new DeliveryTracker ());
+    }
+
+    /**
+     * @param deliveryTracker counts the deliveries of the hub's subscription groups, so polled messages
+     *            are acknowledged once received
+     */
+    public MessageRouter (final SystemResourceManager resourceManager, final String systemName,
+            final DistributionPolicy policy, final DeliveryTracker deliveryTracker) {
+
         super ();
 
         this.resourceManager = resourceManager;
         this.systemName = systemName;
+        this.policy = policy;
+        this.deliveryTracker = deliveryTracker;
     }
 
     // *************************************************************************
     // ** Subscriber methods
     // *************************************************************************
 
-    public Set<IQueueGroupManager> getReceivingQueueGroupSet () {
+    public RoutingTable getRoutingTable () {
 
-        final Collection<IQueueGroupManager> tmp = subscriberReceivingQueueMap.values ();
-        if (tmp != null) {
-            return ImmutableSet.copyOf (tmp);
-        }
+        return routingTable;
+    }
 
-        return ImmutableSet.of ();
+    public Set<IQueueGroupManager> getReceivingQueueGroupSet () {
+
+        return routingTable.getReceivingQueueGroupSet ();
     }
 
     public void addReceivingQueueGroup (final IQueueGroupManager receivingQueue) {
@@ -84,6 +117,7 @@ public class MessageRouter {
 
         try {
             subscriberReceivingQueueMap.put (receivingQueue.getQueueName (), receivingQueue);
+            routingTable = routingTable.withReceivingQueueGroups (subscriberReceivingQueueMap.values ());
         } finally {
             deliveryLock.writeLock ().unlock ();
         }
@@ -94,12 +128,53 @@ public class MessageRouter {
         deliveryLock.writeLock ().lock ();
 
         try {
-            subscriberReceivingQueueMap.remove (queueName);
+            if (subscriberReceivingQueueMap.remove (queueName) != null) {
+                routingTable = routingTable.withReceivingQueueGroups (subscriberReceivingQueueMap.values ());
+            }
         } finally {
             deliveryLock.writeLock ().unlock ();
         }
     }
 
+    // *************************************************************************
+    // ** Distributed Queue methods
+    // *************************************************************************
+
+    public Set<MessageQueue> getDistributedQueueSet () {
+
+        return routingTable.getDistributedQueueSet ();
+    }
+
+    public void addDistributedQueue (final MessageQueue queue) {
+
+        deliveryLock.writeLock ().lock ();
+
+        try {
+            if (distributedQueueSet.add (queue)) {
+                routingTable = routingTable.withDistributedQueues (distributedQueueSet);
+            }
+        } finally {
+            deliveryLock.writeLock ().unlock ();
+        }
+    }
+
+    public void removeDistributedQueue (final MessageQueue queue) {
+
+        deliveryLock.writeLock ().lock ();
+
+        try {
+            if (distributedQueueSet.remove (queue)) {
+                routingTable = routingTable.withDistributedQueues (distributedQueueSet);
+            }
+        } finally {
+            deliveryLock.writeLock ().unlock ();
+        }
+    }
+
+    // *************************************************************************
+    // ** Polling Queue methods
+    // *************************************************************************
+
     public void addPollingQueue (final MessageQueue queue) {
 
         deliveryLock.writeLock ().lock ();
@@ -112,6 +187,24 @@ public class MessageRouter {
         }
     }
 
+    /**
+     * Polls a queue and returns acknowledgements for its messages on the
+     * callback grid once every local subscription group has received them.
+     * 
+     * @param queue
+     * @param callbackGrid
+     * @param hubKey key of this hub on the grid, sent with each acknowledgement
+     */
+    public void addPollingQueue (final MessageQueue queue, final IGridQueueAdapter callbackGrid,
+            final String hubKey) {
+
+        final ScheduledExecutorService flushService =
+                resourceManager.getScheduledThreadExecutor (GridAckSender.ACK_FLUSH_SERVICE, 1);
+        ackSenderMap.put (queue.getId (), new GridAckSender (callbackGrid, hubKey, policy.getBatchSize (),
+                GridAckSender.DEFAULT_LINGER_MILLIS, flushService));
+        addPollingQueue (queue);
+    }
+
     public void addPollingQueueSet (final Set<MessageQueue> queueSet) {
 
         deliveryLock.writeLock ().lock ();
@@ -138,6 +231,10 @@ public class MessageRouter {
             if (pollingQueueSet.remove (queue)) {
                 deactivatePollingTask (queue);
             }
+            final GridAckSender ackSender = ackSenderMap.remove (queue.getId ());
+            if (ackSender != null) {
+                ackSender.flush ();
+            }
         } finally {
             deliveryLock.writeLock ().unlock ();
         }
@@ -164,8 +261,11 @@ public class MessageRouter {
         deliveryLock.writeLock ().lock ();
 
         try {
-            for (final ExecutorService task : pollingServiceMap.values ()) {
-                task.shutdown ();
+            for (final Future<?> task : pollingTaskMap.values ()) {
+                task.cancel (true);
+            }
+            for (final GridAckSender ackSender : ackSenderMap.values ()) {
+                ackSender.flush ();
             }
         } finally {
             deliveryLock.writeLock ().unlock ();
@@ -175,12 +275,9 @@ public class MessageRouter {
     private void activatePollingTask (final MessageQueue activeQueue) {
 
         // No active polling task
-        if (!pollingServiceMap.containsKey (activeQueue.getId ())) {
+        if (!pollingTaskMap.containsKey (activeQueue.getId ())) {
 
-            final ExecutorService service = resourceManager.getSingleThreadExecutor (activeQueue.getQueueName ());
-            service.execute (new PollQueueTask (activeQueue));
-
-            pollingServiceMap.put (activeQueue.getId (), service);
+            pollingTaskMap.put (activeQueue.getId (), resourceManager.submitLoop (new PollQueueTask (activeQueue)));
 
             if (LOG.isTraceEnabled ()) {
                 LOG.trace ("Poll task service activated for queue {}", activeQueue.getQueueName ());
@@ -194,10 +291,10 @@ public class MessageRouter {
 
         // Remove polling task if active
         // No active polling task
-        if (pollingServiceMap.containsKey (deactiveQueue.getId ())) {
-            final ExecutorService service = pollingServiceMap.remove (deactiveQueue.getId ());
-            if (service != null) {
-                service.shutdown ();
+        if (pollingTaskMap.containsKey (deactiveQueue.getId ())) {
+            final Future<?> task = pollingTaskMap.remove (deactiveQueue.getId ());
+            if (task != null) {
+                task.cancel (true);
             }
 
             if (LOG.isTraceEnabled ()) {
@@ -214,93 +311,105 @@ public class MessageRouter {
     // *************************************************************************
 
     /**
-     * Listens on an active Pub/Sub message queue and delivers any taken message
-     * to each receiving queue of the supported Subscriptions.
+     * Listens on an active Pub/Sub message queue and delivers any taken messages
+     * to each receiving queue of the supported Subscriptions.  Messages are taken
+     * in batches defined by the router's {@link DistributionPolicy}.
      * 
      * @author jpirkey
      *
      */
-    private class PollQueueTask implements Runnable {
+    private class PollQueueTask extends AbstractLoopTask {
 
         /** class **/
         private final MessageQueue pollingQueue;
-
-        /** life-cycle */
-        private final AtomicBoolean taskRunning = new AtomicBoolean (false);
+        private final MessageBatcher batcher;
+        private final List<Message> batch;
 
         public PollQueueTask (final MessageQueue queue) {
 
             super ();
 
             pollingQueue = queue;
+            batcher = policy.buildBatcher (new QueueDeliveryEngine (queue));
+            batch = new ArrayList<> (batcher.getBatchSize ());
         }
 
         @Override
-        public void run () {
+        protected boolean pass (final boolean wait) {
+
+            try {
+                if (LOG.isTraceEnabled ()) {
+                    LOG.trace ("Listening for message on {} queue {}, descriptor {}", systemName,
+                            pollingQueue.getQueueName (), pollingQueue.getQueueDescriptor ());
+                }
 
-            taskRunning.set (true);
+                if (wait) {
+                    batcher.next (batch);
+                } else if (!batcher.poll (batch)) {
+                    return false;
+                }
+
+                // Freezing is not serialized, so restore it for messages published as immutable
+                final long routedNanos = System.nanoTime ();
+                for (final Message message : batch) {
+                    if (message.getHeader (MessageDistributor.IMMUTABLE) != null) {
+                        message.freeze ();
+                    }
+                    message.setRoutedNanos (routedNanos);
+                }
+
+                // TODO jpirkey Copy message for multiple receiving queues?
+                final IQueueGroupManager[] receivingQueueGroups = routingTable.getReceivingQueueGroups ();
 
-            while (taskRunning.get ()) {
-                try {
+                // Each group acknowledges once its subscriber has received the message; the hub
+                // acknowledges at once without local subscribers, as the publisher counts it
+                final GridAckSender ackSender = ackSenderMap.get (pollingQueue.getId ());
+                if (ackSender != null) {
+                    deliveryTracker.expect (batch, receivingQueueGroups.length, ackSender);
+                }
+
+                if (receivingQueueGroups.length == 0) {
                     if (LOG.isTraceEnabled ()) {
-                        LOG.trace ("Listening for message on {} queue {}, descriptor {}", systemName,
-                                pollingQueue.getQueueName (), pollingQueue.getQueueDescriptor ());
+                        LOG.warn ("No local subscriber receiving queues on {}{}", systemName, batch);
                     }
+                } else {
+                    for (final IQueueGroupManager receivingQueue : receivingQueueGroups) {
 
-                    final Message message = pollingQueue.take ();
-                    if (message != null) {
-
-                        // TODO jpirkey Copy message for multiple receiving queues?
-                        if (subscriberReceivingQueueMap.isEmpty ()) {
-                            if (LOG.isTraceEnabled ()) {
-                                LOG.warn ("No local subscriber receiving queues on {}{}", systemName, message);
-                            }
-                        } else {
-                            for (final IQueueGroupManager receivingQueue : subscriberReceivingQueueMap.values ()) {
-
-                                final Set<MessageQueue> queueSet = receivingQueue.nextQueueSet ();
-                                for (final MessageQueue queue : queueSet) {
-                                    
-                                    queue.put (message);
-                                    
-                                    if (LOG.isTraceEnabled ()) {
-                                        LOG.trace ("Put message on {} receiving queue {}, descriptor {}", systemName,
-                                                queue.getQueueName (), queue.getQueueDescriptor ());
-                                    }
-                                }
-
-                                // FIXME jpirkey Use ACK identifier to only notify the requesting publisher
-                                // ACK on receive
-                                final IGridQueueAdapter callbackGrid = callbackGridMap.get (pollingQueue.getId ());
-                                final String receiveAckQueue = message.getHeader (MessageDistributor.RECEIVE_ACK);
-                                if (receiveAckQueue != null && !receiveAckQueue.isEmpty ()) {
-                                    try {
-                                        final BlockingQueue<UUID> returnQueue = callbackGrid.getQueue (receiveAckQueue);
-                                        returnQueue.put (message.getOriginalId ());
-                                    } catch (final InterruptedException e) {
-                                        LOG.warn (e.getMessage (), e);
-                                    }
-                                }
-                            }
+                        receivingQueue.put (batch);
+
+                        if (LOG.isTraceEnabled ()) {
+                            LOG.trace ("Put {} message(s) on {} receiving queue group {}", batch.size (), systemName,
+                                    receivingQueue.getQueueName ());
                         }
                     }
+                }
 
+                pollingQueue.routed (batch.size ());
+
+                batch.clear ();
+
+                // Batches already amortize the hand-off, so only yield per single message
+                if (wait && batcher.getBatchSize () == 1) {
                     Thread.yield ();
-                } catch (final InterruptedException ie) {
-                    taskRunning.set (false);
+                }
 
-                    if (LOG.isDebugEnabled ()) {
-                        LOG.info ("Polling task interrupted, exiting");
-                    }
-                } catch (final Throwable ex) {
-                    taskRunning.set (false);
-                    if (LOG.isDebugEnabled ()) {
-                        LOG.warn ("Polling task problem - {}{}{}", ex.getLocalizedMessage (), Globals.NEW_LINE, ex);
-                    } else {
-                        LOG.warn ("Polling task problem - ", ex.getLocalizedMessage ());
-                    }
+                return true;
+            } catch (final InterruptedException ie) {
+                stop ();
+
+                if (LOG.isDebugEnabled ()) {
+                    LOG.info ("Polling task interrupted, exiting");
+                }
+            } catch (final Throwable ex) {
+                stop ();
+                if (LOG.isDebugEnabled ()) {
+                    LOG.warn ("Polling task problem - {}{}{}", ex.getLocalizedMessage (), Globals.NEW_LINE, ex);
+                } else {
+                    LOG.warn ("Polling task problem - ", ex.getLocalizedMessage ());
                 }
             }
+
+            return false;
         }
     }
 }
@@ -47,6 +47,7 @@ public class Publication extends AbstractLabeledIdentifiable {
     /** Definition **/
     @Nullable
     private String description;
+    private MessageMode messageMode = MessageMode.Copy;
 
     /** Filters **/
     private final Set<IFilter> filterSet = Sets.newConcurrentHashSet ();
@@ -111,6 +112,19 @@ public class Publication extends AbstractLabeledIdentifiable {
         this.description = description;
     }
 
+    /**
+     * @return {@link MessageMode} used to share messages
+     */
+    public MessageMode getMessageMode () {
+
+        return messageMode;
+    }
+
+    public void setMessageMode (final MessageMode messageMode) {
+
+        this.messageMode = messageMode;
+    }
+
     // *************************************************************************
     // ** Member methods
     // *************************************************************************
@@ -134,7 +148,7 @@ public class Publication extends AbstractLabeledIdentifiable {
     @Override
     public int hashCode () {
 
-        return Objects.hashCode (super.hashCode (), description, filterSet);
+        return Objects.hashCode (super.hashCode (), description, messageMode, filterSet);
     }
 
     @Override
@@ -144,7 +158,8 @@ public class Publication extends AbstractLabeledIdentifiable {
             if (!super.equals (object))
                 return false;
             final Publication that = (Publication) object;
-            return Objects.equal (description, that.description) && Objects.equal (filterSet, that.filterSet);
+            return Objects.equal (description, that.description) && Objects.equal (messageMode, that.messageMode)
+                    && Objects.equal (filterSet, that.filterSet);
         }
         return false;
     }
@@ -153,7 +168,7 @@ public class Publication extends AbstractLabeledIdentifiable {
     public String toString () {
 
         return Objects.toStringHelper (this).add ("super", super.toString ()).add ("description", description)
-                .add ("filterSet", filterSet).toString ();
+                .add ("messageMode", messageMode).add ("filterSet", filterSet).toString ();
     }
 
 }
@@ -27,7 +27,7 @@ import java.util.concurrent.locks.ReentrantReadWriteLock;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.google.common.collect.Sets;
+import com.rws.pirkolator.core.grid.IGridQueueAdapter;
 import com.rws.utility.common.UUIDs;
 
 /**
@@ -50,8 +50,6 @@ public class PublicationManager {
     private final String publisherName;
     private final Publication publication;
 
-    private final Set<MessageQueue> distributedQueueSet = Sets.newConcurrentHashSet ();
-
     private final MessageRouter router;
 
     /** Registration management **/
@@ -64,18 +62,47 @@ public class PublicationManager {
     public PublicationManager (final SystemResourceManager resourceManager, final IPublisher publisher,
             final String systemName) {
 
-        this (resourceManager, publisher.getId (), publisher.getName (), publisher.getPublication (), systemName);
+        this (resourceManager, publisher.getId (), publisher.getName (), publisher.getPublication (), systemName,
+                new DistributionPolicy ());
+    }
+
+    public PublicationManager (final SystemResourceManager resourceManager, final IPublisher publisher,
+            final String systemName, final DistributionPolicy policy) {
+
+        this (resourceManager, publisher.getId (), publisher.getName (), publisher.getPublication (), systemName,
+                policy);
     }
 
     public PublicationManager (final SystemResourceManager resourceManager, final UUID publisherId,
             final String publisherName, final Publication publication, final String systemName) {
 
+        this (resourceManager, publisherId, publisherName, publication, systemName, new DistributionPolicy ());
+    }
+
+    /**
+     * @param policy defines the batching used to route messages polled from distributed queues
+     */
+    public PublicationManager (final SystemResourceManager resourceManager, final UUID publisherId,
+            final String publisherName, final Publication publication, final String systemName,
+            final DistributionPolicy policy) {
+
+        this (resourceManager, publisherId, publisherName, publication, systemName, policy, new DeliveryTracker ());
+    }
+
+    /**
+     * @param policy defines the batching used to route messages polled from distributed queues
+     * @param deliveryTracker counts the deliveries of the hub's subscription groups
+     */
+    public PublicationManager (final SystemResourceManager resourceManager, final UUID publisherId,
+            final String publisherName, final Publication publication, final String systemName,
+            final DistributionPolicy policy, final DeliveryTracker deliveryTracker) {
+
         super ();
 
         this.publisherId = publisherId;
         this.publisherName = publisherName;
         this.publication = publication;
-        router = new MessageRouter (resourceManager, systemName);
+        router = new MessageRouter (resourceManager, systemName, policy, deliveryTracker);
     }
 
     // *************************************************************************
@@ -99,7 +126,16 @@ public class PublicationManager {
 
     public boolean containsSubscribers () {
 
-        return !(router.subscriberReceivingQueueMap.isEmpty ());
+        return router.getRoutingTable ().getReceivingQueueGroups ().length > 0;
+    }
+
+    /**
+     * @return the current delivery targets, replaced whenever a queue or queue
+     * group is added or removed
+     */
+    public RoutingTable getRoutingTable () {
+
+        return router.getRoutingTable ();
     }
 
     // *************************************************************************
@@ -116,6 +152,11 @@ public class PublicationManager {
         router.addReceivingQueueGroup (receivingQueueGroup);
     }
 
+    public void removeReceivingQueueGroup (final IQueueGroupManager receivingQueueGroup) {
+
+        router.removeReceivingQueue (receivingQueueGroup.getQueueName ());
+    }
+
     public void removeReceivingQueue (final UUID subscriberId) {
 
         router.removeReceivingQueue (UUIDs.toString (subscriberId));
@@ -134,14 +175,14 @@ public class PublicationManager {
 
     public Set<MessageQueue> getDistributedQueueSet () {
 
-        return distributedQueueSet;
+        return router.getDistributedQueueSet ();
     }
 
     public void addDistributedQueue (final MessageQueue queue) {
 
         changeLock.writeLock ().lock ();
         try {
-            distributedQueueSet.add (queue);
+            router.addDistributedQueue (queue);
         } finally {
             changeLock.writeLock ().unlock ();
         }
@@ -151,7 +192,7 @@ public class PublicationManager {
 
         changeLock.writeLock ().lock ();
         try {
-            distributedQueueSet.add (queue);
+            router.removeDistributedQueue (queue);
         } finally {
             changeLock.writeLock ().unlock ();
         }
@@ -167,6 +208,27 @@ public class PublicationManager {
         }
     }
 
+    public void addPollingQueue (final MessageQueue queue, final IGridQueueAdapter callbackGrid,
+            final String hubKey) {
+
+        changeLock.writeLock ().lock ();
+        try {
+            router.addPollingQueue (queue, callbackGrid, hubKey);
+        } finally {
+            changeLock.writeLock ().unlock ();
+        }
+    }
+
+    public void removePollingQueue (final MessageQueue queue) {
+
+        changeLock.writeLock ().lock ();
+        try {
+            router.removePollingQueue (queue);
+        } finally {
+            changeLock.writeLock ().unlock ();
+        }
+    }
+
     public Set<MessageQueue> getPollingQueueSet () {
 
         changeLock.readLock ().lock ();
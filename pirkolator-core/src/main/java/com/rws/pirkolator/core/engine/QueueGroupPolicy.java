@@ -0,0 +1,133 @@
+/*******************************************************************************
+ * Copyright 2014 Reality Warp Software
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.rws.pirkolator.core.engine;
+
+import com.google.common.base.Objects;
+import com.rws.pirkolator.core.engine.group.IQueueSelector;
+import com.rws.pirkolator.core.engine.group.KeyAffinityQueueSelector;
+import com.rws.pirkolator.core.engine.group.LeastDepthQueueSelector;
+import com.rws.pirkolator.core.engine.group.RoundRobinQueueSelector;
+
+/**
+ * <p>This class defines how a subscription group spreads messages across the
+ * receiving queues of its subscribers.  A default policy is held by the
+ * {@link Hub} and may be overridden per group name in the Spring configuration, e.g.
+ *
+ * <pre>
+ * &lt;property name="queueGroupPolicyMap"&gt;
+ *     &lt;map&gt;
+ *         &lt;entry key="Slow Analytic Group"&gt;
+ *             &lt;bean class="com.rws.pirkolator.core.engine.QueueGroupPolicy"&gt;
+ *                 &lt;property name="strategy" value="KeyAffinity" /&gt;
+ *                 &lt;property name="affinityHeader" value="seriesId" /&gt;
+ *             &lt;/bean&gt;
+ *         &lt;/entry&gt;
+ *     &lt;/map&gt;
+ * &lt;/property&gt;
+ * </pre>
+ *
+ * @author jpirkey
+ * @since 1.0.0
+ */
+public class QueueGroupPolicy {
+
+    public enum Strategy {
+        RoundRobin, LeastDepth, KeyAffinity
+    }
+
+    // *************************************************************************
+    // ** Member variables
+    // *************************************************************************
+
+    private Strategy strategy = Strategy.RoundRobin;
+
+    /** Header used to key messages for the KeyAffinity strategy **/
+    private String affinityHeader = "key";
+
+    private int virtualNodes = KeyAffinityQueueSelector.DEFAULT_VIRTUAL_NODES;
+
+    // *************************************************************************
+    // ** Constructors
+    // *************************************************************************
+
+    public QueueGroupPolicy () {
+
+        super ();
+    }
+
+    // *************************************************************************
+    // ** Member properties
+    // *************************************************************************
+
+    public Strategy getStrategy () {
+
+        return strategy;
+    }
+
+    public void setStrategy (final Strategy strategy) {
+
+        this.strategy = strategy;
+    }
+
+    public String getAffinityHeader () {
+
+        return affinityHeader;
+    }
+
+    public void setAffinityHeader (final String affinityHeader) {
+
+        this.affinityHeader = affinityHeader;
+    }
+
+    public int getVirtualNodes () {
+
+        return virtualNodes;
+    }
+
+    public void setVirtualNodes (final int virtualNodes) {
+
+        this.virtualNodes = virtualNodes;
+    }
+
+    // *************************************************************************
+    // ** Member methods
+    // *************************************************************************
+
+    /**
+     * @return a new {@link IQueueSelector} for a single queue group
+     */
+    public IQueueSelector buildSelector () {
+
+        if (strategy == Strategy.LeastDepth) {
+            return new LeastDepthQueueSelector ();
+        } else if (strategy == Strategy.KeyAffinity) {
+            return new KeyAffinityQueueSelector (affinityHeader, virtualNodes);
+        }
+
+        return new RoundRobinQueueSelector ();
+    }
+
+    // *************************************************************************
+    // ** Class methods
+    // *************************************************************************
+
+    @Override
+    public String toString () {
+
+        return Objects.toStringHelper (this).add ("strategy", strategy).add ("affinityHeader", affinityHeader)
+                .add ("virtualNodes", virtualNodes).toString ();
+    }
+}
@@ -0,0 +1,160 @@
+/*******************************************************************************
+ * Copyright 2014 Reality Warp Software
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.rws.pirkolator.core.engine;
+
+import java.io.Serializable;
+
+import javax.annotation.Nullable;
+
+import com.google.common.base.Objects;
+import com.rws.pirkolator.core.engine.queue.BoundedBlockingQueue;
+
+/**
+ * <p>This class defines the capacity of a queue in the delivery chain and what
+ * happens to a message that arrives when the queue is full.  It is used for the
+ * sending queue of a {@link DistributionPolicy}, the receiving queue of each
+ * {@link Subscription} and the transform queue of the Transformer, e.g.
+ *
+ * <pre>
+ * &lt;bean class="com.rws.pirkolator.core.engine.QueuePolicy"&gt;
+ *     &lt;property name="capacity" value="10000" /&gt;
+ *     &lt;property name="overflow" value="SpillToDisk" /&gt;
+ *     &lt;property name="spillDirectory" value="/var/spool/pirkolator" /&gt;
+ * &lt;/bean&gt;
+ * </pre>
+ *
+ * <p><ul>
+ * <li>Block - the producer waits for room; the time spent waiting is counted.</li>
+ * <li>DropOldest - the oldest queued message is discarded to make room.</li>
+ * <li>DropNewest - the arriving message is discarded.</li>
+ * <li>SpillToDisk - the arriving message is written to a file and read back in
+ *      order as the queue drains.</li>
+ * </ul>
+ *
+ * @author jpirkey
+ * @since 1.0.0
+ */
+public class QueuePolicy implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    public enum Overflow {
+        Block, DropOldest, DropNewest, SpillToDisk
+    }
+
+    // *************************************************************************
+    // ** Member variables
+    // *************************************************************************
+
+    private int capacity = SystemResourceManager.QUEUE_CAPACITY;
+    private Overflow overflow = Overflow.Block;
+
+    /** Directory for SpillToDisk files; the system temporary directory if not set **/
+    @Nullable
+    private String spillDirectory;
+
+    // *************************************************************************
+    // ** Constructors
+    // *************************************************************************
+
+    public QueuePolicy () {
+
+        super ();
+    }
+
+    public QueuePolicy (final int capacity, final Overflow overflow) {
+
+        super ();
+
+        this.capacity = capacity;
+        this.overflow = overflow;
+    }
+
+    // *************************************************************************
+    // ** Member properties
+    // *************************************************************************
+
+    public int getCapacity () {
+
+        return capacity;
+    }
+
+    public void setCapacity (final int capacity) {
+
+        this.capacity = capacity;
+    }
+
+    public Overflow getOverflow () {
+
+        return overflow;
+    }
+
+    public void setOverflow (final Overflow overflow) {
+
+        this.overflow = overflow;
+    }
+
+    public @Nullable
+    String getSpillDirectory () {
+
+        return spillDirectory;
+    }
+
+    public void setSpillDirectory (final @Nullable String spillDirectory) {
+
+        this.spillDirectory = spillDirectory;
+    }
+
+    // *************************************************************************
+    // ** Member methods
+    // *************************************************************************
+
+    /**
+     * @return a new, empty {@link BoundedBlockingQueue} following this policy
+     */
+    public <E> BoundedBlockingQueue<E> buildQueue () {
+
+        return new BoundedBlockingQueue<> (capacity, overflow, spillDirectory);
+    }
+
+    // *************************************************************************
+    // ** Class methods
+    // *************************************************************************
+
+    @Override
+    public int hashCode () {
+
+        return Objects.hashCode (capacity, overflow, spillDirectory);
+    }
+
+    @Override
+    public boolean equals (final @Nullable Object object) {
+
+        if (object instanceof QueuePolicy) {
+            final QueuePolicy that = (QueuePolicy) object;
+            return capacity == that.capacity && Objects.equal (overflow, that.overflow)
+                    && Objects.equal (spillDirectory, that.spillDirectory);
+        }
+        return false;
+    }
+
+    @Override
+    public String toString () {
+
+        return Objects.toStringHelper (this).add ("capacity", capacity).add ("overflow", overflow)
+                .add ("spillDirectory", spillDirectory).toString ();
+    }
+}
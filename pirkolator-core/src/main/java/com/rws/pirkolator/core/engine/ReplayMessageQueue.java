@@ -0,0 +1,494 @@
+/*******************************************************************************
+ * Copyright 2014 Reality Warp Software
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.rws.pirkolator.core.engine;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.rws.utility.common.Preconditions.notNull;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.ImmutableSet;
+import com.hazelcast.core.IAtomicLong;
+import com.hazelcast.core.IMap;
+import com.hazelcast.core.MultiMap;
+import com.rws.pirkolator.core.engine.execution.AbstractLoopTask;
+import com.rws.pirkolator.core.engine.execution.ManagedBlocking;
+import com.rws.pirkolator.core.grid.HazelcastGrid;
+import com.rws.pirkolator.model.Message;
+import com.rws.pirkolator.model.MessageBatch;
+
+/**
+ * This class provides a {@link MessageQueue} over a bounded, sequence-numbered
+ * ring of {@link MessageBatch}es on the Hazelcast grid.  The publishing hub
+ * writes each batch to the slot of its sequence and then advances the ring's
+ * head.  Every hub with the publication reads the ring from its own offset,
+ * which is kept on the grid, so a hub that lags or restarts catches up from its
+ * last sequence without the publisher sending again.  The offset only moves
+ * past a batch once the router has routed all of its messages, so a restarted
+ * hub reads again the messages it had taken but not routed.
+ * 
+ * <p>A hub that falls more than the capacity behind loses the overwritten
+ * batches; they are counted and logged.  The capacity must be the same on every
+ * hub of the grid.
+ * 
+ * @author jpirkey
+ * @since 1.0.0
+ */
+public class ReplayMessageQueue extends MessageQueue {
+
+    private static final Logger LOG = notNull (LoggerFactory.getLogger (ReplayMessageQueue.class));
+
+    /** Default number of batches kept in the ring **/
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    /** Most batches fetched from the ring at once **/
+    static final int READ_SIZE = 64;
+
+    /** Capacity of the local queue the reader fills; a few reads, so the backlog stays on the ring **/
+    static final int LOCAL_CAPACITY = READ_SIZE * 4;
+
+    /** Bounds of the reader's back-off while the ring is idle **/
+    private static final long MIN_IDLE_NANOS = 10000L;
+    private static final long MAX_IDLE_NANOS = 1000000L;
+
+    // *************************************************************************
+    // ** Member variables
+    // *************************************************************************
+
+    private final String publisherKey;
+    private final int capacity;
+    private final BlockingQueue<Message> localQueue;
+
+    /** <p>Batches of the ring.
+     * <br/><b>Key = sequence modulo the capacity</b> **/
+    private final IMap<Long, MessageBatch> ringMap;
+
+    /** Sequence of the last batch written to the ring **/
+    private final IAtomicLong head;
+
+    /** Sequence of the next batch written by this queue, or -1 until the head is read **/
+    private long nextSequence = -1;
+
+    @Nullable
+    private volatile ReplayReader reader;
+    @Nullable
+    private volatile Future<?> readerFuture;
+
+    private final AtomicLong lostCount = new AtomicLong ();
+
+    /** <p>Hubs interested in each publisher, or null if acknowledgements are not counted.
+     * <br/><b>Key = publisher id</b> **/
+    @Nullable
+    private volatile MultiMap<String, String> interestMap;
+
+    // *************************************************************************
+    // ** Constructors
+    // *************************************************************************
+
+    /**
+     * @param grid
+     * @param publisherKey id of the publisher
+     * @param queueDescriptor
+     * @param capacity number of batches kept in the ring
+     */
+    public ReplayMessageQueue (final HazelcastGrid grid, final String publisherKey, final String queueDescriptor,
+            final int capacity) {
+
+        this (grid, publisherKey, queueDescriptor, capacity, new LinkedBlockingQueue<Message> (LOCAL_CAPACITY));
+    }
+
+    private ReplayMessageQueue (final HazelcastGrid grid, final String publisherKey, final String queueDescriptor,
+            final int capacity, final BlockingQueue<Message> localQueue) {
+
+        super (localQueue, publisherKey, queueDescriptor);
+
+        checkArgument (capacity > 0, "The ring capacity must be positive");
+
+        this.publisherKey = publisherKey;
+        this.capacity = capacity;
+        this.localQueue = localQueue;
+
+        ringMap = grid.getMap (ringName (publisherKey));
+        head = notNull (grid.getInstance ().getAtomicLong (ringName (publisherKey) + "-head"));
+    }
+
+    // *************************************************************************
+    // ** Member properties
+    // *************************************************************************
+
+    public int getCapacity () {
+
+        return capacity;
+    }
+
+    /**
+     * @return sequence of the last batch written to the ring
+     */
+    public long getHeadSequence () {
+
+        return head.get ();
+    }
+
+    /**
+     * @return number of batches overwritten before this hub read them
+     */
+    public long getLostBatchCount () {
+
+        return lostCount.get ();
+    }
+
+    /**
+     * Names the hubs expected to acknowledge messages put on the queue by the
+     * interest they advertise, as the queue itself reaches every hub.
+     * 
+     * @param interestMap hub keys interested in each publisher, keyed by publisher id
+     */
+    public void setInterestMap (final MultiMap<String, String> interestMap) {
+
+        this.interestMap = interestMap;
+    }
+
+    /**
+     * The hubs with subscriptions matching the publication acknowledge the
+     * messages they receive.
+     */
+    @Override
+    public Set<String> getAckTargets () {
+
+        final MultiMap<String, String> map = interestMap;
+        if (map == null) {
+            return super.getAckTargets ();
+        }
+
+        return notNull (ImmutableSet.copyOf (map.get (publisherKey)));
+    }
+
+    // *************************************************************************
+    // ** Member methods
+    // *************************************************************************
+
+    /**
+     * Starts reading the ring into this queue from the offset stored for the
+     * hub, or from the current head if the hub has not read the ring before.
+     * 
+     * @param resourceManager
+     * @param offsetMap last sequence routed by each hub
+     * @param offsetKey key of this hub's offset
+     */
+    public void startReading (final SystemResourceManager resourceManager, final IMap<String, Long> offsetMap,
+            final String offsetKey) {
+
+        final ReplayReader newReader = new ReplayReader (offsetMap, offsetKey);
+        reader = newReader;
+        readerFuture = resourceManager.submitLoop (newReader);
+    }
+
+    /**
+     * Stops reading and forgets the hub's offset, or, on the publishing hub,
+     * destroys the ring.
+     */
+    @Override
+    public void stop () {
+
+        final ReplayReader currentReader = reader;
+        if (currentReader == null) {
+            ringMap.destroy ();
+            head.destroy ();
+            return;
+        }
+
+        stopReading ();
+        currentReader.offsetMap.remove (currentReader.offsetKey);
+    }
+
+    /**
+     * Commits the hub's offset past the batches whose messages have all been
+     * routed.
+     */
+    @Override
+    public void routed (final int count) {
+
+        final ReplayReader currentReader = reader;
+        if (currentReader != null) {
+            currentReader.routed (count);
+        }
+    }
+
+    /**
+     * Stops reading but keeps the hub's offset, as a hub that goes down does.
+     */
+    void stopReading () {
+
+        final ReplayReader currentReader = reader;
+        if (currentReader != null) {
+            currentReader.stop ();
+        }
+
+        final Future<?> future = readerFuture;
+        if (future != null) {
+            future.cancel (true);
+        }
+    }
+
+    @Override
+    public boolean add (final @Nullable Message message) {
+
+        put (message);
+        return message != null;
+    }
+
+    @Override
+    public void put (final @Nullable Message message) {
+
+        if (message != null) {
+            write (notNull (Collections.singletonList (message)));
+        }
+    }
+
+    @Override
+    public void putAll (final Collection<? extends Message> messages) {
+
+        if (!messages.isEmpty ()) {
+            write (messages);
+        }
+    }
+
+    /**
+     * Writes a batch to its slot before advancing the head, so a reader never
+     * sees a sequence whose batch is not yet in the ring.  A publication has a
+     * single publishing hub, so only this queue writes the ring.
+     */
+    private synchronized void write (final Collection<? extends Message> messages) {
+
+        if (nextSequence < 0) {
+            nextSequence = head.get () + 1;
+        }
+
+        final long sequence = nextSequence;
+        ringMap.set (slot (sequence), new MessageBatch (getId (), sequence, messages));
+        head.set (sequence);
+        nextSequence = sequence + 1;
+    }
+
+    Long slot (final long sequence) {
+
+        return notNull (Long.valueOf (sequence % capacity));
+    }
+
+    // *************************************************************************
+    // ** Class methods
+    // *************************************************************************
+
+    /**
+     * @return name of the Hazelcast map holding the ring of a publisher
+     */
+    static String ringName (final String publisherKey) {
+
+        return "ring-" + publisherKey;
+    }
+
+    // *************************************************************************
+    // ** Member classes
+    // *************************************************************************
+
+    /**
+     * Moves the batches after the hub's offset into the local queue.  The reader
+     * waits for room in the local queue, so a slow hub falls behind on the ring
+     * rather than in memory.  The offset stored on the grid is committed as the
+     * router reports the messages it has routed.
+     */
+    private class ReplayReader extends AbstractLoopTask {
+
+        final IMap<String, Long> offsetMap;
+        final String offsetKey;
+
+        /** Last sequence moved to the local queue, or -1 until the offset is read **/
+        private long offset = -1;
+        private long idleNanos = MIN_IDLE_NANOS;
+
+        /** Batches moved to the local queue and not yet committed, in the order they were read **/
+        private final Deque<PendingBatch> pendingDeque = new ArrayDeque<> ();
+
+        ReplayReader (final IMap<String, Long> offsetMap, final String offsetKey) {
+
+            super ();
+
+            this.offsetMap = offsetMap;
+            this.offsetKey = offsetKey;
+        }
+
+        @Override
+        protected boolean pass (final boolean wait) {
+
+            try {
+                if (offset < 0) {
+                    final Long stored = offsetMap.get (offsetKey);
+                    offset = stored == null ? head.get () : stored.longValue ();
+                }
+
+                final long last = head.get ();
+                if (last < offset) {
+                    // The ring was recreated, so its sequence started again
+                    offset = 0;
+                }
+
+                if (last == offset) {
+                    if (wait) {
+                        LockSupport.parkNanos (idleNanos);
+                        idleNanos = Math.min (idleNanos * 2, MAX_IDLE_NANOS);
+                        if (Thread.interrupted ()) {
+                            stop ();
+                        }
+                    }
+                    return false;
+                }
+                idleNanos = MIN_IDLE_NANOS;
+
+                long first = offset + 1;
+                final long oldest = last - capacity + 1;
+                if (first < oldest) {
+                    lostCount.addAndGet (oldest - first);
+                    LOG.warn ("Hub fell behind on the ring of publisher {}; {} batch(es) were overwritten",
+                            publisherKey, Long.valueOf (oldest - first));
+                    first = oldest;
+                }
+
+                final long end = Math.min (last, first + READ_SIZE - 1);
+                final Set<Long> slotSet = new HashSet<> ();
+                for (long sequence = first; sequence <= end; sequence++) {
+                    slotSet.add (slot (sequence));
+                }
+
+                final Map<Long, MessageBatch> batchMap = ringMap.getAll (slotSet);
+                for (long sequence = first; sequence <= end; sequence++) {
+                    final MessageBatch batch = batchMap.get (slot (sequence));
+                    if (batch == null || batch.getSequence () != sequence) {
+                        // Overwritten between reading the head and the slots
+                        lostCount.incrementAndGet ();
+                        LOG.warn ("Batch {} of publisher {} was overwritten before it was read",
+                                Long.valueOf (sequence), publisherKey);
+                        continue;
+                    }
+
+                    // Tracked before its messages can be taken, so routing them commits the batch
+                    track (sequence, batch.getMessageList ().size ());
+                    for (final Message message : batch.getMessageList ()) {
+                        ManagedBlocking.put (localQueue, message);
+                    }
+                }
+
+                // Commits past lost batches once the batches before them are routed
+                track (end, 0);
+                offset = end;
+                return true;
+            } catch (final InterruptedException ie) {
+                stop ();
+
+                if (LOG.isDebugEnabled ()) {
+                    LOG.debug ("Reading the ring of publisher {} interrupted", publisherKey);
+                }
+            } catch (final Throwable ex) {
+                stop ();
+                LOG.warn ("Unable to read the ring of publisher " + publisherKey + ":  " + ex.getLocalizedMessage (),
+                        ex);
+            }
+
+            return false;
+        }
+
+        /**
+         * Counts routed messages against the pending batches in the order they
+         * were read and commits the offset past those fully routed.
+         */
+        void routed (final int count) {
+
+            synchronized (pendingDeque) {
+                int remaining = count;
+                for (final PendingBatch pending : pendingDeque) {
+                    if (remaining == 0) {
+                        break;
+                    }
+
+                    final int taken = Math.min (remaining, pending.remaining);
+                    pending.remaining -= taken;
+                    remaining -= taken;
+                }
+
+                commit ();
+            }
+        }
+
+        private void track (final long sequence, final int count) {
+
+            synchronized (pendingDeque) {
+                pendingDeque.addLast (new PendingBatch (sequence, count));
+                commit ();
+            }
+        }
+
+        /**
+         * Stores the sequence of the last batch routed in full.  Must hold the
+         * pending deque's lock.
+         */
+        private void commit () {
+
+            long committed = -1;
+            PendingBatch pending = pendingDeque.peekFirst ();
+            while (pending != null && pending.remaining == 0) {
+                committed = pendingDeque.removeFirst ().sequence;
+                pending = pendingDeque.peekFirst ();
+            }
+
+            if (committed >= 0) {
+                offsetMap.set (offsetKey, Long.valueOf (committed));
+            }
+        }
+    }
+
+    /**
+     * Batch moved to the local queue and the number of its messages not yet
+     * routed.
+     */
+    private static class PendingBatch {
+
+        final long sequence;
+        int remaining;
+
+        PendingBatch (final long sequence, final int remaining) {
+
+            super ();
+
+            this.sequence = sequence;
+            this.remaining = remaining;
+        }
+    }
+}
@@ -0,0 +1,123 @@
+/*******************************************************************************
+ * Copyright 2014 Reality Warp Software
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.rws.pirkolator.core.engine;
+
+import java.util.Collection;
+import java.util.Set;
+
+import com.google.common.base.Objects;
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * <p>This class provides an immutable snapshot of where a {@link PublicationManager}
+ * delivers its messages: the distributed queues of the Pub/Subs and the receiving
+ * queue groups of the matching local subscriptions.
+ *
+ * <p>A new table is built whenever the {@link Hub} registers or unregisters a
+ * publisher or subscriber and is published through a volatile reference, so the
+ * delivery tasks read the current targets as plain arrays without locking or
+ * allocating.  The arrays are shared and must not be modified.
+ *
+ * @author jpirkey
+ * @since 1.0.0
+ */
+public final class RoutingTable {
+
+    static final RoutingTable EMPTY = new RoutingTable (ImmutableSet.<MessageQueue> of (),
+            ImmutableSet.<IQueueGroupManager> of ());
+
+    // *************************************************************************
+    // ** Member variables
+    // *************************************************************************
+
+    private final MessageQueue[] distributedQueues;
+    private final IQueueGroupManager[] receivingQueueGroups;
+
+    /** Set views for reporting and registration, never used on the delivery path **/
+    private final Set<MessageQueue> distributedQueueSet;
+    private final Set<IQueueGroupManager> receivingQueueGroupSet;
+
+    // *************************************************************************
+    // ** Constructors
+    // *************************************************************************
+
+    RoutingTable (final Collection<MessageQueue> distributedQueueColl,
+            final Collection<IQueueGroupManager> receivingQueueGroupColl) {
+
+        super ();
+
+        distributedQueueSet = ImmutableSet.copyOf (distributedQueueColl);
+        receivingQueueGroupSet = ImmutableSet.copyOf (receivingQueueGroupColl);
+        distributedQueues = distributedQueueSet.toArray (new MessageQueue[distributedQueueSet.size ()]);
+        receivingQueueGroups =
+                receivingQueueGroupSet.toArray (new IQueueGroupManager[receivingQueueGroupSet.size ()]);
+    }
+
+    // *************************************************************************
+    // ** Member properties
+    // *************************************************************************
+
+    /**
+     * @return the shared array of distributed queues; do not modify
+     */
+    public MessageQueue[] getDistributedQueues () {
+
+        return distributedQueues;
+    }
+
+    /**
+     * @return the shared array of receiving queue groups; do not modify
+     */
+    public IQueueGroupManager[] getReceivingQueueGroups () {
+
+        return receivingQueueGroups;
+    }
+
+    public Set<MessageQueue> getDistributedQueueSet () {
+
+        return distributedQueueSet;
+    }
+
+    public Set<IQueueGroupManager> getReceivingQueueGroupSet () {
+
+        return receivingQueueGroupSet;
+    }
+
+    // *************************************************************************
+    // ** Member methods
+    // *************************************************************************
+
+    RoutingTable withDistributedQueues (final Collection<MessageQueue> distributedQueueColl) {
+
+        return new RoutingTable (distributedQueueColl, receivingQueueGroupSet);
+    }
+
+    RoutingTable withReceivingQueueGroups (final Collection<IQueueGroupManager> receivingQueueGroupColl) {
+
+        return new RoutingTable (distributedQueueSet, receivingQueueGroupColl);
+    }
+
+    // *************************************************************************
+    // ** Class methods
+    // *************************************************************************
+
+    @Override
+    public String toString () {
+
+        return Objects.toStringHelper (this).add ("distributedQueues", distributedQueues.length)
+                .add ("receivingQueueGroups", receivingQueueGroups.length).toString ();
+    }
+}
@@ -17,6 +17,7 @@ package com.rws.pirkolator.core.engine;
 
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.annotation.Nullable;
 
@@ -49,12 +50,27 @@ public class Subscription extends AbstractLabeledIdentifiable {
 
     /** Definitions **/
     private String description;
+    private MessageMode messageMode = MessageMode.Copy;
+    private QueuePolicy queuePolicy = new QueuePolicy ();
     private String groupName;
 
+    /** Number of workers delivering to the subscriber; each partition key keeps its order **/
+    private int concurrency = 1;
+
+    /** Header holding the partition key when the subscriber is not an IPartitionedSubscriber **/
+    @Nullable
+    private String partitionHeader;
+
+    /** Whether the subscriber's receive() blocks, such as on I/O, and needs a spare pool thread **/
+    private boolean blockingReceive = false;
+
     /** Filters **/
     private final Set<IFilter> filterSet = Sets.newConcurrentHashSet ();
     private final Set<IContentFilter> contentFilterSet = Sets.newConcurrentHashSet ();
 
+    /** Count of changes to the filters, so a plan compiled from them can tell it is stale **/
+    private final AtomicInteger version = new AtomicInteger ();
+
     // *************************************************************************
     // ** Constructors
     // *************************************************************************
@@ -95,6 +111,7 @@ public class Subscription extends AbstractLabeledIdentifiable {
 
         filterSet.clear ();
         filterSet.addAll (newSet);
+        version.incrementAndGet ();
     }
 
     public Set<IContentFilter> getContentFilterSet () {
@@ -106,6 +123,16 @@ public class Subscription extends AbstractLabeledIdentifiable {
 
         contentFilterSet.clear ();
         contentFilterSet.addAll (newSet);
+        version.incrementAndGet ();
+    }
+
+    /**
+     * @return count of changes to the filters; it changes whenever a filter is
+     *         added or a filter set is replaced
+     */
+    public int getVersion () {
+
+        return version.get ();
     }
 
     public String getDescription () {
@@ -118,6 +145,32 @@ public class Subscription extends AbstractLabeledIdentifiable {
         this.description = description;
     }
 
+    /**
+     * @return {@link MessageMode} used to share messages
+     */
+    public MessageMode getMessageMode () {
+
+        return messageMode;
+    }
+
+    public void setMessageMode (final MessageMode messageMode) {
+
+        this.messageMode = messageMode;
+    }
+
+    /**
+     * @return {@link QueuePolicy} of the subscriber's receiving queue
+     */
+    public QueuePolicy getQueuePolicy () {
+
+        return queuePolicy;
+    }
+
+    public void setQueuePolicy (final QueuePolicy queuePolicy) {
+
+        this.queuePolicy = queuePolicy;
+    }
+
     /**
      * @return {@link String} name of the group
      */
@@ -131,6 +184,64 @@ public class Subscription extends AbstractLabeledIdentifiable {
         this.groupName = groupName;
     }
 
+    /**
+     * @return number of workers delivering messages to the subscriber
+     */
+    public int getConcurrency () {
+
+        return concurrency;
+    }
+
+    /**
+     * Sets the number of workers delivering messages to the subscriber.  Above
+     * one, the subscriber's receive() and FilteredContent methods are called
+     * concurrently, but messages with the same partition key are delivered in
+     * order by the same worker.
+     */
+    public void setConcurrency (final int concurrency) {
+
+        this.concurrency = concurrency;
+    }
+
+    /**
+     * @return name of the header holding the partition key, or null if not defined
+     */
+    public @Nullable
+    String getPartitionHeader () {
+
+        return partitionHeader;
+    }
+
+    /**
+     * Sets the header used to partition messages across the workers.  Messages
+     * without the header, or all messages if no header is set, are delivered in
+     * order by the first worker.  An {@link IPartitionedSubscriber} provides its
+     * own keys instead.
+     */
+    public void setPartitionHeader (final @Nullable String partitionHeader) {
+
+        this.partitionHeader = partitionHeader;
+    }
+
+    /**
+     * @return true if the subscriber's receive() is declared to block
+     */
+    public boolean isBlockingReceive () {
+
+        return blockingReceive;
+    }
+
+    /**
+     * Declares that the subscriber's receive() blocks, such as on I/O or a lock.
+     * A pooled carrier then adds a spare pool thread for each delivery, so the
+     * other loops keep running while it blocks.  Leave it unset for subscribers
+     * that return promptly, as each spare thread adds to the pool's size.
+     */
+    public void setBlockingReceive (final boolean blockingReceive) {
+
+        this.blockingReceive = blockingReceive;
+    }
+
     // *************************************************************************
     // ** Member methods
     // *************************************************************************
@@ -142,6 +253,7 @@ public class Subscription extends AbstractLabeledIdentifiable {
         if (filter instanceof IContentFilter) {
             addContentFilter ((IContentFilter) filter);
         }
+        version.incrementAndGet ();
     }
 
     public boolean isDefined () {
@@ -189,7 +301,9 @@ public class Subscription extends AbstractLabeledIdentifiable {
     @Override
     public int hashCode () {
 
-        return Objects.hashCode (super.hashCode (), description, groupName, filterSet, contentFilterSet);
+        return Objects.hashCode (super.hashCode (), description, groupName, messageMode, queuePolicy,
+                Integer.valueOf (concurrency), partitionHeader, Boolean.valueOf (blockingReceive), filterSet,
+                contentFilterSet);
     }
 
     @Override
@@ -200,6 +314,9 @@ public class Subscription extends AbstractLabeledIdentifiable {
                 return false;
             final Subscription that = (Subscription) object;
             return Objects.equal (description, that.description) && Objects.equal (groupName, that.groupName)
+                    && Objects.equal (messageMode, that.messageMode) && Objects.equal (queuePolicy, that.queuePolicy)
+                    && concurrency == that.concurrency && Objects.equal (partitionHeader, that.partitionHeader)
+                    && blockingReceive == that.blockingReceive
                     && Objects.equal (filterSet, that.filterSet)
                     && Objects.equal (contentFilterSet, that.contentFilterSet);
         }
@@ -210,8 +327,10 @@ public class Subscription extends AbstractLabeledIdentifiable {
     public String toString () {
 
         return Objects.toStringHelper (this).add ("super", super.toString ()).add ("description", description)
-                .add ("groupName", groupName).add ("filterSet", filterSet).add ("contentFilterSet", contentFilterSet)
-                .toString ();
+                .add ("groupName", groupName).add ("messageMode", messageMode).add ("queuePolicy", queuePolicy)
+                .add ("concurrency", concurrency).add ("partitionHeader", partitionHeader)
+                .add ("blockingReceive", blockingReceive).add ("filterSet", filterSet)
+                .add ("contentFilterSet", contentFilterSet).toString ();
     }
 
 }
@@ -25,6 +25,8 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Future;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
+import javax.annotation.Nullable;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -68,15 +70,44 @@ public class SubscriptionManager {
 
     private final SystemResourceManager resourceManager;
 
+    /** Copies frozen messages for subscribers that want mutable messages **/
+    private final IMessageCopier copier;
+
+    /** Told of each message a subscriber of the group has received **/
+    private final DeliveryTracker deliveryTracker;
+
     // *************************************************************************
     // ** Constructors
     // *************************************************************************
 
     public SubscriptionManager (final SystemResourceManager resourceManager, final ISubscriber subscriber) {
 
+        this (resourceManager, subscriber, new QueueGroupPolicy (), new KryoMessageCopier ());
+    }
+
+    /**
+     * @param groupPolicy defines how messages are spread across the subscribers of the group
+     * @param copier copies frozen messages for subscribers that want mutable messages
+     */
+    public SubscriptionManager (final SystemResourceManager resourceManager, final ISubscriber subscriber,
+            final QueueGroupPolicy groupPolicy, final IMessageCopier copier) {
+
+        this (resourceManager, subscriber, groupPolicy, copier, new DeliveryTracker ());
+    }
+
+    /**
+     * @param groupPolicy defines how messages are spread across the subscribers of the group
+     * @param copier copies frozen messages for subscribers that want mutable messages
+     * @param deliveryTracker counts the deliveries of the hub's subscription groups
+     */
+    public SubscriptionManager (final SystemResourceManager resourceManager, final ISubscriber subscriber,
+            final QueueGroupPolicy groupPolicy, final IMessageCopier copier, final DeliveryTracker deliveryTracker) {
+
         super ();
 
         this.resourceManager = resourceManager;
+        this.copier = copier;
+        this.deliveryTracker = deliveryTracker;
         checkNotNull (subscriber);
 
         subscription = new Subscription ();
@@ -85,7 +116,9 @@ public class SubscriptionManager {
         subscription.setGroupName (subscriber.getSubscription ().getGroupName ());
 
         final MessageQueue queue = init (subscriber);
-        queueGroup = new DefaultMessageQueueGroup (queue, subscriber.getSubscription ().getGroupName ());
+        queueGroup =
+                new DefaultMessageQueueGroup (queue, subscriber.getSubscription ().getGroupName (),
+                        groupPolicy.buildSelector ());
     }
 
     // *************************************************************************
@@ -102,11 +135,25 @@ public class SubscriptionManager {
         return ImmutableSet.copyOf (subscriberIdSet);
     }
 
+    /**
+     * @return true if the group has a subscriber to deliver to
+     */
+    public boolean containsSubscribers () {
+
+        return !subscriberIdSet.isEmpty ();
+    }
+
     public IQueueGroupManager getSubscriberReceivingQueueGroupManager () {
 
         return queueGroup;
     }
 
+    public @Nullable
+    MessageCarrier getMessageCarrier (final UUID subscriberId) {
+
+        return messageCarrierMap.get (subscriberId);
+    }
+
     // *************************************************************************
     // ** Subscriber methods
     // *************************************************************************
@@ -123,7 +170,7 @@ public class SubscriptionManager {
             if (carrier == null) {
                 // Create a message consumer to deliver messages from 
                 // subscription group queues to the subscriber
-                carrier = new MessageCarrier (subscriber);
+                carrier = new MessageCarrier (subscriber, copier, deliveryTracker);
 
                 // Add to map
                 messageCarrierMap.put (subscriber.getId (), carrier);
@@ -139,7 +186,8 @@ public class SubscriptionManager {
             if (future == null || future.isCancelled ()) {
 
                 // Start the delegate and save the future for later cancellations
-                final Future<?> carrierFuture = resourceManager.getCachedThreadExecutor ().submit (carrier);
+                carrier.startWorkers (resourceManager);
+                final Future<?> carrierFuture = resourceManager.submitLoop (carrier);
                 messageCarrierFutureMap.put (subscriber.getId (), carrierFuture);
             }
         } finally {
@@ -159,7 +207,7 @@ public class SubscriptionManager {
             if (carrier == null) {
                 // Create a message consumer to deliver messages from 
                 // subscription group queues to the subscriber
-                carrier = new MessageCarrier (subscriber);
+                carrier = new MessageCarrier (subscriber, copier, deliveryTracker);
 
                 // Add to map
                 messageCarrierMap.put (subscriber.getId (), carrier);
@@ -174,7 +222,8 @@ public class SubscriptionManager {
             if (future == null || future.isCancelled ()) {
 
                 // Start the delegate and save the future for later cancellations
-                final Future<?> carrierFuture = resourceManager.getCachedThreadExecutor ().submit (carrier);
+                carrier.startWorkers (resourceManager);
+                final Future<?> carrierFuture = resourceManager.submitLoop (carrier);
                 messageCarrierFutureMap.put (subscriber.getId (), carrierFuture);
             }
 
@@ -190,6 +239,17 @@ public class SubscriptionManager {
 
         try {
             subscriberIdSet.remove (subscriberId);
+
+            // Stop routing to the carrier; it releases its queues when its loop exits
+            final MessageCarrier carrier = messageCarrierMap.remove (subscriberId);
+            if (carrier != null) {
+                queueGroup.removeQueue (carrier.getSubscriberReceivingQueue ());
+            }
+
+            final Future<?> future = messageCarrierFutureMap.remove (subscriberId);
+            if (future != null) {
+                future.cancel (true);
+            }
         } finally {
             deliveryLock.writeLock ().unlock ();
         }
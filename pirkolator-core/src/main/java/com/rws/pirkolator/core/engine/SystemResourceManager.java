@@ -22,26 +22,49 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinPool.ForkJoinWorkerThreadFactory;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
+import javax.annotation.Nullable;
 import javax.annotation.PreDestroy;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.rws.pirkolator.core.engine.execution.AbstractLoopTask;
+import com.rws.pirkolator.core.engine.execution.CooperativeLoop;
+import com.rws.pirkolator.core.engine.execution.ExecutionMode;
 import com.rws.utility.common.Globals;
 
 /**
  * This class provides centralized resource management as needed by threaded tasks.
  * This class helps to prevent to many threads being allocated on a JVM.
  * 
+ * <p>The delivery loops of publishers, subscribers and polled Pub/Sub queues are
+ * started with {@link #submitLoop(AbstractLoopTask)}.  By default each loop holds a
+ * thread; the {@link ExecutionMode#Pooled} mode runs them as cooperative tasks on a
+ * shared work-stealing pool so the thread count does not grow with the number of
+ * components, e.g.
+ *
+ * <pre>
+ * &lt;bean id="systemResourceManager" class="com.rws.pirkolator.core.engine.SystemResourceManager"&gt;
+ *     &lt;property name="executionMode" value="Pooled" /&gt;
+ *     &lt;property name="loopParallelism" value="8" /&gt;
+ *     &lt;property name="maxIdleMicros" value="500" /&gt;
+ * &lt;/bean&gt;
+ * </pre>
+ * 
  * @author jpirkey
  *
  */
@@ -65,11 +88,32 @@ public class SystemResourceManager {
                 .append ("- Allocated cores = ").append (CORES).append (Globals.DASH_LINE).toString ());
     }
 
-    public final Map<String, ExecutorService> sCachedPoolMap = new ConcurrentHashMap<> ();
+    public final ConcurrentMap<String, ExecutorService> sCachedPoolMap = new ConcurrentHashMap<> ();
     public final Map<String, ExecutorService> sFixedPoolMap = new ConcurrentHashMap<> ();
     public final Map<String, ScheduledExecutorService> sScheduledPoolMap = new ConcurrentHashMap<> ();
     public final ExecutorService sCachedThreadPool;
 
+    /** Delivery loop execution **/
+    private ExecutionMode executionMode = ExecutionMode.Dedicated;
+    private int loopParallelism = CORES;
+    private long maxIdleMicros = CooperativeLoop.DEFAULT_MAX_IDLE_MICROS;
+
+    @Nullable
+    private ForkJoinPool loopPool;
+
+    private static final String LOOP_IDLE_SERVICE = "pirkolator-loop-idle";
+
+    private static final ForkJoinWorkerThreadFactory LOOP_THREAD_FACTORY = new ForkJoinWorkerThreadFactory () {
+
+        @Override
+        public ForkJoinWorkerThread newThread (final @Nullable ForkJoinPool pool) {
+
+            final ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread (pool);
+            thread.setName ("pirkolator-loop-pool-" + thread.getPoolIndex ());
+            return notNull (thread);
+        }
+    };
+
     private static ThreadFactory buildThreadFactory (final String serviceName) {
 
         ThreadFactoryBuilder builder = new ThreadFactoryBuilder ();
@@ -91,45 +135,119 @@ public class SystemResourceManager {
         sCachedThreadPool = checkNotNull (service);
     }
 
+    public ExecutionMode getExecutionMode () {
+
+        return executionMode;
+    }
+
+    public void setExecutionMode (final ExecutionMode executionMode) {
+
+        this.executionMode = executionMode;
+    }
+
+    public int getLoopParallelism () {
+
+        return loopParallelism;
+    }
+
+    /**
+     * @param loopParallelism number of threads in the pool used by the Pooled execution mode
+     */
+    public void setLoopParallelism (final int loopParallelism) {
+
+        this.loopParallelism = loopParallelism;
+    }
+
+    public long getMaxIdleMicros () {
+
+        return maxIdleMicros;
+    }
+
+    /**
+     * @param maxIdleMicros longest time an idle pooled loop waits before looking for messages again
+     */
+    public void setMaxIdleMicros (final long maxIdleMicros) {
+
+        this.maxIdleMicros = maxIdleMicros;
+    }
+
+    /**
+     * Runs a delivery loop according to the {@link ExecutionMode}.
+     * 
+     * @param task
+     * @return {@link Future} used to cancel the loop
+     */
+    public Future<?> submitLoop (final AbstractLoopTask task) {
+
+        if (executionMode == ExecutionMode.Pooled) {
+            return CooperativeLoop.start (task, getLoopPool (), getScheduledThreadExecutor (LOOP_IDLE_SERVICE, 1),
+                    maxIdleMicros);
+        }
+
+        return checkNotNull (sCachedThreadPool.submit (task));
+    }
+
+    synchronized ForkJoinPool getLoopPool () {
+
+        ForkJoinPool pool = loopPool;
+        if (pool == null) {
+            pool = new ForkJoinPool (Math.max (1, loopParallelism), LOOP_THREAD_FACTORY, null, true);
+            loopPool = pool;
+        }
+
+        return pool;
+    }
+
     public ExecutorService getSingleThreadExecutor (final String serviceName) {
 
-        if (sCachedPoolMap.containsKey (serviceName)) {
-            final ExecutorService service = sCachedPoolMap.get (serviceName);
-            return checkNotNull (service);
+        final ExecutorService cached = sCachedPoolMap.get (serviceName);
+        if (cached != null) {
+            return cached;
         }
 
         final ExecutorService service = Executors.newSingleThreadExecutor (buildThreadFactory (serviceName));
-        checkNotNull (service);
-        sCachedPoolMap.put (serviceName, service);
-
-        return service;
+        return cacheSingleThreadExecutor (serviceName, checkNotNull (service));
     }
 
     public ExecutorService getSingleThreadExecutor (final String serviceName, final BlockingQueue<Runnable> queue) {
 
-        if (sCachedPoolMap.containsKey (serviceName)) {
-            final ExecutorService service = sCachedPoolMap.get (serviceName);
-            return checkNotNull (service);
+        final ExecutorService cached = sCachedPoolMap.get (serviceName);
+        if (cached != null) {
+            return cached;
         }
 
         final ExecutorService service =
                 new ThreadPoolExecutor (1, 1, 60, TimeUnit.SECONDS, queue, buildThreadFactory (serviceName));
-        sCachedPoolMap.put (serviceName, service);
-
-        return service;
+        return cacheSingleThreadExecutor (serviceName, service);
     }
 
     public ExecutorService getSingleThreadExecutor (final String serviceName, final int queueCapacity) {
 
-        if (sCachedPoolMap.containsKey (serviceName)) {
-            final ExecutorService service = sCachedPoolMap.get (serviceName);
-            return checkNotNull (service);
+        final ExecutorService cached = sCachedPoolMap.get (serviceName);
+        if (cached != null) {
+            return cached;
         }
 
         final ExecutorService service =
                 new ThreadPoolExecutor (1, 1, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable> (queueCapacity),
                         buildThreadFactory (serviceName));
-        sCachedPoolMap.put (serviceName, service);
+        return cacheSingleThreadExecutor (serviceName, service);
+    }
+
+    /**
+     * Caches a new single thread executor unless another caller cached one for
+     * the service first, in which case the new one is shut down, so every
+     * caller of a service shares one thread.
+     * 
+     * @return the executor cached for the service
+     */
+    private ExecutorService cacheSingleThreadExecutor (final String serviceName, final ExecutorService service) {
+
+        final ExecutorService existing = sCachedPoolMap.putIfAbsent (serviceName, service);
+        if (existing != null) {
+            service.shutdown ();
+            return existing;
+        }
 
         return service;
     }
@@ -248,6 +366,17 @@ public class SystemResourceManager {
             }
         }
 
+        synchronized (this) {
+            final ForkJoinPool pool = loopPool;
+            if (pool != null) {
+                pool.shutdown ();
+
+                if (LOG.isInfoEnabled ()) {
+                    LOG.info ("Shutdown loop pool");
+                }
+            }
+        }
+
         if (LOG.isTraceEnabled ()) {
             LOG.info ("Waiting for cached thread pool to shutdown...");
         }
@@ -15,49 +15,180 @@
  ******************************************************************************/
 package com.rws.pirkolator.core.engine;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.rws.utility.common.Preconditions.notNull;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 import javax.annotation.Nullable;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.collect.ImmutableSet;
 import com.hazelcast.core.ITopic;
 import com.hazelcast.core.MessageListener;
+import com.hazelcast.core.MultiMap;
 import com.rws.pirkolator.model.Message;
-import com.rws.utility.common.UUIDs;
+import com.rws.pirkolator.model.MessageBatch;
 
-public class TopicMessageQueue extends MessageQueue implements MessageListener<Message> {
+/**
+ * This class provides a {@link MessageQueue} over a Hazelcast {@link ITopic}.
+ * Messages put on the queue are published to the topic in a
+ * {@link MessageBatch}, and batches published by other queues on the topic are
+ * unpacked into the local queue.
+ * 
+ * <p>Messages wait in the queue until the batch size is reached, the linger
+ * time passes or the put that added them returns, when the linger time is 0.
+ * Batches are published under the queue's lock, so they leave in the order the
+ * messages were put.
+ * 
+ * @author jpirkey
+ * @since 1.0.0
+ */
+public class TopicMessageQueue extends MessageQueue implements MessageListener<MessageBatch> {
 
     private static final Logger LOG = notNull (LoggerFactory.getLogger (TopicMessageQueue.class));
 
-    private final ITopic<Message> topic;
-    
+    // *************************************************************************
+    // ** Member variables
+    // *************************************************************************
+
+    private final ITopic<MessageBatch> topic;
+
     private final String topicString;
-    
-    public TopicMessageQueue (final ITopic<Message> topic, final String queueName, final String queueDescriptor) {
+
+    /** <p>Hubs interested in each publisher, or null if acknowledgements are not counted.
+     * <br/><b>Key = publisher id</b> **/
+    @Nullable
+    private volatile MultiMap<String, String> interestMap;
+
+    /** Batching **/
+    private final int batchSize;
+    private final long lingerNanos;
+    @Nullable
+    private final ScheduledExecutorService flushService;
+
+    /** Messages waiting to be published, guarded by the pending lock **/
+    private final Object pendingLock = new Object ();
+    private final List<Message> pendingList;
+    @Nullable
+    private ScheduledFuture<?> flushFuture;
+
+    private final Runnable flushTask = new Runnable () {
+
+        @Override
+        public void run () {
+
+            flush ();
+        }
+    };
+
+    // *************************************************************************
+    // ** Constructors
+    // *************************************************************************
+
+    public TopicMessageQueue (final ITopic<MessageBatch> topic, final String queueName, final String queueDescriptor) {
+
+        this (topic, queueName, queueDescriptor, Integer.MAX_VALUE, 0, null);
+    }
+
+    /**
+     * @param topic
+     * @param queueName
+     * @param queueDescriptor
+     * @param batchSize most messages published in one batch; 1 publishes each message on its own
+     * @param lingerMicros longest time a message waits for its batch to fill; 0 publishes at the end of each put
+     * @param flushService runs the linger flushes; required if the linger time is above 0
+     */
+    public TopicMessageQueue (final ITopic<MessageBatch> topic, final String queueName, final String queueDescriptor,
+            final int batchSize, final long lingerMicros, @Nullable final ScheduledExecutorService flushService) {
 
         super (new LinkedBlockingQueue<Message> (), queueName, queueDescriptor);
 
+        checkArgument (batchSize > 0, "Batch size must be at least 1");
+        checkArgument (lingerMicros <= 0 || flushService != null, "A linger time requires a flush service");
+
         this.topic = topic;
+        this.batchSize = batchSize;
+        this.flushService = flushService;
+        lingerNanos = TimeUnit.MICROSECONDS.toNanos (Math.max (0, lingerMicros));
+        pendingList = new ArrayList<> ();
 
         topicString = topic.addMessageListener (this);
     }
 
+    // *************************************************************************
+    // ** Member properties
+    // *************************************************************************
+
+    public int getBatchSize () {
+
+        return batchSize;
+    }
+
+    /**
+     * Names the hubs expected to acknowledge messages put on the queue by the
+     * interest they advertise, as the queue itself reaches every hub.
+     * 
+     * @param interestMap hub keys interested in each publisher, keyed by publisher id
+     */
+    public void setInterestMap (final MultiMap<String, String> interestMap) {
+
+        this.interestMap = interestMap;
+    }
+
+    /**
+     * The hubs with subscriptions matching the publication acknowledge the
+     * messages they receive.
+     */
+    @Override
+    public Set<String> getAckTargets () {
+
+        final MultiMap<String, String> map = interestMap;
+        if (map == null) {
+            return super.getAckTargets ();
+        }
+
+        return notNull (ImmutableSet.copyOf (map.get (getQueueName ())));
+    }
+
+    // *************************************************************************
+    // ** Member methods
+    // *************************************************************************
+
+    /**
+     * Publishes the waiting messages and stops listening to the topic.
+     */
+    @Override
     public void stop () {
 
+        flush ();
         topic.removeMessageListener (topicString);
     }
 
+    /**
+     * Publishes the waiting messages now.
+     */
+    public void flush () {
+
+        synchronized (pendingLock) {
+            publishPending ();
+        }
+    }
+
     @Override
     public boolean add (final @Nullable Message message) {
 
         if (message != null) {
-            message.addHeader ("topic-publisher", UUIDs.toString (getId ()));
-            topic.publish (message);
-
+            put (message);
             return true;
         }
 
@@ -68,25 +199,73 @@ public class TopicMessageQueue extends MessageQueue implements MessageListener<M
     public void put (final @Nullable Message message) {
 
         if (message != null) {
-            message.addHeader ("topic-publisher", UUIDs.toString (getId ()));
-            topic.publish (message);
+            synchronized (pendingLock) {
+                addPending (message);
+                if (lingerNanos == 0) {
+                    publishPending ();
+                }
+            }
         }
     }
 
     @Override
-    public void onMessage (final @Nullable com.hazelcast.core.Message<Message> message) {
+    public void putAll (final Collection<? extends Message> messages) {
+
+        synchronized (pendingLock) {
+            for (final Message message : messages) {
+                addPending (notNull (message));
+            }
+            if (lingerNanos == 0) {
+                publishPending ();
+            }
+        }
+    }
+
+    @Override
+    public void onMessage (final @Nullable com.hazelcast.core.Message<MessageBatch> message) {
 
         if (message != null) {
-            final Message msg = message.getMessageObject ();
-            final String publishingId = msg.getHeader ("topic-publisher");
+            final MessageBatch batch = message.getMessageObject ();
 
-            if (!getId ().toString ().equals (publishingId)) {
+            // Skip the batches this queue published
+            if (!getId ().equals (batch.getSourceId ())) {
                 try {
-                    super.put (message.getMessageObject ());
+                    for (final Message msg : batch.getMessageList ()) {
+                        super.put (msg);
+                    }
                 } catch (final InterruptedException ex) {
                     LOG.warn ("MessageQueue put interrupted");
+                    Thread.currentThread ().interrupt ();
                 }
             }
         }
     }
+
+    private void addPending (final Message message) {
+
+        pendingList.add (message);
+        if (pendingList.size () >= batchSize) {
+            publishPending ();
+        } else if (pendingList.size () == 1 && lingerNanos > 0) {
+            flushFuture = notNull (flushService).schedule (flushTask, lingerNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void publishPending () {
+
+        final ScheduledFuture<?> future = flushFuture;
+        if (future != null) {
+            future.cancel (false);
+            flushFuture = null;
+        }
+
+        if (!pendingList.isEmpty ()) {
+            topic.publish (new MessageBatch (getId (), pendingList));
+            pendingList.clear ();
+
+            if (LOG.isTraceEnabled ()) {
+                LOG.trace ("Published batch on topic {}", getQueueName ());
+            }
+        }
+    }
 }
@@ -18,13 +18,15 @@ package com.rws.pirkolator.core.engine.channel;
 import java.io.Serializable;
 import java.util.Collection;
 
+import com.google.common.util.concurrent.ListenableFuture;
 import com.rws.pirkolator.core.engine.MessageDistributor;
 import com.rws.pirkolator.core.transform.Transformer;
 import com.rws.pirkolator.model.Message;
 
 /**
  * This final class provides an asynchronous implementation for an
- * {@link IPubSubChannel}.
+ * {@link IPubSubChannel}.  Each message is stamped with the time it entered
+ * the channel so the Hub can measure the publishing latency.
  * 
  * @author jpirkey
  * @since 0.1.0
@@ -50,15 +52,35 @@ public final class AsyncPubSubChannel implements IPubSubChannel {
     @Override
     public void publish (final Serializable object, final boolean copy) {
 
+        final long enteredNanos = System.nanoTime ();
         final Message message = new Message ();
+        message.setEnteredNanos (enteredNanos);
         message.add (object);
         distributor.publish (message, copy);
     }
 
+    @Override
+    public ListenableFuture<Integer> publishAndAck (final Serializable object) {
+
+        return publishAndAck (object, true);
+    }
+
+    @Override
+    public ListenableFuture<Integer> publishAndAck (final Serializable object, final boolean copy) {
+
+        final long enteredNanos = System.nanoTime ();
+        final Message message = new Message ();
+        message.setEnteredNanos (enteredNanos);
+        message.add (object);
+        return distributor.publishAndAck (message, copy);
+    }
+
     @Override
     public void publishAll (final Collection<? extends Serializable> objects) {
 
+        final long enteredNanos = System.nanoTime ();
         final Message message = new Message ();
+        message.setEnteredNanos (enteredNanos);
         message.add (objects);
         distributor.publish (message);
     }
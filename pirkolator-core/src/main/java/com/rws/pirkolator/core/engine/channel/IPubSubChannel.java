@@ -18,7 +18,7 @@ package com.rws.pirkolator.core.engine.channel;
 import java.io.Serializable;
 import java.util.Collection;
 
-//TODO jpirkey - add publish with return ACK
+import com.google.common.util.concurrent.ListenableFuture;
 
 /**
  * This interface describes a Pub/Sub channel that is used to publish
@@ -48,6 +48,31 @@ public interface IPubSubChannel {
      */
     void publish (Serializable object, boolean copy);
 
+    /**
+     * Publishes a single object and returns a future completed once each hub
+     * the message is routed to, local or remote, has put it on the receiving
+     * queues of its matching subscribers.  The future fails with a
+     * TimeoutException if that takes longer than the publisher's ack timeout.
+     * 
+     * <p>Remote hubs are counted only when the grid routes by interest; other
+     * routings cannot name the hubs they reach, so only the local hub is
+     * counted, and a message with no local subscriber completes with 0.
+     *
+     * @param object
+     * @return future of the number of hubs that received the message
+     */
+    ListenableFuture<Integer> publishAndAck (Serializable object);
+
+    /**
+     * Publishes a single object with acknowledgement. The copy parameter
+     * determines if the object is copied or passed by reference.
+     *
+     * @param object
+     * @param copy
+     * @return future of the number of hubs that received the message
+     */
+    ListenableFuture<Integer> publishAndAck (Serializable object, boolean copy);
+
     /**
      * Iterates the collection to publish each object.
      *
@@ -0,0 +1,93 @@
+/*******************************************************************************
+ * Copyright 2014 Reality Warp Software
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.rws.pirkolator.core.engine.delivery;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nullable;
+
+import com.rws.pirkolator.model.Message;
+
+/**
+ * This interface describes the hand-off between the publishing threads of a
+ * MessageDistributor and the single task that fans messages out to the
+ * publication's queues.  Implementations must support many concurrent callers
+ * of {@link #put(Message)} and a single caller of {@link #take()}.
+ *
+ * @author jpirkey
+ * @since 1.0.0
+ */
+public interface IDeliveryEngine {
+
+    /**
+     * Hands a message to the engine, waiting if the engine has no room.
+     *
+     * @param message
+     * @throws InterruptedException
+     */
+    void put (Message message) throws InterruptedException;
+
+    /**
+     * Waits for and removes the next message from the engine.
+     *
+     * @return the next {@link Message}
+     * @throws InterruptedException
+     */
+    Message take () throws InterruptedException;
+
+    /**
+     * Waits up to the timeout for the next message.
+     *
+     * @param timeout
+     * @param unit
+     * @return the next {@link Message} or null if the timeout elapsed
+     * @throws InterruptedException
+     */
+    @Nullable
+    Message poll (long timeout, TimeUnit unit) throws InterruptedException;
+
+    /**
+     * Removes the messages that are immediately available, without waiting,
+     * and adds them to the collection in the order they were put.
+     *
+     * @param collection
+     * @param maxElements
+     * @return the number of messages added
+     */
+    int drainTo (Collection<? super Message> collection, int maxElements);
+
+    /**
+     * @return the approximate number of messages waiting to be taken
+     */
+    int size ();
+
+    /**
+     * @return number of messages the engine has discarded because it was full
+     */
+    long getDroppedCount ();
+
+    /**
+     * @return total time callers of {@link #put(Message)} have waited for room
+     */
+    long getBlockedNanos ();
+
+    /**
+     * Releases anything the engine holds, such as a spill file, once the
+     * distributor is destroyed.  Messages still waiting may be lost.
+     */
+    void close ();
+}
@@ -0,0 +1,128 @@
+/*******************************************************************************
+ * Copyright 2014 Reality Warp Software
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.rws.pirkolator.core.engine.delivery;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.rws.pirkolator.model.Message;
+
+/**
+ * <p>This class collects messages from an {@link IDeliveryEngine} into batches
+ * so a delivery task can resolve its routing once and hand many messages to each
+ * receiving queue.
+ *
+ * <p>Each batch blocks for its first message and then drains whatever else is
+ * already available, up to the batch size.  If a linger time is set and the
+ * batch is not full, it waits up to that long in total for more messages before
+ * returning a partial batch.
+ *
+ * @author jpirkey
+ * @since 1.0.0
+ */
+public class MessageBatcher {
+
+    // *************************************************************************
+    // ** Member variables
+    // *************************************************************************
+
+    private final IDeliveryEngine engine;
+    private final int batchSize;
+    private final long lingerNanos;
+
+    // *************************************************************************
+    // ** Constructors
+    // *************************************************************************
+
+    /**
+     * @param engine
+     * @param batchSize maximum number of messages in a batch
+     * @param lingerMicros maximum time to wait for a batch to fill, zero to never wait
+     */
+    public MessageBatcher (final IDeliveryEngine engine, final int batchSize, final long lingerMicros) {
+
+        super ();
+
+        if (batchSize < 1) {
+            throw new IllegalArgumentException ("Batch size must be positive, but was " + batchSize);
+        }
+
+        this.engine = engine;
+        this.batchSize = batchSize;
+        lingerNanos = TimeUnit.MICROSECONDS.toNanos (Math.max (0, lingerMicros));
+    }
+
+    // *************************************************************************
+    // ** Member properties
+    // *************************************************************************
+
+    public int getBatchSize () {
+
+        return batchSize;
+    }
+
+    // *************************************************************************
+    // ** Member methods
+    // *************************************************************************
+
+    /**
+     * Fills the batch with the next messages in the order they were put.  The
+     * batch is expected to be empty and always has at least one message on return.
+     *
+     * @param batch
+     * @throws InterruptedException
+     */
+    public void next (final List<Message> batch) throws InterruptedException {
+
+        batch.add (engine.take ());
+
+        if (batchSize == 1) {
+            return;
+        }
+
+        engine.drainTo (batch, batchSize - batch.size ());
+
+        if (lingerNanos > 0) {
+            final long deadline = System.nanoTime () + lingerNanos;
+            while (batch.size () < batchSize) {
+                final long remaining = deadline - System.nanoTime ();
+                if (remaining <= 0) {
+                    break;
+                }
+
+                final Message message = engine.poll (remaining, TimeUnit.NANOSECONDS);
+                if (message == null) {
+                    break;
+                }
+
+                batch.add (message);
+                engine.drainTo (batch, batchSize - batch.size ());
+            }
+        }
+    }
+
+    /**
+     * Fills the batch with the messages that are immediately available without
+     * waiting, for loops that share a pool and must not block it.
+     *
+     * @param batch
+     * @return true if any messages were added to the batch
+     */
+    public boolean poll (final List<Message> batch) {
+
+        return engine.drainTo (batch, batchSize - batch.size ()) > 0;
+    }
+}
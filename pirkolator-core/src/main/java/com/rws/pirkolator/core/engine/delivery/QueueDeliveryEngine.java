@@ -0,0 +1,130 @@
+/*******************************************************************************
+ * Copyright 2014 Reality Warp Software
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.rws.pirkolator.core.engine.delivery;
+
+import static com.rws.utility.common.Preconditions.notNull;
+
+import java.util.Collection;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nullable;
+
+import com.rws.pirkolator.core.engine.QueuePolicy;
+import com.rws.pirkolator.core.engine.execution.ManagedBlocking;
+import com.rws.pirkolator.core.engine.queue.BoundedBlockingQueue;
+import com.rws.pirkolator.model.Message;
+
+/**
+ * This class provides the default {@link IDeliveryEngine} backed by a
+ * {@link BoundedBlockingQueue}, or by an existing {@link BlockingQueue} such as
+ * a polled Pub/Sub queue.
+ *
+ * @author jpirkey
+ * @since 1.0.0
+ */
+public class QueueDeliveryEngine implements IDeliveryEngine {
+
+    // *************************************************************************
+    // ** Member variables
+    // *************************************************************************
+
+    private final BlockingQueue<Message> queue;
+
+    // *************************************************************************
+    // ** Constructors
+    // *************************************************************************
+
+    public QueueDeliveryEngine () {
+
+        this (new QueuePolicy ());
+    }
+
+    public QueueDeliveryEngine (final QueuePolicy policy) {
+
+        this (policy.<Message> buildQueue ());
+    }
+
+    public QueueDeliveryEngine (final BlockingQueue<Message> queue) {
+
+        super ();
+
+        this.queue = queue;
+    }
+
+    // *************************************************************************
+    // ** IDeliveryEngine implementation
+    // *************************************************************************
+
+    @Override
+    public void put (final Message message) throws InterruptedException {
+
+        ManagedBlocking.put (queue, message);
+    }
+
+    @Override
+    public Message take () throws InterruptedException {
+
+        return notNull (queue.take ());
+    }
+
+    @Override
+    public @Nullable
+    Message poll (final long timeout, final TimeUnit unit) throws InterruptedException {
+
+        return queue.poll (timeout, unit);
+    }
+
+    @Override
+    public int drainTo (final Collection<? super Message> collection, final int maxElements) {
+
+        return queue.drainTo (collection, maxElements);
+    }
+
+    @Override
+    public int size () {
+
+        return queue.size ();
+    }
+
+    @Override
+    public long getDroppedCount () {
+
+        if (queue instanceof BoundedBlockingQueue) {
+            return ((BoundedBlockingQueue<Message>) queue).getDroppedCount ();
+        }
+
+        return 0;
+    }
+
+    @Override
+    public long getBlockedNanos () {
+
+        if (queue instanceof BoundedBlockingQueue) {
+            return ((BoundedBlockingQueue<Message>) queue).getBlockedNanos ();
+        }
+
+        return 0;
+    }
+
+    @Override
+    public void close () {
+
+        if (queue instanceof BoundedBlockingQueue) {
+            ((BoundedBlockingQueue<Message>) queue).close ();
+        }
+    }
+}
@@ -0,0 +1,298 @@
+/*******************************************************************************
+ * Copyright 2014 Reality Warp Software
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.rws.pirkolator.core.engine.delivery;
+
+import java.util.Collection;
+import java.util.concurrent.ForkJoinPool.ManagedBlocker;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import javax.annotation.Nullable;
+
+import com.rws.pirkolator.core.engine.execution.ManagedBlocking;
+import com.rws.pirkolator.model.Message;
+
+/**
+ * <p>This class provides a lock-free, pre-allocated, multi-producer and single
+ * consumer {@link IDeliveryEngine}.
+ *
+ * <p>Producers claim a sequence with a single atomic increment and write the
+ * message into the slot for that sequence once the consumer has freed it.  The
+ * consumer reads slots in sequence order, clears each slot and then advances
+ * its cursor, which is what frees the slot for the producer one lap ahead.  Both
+ * sides wait using the configured {@link WaitStrategy}.  The buffer is bounded by
+ * its size, so a full buffer always makes producers wait.
+ *
+ * @author jpirkey
+ * @since 1.0.0
+ */
+public class RingBufferDeliveryEngine implements IDeliveryEngine {
+
+    public static final int DEFAULT_BUFFER_SIZE = 1024 * 16;
+
+    // *************************************************************************
+    // ** Member variables
+    // *************************************************************************
+
+    private final AtomicReferenceArray<Message> entries;
+    private final int bufferSize;
+    private final int mask;
+    private final WaitStrategy waitStrategy;
+
+    /** Next sequence to be claimed by a producer **/
+    private final AtomicLong claimSequence = new AtomicLong ();
+
+    /** Next sequence to be taken by the consumer **/
+    private final AtomicLong consumerSequence = new AtomicLong ();
+
+    /** Time producers have spent waiting for a free slot **/
+    private final AtomicLong blockedNanos = new AtomicLong ();
+
+    // *************************************************************************
+    // ** Constructors
+    // *************************************************************************
+
+    public RingBufferDeliveryEngine () {
+
+        this (DEFAULT_BUFFER_SIZE, WaitStrategy.Yield);
+    }
+
+    /**
+     * @param requestedSize rounded up to the next power of two
+     * @param waitStrategy
+     */
+    public RingBufferDeliveryEngine (final int requestedSize, final WaitStrategy waitStrategy) {
+
+        super ();
+
+        if (requestedSize < 1) {
+            throw new IllegalArgumentException ("Ring buffer size must be positive, but was " + requestedSize);
+        }
+
+        bufferSize = requestedSize == 1 ? 1 : Integer.highestOneBit (requestedSize - 1) << 1;
+        mask = bufferSize - 1;
+        entries = new AtomicReferenceArray<> (bufferSize);
+        this.waitStrategy = waitStrategy;
+    }
+
+    // *************************************************************************
+    // ** Member properties
+    // *************************************************************************
+
+    public int getBufferSize () {
+
+        return bufferSize;
+    }
+
+    public WaitStrategy getWaitStrategy () {
+
+        return waitStrategy;
+    }
+
+    // *************************************************************************
+    // ** IDeliveryEngine implementation
+    // *************************************************************************
+
+    /**
+     * Waits for a free slot if the buffer is full.  An interrupt is only
+     * honoured before a slot is claimed; once a sequence is claimed the slot
+     * must be published, or the consumer would wait on it forever, so the wait
+     * continues and the interrupt is restored when the message is in place.
+     */
+    @Override
+    public void put (final Message message) throws InterruptedException {
+
+        if (Thread.interrupted ()) {
+            throw new InterruptedException ();
+        }
+
+        final long sequence = claimSequence.getAndIncrement ();
+        final long wrapPoint = sequence - bufferSize;
+
+        // Wait until the consumer has taken the message one lap behind us
+        boolean interrupted = false;
+        if (wrapPoint >= consumerSequence.get ()) {
+            final long start = System.nanoTime ();
+            final SlotBlocker blocker = new SlotBlocker (wrapPoint);
+            try {
+                // A pooled loop waiting here gets a spare pool thread
+                ManagedBlocking.block (blocker);
+            } finally {
+                blockedNanos.addAndGet (System.nanoTime () - start);
+            }
+            interrupted = blocker.interrupted;
+        }
+
+        entries.lazySet ((int) sequence & mask, message);
+
+        if (interrupted) {
+            Thread.currentThread ().interrupt ();
+        }
+    }
+
+    @Override
+    public Message take () throws InterruptedException {
+
+        final long sequence = consumerSequence.get ();
+        final int index = (int) sequence & mask;
+
+        int counter = 0;
+        Message message = entries.get (index);
+        while (message == null) {
+            if (Thread.interrupted ()) {
+                throw new InterruptedException ();
+            }
+            counter = waitStrategy.idle (counter);
+            message = entries.get (index);
+        }
+
+        // Clear the slot before releasing it to the producers
+        entries.lazySet (index, null);
+        consumerSequence.lazySet (sequence + 1);
+
+        return message;
+    }
+
+    @Override
+    public @Nullable
+    Message poll (final long timeout, final TimeUnit unit) throws InterruptedException {
+
+        final long sequence = consumerSequence.get ();
+        final int index = (int) sequence & mask;
+        final long deadline = System.nanoTime () + unit.toNanos (timeout);
+
+        int counter = 0;
+        Message message = entries.get (index);
+        while (message == null) {
+            if (Thread.interrupted ()) {
+                throw new InterruptedException ();
+            }
+            if (System.nanoTime () - deadline >= 0) {
+                return null;
+            }
+            counter = waitStrategy.idle (counter);
+            message = entries.get (index);
+        }
+
+        entries.lazySet (index, null);
+        consumerSequence.lazySet (sequence + 1);
+
+        return message;
+    }
+
+    @Override
+    public int drainTo (final Collection<? super Message> collection, final int maxElements) {
+
+        long sequence = consumerSequence.get ();
+        int count = 0;
+
+        while (count < maxElements) {
+            final int index = (int) sequence & mask;
+            final Message message = entries.get (index);
+            if (message == null) {
+                break;
+            }
+
+            collection.add (message);
+            entries.lazySet (index, null);
+            sequence++;
+            count++;
+        }
+
+        // Release every drained slot with a single cursor update
+        if (count > 0) {
+            consumerSequence.lazySet (sequence);
+        }
+
+        return count;
+    }
+
+    @Override
+    public int size () {
+
+        final long size = claimSequence.get () - consumerSequence.get ();
+        if (size < 0) {
+            return 0;
+        }
+
+        return (int) Math.min (size, bufferSize);
+    }
+
+    /**
+     * @return always 0; producers wait for a free slot instead
+     */
+    @Override
+    public long getDroppedCount () {
+
+        return 0;
+    }
+
+    @Override
+    public long getBlockedNanos () {
+
+        return blockedNanos.get ();
+    }
+
+    @Override
+    public void close () {
+
+        // The ring is on the heap, so there is nothing to release
+    }
+
+    // *************************************************************************
+    // ** Member classes
+    // *************************************************************************
+
+    /**
+     * Waits for the consumer to free the slot a claimed sequence wraps onto.
+     * An interrupt is recorded rather than thrown, since the claimed slot must
+     * still be published.
+     */
+    private class SlotBlocker implements ManagedBlocker {
+
+        private final long wrapPoint;
+        boolean interrupted = false;
+
+        SlotBlocker (final long wrapPoint) {
+
+            super ();
+
+            this.wrapPoint = wrapPoint;
+        }
+
+        @Override
+        public boolean block () {
+
+            int counter = 0;
+            while (wrapPoint >= consumerSequence.get ()) {
+                // Clear the flag so a parking strategy still parks
+                if (Thread.interrupted ()) {
+                    interrupted = true;
+                }
+                counter = waitStrategy.idle (counter);
+            }
+
+            return true;
+        }
+
+        @Override
+        public boolean isReleasable () {
+
+            return wrapPoint < consumerSequence.get ();
+        }
+    }
+}
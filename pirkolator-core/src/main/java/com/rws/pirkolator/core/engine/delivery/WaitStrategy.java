@@ -0,0 +1,88 @@
+/*******************************************************************************
+ * Copyright 2014 Reality Warp Software
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.rws.pirkolator.core.engine.delivery;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * <p>Defines how a thread waits on a {@link RingBufferDeliveryEngine} when there
+ * is nothing to take or no room to put.
+ *
+ * <p><ul>
+ * <li>BusySpin - never gives up the core; lowest latency, burns a full core per waiter.</li>
+ * <li>Yield - spins briefly and then yields the core to other threads.</li>
+ * <li>Park - spins, yields and then parks for a short period; lowest CPU use
+ *      when idle at the cost of wake-up latency.</li>
+ * </ul>
+ *
+ * @author jpirkey
+ * @since 1.0.0
+ */
+public enum WaitStrategy {
+
+    BusySpin {
+
+        @Override
+        public int idle (final int counter) {
+
+            return counter + 1;
+        }
+    },
+
+    Yield {
+
+        @Override
+        public int idle (final int counter) {
+
+            if (counter < SPIN_TRIES) {
+                return counter + 1;
+            }
+
+            Thread.yield ();
+            return counter;
+        }
+    },
+
+    Park {
+
+        @Override
+        public int idle (final int counter) {
+
+            if (counter < SPIN_TRIES) {
+                return counter + 1;
+            } else if (counter < SPIN_TRIES + YIELD_TRIES) {
+                Thread.yield ();
+                return counter + 1;
+            }
+
+            LockSupport.parkNanos (PARK_NANOS);
+            return counter;
+        }
+    };
+
+    static final int SPIN_TRIES = 100;
+    static final int YIELD_TRIES = 100;
+    static final long PARK_NANOS = 100000L;
+
+    /**
+     * Waits once.  Callers start with a counter of zero, pass the returned
+     * counter back in on each retry and reset it once work is available.
+     *
+     * @param counter
+     * @return the counter to use on the next call
+     */
+    public abstract int idle (int counter);
+}
@@ -0,0 +1,119 @@
+/*******************************************************************************
+ * Copyright 2014 Reality Warp Software
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.rws.pirkolator.core.engine.execution;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * <p>This class defines a delivery loop as a series of passes so that the loop
+ * can either hold its own thread or share a pool.
+ *
+ * <p>Run as a {@link Runnable}, the loop repeats passes that wait for messages
+ * until it is stopped or interrupted.  Run by a {@link CooperativeLoop}, each pass
+ * returns at once when there is nothing to handle.
+ *
+ * @author jpirkey
+ * @since 1.0.0
+ */
+public abstract class AbstractLoopTask implements Runnable {
+
+    // *************************************************************************
+    // ** Member variables
+    // *************************************************************************
+
+    /** life-cycle **/
+    private final AtomicBoolean running = new AtomicBoolean (false);
+    private final AtomicBoolean shutdown = new AtomicBoolean (false);
+
+    // *************************************************************************
+    // ** Constructors
+    // *************************************************************************
+
+    protected AbstractLoopTask () {
+
+        super ();
+    }
+
+    // *************************************************************************
+    // ** Member properties
+    // *************************************************************************
+
+    public boolean isRunning () {
+
+        return running.get ();
+    }
+
+    /**
+     * @return true once the last pass of the loop has completed
+     */
+    public boolean isShutdown () {
+
+        return shutdown.get ();
+    }
+
+    // *************************************************************************
+    // ** Member methods
+    // *************************************************************************
+
+    @Override
+    public void run () {
+
+        running.set (true);
+        while (running.get ()) {
+            pass (true);
+        }
+
+        exited ();
+    }
+
+    /**
+     * Stops the loop after the current pass.
+     */
+    public void stop () {
+
+        running.set (false);
+    }
+
+    /**
+     * Handles the next messages.  Implementations stop the loop when the pass
+     * is interrupted or fails.
+     *
+     * @param wait true to wait for messages, false to return at once if there are none
+     * @return true if any messages were handled
+     */
+    protected abstract boolean pass (boolean wait);
+
+    /**
+     * Called once after the last pass of the loop.
+     */
+    protected void loopExited () {
+
+        // Nothing to release by default
+    }
+
+    void started () {
+
+        running.set (true);
+    }
+
+    void exited () {
+
+        running.set (false);
+        if (shutdown.compareAndSet (false, true)) {
+            loopExited ();
+        }
+    }
+}
@@ -0,0 +1,229 @@
+/*******************************************************************************
+ * Copyright 2014 Reality Warp Software
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.rws.pirkolator.core.engine.execution;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.annotation.Nullable;
+
+/**
+ * <p>This class runs an {@link AbstractLoopTask} as a cooperative task on a
+ * shared {@link ForkJoinPool}.  Each run handles up to {@link #PASS_BUDGET}
+ * passes, so busy loops take turns on the pool threads, and is resubmitted
+ * right away while messages keep arriving.
+ *
+ * <p>A loop that finds nothing to handle is resubmitted by the idle scheduler
+ * after a delay that doubles on each idle run, up to the maximum idle time.
+ * The maximum idle time bounds the extra latency of the first message after a
+ * quiet period.
+ *
+ * <p>A pass should block through {@link ManagedBlocking}, such as a put into a
+ * full queue or a call to a slow subscriber, so the pool adds a spare thread
+ * while it waits and the loops that would unblock it keep running.
+ *
+ * <p>Cancelling the returned {@link Future} stops the loop after its current pass.
+ *
+ * @author jpirkey
+ * @since 1.0.0
+ */
+public final class CooperativeLoop implements Runnable, Future<Object> {
+
+    public static final long DEFAULT_MAX_IDLE_MICROS = 1000;
+
+    /** Passes handled per run before giving the pool thread to other loops **/
+    static final int PASS_BUDGET = 16;
+
+    static final long MIN_IDLE_NANOS = TimeUnit.MICROSECONDS.toNanos (10);
+
+    // *************************************************************************
+    // ** Member variables
+    // *************************************************************************
+
+    private final AbstractLoopTask task;
+    private final ForkJoinPool pool;
+    private final ScheduledExecutorService idleScheduler;
+    private final long maxIdleNanos;
+
+    /** Current idle delay, only used by the run in progress **/
+    private long idleNanos = 0;
+
+    /** life-cycle **/
+    private final AtomicBoolean cancelled = new AtomicBoolean (false);
+    private final CountDownLatch done = new CountDownLatch (1);
+
+    private final Runnable resubmit = new Runnable () {
+
+        @Override
+        public void run () {
+
+            execute ();
+        }
+    };
+
+    // *************************************************************************
+    // ** Constructors
+    // *************************************************************************
+
+    private CooperativeLoop (final AbstractLoopTask task, final ForkJoinPool pool,
+            final ScheduledExecutorService idleScheduler, final long maxIdleMicros) {
+
+        super ();
+
+        this.task = task;
+        this.pool = pool;
+        this.idleScheduler = idleScheduler;
+        maxIdleNanos = TimeUnit.MICROSECONDS.toNanos (Math.max (0, maxIdleMicros));
+    }
+
+    // *************************************************************************
+    // ** Class methods
+    // *************************************************************************
+
+    /**
+     * Starts the task on the pool.
+     *
+     * @param task
+     * @param pool shared pool that runs the passes
+     * @param idleScheduler resubmits idle loops after their idle delay
+     * @param maxIdleMicros longest delay before an idle loop looks for messages again
+     * @return {@link CooperativeLoop} used to cancel the task
+     */
+    public static CooperativeLoop start (final AbstractLoopTask task, final ForkJoinPool pool,
+            final ScheduledExecutorService idleScheduler, final long maxIdleMicros) {
+
+        final CooperativeLoop loop = new CooperativeLoop (task, pool, idleScheduler, maxIdleMicros);
+        task.started ();
+        loop.execute ();
+        return loop;
+    }
+
+    // *************************************************************************
+    // ** Member methods
+    // *************************************************************************
+
+    @Override
+    public void run () {
+
+        if (cancelled.get () || !task.isRunning ()) {
+            finish ();
+            return;
+        }
+
+        boolean handled = false;
+        for (int i = 0; i < PASS_BUDGET && task.isRunning (); i++) {
+            if (!task.pass (false)) {
+                break;
+            }
+            handled = true;
+        }
+
+        if (cancelled.get () || !task.isRunning ()) {
+            finish ();
+            return;
+        }
+
+        if (handled) {
+            idleNanos = 0;
+            execute ();
+        } else {
+            idleNanos = Math.min (Math.max (idleNanos * 2, MIN_IDLE_NANOS), maxIdleNanos);
+            try {
+                idleScheduler.schedule (resubmit, idleNanos, TimeUnit.NANOSECONDS);
+            } catch (final RejectedExecutionException ex) {
+                // The scheduler is shutting down
+                finish ();
+            }
+        }
+    }
+
+    private void execute () {
+
+        try {
+            pool.execute (this);
+        } catch (final RejectedExecutionException ex) {
+            // The pool is shutting down
+            finish ();
+        }
+    }
+
+    private void finish () {
+
+        task.exited ();
+        done.countDown ();
+    }
+
+    // *************************************************************************
+    // ** Future implementation
+    // *************************************************************************
+
+    @Override
+    public boolean cancel (final boolean mayInterruptIfRunning) {
+
+        task.stop ();
+        return cancelled.compareAndSet (false, true);
+    }
+
+    @Override
+    public boolean isCancelled () {
+
+        return cancelled.get ();
+    }
+
+    @Override
+    public boolean isDone () {
+
+        return cancelled.get () || done.getCount () == 0;
+    }
+
+    @Override
+    public @Nullable
+    Object get () throws InterruptedException, ExecutionException {
+
+        done.await ();
+        return result ();
+    }
+
+    @Override
+    public @Nullable
+    Object get (final long timeout, final @Nullable TimeUnit unit) throws InterruptedException,
+            ExecutionException, TimeoutException {
+
+        if (unit == null || !done.await (timeout, unit)) {
+            throw new TimeoutException ();
+        }
+
+        return result ();
+    }
+
+    private @Nullable
+    Object result () {
+
+        if (cancelled.get ()) {
+            throw new CancellationException ();
+        }
+
+        return null;
+    }
+}
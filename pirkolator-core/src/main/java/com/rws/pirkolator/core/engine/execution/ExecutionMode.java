@@ -0,0 +1,34 @@
+/*******************************************************************************
+ * Copyright 2014 Reality Warp Software
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.rws.pirkolator.core.engine.execution;
+
+/**
+ * <p>Defines how the delivery loops of publishers, subscribers and polled
+ * Pub/Sub queues are run by the {@link com.rws.pirkolator.core.engine.SystemResourceManager}.
+ *
+ * <p><ul>
+ * <li>Dedicated - each loop holds a thread and waits on its queue; one thread per loop.</li>
+ * <li>Pooled - each loop is a {@link CooperativeLoop} on a shared work-stealing pool; the
+ *      thread count is fixed by the pool parallelism, at the cost of a short wake-up delay
+ *      for loops that have been idle.</li>
+ * </ul>
+ *
+ * @author jpirkey
+ * @since 1.0.0
+ */
+public enum ExecutionMode {
+    Dedicated, Pooled
+}
@@ -0,0 +1,199 @@
+/*******************************************************************************
+ * Copyright 2014 Reality Warp Software
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.rws.pirkolator.core.engine.execution;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinPool.ManagedBlocker;
+import java.util.concurrent.ForkJoinTask;
+
+import javax.annotation.Nullable;
+
+import com.rws.pirkolator.core.engine.queue.BoundedBlockingQueue;
+
+/**
+ * <p>This class runs the calls of a loop pass that may block through
+ * {@link ForkJoinPool#managedBlock(ManagedBlocker)}.  When a {@link CooperativeLoop}
+ * blocks on a pool thread, the pool adds a spare thread for as long as it is
+ * blocked, so the loops that would unblock it, such as the carriers draining a
+ * full subscriber queue, still get a thread.  Outside a pool the calls are made
+ * directly.
+ *
+ * <p>A call that can complete without blocking does so without involving the
+ * pool.
+ *
+ * @author jpirkey
+ * @since 1.0.0
+ */
+public final class ManagedBlocking {
+
+    // *************************************************************************
+    // ** Constructors
+    // *************************************************************************
+
+    private ManagedBlocking () {
+
+        super ();
+    }
+
+    // *************************************************************************
+    // ** Class methods
+    // *************************************************************************
+
+    /**
+     * Puts an element on a queue, waiting for room if the queue is full.  A
+     * {@link BoundedBlockingQueue} applies its overflow policy and manages its
+     * own waiting, so it is put to directly.  Other queues are offered the
+     * element first, so they must only refuse an offer when they are full.
+     * 
+     * @param queue
+     * @param element
+     * @throws InterruptedException
+     */
+    public static <E> void put (final BlockingQueue<E> queue, final E element) throws InterruptedException {
+
+        if (queue instanceof BoundedBlockingQueue || !ForkJoinTask.inForkJoinPool ()) {
+            queue.put (element);
+            return;
+        }
+
+        if (!queue.offer (element)) {
+            ForkJoinPool.managedBlock (new PutBlocker<> (queue, element));
+        }
+    }
+
+    /**
+     * Waits for a condition, adding a spare pool thread while it waits.
+     * 
+     * @param blocker
+     * @throws InterruptedException
+     */
+    public static void block (final ManagedBlocker blocker) throws InterruptedException {
+
+        if (!blocker.isReleasable ()) {
+            ForkJoinPool.managedBlock (blocker);
+        }
+    }
+
+    /**
+     * Makes a call that blocks for an unknown time, such as delivering to a
+     * subscriber that declared its receive() blocks.  The pool adds a spare
+     * thread for every call made on a pool thread, so use it only for calls
+     * known to block.
+     * 
+     * @param callable
+     * @return result of the call
+     * @throws Exception thrown by the call
+     */
+    public static @Nullable
+    <V> V call (final Callable<V> callable) throws Exception {
+
+        if (!ForkJoinTask.inForkJoinPool ()) {
+            return callable.call ();
+        }
+
+        final CallBlocker<V> blocker = new CallBlocker<> (callable);
+        ForkJoinPool.managedBlock (blocker);
+
+        final Exception failure = blocker.failure;
+        if (failure != null) {
+            throw failure;
+        }
+
+        return blocker.result;
+    }
+
+    // *************************************************************************
+    // ** Member classes
+    // *************************************************************************
+
+    private static class PutBlocker<E> implements ManagedBlocker {
+
+        private final BlockingQueue<E> queue;
+        private final E element;
+        private boolean done = false;
+
+        PutBlocker (final BlockingQueue<E> queue, final E element) {
+
+            super ();
+
+            this.queue = queue;
+            this.element = element;
+        }
+
+        @Override
+        public boolean block () throws InterruptedException {
+
+            if (!done) {
+                queue.put (element);
+                done = true;
+            }
+
+            return true;
+        }
+
+        @Override
+        public boolean isReleasable () {
+
+            if (!done) {
+                done = queue.offer (element);
+            }
+
+            return done;
+        }
+    }
+
+    private static class CallBlocker<V> implements ManagedBlocker {
+
+        private final Callable<V> callable;
+        private boolean done = false;
+
+        @Nullable
+        V result;
+
+        @Nullable
+        Exception failure;
+
+        CallBlocker (final Callable<V> callable) {
+
+            super ();
+
+            this.callable = callable;
+        }
+
+        @Override
+        public boolean block () {
+
+            if (!done) {
+                done = true;
+                try {
+                    result = callable.call ();
+                } catch (final Exception ex) {
+                    failure = ex;
+                }
+            }
+
+            return true;
+        }
+
+        @Override
+        public boolean isReleasable () {
+
+            return done;
+        }
+    }
+}
@@ -0,0 +1,44 @@
+/*******************************************************************************
+ * Copyright 2014 Reality Warp Software
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.rws.pirkolator.core.engine.group;
+
+import com.rws.pirkolator.core.engine.MessageQueue;
+import com.rws.pirkolator.model.Message;
+
+/**
+ * <p>Selects which member queue of a subscription group receives a message, so
+ * the subscribers of a group compete for the messages instead of each getting
+ * a copy.  A selector instance belongs to a single group.
+ *
+ * @author jpirkey
+ * @since 1.0.0
+ */
+public interface IQueueSelector {
+
+    /**
+     * @param queues the current member queues of the group; never empty, shared and
+     *      replaced rather than modified when the group membership changes
+     * @param message the message being delivered, or the first message of a batch
+     * @return the queue to deliver to
+     */
+    MessageQueue select (MessageQueue[] queues, Message message);
+
+    /**
+     * @return true if every message of a batch must be selected on its own, e.g. by
+     *      key; false to deliver a whole batch to the queue selected for its first message
+     */
+    boolean isPerMessage ();
+}
@@ -0,0 +1,181 @@
+/*******************************************************************************
+ * Copyright 2014 Reality Warp Software
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.rws.pirkolator.core.engine.group;
+
+import java.util.Arrays;
+
+import javax.annotation.Nullable;
+
+import com.rws.pirkolator.core.engine.MessageQueue;
+import com.rws.pirkolator.model.Message;
+
+/**
+ * <p>This class provides an {@link IQueueSelector} that sends every message with
+ * the same value of a header to the same member queue, so a subscriber sees all
+ * the messages for its keys in order.
+ *
+ * <p>Keys are placed on a consistent hash ring with a number of virtual nodes per
+ * queue.  Ring points are derived from the queue ids, so when a member joins or
+ * leaves only the keys on its share of the ring move.  Messages without the
+ * header are delivered round-robin.
+ *
+ * @author jpirkey
+ * @since 1.0.0
+ */
+public class KeyAffinityQueueSelector implements IQueueSelector {
+
+    public static final int DEFAULT_VIRTUAL_NODES = 64;
+
+    // *************************************************************************
+    // ** Member variables
+    // *************************************************************************
+
+    private final String headerName;
+    private final int virtualNodes;
+    private final RoundRobinQueueSelector fallback = new RoundRobinQueueSelector ();
+
+    /** Ring for the current member array, rebuilt when the group replaces the array **/
+    @Nullable
+    private volatile Ring ring;
+
+    // *************************************************************************
+    // ** Constructors
+    // *************************************************************************
+
+    public KeyAffinityQueueSelector (final String headerName) {
+
+        this (headerName, DEFAULT_VIRTUAL_NODES);
+    }
+
+    public KeyAffinityQueueSelector (final String headerName, final int virtualNodes) {
+
+        super ();
+
+        if (virtualNodes < 1) {
+            throw new IllegalArgumentException ("Virtual nodes must be positive, but was " + virtualNodes);
+        }
+
+        this.headerName = headerName;
+        this.virtualNodes = virtualNodes;
+    }
+
+    // *************************************************************************
+    // ** Member properties
+    // *************************************************************************
+
+    public String getHeaderName () {
+
+        return headerName;
+    }
+
+    // *************************************************************************
+    // ** IQueueSelector implementation
+    // *************************************************************************
+
+    @Override
+    public MessageQueue select (final MessageQueue[] queues, final Message message) {
+
+        final String key = message.getHeader (headerName);
+        if (key == null || queues.length == 1) {
+            return fallback.select (queues, message);
+        }
+
+        Ring current = ring;
+        if (current == null || current.queues != queues) {
+            current = new Ring (queues, virtualNodes);
+            ring = current;
+        }
+
+        return current.lookup (mix (key.hashCode ()));
+    }
+
+    @Override
+    public boolean isPerMessage () {
+
+        return true;
+    }
+
+    // *************************************************************************
+    // ** Class methods
+    // *************************************************************************
+
+    /**
+     * Murmur3 finalizer, spreads similar hash codes over the whole ring
+     */
+    static int mix (final int hash) {
+
+        int h = hash;
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    // *************************************************************************
+    // ** Member classes
+    // *************************************************************************
+
+    /**
+     * Immutable ring of sorted hash points and the queue that owns each point.
+     */
+    private static final class Ring {
+
+        final MessageQueue[] queues;
+        final int[] points;
+        final MessageQueue[] owners;
+
+        Ring (final MessageQueue[] queues, final int virtualNodes) {
+
+            super ();
+
+            this.queues = queues;
+
+            // Pack each point with its queue index so one sort orders both
+            final long[] packed = new long[queues.length * virtualNodes];
+            int count = 0;
+            for (int q = 0; q < queues.length; q++) {
+                final int seed = queues[q].getId ().hashCode ();
+                for (int v = 0; v < virtualNodes; v++) {
+                    final int point = mix (seed + v * 0x9e3779b9);
+                    packed[count++] = ((long) point << 32) | q;
+                }
+            }
+            Arrays.sort (packed);
+
+            points = new int[packed.length];
+            owners = new MessageQueue[packed.length];
+            for (int i = 0; i < packed.length; i++) {
+                points[i] = (int) (packed[i] >> 32);
+                owners[i] = queues[(int) packed[i]];
+            }
+        }
+
+        MessageQueue lookup (final int hash) {
+
+            int index = Arrays.binarySearch (points, hash);
+            if (index < 0) {
+                index = -index - 1;
+                if (index == points.length) {
+                    index = 0;
+                }
+            }
+
+            return owners[index];
+        }
+    }
+}
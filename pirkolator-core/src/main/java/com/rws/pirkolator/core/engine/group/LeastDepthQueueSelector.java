@@ -0,0 +1,81 @@
+/*******************************************************************************
+ * Copyright 2014 Reality Warp Software
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.rws.pirkolator.core.engine.group;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.rws.pirkolator.core.engine.MessageQueue;
+import com.rws.pirkolator.model.Message;
+
+/**
+ * <p>This class provides an {@link IQueueSelector} that selects the member queue
+ * with the fewest waiting messages, so a slow subscriber in a group receives
+ * less work than its faster peers.
+ *
+ * <p>The scan starts at a rotating offset so idle queues with equal depths
+ * share the load instead of the first queue taking every message.
+ *
+ * @author jpirkey
+ * @since 1.0.0
+ */
+public class LeastDepthQueueSelector implements IQueueSelector {
+
+    // *************************************************************************
+    // ** Member variables
+    // *************************************************************************
+
+    private final AtomicInteger offset = new AtomicInteger ();
+
+    // *************************************************************************
+    // ** Constructors
+    // *************************************************************************
+
+    public LeastDepthQueueSelector () {
+
+        super ();
+    }
+
+    // *************************************************************************
+    // ** IQueueSelector implementation
+    // *************************************************************************
+
+    @Override
+    public MessageQueue select (final MessageQueue[] queues, final Message message) {
+
+        final int length = queues.length;
+        final int start = (offset.getAndIncrement () & Integer.MAX_VALUE) % length;
+
+        MessageQueue selected = queues[start];
+        int selectedDepth = selected.size ();
+
+        for (int i = 1; i < length && selectedDepth > 0; i++) {
+            final MessageQueue queue = queues[(start + i) % length];
+            final int depth = queue.size ();
+            if (depth < selectedDepth) {
+                selected = queue;
+                selectedDepth = depth;
+            }
+        }
+
+        return selected;
+    }
+
+    @Override
+    public boolean isPerMessage () {
+
+        return false;
+    }
+}
@@ -0,0 +1,63 @@
+/*******************************************************************************
+ * Copyright 2014 Reality Warp Software
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.rws.pirkolator.core.engine.group;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.rws.pirkolator.core.engine.MessageQueue;
+import com.rws.pirkolator.model.Message;
+
+/**
+ * <p>This class provides an {@link IQueueSelector} that rotates through the
+ * member queues of a group, one message or batch at a time.
+ *
+ * @author jpirkey
+ * @since 1.0.0
+ */
+public class RoundRobinQueueSelector implements IQueueSelector {
+
+    // *************************************************************************
+    // ** Member variables
+    // *************************************************************************
+
+    private final AtomicInteger counter = new AtomicInteger ();
+
+    // *************************************************************************
+    // ** Constructors
+    // *************************************************************************
+
+    public RoundRobinQueueSelector () {
+
+        super ();
+    }
+
+    // *************************************************************************
+    // ** IQueueSelector implementation
+    // *************************************************************************
+
+    @Override
+    public MessageQueue select (final MessageQueue[] queues, final Message message) {
+
+        // Mask the sign bit so the index stays valid once the counter wraps
+        return queues[(counter.getAndIncrement () & Integer.MAX_VALUE) % queues.length];
+    }
+
+    @Override
+    public boolean isPerMessage () {
+
+        return false;
+    }
+}
@@ -0,0 +1,330 @@
+/*******************************************************************************
+ * Copyright 2014 Reality Warp Software
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.rws.pirkolator.core.engine.match;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.Nullable;
+
+import com.google.common.base.Objects;
+import com.rws.pirkolator.model.filter.DaoSourceFilter;
+import com.rws.pirkolator.model.filter.IFilter;
+import com.rws.pirkolator.model.filter.IFilter.MatchType;
+import com.rws.pirkolator.model.filter.NameFilter;
+import com.rws.pirkolator.model.filter.RequestFilter;
+import com.rws.pirkolator.model.filter.TypeFilter;
+
+/**
+ * <p>This class indexes the filters of subscriptions or publications so the
+ * candidates that may match a filter set from the other side can be found
+ * without testing every entry.  Each kind of filter has its own keys:
+ * 
+ * <ul>
+ * <li>{@link TypeFilter} by class, where a publication type is also keyed by
+ * each of its superclasses and interfaces so a subscription to a supertype is
+ * found with one lookup.</li>
+ * <li>{@link NameFilter} by name.</li>
+ * <li>{@link RequestFilter} by request name.</li>
+ * <li>{@link DaoSourceFilter} by DAO source id.</li>
+ * </ul>
+ * 
+ * <p>The index only narrows the candidates, so callers still confirm each one
+ * with {@code Subscription.match (Publication)}.  Subscription filters that
+ * cannot be keyed, such as {@link MatchType#Exact} filters, empty filters or
+ * unknown filter classes, are returned for every query, and a query with such
+ * a filter returns every publication.
+ * 
+ * <p>This class is not thread safe; the Hub only uses it under its
+ * registration lock.
+ * 
+ * @author jpirkey
+ * @since 1.0.0
+ */
+public class FilterIndex<E> {
+
+    /** The side of the match held by the index **/
+    public enum Side {
+        Subscription, Publication
+    }
+
+    enum Kind {
+        Type, Name, Request, DaoSource
+    }
+
+    private static final ClassValue<Set<Class<?>>> SUPERTYPES = new ClassValue<Set<Class<?>>> () {
+
+        @Override
+        protected Set<Class<?>> computeValue (final @Nullable Class<?> type) {
+
+            final Set<Class<?>> set = new LinkedHashSet<> ();
+            addSupertypes (set, type);
+            return Collections.unmodifiableSet (set);
+        }
+    };
+
+    // *************************************************************************
+    // ** Member variables
+    // *************************************************************************
+
+    private final Side side;
+
+    /** <p>Entries for each filter key.
+     * <br/><b>Key = {@link Key}</b> **/
+    private final Map<Key, Set<E>> keyMap = new HashMap<> ();
+
+    /** Entries with a filter that cannot be keyed **/
+    private final Set<E> unkeyedSet = new LinkedHashSet<> ();
+
+    /** <p>Keys of each entry, used to remove it.
+     * <br/><b>Key = entry</b> **/
+    private final Map<E, List<Key>> entryMap = new HashMap<> ();
+
+    // *************************************************************************
+    // ** Constructors
+    // *************************************************************************
+
+    public FilterIndex (final Side side) {
+
+        super ();
+
+        this.side = side;
+    }
+
+    // *************************************************************************
+    // ** Member properties
+    // *************************************************************************
+
+    public Side getSide () {
+
+        return side;
+    }
+
+    public int size () {
+
+        return entryMap.size ();
+    }
+
+    // *************************************************************************
+    // ** Member methods
+    // *************************************************************************
+
+    /**
+     * Adds or replaces an entry with the filters of its subscription or publication.
+     */
+    public void add (final E entry, final Set<IFilter> filterSet) {
+
+        remove (entry);
+
+        final List<Key> keyList = new ArrayList<> ();
+        boolean unkeyed = false;
+        for (final IFilter filter : filterSet) {
+            if (side == Side.Subscription) {
+                unkeyed |= !addSubscriptionKeys (keyList, filter);
+            } else {
+                addPublicationKeys (keyList, filter);
+            }
+        }
+
+        for (final Key key : keyList) {
+            Set<E> set = keyMap.get (key);
+            if (set == null) {
+                set = new LinkedHashSet<> ();
+                keyMap.put (key, set);
+            }
+            set.add (entry);
+        }
+
+        if (unkeyed) {
+            unkeyedSet.add (entry);
+        }
+
+        entryMap.put (entry, keyList);
+    }
+
+    public void remove (final E entry) {
+
+        final List<Key> keyList = entryMap.remove (entry);
+        if (keyList == null) {
+            return;
+        }
+
+        for (final Key key : keyList) {
+            final Set<E> set = keyMap.get (key);
+            if (set != null) {
+                set.remove (entry);
+                if (set.isEmpty ()) {
+                    keyMap.remove (key);
+                }
+            }
+        }
+
+        unkeyedSet.remove (entry);
+    }
+
+    /**
+     * @param filterSet filters of the other side of the match
+     * @return the entries that may match the filters, in the order they were added
+     */
+    public Set<E> candidates (final Set<IFilter> filterSet) {
+
+        final Set<E> set = new LinkedHashSet<> (unkeyedSet);
+        final List<Key> probeList = new ArrayList<> ();
+
+        for (final IFilter filter : filterSet) {
+            if (side == Side.Subscription) {
+                addPublicationKeys (probeList, filter);
+            } else if (!addSubscriptionKeys (probeList, filter)) {
+                return new LinkedHashSet<> (entryMap.keySet ());
+            }
+        }
+
+        for (final Key key : probeList) {
+            final Set<E> entries = keyMap.get (key);
+            if (entries != null) {
+                set.addAll (entries);
+            }
+        }
+
+        return set;
+    }
+
+    /**
+     * A subscription filter matches on any one of its keys, but only for the
+     * filter classes whose match is known.
+     * 
+     * @return false if the filter cannot be keyed
+     */
+    private static boolean addSubscriptionKeys (final List<Key> keyList, final IFilter filter) {
+
+        final Class<?> filterClass = filter.getClass ();
+
+        if (filterClass == TypeFilter.class) {
+            final TypeFilter typeFilter = (TypeFilter) filter;
+            if (typeFilter.getMatchType () == MatchType.Exact || typeFilter.getTypeSet ().isEmpty ()) {
+                return false;
+            }
+            for (final Class<?> type : typeFilter.getTypeSet ()) {
+                keyList.add (new Key (Kind.Type, type));
+            }
+            return true;
+        } else if (filterClass == NameFilter.class) {
+            final NameFilter nameFilter = (NameFilter) filter;
+            final Set<String> nameSet = nameFilter.getNameSet ();
+            if (nameFilter.getMatchType () == MatchType.Exact || nameSet.isEmpty ()) {
+                return false;
+            }
+            for (final String name : nameSet) {
+                keyList.add (new Key (Kind.Name, name));
+            }
+            return true;
+        } else if (filterClass == RequestFilter.class) {
+            keyList.add (new Key (Kind.Request, ((RequestFilter) filter).getRequestName ()));
+            return true;
+        } else if (filterClass == DaoSourceFilter.class) {
+            keyList.add (new Key (Kind.DaoSource, ((DaoSourceFilter) filter).getDaoSource ().getId ()));
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * A publication filter is keyed by everything a keyed subscription filter
+     * may match it on.  Other filter classes are only matched by unkeyed
+     * subscription filters.
+     */
+    private static void addPublicationKeys (final List<Key> keyList, final IFilter filter) {
+
+        if (filter instanceof TypeFilter) {
+            for (final Class<?> type : ((TypeFilter) filter).getTypeSet ()) {
+                for (final Class<?> supertype : SUPERTYPES.get (type)) {
+                    keyList.add (new Key (Kind.Type, supertype));
+                }
+            }
+        } else if (filter instanceof NameFilter) {
+            for (final String name : ((NameFilter) filter).getNameSet ()) {
+                keyList.add (new Key (Kind.Name, name));
+            }
+        } else if (filter instanceof RequestFilter) {
+            keyList.add (new Key (Kind.Request, ((RequestFilter) filter).getRequestName ()));
+        } else if (filter instanceof DaoSourceFilter) {
+            keyList.add (new Key (Kind.DaoSource, ((DaoSourceFilter) filter).getDaoSource ().getId ()));
+        }
+    }
+
+    // *************************************************************************
+    // ** Class methods
+    // *************************************************************************
+
+    static void addSupertypes (final Set<Class<?>> set, final @Nullable Class<?> type) {
+
+        if (type == null || !set.add (type)) {
+            return;
+        }
+
+        addSupertypes (set, type.getSuperclass ());
+        for (final Class<?> face : type.getInterfaces ()) {
+            addSupertypes (set, face);
+        }
+    }
+
+    @Override
+    public String toString () {
+
+        return Objects.toStringHelper (this).add ("side", side).add ("entries", entryMap.size ())
+                .add ("keys", keyMap.size ()).add ("unkeyed", unkeyedSet.size ()).toString ();
+    }
+
+    // *************************************************************************
+    // ** Member classes
+    // *************************************************************************
+
+    static final class Key {
+
+        final Kind kind;
+        final Object value;
+
+        Key (final Kind kind, final Object value) {
+
+            super ();
+
+            this.kind = kind;
+            this.value = value;
+        }
+
+        @Override
+        public int hashCode () {
+
+            return 31 * kind.hashCode () + value.hashCode ();
+        }
+
+        @Override
+        public boolean equals (final @Nullable Object object) {
+
+            if (object instanceof Key) {
+                final Key that = (Key) object;
+                return kind == that.kind && value.equals (that.value);
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,416 @@
+/*******************************************************************************
+ * Copyright 2014 Reality Warp Software
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.rws.pirkolator.core.engine.queue;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.rws.utility.common.Preconditions.notNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.AbstractQueue;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.rws.pirkolator.core.engine.QueuePolicy;
+import com.rws.pirkolator.core.engine.QueuePolicy.Overflow;
+import com.rws.pirkolator.core.engine.execution.ManagedBlocking;
+
+/**
+ * <p>This class provides a {@link BlockingQueue} with a fixed capacity that applies
+ * an {@link Overflow} policy when {@link #put(Object)} or {@link #offer(Object)}
+ * finds the queue full.  A Block policy makes put wait and offer fail, the way
+ * any bounded queue does.
+ *
+ * <p>With the SpillToDisk policy, once a message has been spilled every later
+ * message is spilled behind it, and spilled messages are moved back into memory
+ * as consumers take from the queue, so the queue stays in order.  Spilled objects
+ * are written with the calling thread's Kryo and must be serializable by it.
+ *
+ * <p>The queue counts dropped messages, spilled messages and the time producers
+ * spent blocked, see {@link QueuePolicy}.  Call {@link #close()} when the queue
+ * is no longer used to release its spill file.
+ *
+ * @author jpirkey
+ * @since 1.0.0
+ */
+public class BoundedBlockingQueue<E> extends AbstractQueue<E> implements BlockingQueue<E> {
+
+    private static final Logger LOG = notNull (LoggerFactory.getLogger (BoundedBlockingQueue.class));
+
+    // *************************************************************************
+    // ** Member variables
+    // *************************************************************************
+
+    private final LinkedBlockingQueue<E> queue;
+    private final int capacity;
+    private final Overflow overflow;
+    @Nullable
+    private final String spillDirectory;
+
+    /** Counters **/
+    private final AtomicLong droppedCount = new AtomicLong ();
+    private final AtomicLong spilledCount = new AtomicLong ();
+    private final AtomicLong blockedNanos = new AtomicLong ();
+
+    /** Spill state, guarded by spillLock **/
+    private final Object spillLock = new Object ();
+    @Nullable
+    private DiskSpill spill;
+    private volatile int spillSize;
+
+    // *************************************************************************
+    // ** Constructors
+    // *************************************************************************
+
+    public BoundedBlockingQueue (final int capacity, final Overflow overflow) {
+
+        this (capacity, overflow, null);
+    }
+
+    /**
+     * @param capacity
+     * @param overflow
+     * @param spillDirectory directory for SpillToDisk files or null for the system temporary directory
+     */
+    public BoundedBlockingQueue (final int capacity, final Overflow overflow, final @Nullable String spillDirectory) {
+
+        super ();
+
+        checkArgument (capacity > 0, "Queue capacity must be positive, but was %s", capacity);
+
+        queue = new LinkedBlockingQueue<> (capacity);
+        this.capacity = capacity;
+        this.overflow = overflow;
+        this.spillDirectory = spillDirectory;
+    }
+
+    // *************************************************************************
+    // ** Member properties
+    // *************************************************************************
+
+    public int getCapacity () {
+
+        return capacity;
+    }
+
+    public Overflow getOverflow () {
+
+        return overflow;
+    }
+
+    /**
+     * @return number of messages discarded by the DropOldest and DropNewest policies or lost while spilling
+     */
+    public long getDroppedCount () {
+
+        return droppedCount.get ();
+    }
+
+    /**
+     * @return number of messages written to disk by the SpillToDisk policy
+     */
+    public long getSpilledCount () {
+
+        return spilledCount.get ();
+    }
+
+    /**
+     * @return total time producers have waited for room under the Block policy
+     */
+    public long getBlockedNanos () {
+
+        return blockedNanos.get ();
+    }
+
+    // *************************************************************************
+    // ** BlockingQueue implementation
+    // *************************************************************************
+
+    @Override
+    public void put (final @Nullable E element) throws InterruptedException {
+
+        checkNotNull (element);
+
+        if (overflow == Overflow.Block) {
+            if (!queue.offer (element)) {
+                final long start = System.nanoTime ();
+                try {
+                    // A pooled loop waiting here gets a spare pool thread
+                    ManagedBlocking.put (queue, element);
+                } finally {
+                    blockedNanos.addAndGet (System.nanoTime () - start);
+                }
+            }
+        } else {
+            overflow (element);
+        }
+    }
+
+    @Override
+    public boolean offer (final @Nullable E element) {
+
+        checkNotNull (element);
+
+        if (overflow == Overflow.Block) {
+            return queue.offer (element);
+        }
+
+        return overflow (element);
+    }
+
+    @Override
+    public boolean offer (final @Nullable E element, final long timeout, final @Nullable TimeUnit unit)
+            throws InterruptedException {
+
+        checkNotNull (element);
+
+        if (overflow == Overflow.Block) {
+            final long start = System.nanoTime ();
+            try {
+                return queue.offer (element, timeout, unit);
+            } finally {
+                blockedNanos.addAndGet (System.nanoTime () - start);
+            }
+        }
+
+        return overflow (element);
+    }
+
+    @Override
+    public E take () throws InterruptedException {
+
+        final E element = notNull (queue.take ());
+        refill ();
+        return element;
+    }
+
+    @Override
+    public @Nullable
+    E poll () {
+
+        final E element = queue.poll ();
+        refill ();
+        return element;
+    }
+
+    @Override
+    public @Nullable
+    E poll (final long timeout, final @Nullable TimeUnit unit) throws InterruptedException {
+
+        final E element = queue.poll (timeout, unit);
+        refill ();
+        return element;
+    }
+
+    @Override
+    public @Nullable
+    E peek () {
+
+        return queue.peek ();
+    }
+
+    @Override
+    public int drainTo (final @Nullable Collection<? super E> collection) {
+
+        return drainTo (collection, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public int drainTo (final @Nullable Collection<? super E> collection, final int maxElements) {
+
+        int count = queue.drainTo (collection, maxElements);
+        // Keep draining spilled messages as they are moved back into memory
+        while (count < maxElements && spillSize > 0) {
+            refill ();
+            count += queue.drainTo (collection, maxElements - count);
+        }
+        refill ();
+
+        return count;
+    }
+
+    @Override
+    public int remainingCapacity () {
+
+        return queue.remainingCapacity ();
+    }
+
+    /**
+     * @return number of messages in memory and spilled to disk
+     */
+    @Override
+    public int size () {
+
+        return queue.size () + spillSize;
+    }
+
+    /**
+     * @return an {@link Iterator} over the messages held in memory; spilled messages are not included
+     */
+    @Override
+    public Iterator<E> iterator () {
+
+        return notNull (queue.iterator ());
+    }
+
+    /**
+     * Closes and deletes the spill file once the queue is no longer used.
+     * Messages still on disk are counted as dropped.  Putting to a closed queue
+     * still works, but a new spill file is opened if it fills.
+     */
+    public void close () {
+
+        synchronized (spillLock) {
+            final DiskSpill tmp = spill;
+            if (tmp != null) {
+                droppedCount.addAndGet (spillSize);
+                spillSize = 0;
+                tmp.close ();
+                spill = null;
+            }
+        }
+    }
+
+    @Override
+    public void clear () {
+
+        queue.clear ();
+        synchronized (spillLock) {
+            final DiskSpill tmp = spill;
+            if (tmp != null) {
+                tmp.reset ();
+            }
+            spillSize = 0;
+        }
+    }
+
+    // *************************************************************************
+    // ** Overflow methods
+    // *************************************************************************
+
+    /**
+     * Applies a non-blocking overflow policy.
+     *
+     * @return false if the element was dropped
+     */
+    private boolean overflow (final E element) {
+
+        if (overflow == Overflow.DropNewest) {
+            if (queue.offer (element)) {
+                return true;
+            }
+            droppedCount.incrementAndGet ();
+            return false;
+        } else if (overflow == Overflow.DropOldest) {
+            while (!queue.offer (element)) {
+                if (queue.poll () != null) {
+                    droppedCount.incrementAndGet ();
+                }
+            }
+            return true;
+        }
+
+        return spill (element);
+    }
+
+    private boolean spill (final E element) {
+
+        synchronized (spillLock) {
+            // Nothing may overtake messages already on disk
+            if (spillSize == 0 && queue.offer (element)) {
+                return true;
+            }
+
+            try {
+                spill ().write (element);
+                spillSize++;
+                spilledCount.incrementAndGet ();
+            } catch (final IOException ex) {
+                LOG.error ("Unable to spill message to disk, message dropped - {}", ex.getLocalizedMessage ());
+                droppedCount.incrementAndGet ();
+                return false;
+            }
+
+            // Consumers may have emptied the queue before they could see the spill
+            transfer ();
+            return true;
+        }
+    }
+
+    /**
+     * Moves spilled messages back into memory while there is room.
+     */
+    private void refill () {
+
+        if (spillSize == 0) {
+            return;
+        }
+
+        synchronized (spillLock) {
+            transfer ();
+        }
+    }
+
+    /**
+     * Moves spilled messages back into memory while there is room; the caller
+     * must hold the spill lock.
+     */
+    private void transfer () {
+
+        final DiskSpill tmp = spill;
+        if (tmp == null) {
+            return;
+        }
+
+        while (spillSize > 0 && queue.remainingCapacity () > 0) {
+            spillSize--;
+            try {
+                @SuppressWarnings ("unchecked")
+                final E element = (E) tmp.read ();
+                queue.offer (element);
+            } catch (final IOException ex) {
+                LOG.error ("Unable to read spilled message from disk, message dropped - {}", ex.getLocalizedMessage ());
+                droppedCount.incrementAndGet ();
+            }
+        }
+
+        if (spillSize == 0) {
+            tmp.reset ();
+        }
+    }
+
+    private DiskSpill spill () {
+
+        DiskSpill tmp = spill;
+        if (tmp == null) {
+            final String directory = spillDirectory;
+            tmp = new DiskSpill (directory == null ? null : new File (directory));
+            spill = tmp;
+        }
+
+        return tmp;
+    }
+}
@@ -0,0 +1,180 @@
+/*******************************************************************************
+ * Copyright 2014 Reality Warp Software
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.rws.pirkolator.core.engine.queue;
+
+import static com.rws.utility.common.Preconditions.notNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.KryoException;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import com.rws.pirkolator.core.utility.serial.KryoUtility;
+import com.rws.pirkolator.model.Message;
+
+/**
+ * This class provides the first-in, first-out file behind a {@link BoundedBlockingQueue}
+ * using the SpillToDisk policy.  Each object is written as its length followed
+ * by its Kryo bytes.  The file is truncated each time it is read empty.  This
+ * class is not thread-safe; the owning queue guards it.
+ *
+ * @author jpirkey
+ * @since 1.0.0
+ */
+final class DiskSpill {
+
+    private static final Logger LOG = notNull (LoggerFactory.getLogger (DiskSpill.class));
+
+    static final int OUTPUT_BUFFER_SIZE = 4 * 1024;
+
+    // *************************************************************************
+    // ** Member variables
+    // *************************************************************************
+
+    @Nullable
+    private final File directory;
+    @Nullable
+    private File spillFile;
+    @Nullable
+    private RandomAccessFile file;
+    private final Output output = new Output (OUTPUT_BUFFER_SIZE, -1);
+
+    private long readPosition;
+    private long writePosition;
+
+    // *************************************************************************
+    // ** Constructors
+    // *************************************************************************
+
+    /**
+     * @param directory for the spill file or null for the system temporary directory
+     */
+    DiskSpill (final @Nullable File directory) {
+
+        super ();
+
+        this.directory = directory;
+    }
+
+    // *************************************************************************
+    // ** Member methods
+    // *************************************************************************
+
+    void write (final Object object) throws IOException {
+
+        final Kryo kryo = KryoUtility.getKryo ();
+        output.clear ();
+        try {
+            // Deferred content is transient, so decode it before the fields are written
+            if (object instanceof Message) {
+                ((Message) object).decodeContent ();
+            }
+            kryo.writeClassAndObject (output, object);
+        } catch (final KryoException ex) {
+            throw new IOException ("Unable to serialize " + object.getClass ().getName (), ex);
+        }
+
+        final RandomAccessFile tmp = file ();
+        tmp.seek (writePosition);
+        tmp.writeInt (output.position ());
+        tmp.write (output.getBuffer (), 0, output.position ());
+        writePosition = tmp.getFilePointer ();
+    }
+
+    Object read () throws IOException {
+
+        final RandomAccessFile tmp = file ();
+        tmp.seek (readPosition);
+        final byte[] bytes = new byte[tmp.readInt ()];
+        tmp.readFully (bytes);
+        readPosition = tmp.getFilePointer ();
+
+        try {
+            return notNull (KryoUtility.getKryo ().readClassAndObject (new Input (bytes)));
+        } catch (final KryoException ex) {
+            throw new IOException ("Unable to deserialize spilled message", ex);
+        }
+    }
+
+    /**
+     * Empties the file once everything written has been read.
+     */
+    void reset () {
+
+        readPosition = 0;
+        writePosition = 0;
+
+        final RandomAccessFile tmp = file;
+        if (tmp != null) {
+            try {
+                tmp.setLength (0);
+            } catch (final IOException ex) {
+                LOG.warn ("Unable to truncate spill file - {}", ex.getLocalizedMessage ());
+            }
+        }
+    }
+
+    /**
+     * Closes and deletes the file.  Anything not yet read is lost.  A later
+     * write starts a new file.
+     */
+    void close () {
+
+        readPosition = 0;
+        writePosition = 0;
+
+        final RandomAccessFile tmp = file;
+        if (tmp != null) {
+            file = null;
+            try {
+                tmp.close ();
+            } catch (final IOException ex) {
+                LOG.warn ("Unable to close spill file - {}", ex.getLocalizedMessage ());
+            }
+        }
+
+        final File tmpFile = spillFile;
+        if (tmpFile != null) {
+            spillFile = null;
+            if (!tmpFile.delete ()) {
+                LOG.warn ("Unable to delete spill file {}", tmpFile.getAbsolutePath ());
+            }
+        }
+    }
+
+    private RandomAccessFile file () throws IOException {
+
+        RandomAccessFile tmp = file;
+        if (tmp == null) {
+            final File tmpFile = File.createTempFile ("pirkolator-spill-", ".queue", directory);
+            tmpFile.deleteOnExit ();
+            LOG.info ("Spilling queue to {}", tmpFile.getAbsolutePath ());
+            tmp = new RandomAccessFile (tmpFile, "rw");
+            spillFile = tmpFile;
+            file = tmp;
+        }
+
+        return tmp;
+    }
+}
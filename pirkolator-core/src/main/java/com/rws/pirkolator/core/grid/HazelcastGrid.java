@@ -25,6 +25,7 @@ import java.util.UUID;
 import java.util.concurrent.locks.Lock;
 
 import javax.annotation.Nullable;
+import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
 import javax.annotation.Resource;
 
@@ -35,21 +36,33 @@ import org.springframework.context.ApplicationContextAware;
 
 import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
+import com.hazelcast.config.Config;
+import com.hazelcast.config.SerializerConfig;
 import com.hazelcast.core.Hazelcast;
 import com.hazelcast.core.HazelcastInstance;
 import com.hazelcast.core.HazelcastInstanceNotActiveException;
 import com.hazelcast.core.IMap;
 import com.hazelcast.core.IQueue;
 import com.hazelcast.core.ITopic;
+import com.hazelcast.core.MultiMap;
+import com.hazelcast.nio.serialization.Serializer;
 import com.hazelcast.transaction.TransactionContext;
 import com.rws.pirkolator.core.engine.listener.IShutdownListener;
 import com.rws.pirkolator.core.grid.exception.AcquireLockException;
 import com.rws.pirkolator.model.AbstractSystemIdentifiable;
+import com.rws.pirkolator.model.Message;
+import com.rws.pirkolator.model.MessageBatch;
 import com.rws.utility.common.UUIDs;
 
 /**
  * This class provides a Data Grid implementation around Hazelcast.
  * 
+ * <p>Messages cross the grid in the binary envelope of the
+ * {@link MessageEnvelopeSerializer} and {@link MessageBatchSerializer}.  Serializers must be in the Hazelcast
+ * configuration before the instance starts, so an instance built in code
+ * registers them with {@link #registerSerializers(Config)}, and one built by
+ * Spring declares the serializer in its configuration.
+ * 
  * @author jpirkey
  * @since 0.1.0
  */
@@ -220,6 +233,16 @@ public class HazelcastGrid extends AbstractSystemIdentifiable implements IGrid,
         throw new AcquireLockException ("Unable to acquire lock on Hazelcast topic");
     }
 
+    // *************************************************************************
+    // ** Multi-map methods
+    // *************************************************************************
+
+    public <K extends Serializable, V extends Serializable> MultiMap<K, V> getMultiMap (final String name) {
+
+        final MultiMap<K, V> map = getInstance ().getMultiMap (name);
+        return checkNotNull (map);
+    }
+
     // *************************************************************************
     // ** List methods
     // *************************************************************************
@@ -256,6 +279,18 @@ public class HazelcastGrid extends AbstractSystemIdentifiable implements IGrid,
     // ** Life-cycle methods
     // *************************************************************************
 
+    @PostConstruct
+    public final void postConstruct () {
+
+        final Config config = getInstance ().getConfig ();
+        if (!isSerializerRegistered (config, Message.class) || !isSerializerRegistered (config, MessageBatch.class)) {
+            LOG.warn ("The Hazelcast instance has no serializer registered for " + Message.class.getName ()
+                    + " or " + MessageBatch.class.getName () + ". Messages will cross the grid with Java"
+                    + " serialization. Register the " + MessageEnvelopeSerializer.class.getName () + " and "
+                    + MessageBatchSerializer.class.getName () + " in the Hazelcast configuration.");
+        }
+    }
+
     @PreDestroy
     public final void preDestroy () {
 
@@ -280,4 +315,45 @@ public class HazelcastGrid extends AbstractSystemIdentifiable implements IGrid,
             LOG.info ("HazelcastGrid is shutdown.");
         }
     }
+
+    // *************************************************************************
+    // ** Class methods
+    // *************************************************************************
+
+    /**
+     * Registers the serializers of the grid's types with a configuration that
+     * has not yet started an instance.
+     * 
+     * @param config
+     * @return the configuration
+     */
+    public static Config registerSerializers (final Config config) {
+
+        registerSerializer (config, Message.class, new MessageEnvelopeSerializer ());
+        registerSerializer (config, MessageBatch.class, new MessageBatchSerializer ());
+
+        return config;
+    }
+
+    private static void registerSerializer (final Config config, final Class<?> type, final Serializer serializer) {
+
+        if (!isSerializerRegistered (config, type)) {
+            final SerializerConfig serializerConfig = new SerializerConfig ();
+            serializerConfig.setTypeClass (type);
+            serializerConfig.setImplementation (serializer);
+            config.getSerializationConfig ().addSerializerConfig (serializerConfig);
+        }
+    }
+
+    static boolean isSerializerRegistered (final Config config, final Class<?> type) {
+
+        for (final SerializerConfig serializerConfig : config.getSerializationConfig ().getSerializerConfigs ()) {
+            if (serializerConfig.getTypeClass () == type
+                    || type.getName ().equals (serializerConfig.getTypeClassName ())) {
+                return true;
+            }
+        }
+
+        return false;
+    }
 }
@@ -0,0 +1,79 @@
+/*******************************************************************************
+ * Copyright 2014 Reality Warp Software
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.rws.pirkolator.core.grid;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.IOException;
+
+import javax.annotation.Nullable;
+
+import com.hazelcast.nio.ObjectDataInput;
+import com.hazelcast.nio.ObjectDataOutput;
+import com.hazelcast.nio.serialization.StreamSerializer;
+import com.rws.pirkolator.core.utility.serial.MessageEnvelope;
+import com.rws.pirkolator.model.MessageBatch;
+
+/**
+ * This class provides the Hazelcast {@link StreamSerializer} that writes each
+ * {@link MessageBatch} in the {@link MessageEnvelope}.  It is registered with the
+ * {@link MessageEnvelopeSerializer}.
+ * 
+ * @author jpirkey
+ * @since 1.0.0
+ */
+public class MessageBatchSerializer implements StreamSerializer<MessageBatch> {
+
+    /** Hazelcast type id of the batch envelope; must be the same on every node **/
+    public static final int TYPE_ID = 101;
+
+    // *************************************************************************
+    // ** Constructors
+    // *************************************************************************
+
+    public MessageBatchSerializer () {
+
+        super ();
+    }
+
+    // *************************************************************************
+    // ** StreamSerializer implementation
+    // *************************************************************************
+
+    @Override
+    public int getTypeId () {
+
+        return TYPE_ID;
+    }
+
+    @Override
+    public void write (final @Nullable ObjectDataOutput out, final @Nullable MessageBatch object) throws IOException {
+
+        MessageEnvelope.writeBatch (checkNotNull (object), checkNotNull (out));
+    }
+
+    @Override
+    public MessageBatch read (final @Nullable ObjectDataInput in) throws IOException {
+
+        return MessageEnvelope.readBatch (checkNotNull (in));
+    }
+
+    @Override
+    public void destroy () {
+
+        // Nothing to release
+    }
+}
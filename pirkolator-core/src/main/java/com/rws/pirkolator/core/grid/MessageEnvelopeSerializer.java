@@ -0,0 +1,95 @@
+/*******************************************************************************
+ * Copyright 2014 Reality Warp Software
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.rws.pirkolator.core.grid;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.IOException;
+
+import javax.annotation.Nullable;
+
+import com.hazelcast.nio.ObjectDataInput;
+import com.hazelcast.nio.ObjectDataOutput;
+import com.hazelcast.nio.serialization.StreamSerializer;
+import com.rws.pirkolator.core.utility.serial.MessageEnvelope;
+import com.rws.pirkolator.model.Message;
+
+/**
+ * This class provides the Hazelcast {@link StreamSerializer} that writes each
+ * {@link Message} in its {@link MessageEnvelope} instead of with Java
+ * serialization.  It is registered by {@link HazelcastGrid#registerSerializers}
+ * or in the Spring configuration of the Hazelcast instance, e.g.
+ * 
+ * <pre>
+ * &lt;hz:hazelcast id="hazelcastInstance"&gt;
+ *     &lt;hz:config&gt;
+ *         &lt;hz:serialization&gt;
+ *             &lt;hz:serializers&gt;
+ *                 &lt;hz:serializer type-class="com.rws.pirkolator.model.Message"
+ *                     class-name="com.rws.pirkolator.core.grid.MessageEnvelopeSerializer" /&gt;
+ *                 &lt;hz:serializer type-class="com.rws.pirkolator.model.MessageBatch"
+ *                     class-name="com.rws.pirkolator.core.grid.MessageBatchSerializer" /&gt;
+ *             &lt;/hz:serializers&gt;
+ *         &lt;/hz:serialization&gt;
+ *     &lt;/hz:config&gt;
+ * &lt;/hz:hazelcast&gt;
+ * </pre>
+ * 
+ * @author jpirkey
+ * @since 1.0.0
+ */
+public class MessageEnvelopeSerializer implements StreamSerializer<Message> {
+
+    /** Hazelcast type id of the envelope; must be the same on every node **/
+    public static final int TYPE_ID = 100;
+
+    // *************************************************************************
+    // ** Constructors
+    // *************************************************************************
+
+    public MessageEnvelopeSerializer () {
+
+        super ();
+    }
+
+    // *************************************************************************
+    // ** StreamSerializer implementation
+    // *************************************************************************
+
+    @Override
+    public int getTypeId () {
+
+        return TYPE_ID;
+    }
+
+    @Override
+    public void write (final @Nullable ObjectDataOutput out, final @Nullable Message object) throws IOException {
+
+        MessageEnvelope.write (checkNotNull (object), checkNotNull (out));
+    }
+
+    @Override
+    public Message read (final @Nullable ObjectDataInput in) throws IOException {
+
+        return MessageEnvelope.read (checkNotNull (in));
+    }
+
+    @Override
+    public void destroy () {
+
+        // Nothing to release
+    }
+}
@@ -0,0 +1,192 @@
+/*******************************************************************************
+ * Copyright 2014 Reality Warp Software
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.rws.pirkolator.core.metric;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * <p>This class provides a fixed size histogram of latencies in nanoseconds in
+ * the style of an HDR histogram.  Values below 128 have a bucket each and every
+ * power of two above that is split into 64 buckets, so a recorded value is
+ * reported within 1/64 of its real value.  Values above {@link #MAX_VALUE} are
+ * recorded as the maximum.
+ * 
+ * <p>Recording only increments an array slot, so it does not allocate or lock
+ * and may be called from any number of threads.  The reporting side takes the
+ * counts with {@link #drainTo(long[])}, which also resets them for the next
+ * period.
+ * 
+ * @author jpirkey
+ * @since 1.0.0
+ */
+public class LatencyHistogram {
+
+    /** Highest recorded value, about 68.7 seconds in nanoseconds **/
+    public static final long MAX_VALUE = (1L << 36) - 1;
+
+    static final int SUB_BUCKET_BITS = 6;
+
+    /** Values below this have a bucket of their own **/
+    static final int LINEAR_LIMIT = 2 << SUB_BUCKET_BITS;
+
+    /** Number of buckets needed to hold every value up to the maximum **/
+    public static final int BUCKET_COUNT = indexOf (MAX_VALUE) + 1;
+
+    // *************************************************************************
+    // ** Member variables
+    // *************************************************************************
+
+    private final AtomicLongArray counts = new AtomicLongArray (BUCKET_COUNT);
+
+    // *************************************************************************
+    // ** Constructors
+    // *************************************************************************
+
+    public LatencyHistogram () {
+
+        super ();
+    }
+
+    // *************************************************************************
+    // ** Member properties
+    // *************************************************************************
+
+    /**
+     * @return number of values recorded since the last drain
+     */
+    public long getCount () {
+
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            total += counts.get (i);
+        }
+        return total;
+    }
+
+    /**
+     * @param percentile between 0 and 100
+     * @return the value at the percentile of the values recorded since the last drain
+     */
+    public long getValueAtPercentile (final double percentile) {
+
+        final long[] snapshot = new long[BUCKET_COUNT];
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            snapshot[i] = counts.get (i);
+            total += snapshot[i];
+        }
+        return valueAtPercentile (snapshot, total, percentile);
+    }
+
+    // *************************************************************************
+    // ** Member methods
+    // *************************************************************************
+
+    public void record (final long nanos) {
+
+        final long value;
+        if (nanos < 0) {
+            value = 0;
+        } else if (nanos > MAX_VALUE) {
+            value = MAX_VALUE;
+        } else {
+            value = nanos;
+        }
+
+        counts.incrementAndGet (indexOf (value));
+    }
+
+    /**
+     * Records the time between two stage stamps.  A start of 0 is a stage that
+     * was never stamped, e.g. a message that arrived from another JVM, and is
+     * not recorded.
+     */
+    public void recordInterval (final long startNanos, final long endNanos) {
+
+        if (startNanos != 0) {
+            record (endNanos - startNanos);
+        }
+    }
+
+    /**
+     * Moves the counts into the array and resets them.
+     * 
+     * @param snapshot of at least {@link #BUCKET_COUNT} slots
+     * @return the number of values moved
+     */
+    public long drainTo (final long[] snapshot) {
+
+        checkArgument (snapshot.length >= BUCKET_COUNT, "Snapshot needs %s slots", BUCKET_COUNT);
+
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            snapshot[i] = counts.getAndSet (i, 0);
+            total += snapshot[i];
+        }
+        return total;
+    }
+
+    // *************************************************************************
+    // ** Class methods
+    // *************************************************************************
+
+    /**
+     * @param snapshot counts taken by {@link #drainTo(long[])}
+     * @param total number of values in the snapshot
+     * @param percentile between 0 and 100
+     * @return the highest value of the bucket holding the percentile or 0 if the snapshot is empty
+     */
+    public static long valueAtPercentile (final long[] snapshot, final long total, final double percentile) {
+
+        if (total <= 0) {
+            return 0;
+        }
+
+        final long rank = Math.max (1, (long) Math.ceil (Math.min (percentile, 100.0) / 100.0 * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return highestValueOf (i);
+            }
+        }
+        return MAX_VALUE;
+    }
+
+    static int indexOf (final long value) {
+
+        if (value < LINEAR_LIMIT) {
+            return (int) value;
+        }
+
+        // The top seven bits of the value pick the bucket within its power of two
+        final int shift = 63 - Long.numberOfLeadingZeros (value) - SUB_BUCKET_BITS;
+        return (shift << SUB_BUCKET_BITS) + (int) (value >>> shift);
+    }
+
+    static long highestValueOf (final int index) {
+
+        if (index < LINEAR_LIMIT) {
+            return index;
+        }
+
+        final int shift = (index >>> SUB_BUCKET_BITS) - 1;
+        final long subBucket = index - (shift << SUB_BUCKET_BITS);
+        return ((subBucket + 1) << shift) - 1;
+    }
+}
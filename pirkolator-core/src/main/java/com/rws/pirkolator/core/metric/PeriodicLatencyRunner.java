@@ -0,0 +1,106 @@
+/*******************************************************************************
+ * Copyright 2014 Reality Warp Software
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.rws.pirkolator.core.metric;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.List;
+
+import com.google.common.collect.ImmutableList;
+import com.rws.pirkolator.model.metric.Measurement;
+import com.rws.pirkolator.schema.metric.ISeries;
+
+/**
+ * <p>This class defines a task that drains a {@link LatencyHistogram} each
+ * period and adds the 50th, 99th and 99.9th percentile of the period, in
+ * microseconds, to a series each.  A period without any recorded values adds
+ * nothing.
+ * 
+ * @author jpirkey
+ * @since 1.0.0
+ */
+public class PeriodicLatencyRunner implements Runnable {
+
+    // *************************************************************************
+    // ** Member variables
+    // *************************************************************************
+
+    /** define **/
+    private final LatencyHistogram histogram;
+    private final ISeries<Long, Long> p50Series;
+    private final ISeries<Long, Long> p99Series;
+    private final ISeries<Long, Long> p999Series;
+
+    /** class **/
+    private final long[] snapshot = new long[LatencyHistogram.BUCKET_COUNT];
+
+    // *************************************************************************
+    // ** Constructors
+    // *************************************************************************
+
+    public PeriodicLatencyRunner (final LatencyHistogram histogram, final ISeries<Long, Long> p50Series,
+            final ISeries<Long, Long> p99Series, final ISeries<Long, Long> p999Series) {
+
+        super ();
+
+        this.histogram = histogram;
+        this.p50Series = p50Series;
+        this.p99Series = p99Series;
+        this.p999Series = p999Series;
+    }
+
+    // *************************************************************************
+    // ** Member properties
+    // *************************************************************************
+
+    public LatencyHistogram getHistogram () {
+
+        return histogram;
+    }
+
+    /**
+     * @return the p50, p99 and p999 series
+     */
+    public List<ISeries<Long, Long>> getSeriesList () {
+
+        return checkNotNull (ImmutableList.of (p50Series, p99Series, p999Series));
+    }
+
+    // *************************************************************************
+    // ** Member methods
+    // *************************************************************************
+
+    @Override
+    public void run () {
+
+        final long total = histogram.drainTo (snapshot);
+        if (total == 0) {
+            return;
+        }
+
+        final Long timestamp = checkNotNull (Long.valueOf (System.currentTimeMillis ()));
+        add (p50Series, timestamp, total, 50.0);
+        add (p99Series, timestamp, total, 99.0);
+        add (p999Series, timestamp, total, 99.9);
+    }
+
+    private void add (final ISeries<Long, Long> series, final Long timestamp, final long total,
+            final double percentile) {
+
+        final long micros = LatencyHistogram.valueAtPercentile (snapshot, total, percentile) / 1000;
+        series.add (new Measurement<> (timestamp, checkNotNull (Long.valueOf (micros))));
+    }
+}
@@ -15,7 +15,10 @@
  ******************************************************************************/
 package com.rws.pirkolator.core.metric;
 
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -24,7 +27,8 @@ import com.rws.pirkolator.schema.metric.ISeries;
 
 /**
  * This class provides the thread management for the periodic counters used by
- * the metric subscribers and publishers.
+ * the metric subscribers and publishers and for the periodic latency
+ * percentiles of the message pipeline.
  * 
  * @author jpirkey
  *
@@ -34,6 +38,10 @@ public class PeriodicSeriesManager {
     /** class **/
     private final ScheduledExecutorService executioner;
 
+    /** <p>Scheduled latency runners, so they can be cancelled.
+     * <br/><b>Key = runner</b> **/
+    private final Map<PeriodicLatencyRunner, ScheduledFuture<?>> latencyFutureMap = new ConcurrentHashMap<> ();
+
     public PeriodicSeriesManager (final SystemResourceManager resourceManager) {
 
         super ();
@@ -48,4 +56,26 @@ public class PeriodicSeriesManager {
         
         return runner;
     }
+
+    public PeriodicLatencyRunner addPeriodicLatency (final LatencyHistogram histogram,
+            final ISeries<Long, Long> p50Series, final ISeries<Long, Long> p99Series,
+            final ISeries<Long, Long> p999Series, final long periodInMillis) {
+
+        final PeriodicLatencyRunner runner = new PeriodicLatencyRunner (histogram, p50Series, p99Series, p999Series);
+        latencyFutureMap.put (runner,
+                executioner.scheduleAtFixedRate (runner, periodInMillis, periodInMillis, TimeUnit.MILLISECONDS));
+
+        return runner;
+    }
+
+    /**
+     * Stops a runner added by {@link #addPeriodicLatency}.
+     */
+    public void removePeriodicLatency (final PeriodicLatencyRunner runner) {
+
+        final ScheduledFuture<?> future = latencyFutureMap.remove (runner);
+        if (future != null) {
+            future.cancel (false);
+        }
+    }
 }
@@ -17,9 +17,12 @@ package com.rws.pirkolator.core.registry;
 
 import static com.rws.utility.common.Preconditions.notNull;
 
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.annotation.Nullable;
@@ -31,12 +34,15 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.rws.pirkolator.core.engine.SystemResourceManager;
+import com.rws.pirkolator.core.metric.LatencyHistogram;
+import com.rws.pirkolator.core.metric.PeriodicLatencyRunner;
 import com.rws.pirkolator.core.metric.PeriodicSeriesManager;
 import com.rws.pirkolator.core.metric.SeriesViewSynchronizer;
 import com.rws.pirkolator.core.store.SeriesViewStore;
 import com.rws.pirkolator.model.metric.Series;
 import com.rws.pirkolator.schema.metric.ISeries;
 import com.rws.utility.common.Globals;
+import com.rws.utility.common.UUIDs;
 
 public final class SeriesRegistry {
 
@@ -62,6 +68,10 @@ public final class SeriesRegistry {
      * <br/><b>Key = series name {@link UUID}</b> **/
     private final Map<UUID, ISeries<?, ?>> seriesViewSynchronizerMap = new ConcurrentHashMap<> ();
 
+    /** <p>Latency runners of each component.
+     * <br/><b>Key = source id</b> **/
+    private final ConcurrentMap<String, List<PeriodicLatencyRunner>> latencyRunnerMap = new ConcurrentHashMap<> ();
+
     @Nullable
     private PeriodicSeriesManager seriesManager;
 
@@ -143,6 +153,73 @@ public final class SeriesRegistry {
         return getSeriesManager ().addPeriodicCounter (opt, periodInMillis);
     }
 
+    /**
+     * Registers a p50, p99 and p999 series in microseconds for the histogram and
+     * drains the histogram into them each period.  The series are in the
+     * "latency" category and their series types are the given type suffixed
+     * with P50, P99 and P999.
+     */
+    public void createLatencySeries (final String sourceId, final String seriesLabel, final String seriesType,
+            final LatencyHistogram histogram, final long periodInMillis) {
+
+        final ISeries<Long, Long> p50 = registerLatencySeries (sourceId, seriesLabel + " p50", seriesType + "P50");
+        final ISeries<Long, Long> p99 = registerLatencySeries (sourceId, seriesLabel + " p99", seriesType + "P99");
+        final ISeries<Long, Long> p999 =
+                registerLatencySeries (sourceId, seriesLabel + " p999", seriesType + "P999");
+        final PeriodicLatencyRunner runner =
+                getSeriesManager ().addPeriodicLatency (histogram, p50, p99, p999, periodInMillis);
+
+        List<PeriodicLatencyRunner> runnerList = latencyRunnerMap.get (sourceId);
+        if (runnerList == null) {
+            final List<PeriodicLatencyRunner> newList = new CopyOnWriteArrayList<> ();
+            runnerList = latencyRunnerMap.putIfAbsent (sourceId, newList);
+            if (runnerList == null) {
+                runnerList = newList;
+            }
+        }
+        runnerList.add (runner);
+    }
+
+    /**
+     * Stops the latency runners created for a source and removes their series
+     * and series views.
+     */
+    public void removeLatencySeries (final String sourceId) {
+
+        final List<PeriodicLatencyRunner> runnerList = latencyRunnerMap.remove (sourceId);
+        if (runnerList == null) {
+            return;
+        }
+
+        for (final PeriodicLatencyRunner runner : runnerList) {
+            getSeriesManager ().removePeriodicLatency (runner);
+            for (final ISeries<Long, Long> series : runner.getSeriesList ()) {
+                unregisterSeries (series);
+            }
+        }
+    }
+
+    private void unregisterSeries (final ISeries<?, ?> series) {
+
+        seriesMap.remove (series.getId ());
+        seriesViewSynchronizerMap.remove (series.getId ());
+        getSeriesViewStore ().removeById (UUIDs.toString (series.getId ()));
+    }
+
+    private ISeries<Long, Long> registerLatencySeries (final String sourceId, final String seriesLabel,
+            final String seriesType) {
+
+        final ISeries<Long, Long> series = new Series<> (sourceId);
+        series.getPropertyMap ().put ("seriesLabel", seriesLabel);
+        series.getPropertyMap ().put ("seriesType", seriesType);
+        series.getPropertyMap ().put ("periodLabel", "Seconds");
+        series.getPropertyMap ().put ("periodType", "date");
+        series.getPropertyMap ().put ("valueLabel", "Microseconds");
+        series.getPropertyMap ().put ("valueType", "number");
+        series.getPropertyMap ().put ("category", "latency");
+        return registerSeries (series);
+    }
+
     // *************************************************************************
     // ** Life-cycle methods 
     // *************************************************************************
@@ -15,13 +15,17 @@
  ******************************************************************************/
 package com.rws.pirkolator.core.store;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.rws.utility.common.Preconditions.notNull;
 
-import java.lang.reflect.Method;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.locks.Lock;
 
@@ -40,8 +44,8 @@ import com.hazelcast.core.HazelcastInstanceNotActiveException;
 import com.hazelcast.core.IMap;
 import com.hazelcast.core.MapEvent;
 import com.hazelcast.core.TransactionalMap;
+import com.hazelcast.query.PagingPredicate;
 import com.hazelcast.query.Predicate;
-import com.hazelcast.query.SqlPredicate;
 import com.hazelcast.transaction.TransactionContext;
 import com.hazelcast.transaction.TransactionException;
 import com.rws.pirkolator.core.data.access.IRepository;
@@ -49,7 +53,35 @@ import com.rws.pirkolator.core.grid.HazelcastGrid;
 import com.rws.pirkolator.model.event.ChangeEventType;
 import com.rws.pirkolator.schema.IIdentifiable;
 import com.rws.utility.common.collections.CollectionUtils;
+import com.rws.utility.common.sort.Sort;
 
+/**
+ * This class provides a store of views in a map of the {@link HazelcastGrid}.
+ * 
+ * <p>Queries are built with a {@link StorePredicateBuilder} and run on the
+ * members that own the views.  A property declared with
+ * {@link #addIndex(String, boolean)} is indexed by Hazelcast on every member, so
+ * queries on it look up the matching views rather than scanning every
+ * partition.
+ * 
+ * <p>A store may keep a {@link StoreNearCache} of the views it reads, enabled by
+ * setting a near cache size in the Spring configuration, e.g.
+ * 
+ * <pre>
+ * &lt;bean id="systemViewStore" class="com.rws.pirkolator.core.store.SystemViewStore"&gt;
+ *     &lt;property name="nearCacheSize" value="1000" /&gt;
+ *     &lt;property name="nearCacheTimeToLiveMillis" value="60000" /&gt;
+ * &lt;/bean&gt;
+ * </pre>
+ * 
+ * <p>The near cache answers {@link #findById(String)} and {@link #findAll()}.
+ * It is invalidated by the store's own changes and by the entry events of the
+ * map listener, so changes made by other members are seen once their events
+ * arrive.  Cached views are shared by every reader and must not be changed.
+ * 
+ * @author jpirkey
+ * @since 0.1.0
+ */
 public abstract class AbstractHazelcastMapStore<T extends IIdentifiable> extends AbstractStore<T> implements
         IMapStore<T> {
 
@@ -67,11 +99,24 @@ public abstract class AbstractHazelcastMapStore<T extends IIdentifiable> extends
     private String listenerName;
 
     private final MapListener listener = new MapListener ();
-    private final Map<String, Method> methodMap = new ConcurrentHashMap<> ();
+
+    /** Properties of the view type that may be queried **/
+    private final Set<String> propertySet;
+
+    /** <p>Hazelcast indexes declared by the store; true for an ordered index.
+     * <br/><b>Key = property name</b> **/
+    private final Map<String, Boolean> indexMap = new ConcurrentHashMap<> ();
 
     @Nullable
     private IRepository<T, T, ?> repo;
 
+    /** Near cache settings; a size of 0 disables the near cache **/
+    private int nearCacheSize = 0;
+    private long nearCacheTimeToLiveMillis = 0;
+
+    @Nullable
+    private volatile StoreNearCache<T> nearCache;
+
     // *************************************************************************
     // ** Constructors
     // *************************************************************************
@@ -80,25 +125,14 @@ public abstract class AbstractHazelcastMapStore<T extends IIdentifiable> extends
 
         super (type);
 
-        init ();
+        propertySet = notNull (PropertyAccessor.forType (type).keySet ());
     }
 
     public AbstractHazelcastMapStore (final Class<T> type, final IRepository<T, T, ?> repo) {
 
-        super (type);
+        this (type);
 
         this.repo = repo;
-
-        init ();
-    }
-
-    private void init () {
-
-        for (final Method method : getType ().getDeclaredMethods ()) {
-            if (method.getName ().startsWith ("get")) {
-                methodMap.put (method.getName ().substring (3), method);
-            }
-        }
     }
 
     // *************************************************************************
@@ -118,10 +152,83 @@ public abstract class AbstractHazelcastMapStore<T extends IIdentifiable> extends
         return getGrid ().getExclusiveMapLock (getMapName ());
     }
 
+    public int getNearCacheSize () {
+
+        return nearCacheSize;
+    }
+
+    /**
+     * @param nearCacheSize maximum number of views in the near cache, or 0 to
+     *            read every view from the grid
+     */
+    public void setNearCacheSize (final int nearCacheSize) {
+
+        this.nearCacheSize = nearCacheSize;
+    }
+
+    public long getNearCacheTimeToLiveMillis () {
+
+        return nearCacheTimeToLiveMillis;
+    }
+
+    /**
+     * @param nearCacheTimeToLiveMillis time a view is kept in the near cache, or
+     *            0 to keep it until evicted by size or invalidated
+     */
+    public void setNearCacheTimeToLiveMillis (final long nearCacheTimeToLiveMillis) {
+
+        this.nearCacheTimeToLiveMillis = nearCacheTimeToLiveMillis;
+    }
+
+    /**
+     * @return near cache of the store with its hit and miss counts, or null if
+     *         the near cache is disabled
+     */
+    public @Nullable
+    StoreNearCache<T> getNearCache () {
+
+        return nearCache;
+    }
+
+    public boolean isIndexed (final String property) {
+
+        return indexMap.containsKey (property);
+    }
+
     // *************************************************************************
     // ** Member methods
     // *************************************************************************
 
+    /**
+     * Declares a Hazelcast index of a view property.  A hash index serves
+     * equality queries; an ordered index also serves range queries.  Indexes
+     * may be declared in the constructor of a store and are added to the map
+     * when the store is constructed.
+     * 
+     * @param property name of the view property
+     * @param ordered true for an ordered index, false for a hash index
+     */
+    public void addIndex (final String property, final boolean ordered) {
+
+        checkArgument (propertySet.contains (property), "%s has no property %s", getType ().getSimpleName (),
+                property);
+
+        indexMap.put (property, Boolean.valueOf (ordered));
+
+        // Indexes declared after construction are added to the map directly
+        if (listenerName != null) {
+            getMap ().addIndex (property, ordered);
+        }
+    }
+
+    /**
+     * @return new predicate builder over the properties of the store's views
+     */
+    public StorePredicateBuilder<T> predicateBuilder () {
+
+        return new StorePredicateBuilder<> (getType (), propertySet);
+    }
+
     public final Collection<T> findByPredicate (final Predicate<String, T> predicate) {
 
         Collection<T> coll = getMap ().values (predicate);
@@ -141,7 +248,23 @@ public abstract class AbstractHazelcastMapStore<T extends IIdentifiable> extends
     @Override
     public Optional<T> findById (final String id) {
 
-        return Optional.fromNullable (getMap ().get (id));
+        final StoreNearCache<T> cache = nearCache;
+        if (cache == null) {
+            return Optional.fromNullable (getMap ().get (id));
+        }
+
+        final T cached = cache.get (id);
+        if (cached != null) {
+            return Optional.of (cached);
+        }
+
+        final long version = cache.getVersion ();
+        final T value = getMap ().get (id);
+        if (value != null) {
+            cache.put (id, value, version);
+        }
+
+        return Optional.fromNullable (value);
     }
 
     public Collection<T> findBy (final String param, final String value) {
@@ -150,7 +273,7 @@ public abstract class AbstractHazelcastMapStore<T extends IIdentifiable> extends
         if (value.equals ("*")) {
             list = getMap ().values ();
         } else {
-            list = getMap ().values (new SqlPredicate (param + "='" + value + "'"));
+            list = getMap ().values (predicateBuilder ().equal (param, value).build ());
         }
 
         if (list == null) {
@@ -160,6 +283,34 @@ public abstract class AbstractHazelcastMapStore<T extends IIdentifiable> extends
         return list;
     }
 
+    /**
+     * Reads one page of the views matching a predicate.  Only the views of the
+     * page are returned by the members, rather than every matching view.
+     * 
+     * @param predicate
+     * @param page index of the page, starting at 0
+     * @param pageSize number of views in each page
+     * @return views of the page, empty if the page is past the last match
+     */
+    @SuppressWarnings ("unchecked")
+    public Collection<T> findPage (final Predicate<String, T> predicate, final int page, final int pageSize) {
+
+        checkArgument (page >= 0, "Page must not be negative: %s", page);
+        checkArgument (pageSize > 0, "Page size must be positive: %s", pageSize);
+
+        final PagingPredicate paging = new PagingPredicate (predicate, pageSize);
+        for (int i = 0; i < page; i++) {
+            paging.nextPage ();
+        }
+
+        final Collection<T> coll = getMap ().values (paging);
+        if (coll == null) {
+            return notNull (Collections.<T> emptySet ());
+        }
+
+        return coll;
+    }
+
     @Override
     public Iterable<? extends T> findAll () {
 
@@ -168,8 +319,21 @@ public abstract class AbstractHazelcastMapStore<T extends IIdentifiable> extends
             return tmpRepo.findAll ();
         }
 
-        final Iterable<? extends T> tmp = getMap ().values ();
+        final StoreNearCache<T> cache = nearCache;
+        if (cache != null) {
+            final Collection<T> cached = cache.getAll ();
+            if (cached != null) {
+                return cached;
+            }
+        }
+
+        final long version = cache == null ? 0 : cache.getVersion ();
+        final Collection<T> tmp = getMap ().values ();
         if (tmp != null) {
+            if (cache != null) {
+                cache.putAll (tmp, version);
+            }
+
             return tmp;
         }
 
@@ -193,19 +357,11 @@ public abstract class AbstractHazelcastMapStore<T extends IIdentifiable> extends
         final IRepository<T, T, ?> workingRepo = repo;
         if (workingRepo == null) {
 
-            final StringBuilder query = new StringBuilder ();
-            boolean first = true;
-            for (final Entry<String, Object> entry : map.entrySet ()) {
-                if (first) {
-                    query.append (entry.getKey ()).append ("='").append (entry.getValue ()).append ("'");
-                    first = false;
-                    continue;
-                }
-
-                query.append (" AND ").append (entry.getKey ()).append ("='").append (entry.getValue ()).append ("'");
+            if (map.isEmpty ()) {
+                return findAll ();
             }
 
-            final Collection<T> coll = getMap ().values (new SqlPredicate (query.toString ()));
+            final Collection<T> coll = getMap ().values (predicateBuilder ().parameterMap (map).build ());
             if (coll == null) {
                 return CollectionUtils.emptyCollection ();
             }
@@ -218,9 +374,59 @@ public abstract class AbstractHazelcastMapStore<T extends IIdentifiable> extends
         return workingRepo.findByParameterMap (map);
     }
 
+    /**
+     * Runs the query as a {@link PagingPredicate} whose first page ends at the
+     * end of the requested page.  Each member sorts its own matches and returns
+     * no more than that, and the page is cut from the merged result.  The views
+     * are ordered by the sort keys, then by id.  A store with a backing
+     * repository selects the page from the repository's results.
+     */
+    @Override
+    @SuppressWarnings ({ "unchecked", "rawtypes" })
+    public StorePage<T> findPage (final Map<String, Object> map, final List<Sort> sortList, final int offset,
+            final int limit) {
+
+        if (repo != null) {
+            return super.findPage (map, sortList, offset, limit);
+        }
+
+        final int end = StorePage.end (offset, limit);
+        if (end == 0) {
+            return new StorePage<T> (Collections.<T> emptyList (), offset, size ());
+        }
+
+        final Comparator comparator = new SortEntryComparator<T> (getType (), sortList);
+        final PagingPredicate paging;
+        final int totalCount;
+        if (map.isEmpty ()) {
+            paging = new PagingPredicate (comparator, end);
+            totalCount = size ();
+        } else {
+            final Predicate<String, T> predicate = predicateBuilder ().parameterMap (map).build ();
+            paging = new PagingPredicate (predicate, comparator, end);
+            totalCount = getMap ().keySet (predicate).size ();
+        }
+
+        final Collection<T> coll = getMap ().values (paging);
+        if (coll == null) {
+            return new StorePage<T> (Collections.<T> emptyList (), offset, totalCount);
+        }
+
+        final List<T> pageList = new ArrayList<> (Math.max (0, coll.size () - offset));
+        int index = 0;
+        for (final T item : coll) {
+            if (index++ >= offset) {
+                pageList.add (item);
+            }
+        }
+
+        return new StorePage<> (pageList, offset, totalCount);
+    }
+
     @Override
     public Optional<T> put (final T item) {
 
+        invalidate (item.getId ());
         return Optional.fromNullable (getMap ().put (item.getId (), item));
     }
 
@@ -243,6 +449,7 @@ public abstract class AbstractHazelcastMapStore<T extends IIdentifiable> extends
     @Override
     public Optional<T> removeById (final String id) {
 
+        invalidate (id);
         return Optional.fromNullable (getMap ().remove (id));
     }
 
@@ -254,6 +461,7 @@ public abstract class AbstractHazelcastMapStore<T extends IIdentifiable> extends
     @Override
     public void removeAll () {
 
+        invalidateAll ();
         getMap ().clear ();
     }
 
@@ -279,6 +487,7 @@ public abstract class AbstractHazelcastMapStore<T extends IIdentifiable> extends
     @Override
     public void reset () {
 
+        invalidateAll ();
         getMap ().clear ();
     }
 
@@ -292,6 +501,22 @@ public abstract class AbstractHazelcastMapStore<T extends IIdentifiable> extends
         return false;
     }
 
+    void invalidate (final @Nullable String id) {
+
+        final StoreNearCache<T> cache = nearCache;
+        if (cache != null && id != null) {
+            cache.invalidate (id);
+        }
+    }
+
+    void invalidateAll () {
+
+        final StoreNearCache<T> cache = nearCache;
+        if (cache != null) {
+            cache.invalidateAll ();
+        }
+    }
+
     // *************************************************************************
     // ** Life-cycle 
     // *************************************************************************
@@ -300,6 +525,15 @@ public abstract class AbstractHazelcastMapStore<T extends IIdentifiable> extends
     private final void postConstruct () {
 
         final IMap<String, T> map = getGrid ().getInstance ().getMap (getMapName ());
+        for (final Entry<String, Boolean> entry : indexMap.entrySet ()) {
+            map.addIndex (entry.getKey (), entry.getValue ().booleanValue ());
+        }
+
+        // The listener invalidates the near cache, so it is registered after the cache exists
+        if (nearCacheSize > 0) {
+            nearCache = new StoreNearCache<> (nearCacheSize, nearCacheTimeToLiveMillis);
+        }
+
         listenerName = map.addEntryListener (listener, true);
     }
 
@@ -330,6 +564,8 @@ public abstract class AbstractHazelcastMapStore<T extends IIdentifiable> extends
         public void entryAdded (final @Nullable EntryEvent<String, T> event) {
 
             if (event != null) {
+                invalidate (event.getKey ());
+
                 final T view = event.getValue ();
                 if (view != null) {
                     view.getMetadata ().getMap ().put ("changeType", ChangeEventType.ADD.toString ());
@@ -347,6 +583,8 @@ public abstract class AbstractHazelcastMapStore<T extends IIdentifiable> extends
         public void entryRemoved (final @Nullable EntryEvent<String, T> event) {
 
             if (event != null) {
+                invalidate (event.getKey ());
+
                 final T view = event.getValue ();
                 if (view != null) {
                     view.getMetadata ().getMap ().put ("changeType", ChangeEventType.REMOVE.toString ());
@@ -364,6 +602,8 @@ public abstract class AbstractHazelcastMapStore<T extends IIdentifiable> extends
         public void entryUpdated (final @Nullable EntryEvent<String, T> event) {
 
             if (event != null) {
+                invalidate (event.getKey ());
+
                 final T view = event.getValue ();
                 if (view != null) {
                     view.getMetadata ().getMap ().put ("changeType", ChangeEventType.UPDATE.toString ());
@@ -380,21 +620,21 @@ public abstract class AbstractHazelcastMapStore<T extends IIdentifiable> extends
         @Override
         public void entryEvicted (final @Nullable EntryEvent<String, T> event) {
 
-            // Do nothing
+            if (event != null) {
+                invalidate (event.getKey ());
+            }
         }
 
         @Override
         public void mapCleared (final @Nullable MapEvent arg0) {
 
-            // TODO Auto-generated method stub
-
+            invalidateAll ();
         }
 
         @Override
         public void mapEvicted (final @Nullable MapEvent arg0) {
 
-            // TODO Auto-generated method stub
-
+            invalidateAll ();
         }
     }
 }
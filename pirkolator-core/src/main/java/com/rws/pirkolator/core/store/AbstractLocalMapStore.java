@@ -15,15 +15,17 @@
  ******************************************************************************/
 package com.rws.pirkolator.core.store;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.rws.utility.common.Preconditions.notNull;
 
-import java.beans.Introspector;
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
@@ -38,7 +40,21 @@ import com.google.common.base.Optional;
 import com.rws.pirkolator.core.grid.IGrid;
 import com.rws.pirkolator.core.grid.LocalGrid;
 import com.rws.pirkolator.schema.IIdentifiable;
+import com.rws.utility.common.sort.Sort;
+import com.rws.utility.common.sort.SortOrder;
 
+/**
+ * This class provides a store of views in a map of the {@link LocalGrid}.
+ * 
+ * <p>Queries read view properties through {@link PropertyAccessor}s.  A property
+ * added with {@link #addIndex(String, boolean)} is kept in a secondary index that
+ * is maintained by put and remove, so queries on it look up the matching views
+ * rather than reading every view.  Views must be changed through the store for
+ * their indexes to stay current.
+ * 
+ * @author jpirkey
+ * @since 0.1.0
+ */
 public abstract class AbstractLocalMapStore<T extends IIdentifiable> extends AbstractStore<T> implements IMapStore<T> {
 
     final Logger LOG = notNull (LoggerFactory.getLogger (getClass ()));
@@ -51,7 +67,14 @@ public abstract class AbstractLocalMapStore<T extends IIdentifiable> extends Abs
     @Nullable
     private LocalGrid grid;
 
-    private final Map<String, Method> methodMap = new ConcurrentHashMap<> ();
+    /** <p>Accessors of the view properties.
+     * <br/><b>Key = property name</b> **/
+    private final Map<String, PropertyAccessor> accessorMap;
+
+    /** <p>Secondary indexes of the view properties.
+     * <br/><b>Key = property name</b> **/
+    private final Map<String, StoreIndex> indexMap = new ConcurrentHashMap<> ();
+
     private final ReentrantReadWriteLock readWriteLock = new ReentrantReadWriteLock (true);
 
     // *************************************************************************
@@ -62,16 +85,7 @@ public abstract class AbstractLocalMapStore<T extends IIdentifiable> extends Abs
 
         super (type);
 
-        init ();
-    }
-
-    private void init () {
-
-        for (final Method method : getType ().getDeclaredMethods ()) {
-            if (method.getName ().startsWith ("get")) {
-                methodMap.put (Introspector.decapitalize (method.getName ().substring (3)), method);
-            }
-        }
+        accessorMap = PropertyAccessor.forType (type);
     }
 
     // *************************************************************************
@@ -85,10 +99,56 @@ public abstract class AbstractLocalMapStore<T extends IIdentifiable> extends Abs
                 + " Check the Spring configuration.");
     }
 
+    /**
+     * @return true if the property has a secondary index
+     */
+    public boolean isIndexed (final String property) {
+
+        return indexMap.containsKey (property);
+    }
+
     // *************************************************************************
     // ** Member methods
     // *************************************************************************
 
+    /**
+     * Indexes the views by a property.  A hash index serves equality queries; an
+     * ordered index also serves {@link #findByRange(String, Object, Object)} and
+     * {@link #findAllOrderedBy(String, boolean)}, and its property must be
+     * {@link Comparable}.  Indexes may be added in the constructor of a store.
+     * 
+     * @param property name of the view property
+     * @param ordered true for an ordered index, false for a hash index
+     */
+    public void addIndex (final String property, final boolean ordered) {
+
+        final PropertyAccessor accessor = accessorMap.get (property);
+        checkArgument (accessor != null, "%s has no property %s", getType ().getSimpleName (), property);
+
+        // An ordered index keeps its values in a sorted map
+        final Class<?> propertyType = notNull (accessor).getType ();
+        checkArgument (!ordered || Comparable.class.isAssignableFrom (propertyType) || propertyType.isPrimitive (),
+                "Property %s of %s is not Comparable, so it cannot have an ordered index", property,
+                getType ().getSimpleName ());
+
+        try {
+            getReadWriteLock ().writeLock ().lock ();
+
+            final StoreIndex index = new StoreIndex (notNull (accessor), ordered);
+
+            // The grid is not injected yet when indexes are added by the constructor
+            if (grid != null) {
+                for (final T obj : getMap ().values ()) {
+                    index.add (notNull (obj));
+                }
+            }
+
+            indexMap.put (property, index);
+        } finally {
+            getReadWriteLock ().writeLock ().unlock ();
+        }
+    }
+
     @Override
     public int size () {
 
@@ -122,22 +182,18 @@ public abstract class AbstractLocalMapStore<T extends IIdentifiable> extends Abs
         try {
             getReadWriteLock ().readLock ().lock ();
 
+            final StoreIndex index = indexMap.get (key);
+            if (index != null) {
+                return resolve (index.find (param));
+            }
+
             final List<T> list = new ArrayList<> ();
 
-            final Method method = methodMap.get (key);
-            if (method != null) {
+            final PropertyAccessor accessor = accessorMap.get (key);
+            if (accessor != null) {
                 for (final T obj : getMap ().values ()) {
-                    try {
-                        final Object val = method.invoke (obj);
-                        if (param.equals (val)) {
-                            list.add (obj);
-                        }
-                    } catch (final IllegalAccessException ex) {
-                        LOG.error (ex.getLocalizedMessage (), ex);
-                    } catch (final IllegalArgumentException ex) {
-                        LOG.error (ex.getLocalizedMessage (), ex);
-                    } catch (final InvocationTargetException ex) {
-                        LOG.error (ex.getLocalizedMessage (), ex);
+                    if (accessor.matches (notNull (obj), param)) {
+                        list.add (obj);
                     }
                 }
             }
@@ -148,38 +204,35 @@ public abstract class AbstractLocalMapStore<T extends IIdentifiable> extends Abs
         }
     }
 
+    /**
+     * Finds the views matching every parameter.  Parameters that are not view
+     * properties are ignored, and values are converted to the type of their
+     * property.  If any parameter is indexed, only the views in the smallest
+     * index match are read.
+     */
     @Override
     public List<T> findByParameterMap (final Map<String, Object> map) {
 
         try {
             getReadWriteLock ().readLock ().lock ();
 
-            final List<T> list = new ArrayList<> ();
-
-            for (final T obj : getMap ().values ()) {
-                boolean match = true;
-                for (final Entry<String, Object> entry : map.entrySet ()) {
-                    final Method method = methodMap.get (entry.getKey ());
-                    
-                    if (method != null) {
-                        try {
-                            final Object val = method.invoke (obj);
-                            if (!entry.getValue ().equals (val)) {
-                                match = false;
-                                break;
-                            }
-                        } catch (final IllegalAccessException ex) {
-                            LOG.error (ex.getLocalizedMessage (), ex);
-                        } catch (final IllegalArgumentException ex) {
-                            LOG.error (ex.getLocalizedMessage (), ex);
-                        } catch (final InvocationTargetException ex) {
-                            LOG.error (ex.getLocalizedMessage (), ex);
-                        }
+            Set<String> candidateIdSet = null;
+            for (final Entry<String, Object> entry : map.entrySet ()) {
+                final StoreIndex index = indexMap.get (entry.getKey ());
+                if (index != null) {
+                    final Set<String> idSet = index.find (notNull (entry.getValue ()));
+                    if (candidateIdSet == null || idSet.size () < candidateIdSet.size ()) {
+                        candidateIdSet = idSet;
                     }
                 }
-                
-                if (match) {
-                    list.add(obj);
+            }
+
+            final Collection<T> candidates = candidateIdSet == null ? getMap ().values () : resolve (candidateIdSet);
+
+            final List<T> list = new ArrayList<> ();
+            for (final T obj : candidates) {
+                if (matchesAll (notNull (obj), map)) {
+                    list.add (obj);
                 }
             }
 
@@ -189,36 +242,29 @@ public abstract class AbstractLocalMapStore<T extends IIdentifiable> extends Abs
         }
     }
 
+    /**
+     * Finds the views matching none of the parameters.
+     */
     public List<T> findByParamMap (final Map<String, Object> paramMap) {
 
         try {
             getReadWriteLock ().readLock ().lock ();
-            final List<T> list = new ArrayList<> ();
 
-            for (final T obj : getMap ().values ()) {
-                boolean valid = true;
-                for (final Entry<String, Object> entry : paramMap.entrySet ()) {
-
-                    final Method method = methodMap.get (entry.getKey ());
-                    if (method != null) {
-
-                        try {
-                            final Object val = method.invoke (obj);
-                            if (entry.getValue ().equals (val)) {
-                                valid = false;
-                                break;
-                            }
-                        } catch (final IllegalAccessException ex) {
-                            LOG.error (ex.getLocalizedMessage (), ex);
-                        } catch (final IllegalArgumentException ex) {
-                            LOG.error (ex.getLocalizedMessage (), ex);
-                        } catch (final InvocationTargetException ex) {
-                            LOG.error (ex.getLocalizedMessage (), ex);
-                        }
-                    }
+            // Indexed parameters exclude their matches up front; the rest are read per view
+            final Set<String> excludedIdSet = new HashSet<> ();
+            final Map<String, Object> readMap = new HashMap<> ();
+            for (final Entry<String, Object> entry : paramMap.entrySet ()) {
+                final StoreIndex index = indexMap.get (entry.getKey ());
+                if (index != null) {
+                    excludedIdSet.addAll (index.find (notNull (entry.getValue ())));
+                } else {
+                    readMap.put (entry.getKey (), entry.getValue ());
                 }
+            }
 
-                if (valid) {
+            final List<T> list = new ArrayList<> ();
+            for (final T obj : getMap ().values ()) {
+                if (!excludedIdSet.contains (obj.getId ()) && !matchesAny (notNull (obj), readMap)) {
                     list.add (obj);
                 }
             }
@@ -229,12 +275,80 @@ public abstract class AbstractLocalMapStore<T extends IIdentifiable> extends Abs
         }
     }
 
+    /**
+     * @param property property with an ordered index
+     * @param from lowest value, inclusive, or null for no lower bound
+     * @param to highest value, inclusive, or null for no upper bound
+     * @return views whose property is in the range, in property order
+     */
+    public List<T> findByRange (final String property, final @Nullable Object from, final @Nullable Object to) {
+
+        try {
+            getReadWriteLock ().readLock ().lock ();
+            return resolve (getOrderedIndex (property).findRange (from, to));
+        } finally {
+            getReadWriteLock ().readLock ().unlock ();
+        }
+    }
+
+    /**
+     * @param property property with an ordered index
+     * @param ascending
+     * @return all the views in property order, with null values last
+     */
+    public List<T> findAllOrderedBy (final String property, final boolean ascending) {
+
+        try {
+            getReadWriteLock ().readLock ().lock ();
+            return resolve (getOrderedIndex (property).ids (ascending));
+        } finally {
+            getReadWriteLock ().readLock ().unlock ();
+        }
+    }
+
+    /**
+     * A page of all the views sorted by one property with an ordered index is
+     * read from the index.  Otherwise the page is selected from the matching
+     * views without copying them first.
+     */
+    @Override
+    public StorePage<T> findPage (final Map<String, Object> map, final List<Sort> sortList, final int offset,
+            final int limit) {
+
+        final int end = StorePage.end (offset, limit);
+
+        try {
+            getReadWriteLock ().readLock ().lock ();
+
+            if (map.isEmpty () && sortList.size () == 1) {
+                final Sort sort = sortList.get (0);
+                final StoreIndex index = indexMap.get (sort.getPropertyName ());
+                if (index != null && index.isOrdered ()) {
+                    final boolean ascending = sort.getSortOrder () != SortOrder.DESCENDING;
+                    return new StorePage<> (resolve (index.ids (ascending, offset, end - offset)), offset, getMap ()
+                            .size ());
+                }
+            }
+
+            final Iterable<? extends T> it = map.isEmpty () ? getMap ().values () : findByParameterMap (map);
+            return StorePage.select (it, pageComparator (getType (), sortList), offset, limit);
+        } finally {
+            getReadWriteLock ().readLock ().unlock ();
+        }
+    }
+
     @Override
     public Optional<T> put (final T item) {
 
         try {
             getReadWriteLock ().writeLock ().lock ();
-            return Optional.fromNullable (getMap ().put (item.getId (), item));
+
+            final T previous = getMap ().put (item.getId (), item);
+            for (final StoreIndex index : indexMap.values ()) {
+                index.add (item);
+            }
+
+            return Optional.fromNullable (previous);
         } finally {
             getReadWriteLock ().writeLock ().unlock ();
         }
@@ -251,7 +365,15 @@ public abstract class AbstractLocalMapStore<T extends IIdentifiable> extends Abs
 
         try {
             getReadWriteLock ().writeLock ().lock ();
-            return Optional.fromNullable (getMap ().remove (id));
+
+            final T previous = getMap ().remove (id);
+            if (previous != null) {
+                for (final StoreIndex index : indexMap.values ()) {
+                    index.remove (id);
+                }
+            }
+
+            return Optional.fromNullable (previous);
         } finally {
             getReadWriteLock ().writeLock ().unlock ();
         }
@@ -263,6 +385,9 @@ public abstract class AbstractLocalMapStore<T extends IIdentifiable> extends Abs
         try {
             getReadWriteLock ().writeLock ().lock ();
             getMap ().clear ();
+            for (final StoreIndex index : indexMap.values ()) {
+                index.clear ();
+            }
         } finally {
             getReadWriteLock ().writeLock ().unlock ();
         }
@@ -294,4 +419,52 @@ public abstract class AbstractLocalMapStore<T extends IIdentifiable> extends Abs
 
         removeAll ();
     }
+
+    private StoreIndex getOrderedIndex (final String property) {
+
+        final StoreIndex index = indexMap.get (property);
+        checkArgument (index != null && index.isOrdered (), "No ordered index on %s", property);
+        return notNull (index);
+    }
+
+    /**
+     * @return the views with the ids, in the order of the ids
+     */
+    private List<T> resolve (final Collection<String> ids) {
+
+        final Map<String, T> map = getMap ();
+        final List<T> list = new ArrayList<> (ids.size ());
+        for (final String id : ids) {
+            final T obj = map.get (id);
+            if (obj != null) {
+                list.add (obj);
+            }
+        }
+
+        return list;
+    }
+
+    private boolean matchesAll (final T obj, final Map<String, Object> map) {
+
+        for (final Entry<String, Object> entry : map.entrySet ()) {
+            final PropertyAccessor accessor = accessorMap.get (entry.getKey ());
+            if (accessor != null && !accessor.matches (obj, notNull (entry.getValue ()))) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private boolean matchesAny (final T obj, final Map<String, Object> map) {
+
+        for (final Entry<String, Object> entry : map.entrySet ()) {
+            final PropertyAccessor accessor = accessorMap.get (entry.getKey ());
+            if (accessor != null && accessor.matches (obj, notNull (entry.getValue ()))) {
+                return true;
+            }
+        }
+
+        return false;
+    }
 }
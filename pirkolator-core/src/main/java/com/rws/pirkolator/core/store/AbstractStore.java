@@ -15,12 +15,18 @@
  ******************************************************************************/
 package com.rws.pirkolator.core.store;
 
+import java.util.Comparator;
+import java.util.List;
 import java.util.Map;
 
+import javax.annotation.Nullable;
+
 import com.google.common.base.Optional;
 import com.google.common.eventbus.EventBus;
 import com.rws.pirkolator.core.grid.IGrid;
 import com.rws.pirkolator.schema.IIdentifiable;
+import com.rws.utility.common.sort.Sort;
+import com.rws.utility.common.sort.ViewComparator;
 
 public abstract class AbstractStore<T extends IIdentifiable> implements IStore<T> {
 
@@ -70,6 +76,19 @@ public abstract class AbstractStore<T extends IIdentifiable> implements IStore<T
     @Override
     public abstract Iterable<? extends T> findByParameterMap (Map<String, Object> map);
 
+    /**
+     * Selects the page from the views returned by {@link #findAll()} or
+     * {@link #findByParameterMap(Map)}, keeping only the views up to the end of
+     * the page while they are read.
+     */
+    @Override
+    public StorePage<T> findPage (final Map<String, Object> map, final List<Sort> sortList, final int offset,
+            final int limit) {
+
+        final Iterable<? extends T> it = map.isEmpty () ? findAll () : findByParameterMap (map);
+        return StorePage.select (it, pageComparator (getType (), sortList), offset, limit);
+    }
+
     @Override
     public abstract Optional<T> put (final T item);
 
@@ -99,4 +118,38 @@ public abstract class AbstractStore<T extends IIdentifiable> implements IStore<T
 
         eventBus.unregister (listener);
     }
+
+    // *************************************************************************
+    // ** Class methods
+    // *************************************************************************
+
+    /**
+     * Orders views by the sort list and then by id, as
+     * {@link SortEntryComparator} does, so views with equal sort keys keep one
+     * order across the pages of a query.
+     * 
+     * @return the comparator, or null if the sort list is empty
+     */
+    static @Nullable
+    <T extends IIdentifiable> Comparator<T> pageComparator (final Class<T> type, final List<Sort> sortList) {
+
+        if (sortList.isEmpty ()) {
+            return null;
+        }
+
+        final ViewComparator<T> viewComparator = ViewComparator.forType (type, sortList);
+        return new Comparator<T> () {
+
+            @Override
+            public int compare (final T view1, final T view2) {
+
+                final int result = viewComparator.compare (view1, view2);
+                if (result != 0) {
+                    return result;
+                }
+
+                return view1.getId ().compareTo (view2.getId ());
+            }
+        };
+    }
 }
@@ -15,10 +15,12 @@
  ******************************************************************************/
 package com.rws.pirkolator.core.store;
 
+import java.util.List;
 import java.util.Map;
 
 import com.google.common.base.Optional;
 import com.rws.pirkolator.core.grid.IGrid;
+import com.rws.utility.common.sort.Sort;
 
 public interface IStore<T> {
 
@@ -36,6 +38,18 @@ public interface IStore<T> {
     Iterable<? extends T> findAll ();
 
     Iterable<? extends T> findByParameterMap (Map<String, Object> map);
+
+    /**
+     * Reads one page of the views matching the parameters, in sort order.  Only
+     * the views of the page are returned, with the number of views that matched.
+     * 
+     * @param map parameters the views must equal, or empty for all the views
+     * @param sortList sort keys, or empty for the store's own order
+     * @param offset number of matching views to skip
+     * @param limit maximum number of views in the page
+     * @return
+     */
+    StorePage<T> findPage (Map<String, Object> map, List<Sort> sortList, int offset, int limit);
     
     Optional<T> findById (String id);
 
@@ -0,0 +1,200 @@
+/*******************************************************************************
+ * Copyright 2014 Reality Warp Software
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.rws.pirkolator.core.store;
+
+import static com.rws.utility.common.Preconditions.notNull;
+
+import java.beans.Introspector;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Map;
+
+import javax.annotation.Nullable;
+
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.primitives.Primitives;
+
+/**
+ * This class reads one property of a view through a {@link MethodHandle} that
+ * is resolved and adapted once, so reading the property costs an exact handle
+ * invocation instead of a reflective call with its access checks and boxing of
+ * the argument array.
+ * 
+ * @author jpirkey
+ * @since 1.0.0
+ */
+final class PropertyAccessor {
+
+    private static final MethodType GETTER_TYPE = notNull (MethodType.methodType (Object.class, Object.class));
+
+    // *************************************************************************
+    // ** Member variables
+    // *************************************************************************
+
+    private final String property;
+    private final MethodHandle getter;
+
+    /** Type of the property, with primitives boxed **/
+    private final Class<?> type;
+
+    // *************************************************************************
+    // ** Constructors
+    // *************************************************************************
+
+    private PropertyAccessor (final String property, final MethodHandle getter, final Class<?> type) {
+
+        super ();
+
+        this.property = property;
+        this.getter = getter;
+        this.type = type;
+    }
+
+    // *************************************************************************
+    // ** Member properties
+    // *************************************************************************
+
+    public String getProperty () {
+
+        return property;
+    }
+
+    public Class<?> getType () {
+
+        return type;
+    }
+
+    // *************************************************************************
+    // ** Member methods
+    // *************************************************************************
+
+    /**
+     * @param object instance of the type the accessor was built for
+     * @return value of the property
+     */
+    public @Nullable
+    Object get (final Object object) {
+
+        try {
+            return getter.invokeExact (object);
+        } catch (final Throwable ex) {
+            throw Throwables.propagate (ex);
+        }
+    }
+
+    /**
+     * @param object instance of the type the accessor was built for
+     * @param value query value, converted as by {@link #convert(Object)}
+     * @return true if the property equals the value
+     */
+    public boolean matches (final Object object, final Object value) {
+
+        final Object converted = convert (value);
+        return converted != null && converted.equals (get (object));
+    }
+
+    /**
+     * Converts a query value to the type of the property, so a value given as
+     * text, such as a request parameter, matches and compares with the values
+     * of the views.
+     * 
+     * @return the value as the type of the property, or null if it cannot be
+     *         converted and so matches no view
+     */
+    public @Nullable
+    Object convert (final Object value) {
+
+        if (type.isInstance (value)) {
+            return value;
+        }
+
+        final String text = value.toString ();
+        try {
+            if (type == String.class) {
+                return text;
+            } else if (type == Long.class) {
+                return Long.valueOf (text);
+            } else if (type == Integer.class) {
+                return Integer.valueOf (text);
+            } else if (type == Short.class) {
+                return Short.valueOf (text);
+            } else if (type == Byte.class) {
+                return Byte.valueOf (text);
+            } else if (type == Double.class) {
+                return Double.valueOf (text);
+            } else if (type == Float.class) {
+                return Float.valueOf (text);
+            } else if (type == Boolean.class) {
+                if ("true".equalsIgnoreCase (text) || "false".equalsIgnoreCase (text)) {
+                    return Boolean.valueOf (text);
+                }
+            } else if (type.isEnum ()) {
+                for (final Object constant : type.getEnumConstants ()) {
+                    if (((Enum<?>) constant).name ().equals (text)) {
+                        return constant;
+                    }
+                }
+            }
+        } catch (final NumberFormatException ex) {
+            return null;
+        }
+
+        return null;
+    }
+
+    // *************************************************************************
+    // ** Class methods
+    // *************************************************************************
+
+    /**
+     * @return accessor for each public getter of the type, including inherited
+     *         getters, keyed by property name
+     */
+    static Map<String, PropertyAccessor> forType (final Class<?> type) {
+
+        final ImmutableMap.Builder<String, PropertyAccessor> builder = ImmutableMap.builder ();
+        final MethodHandles.Lookup lookup = MethodHandles.lookup ();
+
+        for (final Method method : type.getMethods ()) {
+            final String name = method.getName ();
+            if (!name.startsWith ("get") || name.length () == 3 || "getClass".equals (name)
+                    || method.getParameterTypes ().length > 0 || method.getReturnType () == void.class
+                    || method.isBridge () || Modifier.isStatic (method.getModifiers ())) {
+                continue;
+            }
+
+            try {
+                // Public getters may be declared by a package-private base class
+                method.setAccessible (true);
+                final MethodHandle getter = lookup.unreflect (method).asType (GETTER_TYPE);
+                final String property = Introspector.decapitalize (name.substring (3));
+                builder.put (property, new PropertyAccessor (notNull (property), notNull (getter),
+                        notNull (Primitives.wrap (method.getReturnType ()))));
+            } catch (final IllegalAccessException ex) {
+                // Not readable, so not queryable
+                continue;
+            } catch (final SecurityException ex) {
+                continue;
+            }
+        }
+
+        return notNull (builder.build ());
+    }
+}
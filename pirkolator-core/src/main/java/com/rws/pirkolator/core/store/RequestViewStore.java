@@ -7,6 +7,11 @@ public class RequestViewStore extends AbstractLocalMapStore<RequestView> {
     public RequestViewStore () {
 
         super (RequestView.class);
+
+        // Request lists are filtered by requester and state and sorted by submission time
+        addIndex ("requesterId", false);
+        addIndex ("requestState", false);
+        addIndex ("timeSubmitted", true);
     }
 
     public final static String PROP_REQUESTVIEW_STORE = "requestViewStore";
@@ -32,6 +32,9 @@ public class SeriesViewStore extends AbstractHazelcastMapStore<SeriesView> {
     public SeriesViewStore () {
 
         super (SeriesView.class);
+
+        // Series are looked up by their source; the category set can not be indexed by Hazelcast
+        addIndex ("sourceId", false);
     }
 
     @Override
@@ -66,21 +69,14 @@ public class SeriesViewStore extends AbstractHazelcastMapStore<SeriesView> {
 
     public List<SeriesView> findBySourceId (final String sourceId) {
 
-        final List<SeriesView> set = new ArrayList<> ();
-        for (final SeriesView view : getMap ().values ()) {
-            if (sourceId.equals (view.getSourceId ())) {
-                set.add (view);
-            }
-        }
-
-        return set;
+        return new ArrayList<> (findByPredicate (predicateBuilder ().equal ("sourceId", sourceId).build ()));
     }
 
     public List<SeriesView> findBySourceIdAndCategory (final String sourceId, final String category) {
 
         final List<SeriesView> set = new ArrayList<> ();
-        for (final SeriesView view : getMap ().values ()) {
-            if (sourceId.equals (view.getSourceId ()) && view.getCategorySet ().contains (category)) {
+        for (final SeriesView view : findByPredicate (predicateBuilder ().equal ("sourceId", sourceId).build ())) {
+            if (view.getCategorySet ().contains (category)) {
                 set.add (view);
             }
         }
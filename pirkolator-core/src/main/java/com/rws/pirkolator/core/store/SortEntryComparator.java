@@ -0,0 +1,106 @@
+/*******************************************************************************
+ * Copyright 2014 Reality Warp Software
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.rws.pirkolator.core.store;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nullable;
+
+import com.rws.utility.common.sort.Sort;
+import com.rws.utility.common.sort.SortOrder;
+import com.rws.utility.common.sort.ViewComparator;
+
+/**
+ * This class orders the map entries of a Hazelcast query by the sort keys of a
+ * request, then by key so every member pages through the same total order.  It
+ * is sent to the members with a paging predicate, so it keeps the sort keys in
+ * serializable form and builds its view comparator where it is used.
+ * 
+ * @author jpirkey
+ * @since 1.0.0
+ */
+final class SortEntryComparator<T> implements Comparator<Map.Entry<String, T>>, Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    // *************************************************************************
+    // ** Member variables
+    // *************************************************************************
+
+    private final Class<T> type;
+    private final String[] propertyNames;
+    private final boolean[] descending;
+
+    @Nullable
+    private transient Comparator<T> viewComparator;
+
+    // *************************************************************************
+    // ** Constructors
+    // *************************************************************************
+
+    SortEntryComparator (final Class<T> type, final List<Sort> sortList) {
+
+        super ();
+
+        this.type = type;
+        propertyNames = new String[sortList.size ()];
+        descending = new boolean[sortList.size ()];
+        for (int i = 0; i < propertyNames.length; i++) {
+            propertyNames[i] = sortList.get (i).getPropertyName ();
+            descending[i] = sortList.get (i).getSortOrder () == SortOrder.DESCENDING;
+        }
+    }
+
+    // *************************************************************************
+    // ** Member methods
+    // *************************************************************************
+
+    @Override
+    public int compare (final Map.Entry<String, T> entry1, final Map.Entry<String, T> entry2) {
+
+        if (propertyNames.length > 0) {
+            final int result = getViewComparator ().compare (entry1.getValue (), entry2.getValue ());
+            if (result != 0) {
+                return result;
+            }
+        }
+
+        return entry1.getKey ().compareTo (entry2.getKey ());
+    }
+
+    private Comparator<T> getViewComparator () {
+
+        Comparator<T> comparator = viewComparator;
+        if (comparator == null) {
+            final List<Sort> sortList = new ArrayList<> ();
+            for (int i = 0; i < propertyNames.length; i++) {
+                final Sort sort = new Sort ();
+                sort.setPropertyName (propertyNames[i]);
+                sort.setSortOrder (descending[i] ? SortOrder.DESCENDING : SortOrder.ASCENDING);
+                sortList.add (sort);
+            }
+
+            comparator = ViewComparator.forType (type, sortList);
+            viewComparator = comparator;
+        }
+
+        return comparator;
+    }
+}
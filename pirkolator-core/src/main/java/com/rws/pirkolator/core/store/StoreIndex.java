@@ -0,0 +1,329 @@
+/*******************************************************************************
+ * Copyright 2014 Reality Warp Software
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.rws.pirkolator.core.store;
+
+import static com.google.common.base.Preconditions.checkState;
+import static com.rws.utility.common.Preconditions.notNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import javax.annotation.Nullable;
+
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.PeekingIterator;
+import com.rws.pirkolator.schema.IIdentifiable;
+import com.rws.utility.common.sort.ViewComparator;
+
+/**
+ * This class indexes the ids of a store's views by the value of one property.
+ * A hash index answers equality lookups; an ordered index also answers range
+ * lookups and lists the ids in property order, with null values last and the
+ * ids of equal values in id order, as the stores break the ties of a sort.
+ * Strings are ordered as {@link ViewComparator} orders them, so a page read
+ * from the index matches a page sorted without it.
+ * 
+ * <p>The value each view was indexed with is kept, so a view changed in place
+ * before it is put again is still removed from its old value.
+ * 
+ * <p>The index is not thread safe.  The store changes it under its write lock
+ * and reads it under its read lock.
+ * 
+ * @author jpirkey
+ * @since 1.0.0
+ */
+final class StoreIndex {
+
+    /**
+     * Orders strings in natural order, as {@link ViewComparator} does, and
+     * strings it holds equal, such as "a1" and "a01", by their characters, so
+     * each value keeps its own key.
+     */
+    private static final Comparator<Object> VALUE_ORDER = new Comparator<Object> () {
+
+        @SuppressWarnings ("unchecked")
+        @Override
+        public int compare (final Object value1, final Object value2) {
+
+            if (value1 instanceof String && value2 instanceof String) {
+                final int result = ViewComparator.compareNatural ((String) value1, (String) value2);
+                return result != 0 ? result : ((String) value1).compareTo ((String) value2);
+            }
+
+            return ((Comparable<Object>) value1).compareTo (value2);
+        }
+    };
+
+    // *************************************************************************
+    // ** Member variables
+    // *************************************************************************
+
+    private final PropertyAccessor accessor;
+    private final boolean ordered;
+
+    /** <p>Ids of the views with each non-null value.
+     * <br/><b>Key = property value</b> **/
+    private final Map<Object, Set<String>> valueMap;
+
+    /** Ids of the views whose property is null **/
+    private final Set<String> nullSet;
+
+    /** <p>Value each view was indexed with.
+     * <br/><b>Key = view id</b> **/
+    private final Map<String, Object> indexedValueMap = new HashMap<> ();
+
+    // *************************************************************************
+    // ** Constructors
+    // *************************************************************************
+
+    StoreIndex (final PropertyAccessor accessor, final boolean ordered) {
+
+        super ();
+
+        this.accessor = accessor;
+        this.ordered = ordered;
+        valueMap = ordered ? new TreeMap<Object, Set<String>> (VALUE_ORDER) : new HashMap<Object, Set<String>> ();
+        nullSet = newIdSet ();
+    }
+
+    // *************************************************************************
+    // ** Member properties
+    // *************************************************************************
+
+    public String getProperty () {
+
+        return accessor.getProperty ();
+    }
+
+    public boolean isOrdered () {
+
+        return ordered;
+    }
+
+    // *************************************************************************
+    // ** Member methods
+    // *************************************************************************
+
+    void add (final IIdentifiable view) {
+
+        final String id = view.getId ();
+        remove (id);
+
+        final Object value = accessor.get (view);
+        indexedValueMap.put (id, value);
+        if (value == null) {
+            nullSet.add (id);
+            return;
+        }
+
+        Set<String> idSet = valueMap.get (value);
+        if (idSet == null) {
+            idSet = newIdSet ();
+            valueMap.put (value, idSet);
+        }
+        idSet.add (id);
+    }
+
+    void remove (final String id) {
+
+        if (!indexedValueMap.containsKey (id)) {
+            return;
+        }
+
+        final Object value = indexedValueMap.remove (id);
+        if (value == null) {
+            nullSet.remove (id);
+            return;
+        }
+
+        final Set<String> idSet = valueMap.get (value);
+        if (idSet != null && idSet.remove (id) && idSet.isEmpty ()) {
+            valueMap.remove (value);
+        }
+    }
+
+    void clear () {
+
+        valueMap.clear ();
+        nullSet.clear ();
+        indexedValueMap.clear ();
+    }
+
+    /**
+     * @param value converted to the type of the property; a value that cannot
+     *            be converted matches no view
+     * @return ids of the views whose property equals the value
+     */
+    Set<String> find (final Object value) {
+
+        final Object key = accessor.convert (value);
+        final Set<String> idSet = key == null ? null : valueMap.get (key);
+        return idSet == null ? notNull (Collections.<String> emptySet ()) : idSet;
+    }
+
+    /**
+     * @param from lowest value, inclusive, or null for no lower bound
+     * @param to highest value, inclusive, or null for no upper bound
+     * @return ids of the views whose property is in the range, in property
+     *         order, or none if a bound cannot be converted to the type of the
+     *         property
+     */
+    List<String> findRange (final @Nullable Object from, final @Nullable Object to) {
+
+        checkState (ordered, "The index on %s is not ordered", getProperty ());
+
+        NavigableMap<Object, Set<String>> rangeMap = (NavigableMap<Object, Set<String>>) valueMap;
+        if (from != null) {
+            final Object key = accessor.convert (from);
+            if (key == null) {
+                return notNull (Collections.<String> emptyList ());
+            }
+            rangeMap = rangeMap.tailMap (key, true);
+        }
+        if (to != null) {
+            final Object key = accessor.convert (to);
+            if (key == null) {
+                return notNull (Collections.<String> emptyList ());
+            }
+            rangeMap = rangeMap.headMap (key, true);
+        }
+
+        return flatten (idSets (rangeMap), false);
+    }
+
+    /**
+     * @return ids of all the views in property order
+     */
+    List<String> ids (final boolean ascending) {
+
+        checkState (ordered, "The index on %s is not ordered", getProperty ());
+
+        return flatten (idSets (ascending), true);
+    }
+
+    /**
+     * Walks the index in property order, so only the ids up to the end of the
+     * page are visited.
+     * 
+     * @param offset number of ids to skip
+     * @param limit maximum number of ids returned
+     * @return ids of one page of the views in property order, with null values
+     *         last
+     */
+    List<String> ids (final boolean ascending, final int offset, final int limit) {
+
+        checkState (ordered, "The index on %s is not ordered", getProperty ());
+
+        final List<String> idList = new ArrayList<> ();
+        int skipped = 0;
+        final Iterator<Set<String>> it = Iterators.concat (idSets (ascending), Iterators.singletonIterator (nullSet));
+        while (it.hasNext ()) {
+            final Set<String> idSet = it.next ();
+            if (skipped + idSet.size () <= offset) {
+                skipped += idSet.size ();
+                continue;
+            }
+
+            for (final String id : idSet) {
+                if (skipped < offset) {
+                    skipped++;
+                } else if (idList.size () < limit) {
+                    idList.add (id);
+                } else {
+                    return idList;
+                }
+            }
+        }
+
+        return idList;
+    }
+
+    private Set<String> newIdSet () {
+
+        return ordered ? new TreeSet<String> () : new HashSet<String> ();
+    }
+
+    private Iterator<Set<String>> idSets (final boolean ascending) {
+
+        final NavigableMap<Object, Set<String>> orderedMap = (NavigableMap<Object, Set<String>>) valueMap;
+        return idSets (ascending ? orderedMap : notNull (orderedMap.descendingMap ()));
+    }
+
+    /**
+     * Walks the id sets of the values in map order.  The ids of neighboring
+     * strings that {@link ViewComparator} holds equal are merged into one set in
+     * id order, as a sort without the index orders them.
+     */
+    private static Iterator<Set<String>> idSets (final NavigableMap<Object, Set<String>> orderedMap) {
+
+        final PeekingIterator<Map.Entry<Object, Set<String>>> entryIt =
+                Iterators.peekingIterator (orderedMap.entrySet ().iterator ());
+
+        return new AbstractIterator<Set<String>> () {
+
+            @Override
+            protected @Nullable
+            Set<String> computeNext () {
+
+                if (!entryIt.hasNext ()) {
+                    return endOfData ();
+                }
+
+                final Map.Entry<Object, Set<String>> entry = entryIt.next ();
+                Set<String> idSet = entry.getValue ();
+                while (entryIt.hasNext () && naturallyEqual (entry.getKey (), entryIt.peek ().getKey ())) {
+                    if (idSet == entry.getValue ()) {
+                        idSet = new TreeSet<> (idSet);
+                    }
+                    idSet.addAll (entryIt.next ().getValue ());
+                }
+
+                return idSet;
+            }
+        };
+    }
+
+    private static boolean naturallyEqual (final Object value1, final Object value2) {
+
+        return value1 instanceof String && value2 instanceof String
+                && ViewComparator.compareNatural ((String) value1, (String) value2) == 0;
+    }
+
+    private List<String> flatten (final Iterator<Set<String>> idSets, final boolean includeNull) {
+
+        final List<String> idList = new ArrayList<> ();
+        while (idSets.hasNext ()) {
+            idList.addAll (idSets.next ());
+        }
+
+        if (includeNull) {
+            idList.addAll (nullSet);
+        }
+
+        return idList;
+    }
+}
@@ -0,0 +1,295 @@
+/*******************************************************************************
+ * Copyright 2014 Reality Warp Software
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.rws.pirkolator.core.store;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.rws.utility.common.Preconditions.notNull;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nullable;
+
+import com.google.common.base.Objects;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * This class keeps recently read views of a grid store on the local member, so
+ * repeated reads of the same views do not go to the grid.  Views are evicted
+ * when the cache is full or when they have been cached longer than the time to
+ * live, and are invalidated by the store as its map listener receives changes.
+ * 
+ * <p>Besides single views, the cache keeps one snapshot of all the views while
+ * the store holds no more views than the cache's maximum size.  Any change to
+ * the map invalidates the snapshot.
+ * 
+ * <p>Every invalidation advances a version.  A reader takes the version before
+ * reading the grid and passes it back when caching the result, so a view read
+ * before a change that was invalidated while the read was in flight is not
+ * cached.
+ * 
+ * <p>Cached views are shared by every reader and must not be changed.
+ * 
+ * @author jpirkey
+ * @since 1.0.0
+ */
+public class StoreNearCache<T> {
+
+    // *************************************************************************
+    // ** Member variables
+    // *************************************************************************
+
+    private final int maximumSize;
+    private final long timeToLiveNanos;
+
+    /** <p>Cached views.
+     * <br/><b>Key = view id</b> **/
+    private final Cache<String, T> cache;
+
+    @Nullable
+    private volatile Snapshot<T> snapshot;
+
+    private final AtomicLong version = new AtomicLong ();
+
+    /** metrics **/
+    private final AtomicLong hitCount = new AtomicLong ();
+    private final AtomicLong missCount = new AtomicLong ();
+    private final AtomicLong invalidationCount = new AtomicLong ();
+
+    // *************************************************************************
+    // ** Constructors
+    // *************************************************************************
+
+    /**
+     * @param maximumSize maximum number of views cached
+     * @param timeToLiveMillis time a view is cached, or 0 to cache until evicted
+     *            by size or invalidated
+     */
+    public StoreNearCache (final int maximumSize, final long timeToLiveMillis) {
+
+        super ();
+
+        checkArgument (maximumSize > 0, "Maximum size must be positive: %s", maximumSize);
+        checkArgument (timeToLiveMillis >= 0, "Time to live must not be negative: %s", timeToLiveMillis);
+
+        this.maximumSize = maximumSize;
+        timeToLiveNanos = TimeUnit.MILLISECONDS.toNanos (timeToLiveMillis);
+
+        final CacheBuilder<Object, Object> builder =
+                CacheBuilder.newBuilder ().maximumSize (maximumSize).recordStats ();
+        if (timeToLiveMillis > 0) {
+            builder.expireAfterWrite (timeToLiveMillis, TimeUnit.MILLISECONDS);
+        }
+        cache = notNull (builder.<String, T> build ());
+    }
+
+    // *************************************************************************
+    // ** Member properties
+    // *************************************************************************
+
+    public int getMaximumSize () {
+
+        return maximumSize;
+    }
+
+    public long size () {
+
+        return cache.size ();
+    }
+
+    /**
+     * @return number of reads answered by the cache
+     */
+    public long getHitCount () {
+
+        return hitCount.get ();
+    }
+
+    /**
+     * @return number of reads that went to the grid
+     */
+    public long getMissCount () {
+
+        return missCount.get ();
+    }
+
+    /**
+     * @return fraction of reads answered by the cache, or 1 if nothing has been
+     *         read
+     */
+    public double getHitRate () {
+
+        final long hits = hitCount.get ();
+        final long total = hits + missCount.get ();
+        return total == 0 ? 1.0 : (double) hits / total;
+    }
+
+    /**
+     * @return number of views evicted by size or time to live
+     */
+    public long getEvictionCount () {
+
+        return cache.stats ().evictionCount ();
+    }
+
+    /**
+     * @return number of invalidations received from the store
+     */
+    public long getInvalidationCount () {
+
+        return invalidationCount.get ();
+    }
+
+    /**
+     * @return current version, to be passed back when caching what is read
+     *         from the grid
+     */
+    public long getVersion () {
+
+        return version.get ();
+    }
+
+    // *************************************************************************
+    // ** Member methods
+    // *************************************************************************
+
+    /**
+     * @return cached view or null if the view must be read from the grid
+     */
+    public @Nullable
+    T get (final String id) {
+
+        final T value = cache.getIfPresent (id);
+        if (value == null) {
+            missCount.incrementAndGet ();
+        } else {
+            hitCount.incrementAndGet ();
+        }
+
+        return value;
+    }
+
+    /**
+     * @param readVersion version taken before the view was read from the grid
+     */
+    public void put (final String id, final T value, final long readVersion) {
+
+        if (version.get () != readVersion) {
+            return;
+        }
+
+        cache.put (id, value);
+
+        // An invalidation may have arrived between the check and the put
+        if (version.get () != readVersion) {
+            cache.invalidate (id);
+        }
+    }
+
+    /**
+     * @return snapshot of all the views or null if they must be read from the
+     *         grid
+     */
+    public @Nullable
+    Collection<T> getAll () {
+
+        final Snapshot<T> current = snapshot;
+        if (current == null || current.isExpired (timeToLiveNanos)) {
+            missCount.incrementAndGet ();
+            return null;
+        }
+
+        hitCount.incrementAndGet ();
+        return current.viewList;
+    }
+
+    /**
+     * Caches a snapshot of all the views, unless there are more views than the
+     * maximum size of the cache.
+     * 
+     * @param readVersion version taken before the views were read from the grid
+     */
+    public void putAll (final Collection<? extends T> values, final long readVersion) {
+
+        if (values.size () > maximumSize || version.get () != readVersion) {
+            return;
+        }
+
+        final Snapshot<T> current = new Snapshot<T> (notNull (ImmutableList.<T> copyOf (values)), System.nanoTime ());
+        snapshot = current;
+
+        if (version.get () != readVersion) {
+            snapshot = null;
+        }
+    }
+
+    /**
+     * Invalidates a changed view and the snapshot of all the views.
+     */
+    public void invalidate (final String id) {
+
+        version.incrementAndGet ();
+        invalidationCount.incrementAndGet ();
+        snapshot = null;
+        cache.invalidate (id);
+    }
+
+    public void invalidateAll () {
+
+        version.incrementAndGet ();
+        invalidationCount.incrementAndGet ();
+        snapshot = null;
+        cache.invalidateAll ();
+    }
+
+    // *************************************************************************
+    // ** Class methods
+    // *************************************************************************
+
+    @Override
+    public String toString () {
+
+        return Objects.toStringHelper (this).add ("maximumSize", maximumSize).add ("size", cache.size ())
+                .add ("hitCount", hitCount).add ("missCount", missCount)
+                .add ("invalidationCount", invalidationCount).toString ();
+    }
+
+    // *************************************************************************
+    // ** Member classes
+    // *************************************************************************
+
+    private static class Snapshot<T> {
+
+        final ImmutableList<T> viewList;
+        final long createdNanos;
+
+        Snapshot (final ImmutableList<T> viewList, final long createdNanos) {
+
+            super ();
+
+            this.viewList = viewList;
+            this.createdNanos = createdNanos;
+        }
+
+        boolean isExpired (final long timeToLiveNanos) {
+
+            return timeToLiveNanos > 0 && System.nanoTime () - createdNanos > timeToLiveNanos;
+        }
+    }
+}
@@ -0,0 +1,176 @@
+/*******************************************************************************
+ * Copyright 2014 Reality Warp Software
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.rws.pirkolator.core.store;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.rws.utility.common.Preconditions.notNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import javax.annotation.Nullable;
+
+import com.google.common.base.Objects;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * This class holds one page of the views matching a store query, along with
+ * the number of views that matched, so a caller can report the range it
+ * returned without reading every match.
+ * 
+ * @author jpirkey
+ * @since 1.0.0
+ */
+public class StorePage<T> {
+
+    /** Initial capacity of the selection heap; it grows up to the end of the page **/
+    private static final int INITIAL_HEAP_CAPACITY = 1024;
+
+    // *************************************************************************
+    // ** Member variables
+    // *************************************************************************
+
+    private final ImmutableList<T> itemList;
+    private final int offset;
+    private final int totalCount;
+
+    // *************************************************************************
+    // ** Constructors
+    // *************************************************************************
+
+    public StorePage (final List<? extends T> itemList, final int offset, final int totalCount) {
+
+        super ();
+
+        this.itemList = notNull (ImmutableList.<T> copyOf (itemList));
+        this.offset = offset;
+        this.totalCount = totalCount;
+    }
+
+    // *************************************************************************
+    // ** Member properties
+    // *************************************************************************
+
+    /**
+     * @return views of the page in order
+     */
+    public ImmutableList<T> getItemList () {
+
+        return itemList;
+    }
+
+    /**
+     * @return index of the page's first view among all the matches
+     */
+    public int getOffset () {
+
+        return offset;
+    }
+
+    /**
+     * @return number of views that matched the query
+     */
+    public int getTotalCount () {
+
+        return totalCount;
+    }
+
+    public int size () {
+
+        return itemList.size ();
+    }
+
+    public boolean isEmpty () {
+
+        return itemList.isEmpty ();
+    }
+
+    // *************************************************************************
+    // ** Class methods
+    // *************************************************************************
+
+    /**
+     * @return index one past the page's last view, capped at
+     *         {@link Integer#MAX_VALUE}
+     */
+    static int end (final int offset, final int limit) {
+
+        checkArgument (offset >= 0, "Offset must not be negative: %s", offset);
+        checkArgument (limit >= 0, "Limit must not be negative: %s", limit);
+
+        return (int) Math.min ((long) offset + limit, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Selects one page of views in a single pass.  Without a comparator the
+     * views are taken in the order they are read.  With a comparator only the
+     * views up to the end of the page are kept, in a heap whose greatest view is
+     * replaced by any smaller one, so the views past the page are never sorted
+     * or copied.
+     * 
+     * @param iterable matching views
+     * @param comparator order of the views, or null for the order they are read
+     * @param offset number of views to skip
+     * @param limit maximum number of views in the page
+     */
+    static <T> StorePage<T> select (final Iterable<? extends T> iterable, final @Nullable Comparator<T> comparator,
+            final int offset, final int limit) {
+
+        final int end = end (offset, limit);
+        int totalCount = 0;
+
+        if (comparator == null) {
+            final List<T> pageList = new ArrayList<> ();
+            for (final T item : iterable) {
+                if (totalCount >= offset && totalCount < end) {
+                    pageList.add (item);
+                }
+                totalCount++;
+            }
+
+            return new StorePage<> (pageList, offset, totalCount);
+        }
+
+        final PriorityQueue<T> heap =
+                new PriorityQueue<> (Math.max (1, Math.min (end, INITIAL_HEAP_CAPACITY)),
+                        Collections.reverseOrder (comparator));
+        for (final T item : iterable) {
+            totalCount++;
+            if (heap.size () < end) {
+                heap.add (item);
+            } else if (end > 0 && comparator.compare (item, heap.peek ()) < 0) {
+                heap.poll ();
+                heap.add (item);
+            }
+        }
+
+        final List<T> sortedList = new ArrayList<> (heap);
+        Collections.sort (sortedList, comparator);
+
+        return new StorePage<> (notNull (sortedList.subList (Math.min (offset, sortedList.size ()), sortedList
+                .size ())), offset, totalCount);
+    }
+
+    @Override
+    public String toString () {
+
+        return Objects.toStringHelper (this).add ("offset", offset).add ("size", itemList.size ())
+                .add ("totalCount", totalCount).toString ();
+    }
+}
@@ -0,0 +1,174 @@
+/*******************************************************************************
+ * Copyright 2014 Reality Warp Software
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.rws.pirkolator.core.store;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+import static com.rws.utility.common.Preconditions.notNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import com.hazelcast.query.PagingPredicate;
+import com.hazelcast.query.Predicate;
+import com.hazelcast.query.Predicates;
+
+/**
+ * This class builds a Hazelcast {@link Predicate} over the properties of a
+ * store's views.  Values are passed to Hazelcast as typed values rather than
+ * concatenated into SQL, so they can not change the query, and the predicate
+ * uses the map indexes declared by the store.  The conditions are joined with
+ * AND.
+ * 
+ * <p>Property names are checked against the getters of the view type when they
+ * are added, so a misspelled property fails here instead of matching nothing.
+ * 
+ * @author jpirkey
+ * @since 1.0.0
+ */
+public class StorePredicateBuilder<T> {
+
+    // *************************************************************************
+    // ** Member variables
+    // *************************************************************************
+
+    private final Class<T> type;
+    private final Set<String> propertySet;
+    private final List<Predicate<?, ?>> predicateList = new ArrayList<> ();
+
+    // *************************************************************************
+    // ** Constructors
+    // *************************************************************************
+
+    StorePredicateBuilder (final Class<T> type, final Set<String> propertySet) {
+
+        super ();
+
+        this.type = type;
+        this.propertySet = propertySet;
+    }
+
+    // *************************************************************************
+    // ** Member properties
+    // *************************************************************************
+
+    public boolean isEmpty () {
+
+        return predicateList.isEmpty ();
+    }
+
+    // *************************************************************************
+    // ** Member methods
+    // *************************************************************************
+
+    public StorePredicateBuilder<T> equal (final String property, final Comparable<?> value) {
+
+        predicateList.add (Predicates.equal (checkProperty (property), value));
+        return this;
+    }
+
+    public StorePredicateBuilder<T> notEqual (final String property, final Comparable<?> value) {
+
+        predicateList.add (Predicates.notEqual (checkProperty (property), value));
+        return this;
+    }
+
+    public StorePredicateBuilder<T> in (final String property, final Comparable<?>... values) {
+
+        predicateList.add (Predicates.in (checkProperty (property), values));
+        return this;
+    }
+
+    /**
+     * Matches values between from and to, inclusive.  Uses an ordered index of
+     * the property if one has been declared.
+     */
+    public StorePredicateBuilder<T> between (final String property, final Comparable<?> from, final Comparable<?> to) {
+
+        predicateList.add (Predicates.between (checkProperty (property), from, to));
+        return this;
+    }
+
+    public StorePredicateBuilder<T> greaterEqual (final String property, final Comparable<?> value) {
+
+        predicateList.add (Predicates.greaterEqual (checkProperty (property), value));
+        return this;
+    }
+
+    public StorePredicateBuilder<T> lessEqual (final String property, final Comparable<?> value) {
+
+        predicateList.add (Predicates.lessEqual (checkProperty (property), value));
+        return this;
+    }
+
+    /**
+     * Adds an equality condition for each entry of a request's parameter map.
+     * Values that are not {@link Comparable} are compared by their string form;
+     * Hazelcast converts string values to the type of the property.
+     */
+    public StorePredicateBuilder<T> parameterMap (final Map<String, Object> map) {
+
+        for (final Entry<String, Object> entry : map.entrySet ()) {
+            final Object value = entry.getValue ();
+            if (value instanceof Comparable) {
+                equal (notNull (entry.getKey ()), (Comparable<?>) value);
+            } else {
+                equal (notNull (entry.getKey ()), notNull (String.valueOf (value)));
+            }
+        }
+
+        return this;
+    }
+
+    /**
+     * @return predicate matching all of the conditions added
+     * @throws IllegalStateException if no condition has been added
+     */
+    @SuppressWarnings ("unchecked")
+    public Predicate<String, T> build () {
+
+        checkState (!predicateList.isEmpty (), "No conditions have been added to the %s predicate",
+                type.getSimpleName ());
+
+        if (predicateList.size () == 1) {
+            return notNull ((Predicate<String, T>) predicateList.get (0));
+        }
+
+        return notNull ((Predicate<String, T>) Predicates.and (predicateList.toArray (new Predicate[predicateList
+                .size ()])));
+    }
+
+    /**
+     * @param pageSize number of views in each page
+     * @return paging predicate over the conditions added, starting at the first
+     *         page
+     */
+    public PagingPredicate buildPaging (final int pageSize) {
+
+        checkArgument (pageSize > 0, "Page size must be positive: %s", pageSize);
+
+        return new PagingPredicate (build (), pageSize);
+    }
+
+    private String checkProperty (final String property) {
+
+        checkArgument (propertySet.contains (property), "%s has no property %s", type.getSimpleName (), property);
+        return property;
+    }
+}
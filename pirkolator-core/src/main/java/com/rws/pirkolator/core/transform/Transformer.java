@@ -22,7 +22,6 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Set;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import javax.annotation.Nullable;
@@ -35,7 +34,9 @@ import org.slf4j.LoggerFactory;
 import com.google.common.collect.Sets;
 import com.rws.pirkolator.core.engine.AbstractPublisher;
 import com.rws.pirkolator.core.engine.Publication;
+import com.rws.pirkolator.core.engine.QueuePolicy;
 import com.rws.pirkolator.core.engine.SystemResourceManager;
+import com.rws.pirkolator.core.engine.queue.BoundedBlockingQueue;
 import com.rws.pirkolator.model.filter.TypeFilter;
 import com.rws.utility.common.Preconditions;
 import com.rws.utility.common.UUIDs;
@@ -60,7 +61,7 @@ public class Transformer extends AbstractPublisher {
 
     final Set<Class<?>> toTypeSet = Sets.newConcurrentHashSet ();
 
-    final LinkedBlockingQueue<TransformTask> transformQueue = new LinkedBlockingQueue<> ();
+    final BoundedBlockingQueue<TransformTask> transformQueue;
 
     // *************************************************************************
     // ** Constructors
@@ -68,7 +69,37 @@ public class Transformer extends AbstractPublisher {
 
     public Transformer () {
 
+        this (new QueuePolicy ());
+    }
+
+    /**
+     * @param queuePolicy capacity and overflow of the queue of objects waiting to be transformed
+     */
+    public Transformer (final QueuePolicy queuePolicy) {
+
         super (UUIDs.generateUUID (), "Transforming Publisher");
+
+        transformQueue = queuePolicy.buildQueue ();
+    }
+
+    // *************************************************************************
+    // ** Member properties
+    // *************************************************************************
+
+    /**
+     * @return number of objects dropped by the transform queue's overflow policy
+     */
+    public long getDroppedCount () {
+
+        return transformQueue.getDroppedCount ();
+    }
+
+    /**
+     * @return total time callers of transformAndPublish have waited for room in the transform queue
+     */
+    public long getBlockedNanos () {
+
+        return transformQueue.getBlockedNanos ();
     }
 
     // *************************************************************************
@@ -145,7 +176,7 @@ public class Transformer extends AbstractPublisher {
     // ** Member classes 
     // *************************************************************************
 
-    class TransformTask {
+    static class TransformTask {
 
         Serializable fromObj;
         boolean copy;
@@ -18,7 +18,15 @@ package com.rws.pirkolator.core.utility.serial;
 import static com.google.common.base.Preconditions.checkNotNull;
 import static com.rws.utility.common.Preconditions.notNull;
 
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import javax.annotation.Nullable;
 
@@ -30,66 +38,249 @@ import com.esotericsoftware.kryo.Serializer;
 import com.esotericsoftware.kryo.io.Input;
 import com.esotericsoftware.kryo.io.Output;
 import com.esotericsoftware.kryo.serializers.FieldSerializer;
+import com.google.common.collect.ImmutableList;
+import com.rws.pirkolator.model.DaoSource;
+import com.rws.pirkolator.model.GeoLocation;
 import com.rws.pirkolator.model.Message;
+import com.rws.pirkolator.model.Metadata;
+import com.rws.pirkolator.model.Source;
+import com.rws.pirkolator.model.Status;
+import com.rws.pirkolator.model.SystemInfo;
+import com.rws.pirkolator.model.UserSession;
+import com.rws.pirkolator.model.event.ChangeEventType;
+import com.rws.pirkolator.model.metric.Measurement;
+import com.rws.pirkolator.model.metric.Series;
+import com.rws.pirkolator.model.request.Request;
+import com.rws.pirkolator.model.request.RequestEvent;
+import com.rws.pirkolator.model.request.RequestState;
+import com.rws.pirkolator.model.request.RequestStats;
+import com.rws.pirkolator.view.model.AnalyticView;
+import com.rws.pirkolator.view.model.ConnectionView;
+import com.rws.pirkolator.view.model.DalView;
+import com.rws.pirkolator.view.model.FilterView;
+import com.rws.pirkolator.view.model.MeasurementView;
+import com.rws.pirkolator.view.model.PublicationView;
+import com.rws.pirkolator.view.model.PublisherView;
+import com.rws.pirkolator.view.model.RequestView;
+import com.rws.pirkolator.view.model.SeriesView;
+import com.rws.pirkolator.view.model.SourceView;
+import com.rws.pirkolator.view.model.StatusView;
+import com.rws.pirkolator.view.model.SubscriberView;
+import com.rws.pirkolator.view.model.SubscriptionView;
+import com.rws.pirkolator.view.model.SystemView;
 
 /**
  * This class provides Kryo support for marshaling data in {@link Message} instances.
  * 
+ * <p>Kryo instances are not thread safe, so each thread gets its own Kryo with
+ * its own input and output buffers instead of sharing one behind a lock.  Every
+ * instance pre-registers {@link Message}, {@link UUID} and the model and view
+ * types with the same fixed class ids, so bytes written on one thread or node
+ * can be read on any other.
+ * 
  * @author jpirkey
  *
  */
 public class KryoUtility {
 
-    static Output OUTPUT;
-    static Input INPUT;
-    public static Kryo KRYO = new Kryo ();
+    /** First class id of the pre-registered types, ids below are used by Kryo **/
+    public static final int FIRST_REGISTRATION_ID = 100;
 
-    static {
-        KRYO.setRegistrationRequired (false);
-        KRYO.setInstantiatorStrategy (new DefaultInstantiatorStrategy(new StdInstantiatorStrategy()));
-        KRYO.register (Message.class, new FieldSerializer<Message> (KRYO, Message.class));
-        KRYO.register (UUID.class, new UUIDSerializer ());
+    /** <p>Types registered after Message and UUID, in class id order.
+     * <br/><b>Only append to this list; reordering changes the ids on the wire.</b> **/
+    static final List<Class<?>> REGISTERED_TYPES = ImmutableList.<Class<?>> of (ArrayList.class, LinkedList.class,
+            HashMap.class, HashSet.class, ConcurrentHashMap.class, Class.class, DaoSource.class, GeoLocation.class,
+            Metadata.class, Source.class, Status.class, SystemInfo.class, UserSession.class, ChangeEventType.class,
+            Measurement.class, Series.class, Request.class, RequestEvent.class, RequestState.class,
+            RequestStats.class, AnalyticView.class, ConnectionView.class, DalView.class, FilterView.class,
+            MeasurementView.class, PublicationView.class, PublisherView.class, RequestView.class, SeriesView.class,
+            SourceView.class, StatusView.class, SubscriberView.class, SubscriptionView.class, SystemView.class,
+            Serializable[].class, String[].class, Class[].class);
 
-        OUTPUT = new Output (16 * 1024, 128 * 1024);
-        INPUT = new Input (128 * 1024);
-    }
+    static final int OUTPUT_BUFFER_SIZE = 16 * 1024;
+    static final int MAX_OUTPUT_BUFFER_SIZE = 128 * 1024;
+
+    /** Serializers added at runtime, applied to each thread's Kryo in this order **/
+    private static final List<SerializerRegistration<?>> REGISTRATIONS = new CopyOnWriteArrayList<> ();
+
+    private static final ThreadLocal<KryoContext> CONTEXT = new ThreadLocal<KryoContext> () {
+
+        @Override
+        protected KryoContext initialValue () {
+
+            return new KryoContext ();
+        }
+    };
 
-    public static synchronized Message copyMessage (final Message message) {
+    public static Message copyMessage (final Message message) {
 
-        return notNull (KRYO.copy (message));
+        // Deferred content is transient, so decode it before the fields are copied
+        message.decodeContent ();
+        return notNull (context ().kryo.copy (message));
     }
 
-    public static synchronized @Nullable
+    public static @Nullable
     byte[] writeMessage (final Message message) {
 
-        KRYO.writeObject (OUTPUT, message);
-        return OUTPUT.getBuffer ();
+        message.decodeContent ();
+
+        final KryoContext context = context ();
+        context.output.clear ();
+        context.kryo.writeObject (context.output, message);
+        return context.output.toBytes ();
     }
 
-    public static synchronized @Nullable
+    public static @Nullable
     Message readBytesIntoMessage (final byte[] bytes) {
 
-        INPUT.setBuffer (bytes);
-        //INPUT.read (bytes);
-        return KRYO.readObject (INPUT, Message.class);
+        final KryoContext context = context ();
+        context.input.setBuffer (bytes);
+        return context.kryo.readObject (context.input, Message.class);
+    }
+
+    /**
+     * Writes only the content of a message, without its ids or headers.
+     * 
+     * @return the content as a count followed by each object with its class
+     */
+    public static byte[] writeContent (final Message message) {
+
+        final KryoContext context = context ();
+        context.output.clear ();
+
+        final int size = message.size ();
+        context.output.writeInt (size, true);
+        for (int i = 0; i < size; i++) {
+            context.kryo.writeClassAndObject (context.output, message.get (i));
+        }
+
+        return notNull (context.output.toBytes ());
     }
 
+    /**
+     * Reads content written by {@link #writeContent(Message)}.
+     */
+    public static Serializable[] readContent (final byte[] bytes) {
+
+        final KryoContext context = context ();
+        context.input.setBuffer (bytes);
+
+        final Serializable[] content = new Serializable[context.input.readInt (true)];
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (Serializable) notNull (context.kryo.readClassAndObject (context.input));
+        }
+
+        return content;
+    }
+
+    /**
+     * Registers a serializer with the Kryo of every thread.  The serializer is
+     * shared by those threads, so it must not keep per-call state.
+     */
     public static <T> void registerSerializer (final Class<T> type, final Serializer<T> serializer) {
 
-        KRYO.register (type, serializer);
+        REGISTRATIONS.add (new SerializerRegistration<> (type, serializer));
     }
 
-    public static synchronized @Nullable
+    public static @Nullable
     byte[] writeBytes (final Message message) {
 
-        KRYO.writeObject (OUTPUT, message);
-        return OUTPUT.getBuffer ();
+        return writeMessage (message);
+    }
+
+    /**
+     * @return the {@link Kryo} owned by the calling thread; do not share it with other threads
+     */
+    public static Kryo getKryo () {
+
+        return context ().kryo;
     }
 
-    private static class UUIDSerializer extends Serializer<UUID> {
+    static Kryo newKryo () {
+
+        final Kryo kryo = new Kryo ();
+        kryo.setRegistrationRequired (false);
+        kryo.setInstantiatorStrategy (new DefaultInstantiatorStrategy (new StdInstantiatorStrategy ()));
+
+        int id = FIRST_REGISTRATION_ID;
+        // Copies of a frozen message must not inherit its transient read-only state
+        final FieldSerializer<Message> messageSerializer = new FieldSerializer<> (kryo, Message.class);
+        messageSerializer.setCopyTransient (false);
+        kryo.register (Message.class, messageSerializer, id++);
+        kryo.register (UUID.class, new UUIDSerializer (), id++);
+        for (final Class<?> type : REGISTERED_TYPES) {
+            kryo.register (type, id++);
+        }
+
+        return kryo;
+    }
+
+    private static KryoContext context () {
+
+        final KryoContext context = notNull (CONTEXT.get ());
+
+        // Pick up serializers registered since this thread's last call
+        if (context.registrationCount < REGISTRATIONS.size ()) {
+            context.applyRegistrations ();
+        }
+
+        return context;
+    }
+
+    // *************************************************************************
+    // ** Member classes
+    // *************************************************************************
+
+    private static class KryoContext {
+
+        final Kryo kryo = newKryo ();
+        final Output output = new Output (OUTPUT_BUFFER_SIZE, MAX_OUTPUT_BUFFER_SIZE);
+        final Input input = new Input ();
+        int registrationCount;
+
+        KryoContext () {
+
+            super ();
+        }
+
+        void applyRegistrations () {
+
+            final int size = REGISTRATIONS.size ();
+            for (int i = registrationCount; i < size; i++) {
+                REGISTRATIONS.get (i).register (kryo);
+            }
+            registrationCount = size;
+        }
+    }
+
+    private static class SerializerRegistration<T> {
+
+        private final Class<T> type;
+        private final Serializer<T> serializer;
+
+        SerializerRegistration (final Class<T> type, final Serializer<T> serializer) {
+
+            super ();
+
+            this.type = type;
+            this.serializer = serializer;
+        }
+
+        void register (final Kryo kryo) {
+
+            kryo.register (type, serializer);
+        }
+    }
+
+    /**
+     * Writes a {@link UUID} as its two longs rather than its 36 character string.
+     */
+    static class UUIDSerializer extends Serializer<UUID> {
 
         public UUIDSerializer () {
 
+            // UUIDs are immutable, so copies share the instance
+            super (false, true);
         }
 
         @Override
@@ -97,7 +288,7 @@ public class KryoUtility {
         UUID read (final @Nullable Kryo arg0, final @Nullable Input arg1, final @Nullable Class<UUID> arg2) {
 
             checkNotNull (arg1);
-            return UUID.fromString (arg1.readString ());
+            return new UUID (arg1.readLong (), arg1.readLong ());
         }
 
         @Override
@@ -105,16 +296,15 @@ public class KryoUtility {
 
             checkNotNull (arg1);
             checkNotNull (arg2);
-            arg1.writeString (arg2.toString ());
+            arg1.writeLong (arg2.getMostSignificantBits ());
+            arg1.writeLong (arg2.getLeastSignificantBits ());
         }
 
         @Override
         public @Nullable
         UUID copy (final @Nullable Kryo kryo, final @Nullable UUID original) {
 
-            checkNotNull (original);
-            return UUID.fromString (original.toString ());
+            return original;
         }
-
     }
 }
@@ -0,0 +1,314 @@
+/*******************************************************************************
+ * Copyright 2014 Reality Warp Software
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.rws.pirkolator.core.utility.serial;
+
+import static com.rws.utility.common.Preconditions.notNull;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.Sets;
+import com.rws.pirkolator.model.Message;
+import com.rws.pirkolator.model.MessageBatch;
+
+/**
+ * This class writes and reads the binary envelope a {@link Message} crosses the
+ * grid in.
+ * 
+ * <p>The envelope starts with its version, then holds the ids, the headers and
+ * the class names of the content types, and ends with the content as a block of
+ * Kryo bytes prefixed by its length.  A reader gets the headers and types
+ * without decoding the content; the block is kept as read and decoded on the
+ * first read of the content, so a hub can route a message it never delivers
+ * without building its objects.  A message written again before its content is
+ * decoded writes the block it was read with.
+ * 
+ * <p>A {@link MessageBatch} is written as one envelope version, the id of its
+ * source, its sequence and the count of its messages, followed by each message
+ * without its own version.  Version 1 batches have no sequence; a batch without
+ * a sequence and a single message are still written as version 1, so hubs that
+ * only read version 1 keep reading them.
+ * 
+ * <p>Stage times only compare within one JVM, so they are not written.
+ * 
+ * @author jpirkey
+ * @since 1.0.0
+ */
+public final class MessageEnvelope {
+
+    private static final Logger LOG = notNull (LoggerFactory.getLogger (MessageEnvelope.class));
+
+    /** Latest version written by this class; readers accept this and earlier versions **/
+    public static final byte VERSION = 2;
+
+    /** Version of single messages and of batches without a sequence **/
+    static final byte BASE_VERSION = 1;
+
+    /** First version holding the sequence of a batch **/
+    static final byte BATCH_SEQUENCE_VERSION = 2;
+
+    private static final byte COPY_UNSET = 0;
+    private static final byte COPY_FALSE = 1;
+    private static final byte COPY_TRUE = 2;
+
+    /** <p>Content types resolved from their names.
+     * <br/><b>Key = class name</b> **/
+    private static final Map<String, Class<?>> TYPE_MAP = new ConcurrentHashMap<> ();
+
+    /** Names of content types not on this node's class path, so they are only looked up once **/
+    private static final Set<String> UNKNOWN_TYPE_SET = Sets.newConcurrentHashSet ();
+
+    // *************************************************************************
+    // ** Constructors
+    // *************************************************************************
+
+    private MessageEnvelope () {
+
+        super ();
+    }
+
+    // *************************************************************************
+    // ** Class methods
+    // *************************************************************************
+
+    public static void write (final Message message, final DataOutput out) throws IOException {
+
+        out.writeByte (BASE_VERSION);
+        writeBody (message, out);
+    }
+
+    public static Message read (final DataInput in) throws IOException {
+
+        return readBody (readVersion (in), in);
+    }
+
+    public static void writeBatch (final MessageBatch batch, final DataOutput out) throws IOException {
+
+        final long sequence = batch.getSequence ();
+        final boolean sequenced = sequence != MessageBatch.NO_SEQUENCE;
+        out.writeByte (sequenced ? BATCH_SEQUENCE_VERSION : BASE_VERSION);
+        writeUUID (batch.getSourceId (), out);
+        if (sequenced) {
+            out.writeLong (sequence);
+        }
+
+        final List<Message> messageList = batch.getMessageList ();
+        out.writeInt (messageList.size ());
+        for (int i = 0; i < messageList.size (); i++) {
+            writeBody (notNull (messageList.get (i)), out);
+        }
+    }
+
+    public static MessageBatch readBatch (final DataInput in) throws IOException {
+
+        final byte version = readVersion (in);
+        final UUID sourceId = readUUID (in);
+        final long sequence = version >= BATCH_SEQUENCE_VERSION ? in.readLong () : MessageBatch.NO_SEQUENCE;
+
+        final int count = in.readInt ();
+        final List<Message> messageList = new ArrayList<> (count);
+        for (int i = 0; i < count; i++) {
+            messageList.add (readBody (version, in));
+        }
+
+        return new MessageBatch (sourceId, sequence, messageList);
+    }
+
+    private static void writeBody (final Message message, final DataOutput out) throws IOException {
+
+        final UUID id = message.getId ();
+        final UUID originalId = message.getOriginalId ();
+        writeUUID (id, out);
+        if (originalId.equals (id)) {
+            out.writeBoolean (false);
+        } else {
+            out.writeBoolean (true);
+            writeUUID (originalId, out);
+        }
+
+        out.writeLong (message.getSequence ());
+        final String copy = message.getHeader (Message.COPY_HEADER);
+        if (copy == null) {
+            out.writeByte (COPY_UNSET);
+        } else {
+            out.writeByte (Boolean.parseBoolean (copy) ? COPY_TRUE : COPY_FALSE);
+        }
+        out.writeLong (message.getTimestamp ());
+
+        final int headerCount = message.getCustomHeaderCount ();
+        out.writeInt (headerCount);
+        for (int i = 0; i < headerCount; i++) {
+            out.writeUTF (message.getCustomHeaderName (i));
+            out.writeUTF (message.getCustomHeaderValue (i));
+        }
+
+        final Set<Class<?>> typeSet = message.getTypes ();
+        out.writeInt (typeSet.size ());
+        for (final Class<?> type : typeSet) {
+            out.writeUTF (type.getName ());
+        }
+
+        // Forward content that was never decoded as it was read
+        final byte[] content;
+        final Message.IContentDecoder decoder = message.getContentDecoder ();
+        if (decoder instanceof EncodedContent) {
+            content = ((EncodedContent) decoder).bytes;
+        } else if (message.isEmpty ()) {
+            content = new byte[0];
+        } else {
+            content = KryoUtility.writeContent (message);
+        }
+        out.writeInt (content.length);
+        out.write (content);
+    }
+
+    /**
+     * @param version of the envelope, for reading bodies written by earlier versions
+     */
+    private static Message readBody (@SuppressWarnings ("unused") final byte version, final DataInput in)
+            throws IOException {
+
+        final UUID id = readUUID (in);
+        final UUID originalId = in.readBoolean () ? readUUID (in) : null;
+        final Message message = new Message (id, originalId);
+
+        message.setSequence (in.readLong ());
+        final byte copy = in.readByte ();
+        if (copy != COPY_UNSET) {
+            message.setCopy (copy == COPY_TRUE);
+        }
+        message.setTimestamp (in.readLong ());
+
+        final int headerCount = in.readInt ();
+        for (int i = 0; i < headerCount; i++) {
+            message.addHeader (notNull (in.readUTF ()), notNull (in.readUTF ()));
+        }
+
+        final int typeCount = in.readInt ();
+        final List<Class<?>> typeList = new ArrayList<> (typeCount);
+        for (int i = 0; i < typeCount; i++) {
+            final Class<?> type = resolveType (notNull (in.readUTF ()));
+            if (type != null) {
+                typeList.add (type);
+            }
+        }
+
+        final int length = in.readInt ();
+        if (length > 0) {
+            final byte[] content = new byte[length];
+            in.readFully (content);
+            message.setContent (typeList, new EncodedContent (content));
+        }
+
+        return message;
+    }
+
+    private static byte readVersion (final DataInput in) throws IOException {
+
+        final byte version = in.readByte ();
+        if (version < 1 || version > VERSION) {
+            throw new IOException ("Unsupported message envelope version " + version + ", expected " + VERSION
+                    + " or earlier");
+        }
+
+        return version;
+    }
+
+    private static void writeUUID (final UUID id, final DataOutput out) throws IOException {
+
+        out.writeLong (id.getMostSignificantBits ());
+        out.writeLong (id.getLeastSignificantBits ());
+    }
+
+    private static UUID readUUID (final DataInput in) throws IOException {
+
+        return new UUID (in.readLong (), in.readLong ());
+    }
+
+    /**
+     * A type missing from this node's class path is left out of the message's
+     * types, so no subscriber here can match it.
+     * 
+     * @return the type or null if the class is not on this node's class path
+     */
+    private static @Nullable
+    Class<?> resolveType (final String name) {
+
+        Class<?> type = TYPE_MAP.get (name);
+        if (type != null || UNKNOWN_TYPE_SET.contains (name)) {
+            return type;
+        }
+
+        try {
+            type = Class.forName (name, false, classLoader ());
+            TYPE_MAP.put (name, type);
+        } catch (final ClassNotFoundException ex) {
+            UNKNOWN_TYPE_SET.add (name);
+            LOG.debug ("Message content type {} is not on the class path; ignoring it", name);
+        }
+
+        return type;
+    }
+
+    private static ClassLoader classLoader () {
+
+        final ClassLoader loader = Thread.currentThread ().getContextClassLoader ();
+        if (loader == null) {
+            return notNull (MessageEnvelope.class.getClassLoader ());
+        }
+
+        return loader;
+    }
+
+    // *************************************************************************
+    // ** Member classes
+    // *************************************************************************
+
+    /**
+     * Content block of an envelope, decoded by {@link KryoUtility} when the
+     * message's content is first read.
+     */
+    static final class EncodedContent implements Message.IContentDecoder {
+
+        final byte[] bytes;
+
+        EncodedContent (final byte[] bytes) {
+
+            super ();
+
+            this.bytes = bytes;
+        }
+
+        @Override
+        public Serializable[] decode () {
+
+            return KryoUtility.readContent (bytes);
+        }
+    }
+}
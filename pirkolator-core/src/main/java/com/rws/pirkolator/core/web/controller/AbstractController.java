@@ -132,7 +132,7 @@ public abstract class AbstractController<T extends IIdentifiable> {
         }
         
         if (!sortList.isEmpty ()) {
-            final ViewComparator<T> viewComparator = new ViewComparator<> (sortList);
+            final ViewComparator<T> viewComparator = ViewComparator.forType (getType (), sortList);
             Collections.sort (tmpList, viewComparator);
         }
 
@@ -150,7 +150,7 @@ public abstract class AbstractController<T extends IIdentifiable> {
         }
         
         if (!sortList.isEmpty ()) {
-            final ViewComparator<T> viewComparator = new ViewComparator<> (sortList);
+            final ViewComparator<T> viewComparator = ViewComparator.forType (getType (), sortList);
             Collections.sort (tmpList, viewComparator);
         }
 
@@ -140,7 +140,7 @@ public abstract class AbstractResyncController<T extends IIdentifiable> {
         }
         
         if (!sortList.isEmpty ()) {
-            final ViewComparator<T> viewComparator = new ViewComparator<> (sortList);
+            final ViewComparator<T> viewComparator = ViewComparator.forType (getType (), sortList);
             Collections.sort (tmpList, viewComparator);
         }
 
@@ -157,7 +157,7 @@ public abstract class AbstractResyncController<T extends IIdentifiable> {
             tmpList.add(obj);
         }
         if (!sortList.isEmpty ()) {
-            final ViewComparator<T> viewComparator = new ViewComparator<> (sortList);
+            final ViewComparator<T> viewComparator = ViewComparator.forType (getType (), sortList);
             Collections.sort (tmpList, viewComparator);
         }
 
@@ -17,7 +17,6 @@ package com.rws.pirkolator.core.web.controller;
 
 import static com.rws.utility.common.Preconditions.notNull;
 
-import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
@@ -46,6 +45,7 @@ import com.google.common.collect.Maps;
 import com.rws.pirkolator.core.engine.AbstractSubscriber;
 import com.rws.pirkolator.core.engine.LocalPubSub;
 import com.rws.pirkolator.core.store.IStore;
+import com.rws.pirkolator.core.store.StorePage;
 import com.rws.pirkolator.core.web.controller.exception.NoContentException;
 import com.rws.pirkolator.core.web.controller.exception.RESTEndpointNotEnabledException;
 import com.rws.pirkolator.core.web.controller.exception.ResourceAlreadyExistsException;
@@ -148,46 +148,33 @@ public abstract class AbstractSubscribingController<T extends IIdentifiable> ext
             parameterMap.put (entry.getKey (), entry.getValue ());
         }
 
-        final Iterable<? extends T> it;
-        if (parameterMap.isEmpty ()) {
-            it = getStore ().findAll ();
-        } else {
-            it = getStore ().findByParameterMap (parameterMap);
-        }
-
-        final ArrayList<T> list = new ArrayList<> ();
-        for (final T obj : it) {
-            list.add(obj);
-        }
-        
-        final List<T> sortedList = processSortBy (requestMap, list);
-        if (items.isEmpty ()) {
-            response.addHeader ("Content-Range", "items 0-" + sortedList.size () + "/" + sortedList.size ());
-            return sortedList;
-        }
-
-        final String tmp = items.replace ("items=", "");
-        final String[] split = tmp.split ("-");
-        if (split.length != 2) {
-            LOG.error ("Incorrect request header for paging items processing {}", items);
-            response.addHeader ("Content-Range", "items 0-" + sortedList.size () + "/" + sortedList.size ());
-            return sortedList;
-        }
-
-        final int startIndex = Integer.parseInt (split[0]);
-        int endIndex = Integer.parseInt (split[1]);
-
-        // Adjust for range past allowed size
-        if (endIndex >= sortedList.size ()) {
-            endIndex = sortedList.size () - 1;
+        final List<Sort> sortList = SortUtils.getSortList ((String) requestMap.get ("sortBy"));
+
+        boolean ranged = false;
+        int offset = 0;
+        int limit = Integer.MAX_VALUE;
+        if (!items.isEmpty ()) {
+            final String tmp = items.replace ("items=", "");
+            final String[] split = tmp.split ("-");
+            if (split.length == 2) {
+                offset = Integer.parseInt (split[0]);
+                limit = Math.max (0, Integer.parseInt (split[1]) - offset + 1);
+                ranged = true;
+            } else {
+                LOG.error ("Incorrect request header for paging items processing {}", items);
+            }
         }
 
-        final List<T> pagedList = new ArrayList<> ();
-        for (int i = startIndex; i <= endIndex; i++) {
-            pagedList.add (sortedList.get (i));
+        // Only the requested page is read from the store
+        final StorePage<T> page = getStore ().findPage (parameterMap, sortList, offset, limit);
+        final List<T> pagedList = page.getItemList ();
+        if (!ranged) {
+            response.addHeader ("Content-Range", "items 0-" + page.getTotalCount () + "/" + page.getTotalCount ());
+        } else {
+            response.addHeader ("Content-Range", "items " + offset + "-" + (offset + pagedList.size () - 1) + "/"
+                    + page.getTotalCount ());
         }
 
-        response.addHeader ("Content-Range", "items " + startIndex + "-" + endIndex + "/" + sortedList.size ());
         return pagedList;
     }
 
@@ -196,7 +183,7 @@ public abstract class AbstractSubscribingController<T extends IIdentifiable> ext
         final List<Sort> sortList = SortUtils.getSortList (sortBy);
 
         if (!sortList.isEmpty ()) {
-            final ViewComparator<T> viewComparator = new ViewComparator<> (sortList);
+            final ViewComparator<T> viewComparator = ViewComparator.forType (getType (), sortList);
             Collections.sort (viewList, viewComparator);
         }
 
@@ -209,7 +196,7 @@ public abstract class AbstractSubscribingController<T extends IIdentifiable> ext
         final List<Sort> sortList = SortUtils.getSortList (sortBy);
 
         if (!sortList.isEmpty ()) {
-            final ViewComparator<T> viewComparator = new ViewComparator<> (sortList);
+            final ViewComparator<T> viewComparator = ViewComparator.forType (getType (), sortList);
             Collections.sort (viewList, viewComparator);
         }
 
@@ -17,7 +17,14 @@ package com.rws.pirkolator.core.data.model;
 
 import static com.rws.utility.common.Preconditions.notNull;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.junit.Assert;
 import org.junit.Test;
@@ -164,4 +171,88 @@ public class SerializationTest {
                 .next ());
         Assert.assertEquals ("Expected UUIDs to be the same", testId, resultMsg2.get (UUID.class).iterator ().next ());
     }
+
+    @Test
+    public void testKryoMessageHeaders () {
+
+        final Message testMessage = new Message ();
+        testMessage.add ("Test Info");
+        testMessage.setSequence (42);
+        testMessage.setCopy (true);
+        testMessage.addHeader ("topic-publisher", "Test Publisher");
+
+        final Message resultMsg =
+                KryoUtility.readBytesIntoMessage (notNull (KryoUtility.writeBytes (testMessage)));
+        Assert.assertNotNull ("Expected Response not to be null", resultMsg);
+        Assert.assertEquals ("Expected sequences to be the same", 42, resultMsg.getSequence ());
+        Assert.assertEquals ("Expected sequence header to be the same", "42",
+                resultMsg.getHeader (Message.SEQUENCE_HEADER));
+        Assert.assertTrue ("Expected a copy", resultMsg.isCopy ());
+        Assert.assertEquals ("Expected timestamps to be the same", testMessage.getTimestamp (),
+                resultMsg.getTimestamp ());
+        Assert.assertEquals ("Expected headers to be the same", testMessage.getHeaderMap (), resultMsg.getHeaderMap ());
+        Assert.assertTrue ("Expected String content", resultMsg.containsType (CharSequence.class));
+    }
+
+    /**
+     * Each thread has its own Kryo, so bytes written on one thread must be
+     * readable on another and concurrent copies must not interfere.
+     */
+    @Test
+    public void testKryoMessageAcrossThreads () throws InterruptedException, ExecutionException {
+
+        final UUID testId = UUIDs.generateUUID ();
+        final Message testMessage = new Message ();
+        testMessage.add (testId);
+
+        final byte[] bytes = notNull (KryoUtility.writeBytes (testMessage));
+
+        final ExecutorService service = Executors.newFixedThreadPool (4);
+        final List<Future<Message>> futureList = new ArrayList<> ();
+        for (int i = 0; i < 100; i++) {
+            final boolean read = i % 2 == 0;
+            futureList.add (service.submit (new Callable<Message> () {
+
+                @Override
+                public Message call () {
+
+                    if (read) {
+                        return notNull (KryoUtility.readBytesIntoMessage (bytes));
+                    }
+                    return KryoUtility.copyMessage (testMessage);
+                }
+            }));
+        }
+
+        for (final Future<Message> future : futureList) {
+            final Message resultMsg = future.get ();
+            Assert.assertEquals ("Expected Response Ids to be the same", testMessage.getId (), resultMsg.getId ());
+            Assert.assertEquals ("Expected UUIDs to be the same", testId, resultMsg.get (UUID.class).iterator ()
+                    .next ());
+        }
+
+        service.shutdown ();
+    }
+
+    @Test
+    public void testKryoCopyOfFrozenMessageIsMutable () {
+
+        final Message testMessage = new Message ();
+        testMessage.add ("Test Info");
+        testMessage.freeze ();
+
+        try {
+            testMessage.add ("More Info");
+            Assert.fail ("Expected a frozen message to reject new content");
+        } catch (final IllegalStateException ex) {
+            // expected
+        }
+
+        final Message resultMsg = KryoUtility.copyMessage (testMessage);
+        Assert.assertFalse ("Expected the copy not to be frozen", resultMsg.isFrozen ());
+
+        resultMsg.add ("More Info");
+        Assert.assertEquals ("Expected 2 objects in the copy", 2, resultMsg.get ().size ());
+        Assert.assertEquals ("Expected 1 object in the original", 1, testMessage.get ().size ());
+    }
 }
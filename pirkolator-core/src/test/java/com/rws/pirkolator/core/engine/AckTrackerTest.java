@@ -0,0 +1,151 @@
+/*******************************************************************************
+ * Copyright 2014 Reality Warp Software
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.rws.pirkolator.core.engine;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableSet;
+import com.rws.pirkolator.model.AckBatch;
+import com.rws.utility.common.UUIDs;
+
+public class AckTrackerTest {
+
+    @Test
+    public void testAcksBeforeAndAfterExpect () throws Exception {
+
+        final SystemResourceManager resourceManager = new SystemResourceManager ();
+        final AckTracker tracker = new AckTracker (resourceManager, "publisher", 10000);
+
+        final UUID ackId = UUIDs.generateUUID ();
+        final Future<Integer> future = tracker.register (ackId);
+
+        // A remote hub may acknowledge before the batch is routed locally
+        tracker.ack ("remote", Collections.singletonList (ackId));
+        tracker.expect (ackId, ImmutableSet.of (AckTracker.LOCAL_HUB, "remote"));
+        Assert.assertFalse (future.isDone ());
+
+        tracker.ack (AckTracker.LOCAL_HUB, Collections.singletonList (ackId));
+        Assert.assertEquals (Integer.valueOf (2), future.get (1, TimeUnit.SECONDS));
+        Assert.assertEquals (0, tracker.getPendingCount ());
+
+        tracker.destroy ();
+        resourceManager.shutdownAll ();
+    }
+
+    @Test
+    public void testBatchedAcksFromQueue () throws Exception {
+
+        final SystemResourceManager resourceManager = new SystemResourceManager ();
+        final AckTracker tracker = new AckTracker (resourceManager, "publisher", 10000);
+        final BlockingQueue<AckBatch> ackQueue = new LinkedBlockingQueue<> ();
+        tracker.listen (ackQueue);
+
+        final UUID first = UUIDs.generateUUID ();
+        final UUID second = UUIDs.generateUUID ();
+        final Future<Integer> firstFuture = tracker.register (first);
+        final Future<Integer> secondFuture = tracker.register (second);
+        tracker.expect (first, ImmutableSet.of ("remote"));
+        tracker.expect (second, ImmutableSet.of ("remote"));
+
+        ackQueue.put (new AckBatch ("remote", Arrays.asList (first, second)));
+
+        Assert.assertEquals (Integer.valueOf (1), firstFuture.get (5, TimeUnit.SECONDS));
+        Assert.assertEquals (Integer.valueOf (1), secondFuture.get (5, TimeUnit.SECONDS));
+
+        tracker.destroy ();
+        resourceManager.shutdownAll ();
+    }
+
+    /**
+     * Acknowledgements from hubs the message was not routed to, such as hubs
+     * reading a broadcast topic, and repeated acknowledgements are not counted.
+     */
+    @Test
+    public void testOnlyTargetedHubsCounted () throws Exception {
+
+        final SystemResourceManager resourceManager = new SystemResourceManager ();
+        final AckTracker tracker = new AckTracker (resourceManager, "publisher", 10000);
+
+        final UUID ackId = UUIDs.generateUUID ();
+        final Future<Integer> future = tracker.register (ackId);
+
+        // Early acks from a hub that turns out not to be a target are dropped
+        tracker.ack ("other", Collections.singletonList (ackId));
+        tracker.expect (ackId, ImmutableSet.of ("first", "second"));
+        tracker.ack ("other", Collections.singletonList (ackId));
+        tracker.ack ("first", Collections.singletonList (ackId));
+        tracker.ack ("first", Collections.singletonList (ackId));
+        Assert.assertFalse (future.isDone ());
+
+        tracker.ack ("second", Collections.singletonList (ackId));
+        Assert.assertEquals (Integer.valueOf (2), future.get (1, TimeUnit.SECONDS));
+
+        tracker.destroy ();
+        resourceManager.shutdownAll ();
+    }
+
+    @Test
+    public void testNoTargetsCompletesAtOnce () throws Exception {
+
+        final SystemResourceManager resourceManager = new SystemResourceManager ();
+        final AckTracker tracker = new AckTracker (resourceManager, "publisher", 10000);
+
+        final UUID ackId = UUIDs.generateUUID ();
+        final Future<Integer> future = tracker.register (ackId);
+        tracker.expect (ackId, ImmutableSet.<String> of ());
+
+        Assert.assertEquals (Integer.valueOf (0), future.get (1, TimeUnit.SECONDS));
+
+        tracker.destroy ();
+        resourceManager.shutdownAll ();
+    }
+
+    @Test
+    public void testExpiredAckFails () throws Exception {
+
+        final SystemResourceManager resourceManager = new SystemResourceManager ();
+        final AckTracker tracker = new AckTracker (resourceManager, "publisher", 0);
+
+        final UUID ackId = UUIDs.generateUUID ();
+        final Future<Integer> future = tracker.register (ackId);
+        tracker.expect (ackId, ImmutableSet.of ("remote"));
+
+        Thread.sleep (5);
+        tracker.expire ();
+
+        try {
+            future.get (1, TimeUnit.SECONDS);
+            Assert.fail ("Expected the acknowledgement to time out");
+        } catch (final ExecutionException ex) {
+            Assert.assertTrue (ex.getCause () instanceof TimeoutException);
+        }
+        Assert.assertEquals (0, tracker.getPendingCount ());
+
+        tracker.destroy ();
+        resourceManager.shutdownAll ();
+    }
+}
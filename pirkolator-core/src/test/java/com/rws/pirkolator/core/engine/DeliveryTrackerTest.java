@@ -0,0 +1,106 @@
+/*******************************************************************************
+ * Copyright 2014 Reality Warp Software
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.rws.pirkolator.core.engine;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.rws.pirkolator.model.Message;
+import com.rws.utility.common.UUIDs;
+
+public class DeliveryTrackerTest {
+
+    /**
+     * A message is acknowledged once, after every group it was put on has
+     * received it.
+     */
+    @Test
+    public void testAckAfterEveryGroup () {
+
+        final DeliveryTracker tracker = new DeliveryTracker ();
+        final RecordingSender sender = new RecordingSender ();
+
+        final UUID ackId = UUIDs.generateUUID ();
+        final Message message = ackMessage (ackId);
+        final Message plain = new Message ();
+        tracker.expect (Arrays.asList (message, plain), 2, sender);
+        Assert.assertEquals (1, tracker.getPendingCount ());
+
+        tracker.delivered (message);
+        tracker.delivered (plain);
+        Assert.assertTrue (sender.ackIdList.isEmpty ());
+
+        tracker.delivered (message);
+        Assert.assertEquals (Arrays.asList (ackId), sender.ackIdList);
+        Assert.assertEquals (0, tracker.getPendingCount ());
+
+        // A late report of a completed message is not acknowledged again
+        tracker.delivered (message);
+        Assert.assertEquals (1, sender.ackIdList.size ());
+    }
+
+    /**
+     * A batch put on no group is acknowledged at once, and a message a group
+     * never delivers is forgotten after the timeout without an acknowledgement.
+     */
+    @Test
+    public void testNoGroupsAndExpiry () throws InterruptedException {
+
+        final DeliveryTracker tracker = new DeliveryTracker (50);
+        final RecordingSender sender = new RecordingSender ();
+
+        final UUID unrouted = UUIDs.generateUUID ();
+        tracker.expect (Arrays.asList (ackMessage (unrouted)), 0, sender);
+        Assert.assertEquals (Arrays.asList (unrouted), sender.ackIdList);
+
+        tracker.expect (Arrays.asList (ackMessage (UUIDs.generateUUID ())), 1, sender);
+        Assert.assertEquals (1, tracker.getPendingCount ());
+
+        Thread.sleep (120);
+        tracker.expire ();
+        Assert.assertEquals (0, tracker.getPendingCount ());
+        Assert.assertEquals (1, sender.ackIdList.size ());
+    }
+
+    static Message ackMessage (final UUID ackId) {
+
+        final Message message = new Message ();
+        message.addHeader (MessageDistributor.RECEIVE_ACK, AckTracker.ackQueueName ("publisher"));
+        message.addHeader (AckTracker.ACK_ID, UUIDs.toString (ackId));
+        return message;
+    }
+
+    static class RecordingSender implements DeliveryTracker.IAckSender {
+
+        final List<UUID> ackIdList = new CopyOnWriteArrayList<> ();
+
+        RecordingSender () {
+
+            super ();
+        }
+
+        @Override
+        public void ack (final String ackQueue, final UUID ackId) {
+
+            ackIdList.add (ackId);
+        }
+    }
+}
@@ -0,0 +1,163 @@
+/*******************************************************************************
+ * Copyright 2014 Reality Warp Software
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.rws.pirkolator.core.engine;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableSet;
+import com.rws.pirkolator.model.AbstractLabeledIdentifiable;
+import com.rws.pirkolator.model.Message;
+import com.rws.pirkolator.model.filter.IContentFilter;
+import com.rws.pirkolator.model.filter.TypeFilter;
+import com.rws.utility.common.UUIDs;
+
+public class FilteredContentDispatcherTest {
+
+    @Test
+    public void testDispatchByFilteredType () throws Throwable {
+
+        final ContentSubscriber sub = new ContentSubscriber ();
+        sub.getSubscription ().addFilter (new TypeFilter (TestDataA.class));
+
+        final Message message = new Message ();
+        message.add (new TestDataA ());
+        message.add (new TestDataB ());
+        message.add (new TestDataA ());
+
+        new FilteredContentDispatcher (sub).dispatch (message);
+
+        Assert.assertEquals (2, sub.aList.size ());
+        Assert.assertEquals (0, sub.bList.size ());
+        Assert.assertEquals (0, sub.anyList.size ());
+    }
+
+    @Test
+    public void testSubclassContentRoutedToSupertypeMethod () throws Throwable {
+
+        final ContentSubscriber sub = new ContentSubscriber ();
+        sub.getSubscription ().addFilter (new TypeFilter (AbstractLabeledIdentifiable.class));
+
+        final Message message = new Message ();
+        message.add (new TestDataA ());
+        message.add (new TestDataB ());
+        message.add ("not identifiable");
+
+        new FilteredContentDispatcher (sub).dispatch (message);
+
+        Assert.assertEquals (0, sub.aList.size ());
+        Assert.assertEquals (2, sub.anyList.size ());
+    }
+
+    @Test
+    public void testNewSubscriptionRecompiles () throws Throwable {
+
+        final ContentSubscriber sub = new ContentSubscriber ();
+        sub.getSubscription ().addFilter (new TypeFilter (TestDataA.class));
+
+        final FilteredContentDispatcher dispatcher = new FilteredContentDispatcher (sub);
+        final Message message = new Message ();
+        message.add (new TestDataA ());
+        message.add (new TestDataB ());
+        dispatcher.dispatch (message);
+
+        final Subscription subscription = new Subscription ();
+        subscription.addFilter (new TypeFilter (TestDataB.class));
+        sub.subscription = subscription;
+        dispatcher.dispatch (message);
+
+        Assert.assertEquals (1, sub.aList.size ());
+        Assert.assertEquals (1, sub.bList.size ());
+    }
+
+    /**
+     * Filters added to the subscription in place are routed from the next
+     * message on.
+     */
+    @Test
+    public void testChangedSubscriptionRecompiles () throws Throwable {
+
+        final ContentSubscriber sub = new ContentSubscriber ();
+        sub.getSubscription ().addFilter (new TypeFilter (TestDataA.class));
+
+        final FilteredContentDispatcher dispatcher = new FilteredContentDispatcher (sub);
+        final Message message = new Message ();
+        message.add (new TestDataA ());
+        message.add (new TestDataB ());
+        dispatcher.dispatch (message);
+
+        sub.getSubscription ().addFilter (new TypeFilter (TestDataB.class));
+        dispatcher.dispatch (message);
+
+        Assert.assertEquals (2, sub.aList.size ());
+        Assert.assertEquals (1, sub.bList.size ());
+
+        sub.getSubscription ().setContentFilterSet (ImmutableSet.<IContentFilter> of (new TypeFilter (
+                TestDataB.class)));
+        dispatcher.dispatch (message);
+
+        Assert.assertEquals (2, sub.aList.size ());
+        Assert.assertEquals (2, sub.bList.size ());
+    }
+
+    public static class ContentSubscriber extends AbstractSubscriber {
+
+        final List<TestDataA> aList = new ArrayList<> ();
+        final List<TestDataB> bList = new ArrayList<> ();
+        final List<AbstractLabeledIdentifiable> anyList = new ArrayList<> ();
+
+        Subscription subscription;
+
+        public ContentSubscriber () {
+
+            super (UUIDs.generateUUID (), "Content Subscriber");
+            subscription = super.getSubscription ();
+        }
+
+        @Override
+        public Subscription getSubscription () {
+
+            return subscription;
+        }
+
+        @FilteredContent (contentType = TestDataA.class)
+        public void receiveA (final TestDataA data) {
+
+            aList.add (data);
+        }
+
+        @FilteredContent (contentType = TestDataB.class)
+        public void receiveB (final TestDataB data) {
+
+            bList.add (data);
+        }
+
+        @FilteredContent (contentType = AbstractLabeledIdentifiable.class)
+        public void receiveAny (final AbstractLabeledIdentifiable data) {
+
+            anyList.add (data);
+        }
+
+        @Override
+        public void doConstruct (final Subscription sub) {
+
+            // Filters are added by each test
+        }
+    }
+}
@@ -92,6 +92,88 @@ public class HazelcastPubSubTest extends AbstractPirkolatorTest {
         Assert.assertNotNull (publicationFromRegistration);
     }
 
+    @Test
+    public void testInterest () {
+
+        final HazelcastPubSub pubSub = notNull (hazelcastPubSub);
+        final UUID publisherId = UUIDs.generateUUID ();
+        final String publisherKey = UUIDs.toString (publisherId);
+
+        pubSub.addInterest (publisherId);
+        Assert.assertTrue (pubSub.containsInterest (publisherId));
+        Assert.assertEquals (1, pubSub.getInterestMap ().valueCount (publisherKey));
+
+        // Advertising twice keeps a single entry
+        pubSub.addInterest (publisherId);
+        Assert.assertEquals (1, pubSub.getInterestMap ().valueCount (publisherKey));
+
+        pubSub.removeInterest (publisherId);
+        Assert.assertFalse (pubSub.containsInterest (publisherId));
+        Assert.assertEquals (0, pubSub.getInterestMap ().valueCount (publisherKey));
+    }
+
+    /**
+     * The interest a departed hub left behind is removed without touching the
+     * interest of the hubs still in the cluster.
+     */
+    @Test
+    public void testInterestOfDepartedHubRemoved () {
+
+        final HazelcastPubSub pubSub = notNull (hazelcastPubSub);
+        final UUID publisherId = UUIDs.generateUUID ();
+        final String publisherKey = UUIDs.toString (publisherId);
+
+        pubSub.addInterest (publisherId);
+        pubSub.getInterestMap ().put (publisherKey, "departed-hub");
+        Assert.assertEquals (2, pubSub.getInterestMap ().valueCount (publisherKey));
+
+        pubSub.removeInterestOf ("departed-hub");
+
+        Assert.assertEquals (1, pubSub.getInterestMap ().valueCount (publisherKey));
+        Assert.assertTrue (pubSub.getInterestMap ().containsEntry (publisherKey, pubSub.getHubKey ()));
+
+        pubSub.removeInterest (publisherId);
+    }
+
+    /**
+     * The hub withdraws its interest in a publisher on another hub once the
+     * last local subscription group matching the publication unregisters, and
+     * advertises it again when a matching subscriber registers.
+     */
+    @Test
+    public void testInterestFollowsLocalSubscribers () {
+
+        final HazelcastPubSub pubSub = notNull (hazelcastPubSub);
+        final HazelcastPublicationTester tester =
+                new HazelcastPublicationTester (UUIDs.generateUUID (), notNull (hazelcastGrid));
+        tester.addTestPublication (TestDataC.class);
+
+        sleep (1000);
+
+        final UUID publisherId = tester.getPublisherId ();
+        Assert.assertFalse (pubSub.containsInterest (publisherId));
+
+        final MessageCountingSubscriber first = new MessageCountingSubscriber (TestDataC.class);
+        first.getSubscription ().setGroupName (UUIDs.generateUUIDAsString ());
+        final MessageCountingSubscriber second = new MessageCountingSubscriber (TestDataC.class);
+        second.getSubscription ().setGroupName (UUIDs.generateUUIDAsString ());
+
+        notNull (hub).registerSubscriber (pubSub.getId (), first);
+        notNull (hub).registerSubscriber (pubSub.getId (), second);
+        Assert.assertTrue (pubSub.containsInterest (publisherId));
+
+        // Another group still matches the publication
+        notNull (hub).unregisterSubscriber (first);
+        Assert.assertTrue (pubSub.containsInterest (publisherId));
+
+        notNull (hub).unregisterSubscriber (second);
+        Assert.assertFalse ("Interest was not withdrawn with the last matching subscriber",
+                pubSub.containsInterest (publisherId));
+
+        notNull (hub).registerSubscriber (pubSub.getId (), first);
+        Assert.assertTrue (pubSub.containsInterest (publisherId));
+    }
+
     @Ignore ("Not yet implemented")
     @Test
     public void testRemovePublisher () {
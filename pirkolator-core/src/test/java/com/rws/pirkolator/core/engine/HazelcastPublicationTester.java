@@ -76,8 +76,13 @@ public class HazelcastPublicationTester implements EntryListener<UUID, GlobalPub
 
     public void addTestPublication () {
 
+        addTestPublication (Serializable.class);
+    }
+
+    public void addTestPublication (final Class<?> type) {
+
         final TypeFilter filter = new TypeFilter ();
-        filter.addType (Serializable.class);
+        filter.addType (type);
 
         originalPublication.addFilter (filter);
 
@@ -0,0 +1,175 @@
+/*******************************************************************************
+ * Copyright 2014 Reality Warp Software
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.rws.pirkolator.core.engine;
+
+import static com.rws.utility.common.Preconditions.notNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nullable;
+import javax.annotation.Resource;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.annotation.DirtiesContext.ClassMode;
+
+import com.rws.utility.common.UUIDs;
+import com.rws.utility.test.AbstractPirkolatorTest;
+
+/**
+ * Registers publishers and subscribers on many threads at once, as the per
+ * publisher and per group registration locks of the {@link Hub} allow.
+ */
+@DirtiesContext (classMode = ClassMode.AFTER_EACH_TEST_METHOD)
+public class HubRegistrationTest extends AbstractPirkolatorTest {
+
+    private static final int COUNT = 8;
+
+    @Resource
+    @Nullable
+    Hub hub;
+
+    @Resource
+    @Nullable
+    LocalPubSub localPubSub;
+
+    /**
+     * A publisher and a subscriber registering at the same time always find
+     * each other, whichever registers first.
+     */
+    @Test
+    public void testConcurrentRegistrationMatches () throws Exception {
+
+        final List<TestTypePublisher> publisherList = new ArrayList<> ();
+        final List<MessageCountingSubscriber> subscriberList = new ArrayList<> ();
+        final List<Callable<Void>> registrationList = new ArrayList<> ();
+        for (int i = 0; i < COUNT; i++) {
+            final TestTypePublisher publisher = new TestTypePublisher (TestData.class);
+            publisher.doConstruct (publisher.getPublication ());
+            publisherList.add (publisher);
+            registrationList.add (registerPublisher (publisher));
+
+            final MessageCountingSubscriber subscriber = new MessageCountingSubscriber (TestData.class);
+            subscriber.startCount (COUNT);
+            subscriberList.add (subscriber);
+            registrationList.add (registerSubscriber (subscriber));
+        }
+
+        registerAll (registrationList);
+
+        for (final TestTypePublisher publisher : publisherList) {
+            publisher.publish (new TestData ());
+        }
+
+        for (final MessageCountingSubscriber subscriber : subscriberList) {
+            Assert.assertTrue ("Subscriber did not receive a message from every publisher",
+                    subscriber.latch.await (10, TimeUnit.SECONDS));
+        }
+    }
+
+    /**
+     * Subscribers of one group registering at the same time share one group.
+     */
+    @Test
+    public void testConcurrentRegistrationInOneGroup () throws Exception {
+
+        final String groupName = UUIDs.generateUUIDAsString ();
+        final List<MessageCountingSubscriber> subscriberList = new ArrayList<> ();
+        final List<Callable<Void>> registrationList = new ArrayList<> ();
+        for (int i = 0; i < COUNT; i++) {
+            final MessageCountingSubscriber subscriber = new MessageCountingSubscriber (TestData.class);
+            subscriber.getSubscription ().setGroupName (groupName);
+            subscriberList.add (subscriber);
+            registrationList.add (registerSubscriber (subscriber));
+        }
+
+        registerAll (registrationList);
+
+        Assert.assertTrue (notNull (hub).containsSubscriptionGroup (groupName));
+        for (final MessageCountingSubscriber subscriber : subscriberList) {
+            Assert.assertTrue (notNull (hub).containsSubscriber (subscriber.getId ()));
+        }
+
+        for (final MessageCountingSubscriber subscriber : subscriberList) {
+            notNull (hub).unregisterSubscriber (subscriber);
+            Assert.assertFalse (notNull (hub).containsSubscriber (subscriber.getId ()));
+        }
+    }
+
+    private Callable<Void> registerPublisher (final TestTypePublisher publisher) {
+
+        return new Callable<Void> () {
+
+            @Override
+            public Void call () {
+
+                notNull (hub).registerPublisher (notNull (localPubSub).getId (), publisher);
+                return null;
+            }
+        };
+    }
+
+    private Callable<Void> registerSubscriber (final MessageCountingSubscriber subscriber) {
+
+        return new Callable<Void> () {
+
+            @Override
+            public Void call () {
+
+                notNull (hub).registerSubscriber (notNull (localPubSub).getId (), subscriber);
+                return null;
+            }
+        };
+    }
+
+    /**
+     * Runs the registrations together, each thread released by one latch.
+     */
+    private static void registerAll (final List<Callable<Void>> registrationList) throws Exception {
+
+        final ExecutorService executor = Executors.newFixedThreadPool (registrationList.size ());
+        final CountDownLatch start = new CountDownLatch (1);
+        try {
+            final List<Future<Void>> futureList = new ArrayList<> ();
+            for (final Callable<Void> registration : registrationList) {
+                futureList.add (executor.submit (new Callable<Void> () {
+
+                    @Override
+                    public Void call () throws Exception {
+
+                        start.await ();
+                        return registration.call ();
+                    }
+                }));
+            }
+
+            start.countDown ();
+            for (final Future<Void> future : futureList) {
+                future.get (10, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow ();
+        }
+    }
+}
@@ -17,9 +17,17 @@ package com.rws.pirkolator.core.engine;
 
 import static com.rws.utility.common.Preconditions.notNull;
 
+import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
@@ -29,7 +37,10 @@ import org.junit.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.esotericsoftware.kryo.KryoException;
+import com.rws.pirkolator.core.engine.execution.ExecutionMode;
 import com.rws.pirkolator.model.Message;
+import com.rws.utility.common.UUIDs;
 
 public class MessageCarrierTest {
 
@@ -113,4 +124,206 @@ public class MessageCarrierTest {
             Assert.assertTrue ("Expected messages to be in order, but were not.", sub.isInOrder ());
         }
     }
+
+    /**
+     * A carrier with four workers delivers the partition keys concurrently
+     * and must keep the order of the messages of each key.
+     */
+    @Test
+    public void testMessageCarrier_partitioned () throws InterruptedException {
+
+        final PartitionedSubscriber sub = new PartitionedSubscriber ();
+        sub.setExpectedMessageCount (8 * 500);
+        sub.getSubscription ().setConcurrency (4);
+        sub.getSubscription ().setPartitionHeader ("key");
+
+        final MessageCarrier mc = new MessageCarrier (sub);
+        Assert.assertEquals (4, mc.getConcurrency ());
+
+        mc.startWorkers (resourceManager);
+        final Future<?> future = resourceManager.submitLoop (mc);
+
+        for (int i = 0; i < 500; i++) {
+            for (int k = 0; k < 8; k++) {
+                final Message msg = new Message ();
+                msg.addHeader ("key", "key-" + k);
+                msg.addHeader ("count", notNull (String.valueOf (i)));
+                mc.getSubscriberReceivingQueue ().add (msg);
+            }
+        }
+
+        Assert.assertTrue ("Expected subscriber to have received all messages in 10 seconds, but it has not.",
+                sub.assertCompleted (10000));
+        Assert.assertTrue ("Expected messages of each key to be in order, but were not.", sub.isInOrder ());
+
+        future.cancel (true);
+    }
+
+    /**
+     * A message whose deferred content cannot be decoded is dropped; the
+     * carrier keeps delivering the messages after it.
+     */
+    @Test
+    public void testMessageCarrier_undecodableContent () throws InterruptedException {
+
+        final TestSubscriber sub = new TestSubscriber ();
+        sub.setExpectedMessageCount (10);
+
+        final MessageCarrier mc = new MessageCarrier (sub);
+        final Future<?> future = resourceManager.submitLoop (mc);
+
+        for (int i = 0; i < 10; i++) {
+            if (i == 5) {
+                final Message broken = new Message ();
+                broken.addHeader ("count", "-1");
+                broken.setContent (Collections.<Class<?>> singletonList (String.class),
+                        new Message.IContentDecoder () {
+
+                            @Override
+                            public Serializable[] decode () {
+
+                                throw new KryoException ("Truncated content");
+                            }
+                        });
+                mc.getSubscriberReceivingQueue ().add (broken);
+            }
+
+            final Message msg = new Message ();
+            msg.addHeader ("count", notNull (String.valueOf (i)));
+            mc.getSubscriberReceivingQueue ().add (msg);
+        }
+
+        Assert.assertTrue ("Expected subscriber to have received all messages in 10 seconds, but it has not.",
+                sub.assertCompleted (10000));
+        Assert.assertTrue ("Expected the undecodable message to be dropped, but it was delivered.", sub.isInOrder ());
+        Assert.assertFalse (mc.isShutdown ());
+
+        future.cancel (true);
+    }
+
+    /**
+     * Pooled carriers call a subscriber that has not declared a blocking
+     * receive() directly, so delivering to many subscribers at once does not
+     * add threads to the loop pool.
+     */
+    @Test
+    public void testMessageCarrier_pooledThreadCount () {
+
+        final SystemResourceManager pooledManager = new SystemResourceManager ();
+        pooledManager.setExecutionMode (ExecutionMode.Pooled);
+        pooledManager.setLoopParallelism (2);
+
+        final List<TestSubscriber> subscriberList = new ArrayList<> (16);
+        final List<Future<?>> futureList = new ArrayList<> (16);
+        for (int i = 0; i < 16; i++) {
+            final TestSubscriber sub = new TestSubscriber ();
+            sub.setExpectedMessageCount (200);
+            subscriberList.add (sub);
+
+            final MessageCarrier mc = new MessageCarrier (sub);
+            futureList.add (pooledManager.submitLoop (mc));
+
+            for (int j = 0; j < 200; j++) {
+                final Message msg = new Message ();
+                msg.addHeader ("count", notNull (String.valueOf (j)));
+                mc.getSubscriberReceivingQueue ().add (msg);
+            }
+        }
+
+        for (final TestSubscriber sub : subscriberList) {
+            Assert.assertTrue ("Expected subscriber to have received all messages in 10 seconds, but it has not.",
+                    sub.assertCompleted (10000));
+        }
+        Assert.assertTrue ("Expected the loop pool to keep its parallelism, but it added threads.",
+                pooledManager.getLoopPool ().getPoolSize () <= 2);
+
+        for (final Future<?> future : futureList) {
+            future.cancel (true);
+        }
+        pooledManager.shutdownAll ();
+    }
+
+    /**
+     * A message published with acknowledgement is acknowledged only once the
+     * subscriber's receive() returns, and not at all if receive() throws.
+     */
+    @Test
+    public void testMessageCarrier_ackAfterReceive () throws InterruptedException {
+
+        final CountDownLatch release = new CountDownLatch (1);
+        final TestSubscriber sub = new TestSubscriber () {
+
+            @Override
+            public void receive (final Message message) {
+
+                if (message.getHeader ("fail") != null) {
+                    throw new IllegalStateException ("Not received");
+                }
+
+                try {
+                    release.await ();
+                } catch (final InterruptedException ex) {
+                    Thread.currentThread ().interrupt ();
+                }
+                super.receive (message);
+            }
+        };
+        sub.setExpectedMessageCount (1);
+
+        final DeliveryTracker tracker = new DeliveryTracker ();
+        final DeliveryTrackerTest.RecordingSender sender = new DeliveryTrackerTest.RecordingSender ();
+        final MessageCarrier mc = new MessageCarrier (sub, new KryoMessageCopier (), tracker);
+        final Future<?> future = resourceManager.submitLoop (mc);
+
+        final UUID failedId = UUIDs.generateUUID ();
+        final Message failed = DeliveryTrackerTest.ackMessage (failedId);
+        failed.addHeader ("fail", "true");
+        final UUID receivedId = UUIDs.generateUUID ();
+        final Message received = DeliveryTrackerTest.ackMessage (receivedId);
+        received.addHeader ("count", "0");
+
+        final List<Message> batch = Arrays.asList (failed, received);
+        tracker.expect (batch, 1, sender);
+        mc.getSubscriberReceivingQueue ().putAll (batch);
+
+        Thread.sleep (200);
+        Assert.assertTrue ("Expected no acknowledgement before receive() returned.", sender.ackIdList.isEmpty ());
+
+        release.countDown ();
+        Assert.assertTrue (sub.assertCompleted (10000));
+        final long deadline = System.currentTimeMillis () + 10000;
+        while (sender.ackIdList.isEmpty () && System.currentTimeMillis () < deadline) {
+            Thread.sleep (10);
+        }
+        Assert.assertEquals (Arrays.asList (receivedId), sender.ackIdList);
+        Assert.assertEquals ("Expected the failed delivery to stay unacknowledged.", 1, tracker.getPendingCount ());
+
+        future.cancel (true);
+    }
+
+    static class PartitionedSubscriber extends TestSubscriber {
+
+        /** <p>Last count received for each partition key
+         * <br/><b>Key = partition key {@link String}</b> **/
+        final Map<String, Integer> lastCountMap = new ConcurrentHashMap<> ();
+
+        PartitionedSubscriber () {
+
+            super ();
+        }
+
+        @Override
+        public void receive (final Message message) {
+
+            final String key = notNull (message.getHeader ("key"));
+            final int count = Integer.parseInt (message.getHeader ("count"));
+            final Integer last = lastCountMap.put (key, Integer.valueOf (count));
+            if (count != (last == null ? 0 : last.intValue () + 1)) {
+                LOG.info ("Out of order on " + key + " " + count + " from previous " + last);
+                inOrder = false;
+            }
+
+            latch.countDown ();
+        }
+    }
 }
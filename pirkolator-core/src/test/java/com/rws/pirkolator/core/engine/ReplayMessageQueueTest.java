@@ -0,0 +1,235 @@
+/*******************************************************************************
+ * Copyright 2014 Reality Warp Software
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.rws.pirkolator.core.engine;
+
+import static com.rws.utility.common.Preconditions.notNull;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nullable;
+import javax.annotation.Resource;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.hazelcast.core.IMap;
+import com.rws.pirkolator.core.grid.HazelcastGrid;
+import com.rws.pirkolator.model.Message;
+import com.rws.utility.common.UUIDs;
+import com.rws.utility.test.AbstractPirkolatorTest;
+
+public class ReplayMessageQueueTest extends AbstractPirkolatorTest {
+
+    private static final String OFFSET_KEY = "test-hub";
+
+    @Resource
+    @Nullable
+    HazelcastGrid hazelcastGrid;
+
+    @Resource
+    @Nullable
+    SystemResourceManager systemResourceManager;
+
+    @Nullable
+    private String publisherKey;
+    @Nullable
+    private IMap<String, Long> offsetMap;
+    @Nullable
+    private ReplayMessageQueue publishing;
+    @Nullable
+    private ReplayMessageQueue reading;
+
+    @Before
+    public void before () {
+
+        publisherKey = UUIDs.generateUUIDAsString ();
+        offsetMap = notNull (hazelcastGrid).getMap ("offsets-" + publisherKey);
+    }
+
+    @After
+    public void after () {
+
+        if (reading != null) {
+            notNull (reading).stop ();
+        }
+        if (publishing != null) {
+            notNull (publishing).stop ();
+        }
+        notNull (offsetMap).destroy ();
+    }
+
+    /**
+     * Batches written past the capacity reuse the ring's slots, and a hub
+     * within the capacity reads the wrapped slots in sequence.
+     */
+    @Test
+    public void testRingWraparound () throws InterruptedException {
+
+        final ReplayMessageQueue publisher = publish (4, 10);
+        Assert.assertEquals (10, publisher.getHeadSequence ());
+        Assert.assertEquals (4, notNull (hazelcastGrid).getMap (ReplayMessageQueue.ringName (notNull (publisherKey)))
+                .size ());
+
+        notNull (offsetMap).set (OFFSET_KEY, Long.valueOf (6));
+        final ReplayMessageQueue reader = read (4);
+
+        assertReceived (reader, 7, 10);
+        Assert.assertEquals (0, reader.getLostBatchCount ());
+    }
+
+    /**
+     * A hub more than the capacity behind skips to the oldest batch still in the
+     * ring and counts the overwritten ones.
+     */
+    @Test
+    public void testLostBatchesCounted () throws InterruptedException {
+
+        publish (4, 10);
+
+        notNull (offsetMap).set (OFFSET_KEY, Long.valueOf (0));
+        final ReplayMessageQueue reader = read (4);
+
+        assertReceived (reader, 7, 10);
+        Assert.assertEquals (6, reader.getLostBatchCount ());
+    }
+
+    /**
+     * A hub resumes after the offset stored for it and keeps the offset current
+     * as it reads.
+     */
+    @Test
+    public void testResumeFromOffset () throws InterruptedException {
+
+        final ReplayMessageQueue publisher = publish (16, 5);
+
+        notNull (offsetMap).set (OFFSET_KEY, Long.valueOf (2));
+        final ReplayMessageQueue reader = read (16);
+
+        assertReceived (reader, 3, 5);
+        awaitOffset (5);
+
+        publisher.put (message (6));
+        publisher.put (message (7));
+
+        assertReceived (reader, 6, 7);
+        awaitOffset (7);
+        Assert.assertEquals (0, reader.getLostBatchCount ());
+    }
+
+    /**
+     * A hub that goes down with messages taken from the ring but not routed
+     * reads them again when it restarts, as the offset only covers the routed
+     * batches.
+     */
+    @Test
+    public void testRestartRereadsUnroutedMessages () throws InterruptedException {
+
+        publish (16, 5);
+
+        notNull (offsetMap).set (OFFSET_KEY, Long.valueOf (0));
+        final ReplayMessageQueue reader = read (16);
+
+        assertReceived (reader, 1, 2, false);
+        awaitOffset (2);
+
+        // Batches 3 to 5 wait in the local queue when the hub goes down
+        final long deadline = System.currentTimeMillis () + 5000;
+        while (reader.size () < 3 && System.currentTimeMillis () < deadline) {
+            Thread.sleep (10);
+        }
+        Assert.assertEquals (3, reader.size ());
+        reader.stopReading ();
+        Assert.assertEquals (Long.valueOf (2), notNull (offsetMap).get (OFFSET_KEY));
+
+        final ReplayMessageQueue restarted = read (16);
+
+        assertReceived (restarted, 3, 5);
+        awaitOffset (5);
+    }
+
+    /**
+     * @return publishing queue after writing one batch per sequence from 1 to count
+     */
+    private ReplayMessageQueue publish (final int capacity, final int count) {
+
+        final ReplayMessageQueue publisher =
+                new ReplayMessageQueue (notNull (hazelcastGrid), notNull (publisherKey), "publishing", capacity);
+        publishing = publisher;
+
+        for (int i = 1; i <= count; i++) {
+            publisher.put (message (i));
+        }
+
+        return publisher;
+    }
+
+    private ReplayMessageQueue read (final int capacity) {
+
+        final ReplayMessageQueue reader =
+                new ReplayMessageQueue (notNull (hazelcastGrid), notNull (publisherKey), "reading", capacity);
+        reading = reader;
+        reader.startReading (notNull (systemResourceManager), notNull (offsetMap), OFFSET_KEY);
+
+        return reader;
+    }
+
+    private static Message message (final int index) {
+
+        final Message message = new Message ();
+        message.add ("batch-" + index);
+        return message;
+    }
+
+    private static void assertReceived (final ReplayMessageQueue reader, final int first, final int last)
+            throws InterruptedException {
+
+        assertReceived (reader, first, last, true);
+    }
+
+    /**
+     * Takes the batches from first to last and reports each as routed, as the
+     * router does.
+     */
+    private static void assertReceived (final ReplayMessageQueue reader, final int first, final int last,
+            final boolean drained) throws InterruptedException {
+
+        for (int i = first; i <= last; i++) {
+            final Message message = reader.poll (5, TimeUnit.SECONDS);
+            Assert.assertNotNull ("Batch " + i + " not read from the ring", message);
+            Assert.assertEquals ("batch-" + i, notNull (message).get (0));
+            reader.routed (1);
+        }
+
+        if (drained) {
+            Assert.assertNull (reader.poll (100, TimeUnit.MILLISECONDS));
+        }
+    }
+
+    private void awaitOffset (final long expected) throws InterruptedException {
+
+        final long deadline = System.currentTimeMillis () + 5000;
+        while (System.currentTimeMillis () < deadline) {
+            if (Long.valueOf (expected).equals (notNull (offsetMap).get (OFFSET_KEY))) {
+                return;
+            }
+            Thread.sleep (10);
+        }
+
+        Assert.assertEquals (Long.valueOf (expected), notNull (offsetMap).get (OFFSET_KEY));
+    }
+}
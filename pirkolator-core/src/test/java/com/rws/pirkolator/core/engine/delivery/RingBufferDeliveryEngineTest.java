@@ -0,0 +1,209 @@
+/*******************************************************************************
+ * Copyright 2014 Reality Warp Software
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.rws.pirkolator.core.engine.delivery;
+
+import static com.rws.utility.common.Preconditions.notNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.rws.pirkolator.model.Message;
+
+public class RingBufferDeliveryEngineTest {
+
+    @Test
+    public void testBufferSizeRoundedToPowerOfTwo () {
+
+        Assert.assertEquals (1, new RingBufferDeliveryEngine (1, WaitStrategy.Yield).getBufferSize ());
+        Assert.assertEquals (8, new RingBufferDeliveryEngine (5, WaitStrategy.Yield).getBufferSize ());
+        Assert.assertEquals (16, new RingBufferDeliveryEngine (16, WaitStrategy.Yield).getBufferSize ());
+    }
+
+    @Test
+    public void testSingleProducerInOrder () throws InterruptedException {
+
+        final RingBufferDeliveryEngine engine = new RingBufferDeliveryEngine (8, WaitStrategy.BusySpin);
+
+        for (int i = 0; i < 8; i++) {
+            final Message message = new Message ();
+            message.addHeader ("count", notNull (String.valueOf (i)));
+            engine.put (message);
+        }
+
+        Assert.assertEquals (8, engine.size ());
+
+        for (int i = 0; i < 8; i++) {
+            Assert.assertEquals (String.valueOf (i), engine.take ().getHeader ("count"));
+        }
+
+        Assert.assertEquals (0, engine.size ());
+    }
+
+    /**
+     * Many producers wrap a small buffer many times; every message must be taken
+     * once and each producer's messages must arrive in the order they were put.
+     */
+    @Test
+    public void testMultipleProducersWrapBuffer () throws InterruptedException {
+
+        final int producers = 4;
+        final int perProducer = 10000;
+        final RingBufferDeliveryEngine engine = new RingBufferDeliveryEngine (64, WaitStrategy.Park);
+
+        final ExecutorService service = Executors.newFixedThreadPool (producers);
+        for (int p = 0; p < producers; p++) {
+            final String producer = notNull (String.valueOf (p));
+            service.execute (new Runnable () {
+
+                @Override
+                public void run () {
+
+                    try {
+                        for (int i = 0; i < perProducer; i++) {
+                            final Message message = new Message ();
+                            message.addHeader ("producer", producer);
+                            message.addHeader ("count", notNull (String.valueOf (i)));
+                            engine.put (message);
+                        }
+                    } catch (final InterruptedException ex) {
+                        Thread.currentThread ().interrupt ();
+                    }
+                }
+            });
+        }
+
+        final int[] last = new int[producers];
+        for (int p = 0; p < producers; p++) {
+            last[p] = -1;
+        }
+
+        for (int i = 0; i < producers * perProducer; i++) {
+            final Message message = engine.take ();
+            final int producer = Integer.parseInt (message.getHeader ("producer"));
+            final int count = Integer.parseInt (message.getHeader ("count"));
+            Assert.assertEquals ("Producer " + producer + " out of order", last[producer] + 1, count);
+            last[producer] = count;
+        }
+
+        service.shutdown ();
+        Assert.assertTrue (service.awaitTermination (10, TimeUnit.SECONDS));
+        Assert.assertEquals (0, engine.size ());
+    }
+
+    @Test
+    public void testDrainToReleasesSlots () throws InterruptedException {
+
+        final RingBufferDeliveryEngine engine = new RingBufferDeliveryEngine (4, WaitStrategy.BusySpin);
+        final List<Message> batch = new ArrayList<> ();
+
+        // Wrap the buffer twice so drained slots must be reusable
+        for (int lap = 0; lap < 2; lap++) {
+            for (int i = 0; i < 4; i++) {
+                final Message message = new Message ();
+                message.addHeader ("count", notNull (String.valueOf (i)));
+                engine.put (message);
+            }
+
+            Assert.assertEquals (3, engine.drainTo (batch, 3));
+            Assert.assertEquals (1, engine.drainTo (batch, 3));
+            Assert.assertEquals (0, engine.drainTo (batch, 3));
+
+            for (int i = 0; i < 4; i++) {
+                Assert.assertEquals (String.valueOf (i), batch.get (i).getHeader ("count"));
+            }
+            batch.clear ();
+        }
+
+        Assert.assertNull (engine.poll (1, TimeUnit.MILLISECONDS));
+        Assert.assertEquals (0, engine.size ());
+    }
+
+    /**
+     * A producer interrupted while waiting for a slot it has already claimed
+     * must still publish its message, or the consumer would wait on the slot
+     * forever.
+     */
+    @Test
+    public void testPutInterruptedWhileBlocked () throws InterruptedException {
+
+        final RingBufferDeliveryEngine engine = new RingBufferDeliveryEngine (2, WaitStrategy.Park);
+        for (int i = 0; i < 2; i++) {
+            final Message message = new Message ();
+            message.addHeader ("count", notNull (String.valueOf (i)));
+            engine.put (message);
+        }
+
+        final AtomicBoolean interruptRestored = new AtomicBoolean ();
+        final Thread producer = new Thread (new Runnable () {
+
+            @Override
+            public void run () {
+
+                try {
+                    final Message message = new Message ();
+                    message.addHeader ("count", "2");
+                    engine.put (message);
+                    interruptRestored.set (Thread.currentThread ().isInterrupted ());
+                } catch (final InterruptedException ex) {
+                    // Not expected once the slot is claimed
+                }
+            }
+        });
+        producer.start ();
+
+        // Wait for the producer to claim its slot and block on the full buffer
+        while (producer.getState () != Thread.State.TIMED_WAITING) {
+            Thread.sleep (1);
+        }
+        producer.interrupt ();
+        Thread.sleep (10);
+
+        for (int i = 0; i < 3; i++) {
+            final Message message = engine.poll (1, TimeUnit.SECONDS);
+            Assert.assertNotNull ("Ring stopped delivering at " + i, message);
+            Assert.assertEquals (String.valueOf (i), message.getHeader ("count"));
+        }
+
+        producer.join (1000);
+        Assert.assertFalse (producer.isAlive ());
+        Assert.assertTrue (interruptRestored.get ());
+    }
+
+    @Test (expected = InterruptedException.class)
+    public void testPutInterruptedBeforeClaim () throws InterruptedException {
+
+        final RingBufferDeliveryEngine engine = new RingBufferDeliveryEngine (4, WaitStrategy.Park);
+
+        Thread.currentThread ().interrupt ();
+        engine.put (new Message ());
+    }
+
+    @Test (expected = InterruptedException.class)
+    public void testTakeInterrupted () throws InterruptedException {
+
+        final RingBufferDeliveryEngine engine = new RingBufferDeliveryEngine (4, WaitStrategy.Park);
+
+        Thread.currentThread ().interrupt ();
+        engine.take ();
+    }
+}
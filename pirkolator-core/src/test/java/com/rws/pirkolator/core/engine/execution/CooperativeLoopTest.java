@@ -0,0 +1,284 @@
+/*******************************************************************************
+ * Copyright 2014 Reality Warp Software
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.rws.pirkolator.core.engine.execution;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Nullable;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CooperativeLoopTest {
+
+    /**
+     * Many loops share a two thread pool; every loop must handle all of its
+     * messages, including messages put after it has gone idle.
+     */
+    @Test
+    public void testManyLoopsShareSmallPool () throws InterruptedException {
+
+        final ForkJoinPool pool = new ForkJoinPool (2);
+        final ScheduledExecutorService idleScheduler = new ScheduledThreadPoolExecutor (1);
+
+        final List<CountingTask> taskList = new ArrayList<> ();
+        for (int i = 0; i < 200; i++) {
+            final CountingTask task = new CountingTask ();
+            taskList.add (task);
+            CooperativeLoop.start (task, pool, idleScheduler, 500);
+        }
+
+        for (int round = 0; round < 2; round++) {
+            for (final CountingTask task : taskList) {
+                for (int i = 0; i < 100; i++) {
+                    task.queue.add (Integer.valueOf (i));
+                }
+            }
+
+            // Let the loops go idle between rounds
+            Thread.sleep (50);
+        }
+
+        final long deadline = System.currentTimeMillis () + 10000;
+        for (final CountingTask task : taskList) {
+            while (task.handled.get () < 200 && System.currentTimeMillis () < deadline) {
+                Thread.sleep (5);
+            }
+            Assert.assertEquals (200, task.handled.get ());
+        }
+
+        Assert.assertTrue ("Expected at most 2 pool threads", pool.getPoolSize () <= 2);
+
+        pool.shutdown ();
+        idleScheduler.shutdown ();
+    }
+
+    @Test
+    public void testCancelShutsDownTask () throws InterruptedException {
+
+        final ForkJoinPool pool = new ForkJoinPool (1);
+        final ScheduledExecutorService idleScheduler = new ScheduledThreadPoolExecutor (1);
+
+        final CountingTask task = new CountingTask ();
+        final CooperativeLoop loop = CooperativeLoop.start (task, pool, idleScheduler, 100);
+        Assert.assertTrue (task.isRunning ());
+
+        Assert.assertTrue (loop.cancel (true));
+        Assert.assertTrue (loop.isCancelled ());
+        Assert.assertTrue (loop.isDone ());
+
+        try {
+            loop.get ();
+            Assert.fail ("Expected a cancelled loop");
+        } catch (final CancellationException ex) {
+            // expected
+        } catch (final Exception ex) {
+            Assert.fail (ex.getMessage ());
+        }
+
+        Assert.assertTrue (task.isShutdown ());
+
+        pool.shutdown ();
+        idleScheduler.shutdown ();
+    }
+
+    @Test
+    public void testStoppedTaskEndsLoop () throws Exception {
+
+        final ForkJoinPool pool = new ForkJoinPool (1);
+        final ScheduledExecutorService idleScheduler = new ScheduledThreadPoolExecutor (1);
+
+        final CountingTask task = new CountingTask ();
+        final CooperativeLoop loop = CooperativeLoop.start (task, pool, idleScheduler, 100);
+
+        // A negative value makes the task stop itself
+        task.queue.add (Integer.valueOf (-1));
+
+        Assert.assertNull (loop.get (10, TimeUnit.SECONDS));
+        Assert.assertFalse (loop.isCancelled ());
+        Assert.assertTrue (task.isShutdown ());
+
+        pool.shutdown ();
+        idleScheduler.shutdown ();
+    }
+
+    /**
+     * A loop blocked putting into the full queue of a slow subscriber must not
+     * starve the loop draining that queue, even on a single thread pool.
+     */
+    @Test
+    public void testBlockedPutDoesNotStarvePool () throws InterruptedException {
+
+        final ForkJoinPool pool = new ForkJoinPool (1);
+        final ScheduledExecutorService idleScheduler = new ScheduledThreadPoolExecutor (1);
+
+        final BlockingQueue<Integer> subscriberQueue = new SpinningQueue (2);
+        final ForwardingTask producer = new ForwardingTask (subscriberQueue);
+        final SlowSubscriberTask subscriber = new SlowSubscriberTask (subscriberQueue);
+
+        for (int i = 0; i < 50; i++) {
+            producer.queue.add (Integer.valueOf (i));
+        }
+
+        final CooperativeLoop producerLoop = CooperativeLoop.start (producer, pool, idleScheduler, 100);
+        final CooperativeLoop subscriberLoop = CooperativeLoop.start (subscriber, pool, idleScheduler, 100);
+
+        final long deadline = System.currentTimeMillis () + 10000;
+        while (subscriber.handled.get () < 50 && System.currentTimeMillis () < deadline) {
+            Thread.sleep (5);
+        }
+        Assert.assertEquals (50, subscriber.handled.get ());
+
+        producerLoop.cancel (true);
+        subscriberLoop.cancel (true);
+        pool.shutdown ();
+        idleScheduler.shutdown ();
+    }
+
+    static class CountingTask extends AbstractLoopTask {
+
+        final BlockingQueue<Integer> queue = new LinkedBlockingQueue<> ();
+        final AtomicInteger handled = new AtomicInteger ();
+
+        CountingTask () {
+
+            super ();
+        }
+
+        @Override
+        protected boolean pass (final boolean wait) {
+
+            final Integer value = queue.poll ();
+            if (value == null) {
+                return false;
+            }
+
+            if (value.intValue () < 0) {
+                stop ();
+            } else {
+                handled.incrementAndGet ();
+            }
+
+            return true;
+        }
+    }
+
+    /**
+     * Spins in put instead of waiting on a lock, so a blocked put holds its
+     * pool thread whatever the JDK does for lock waits in a pool.
+     */
+    static class SpinningQueue extends ArrayBlockingQueue<Integer> {
+
+        private static final long serialVersionUID = 1L;
+
+        SpinningQueue (final int capacity) {
+
+            super (capacity);
+        }
+
+        @Override
+        public void put (final @Nullable Integer value) throws InterruptedException {
+
+            while (!offer (value)) {
+                if (Thread.interrupted ()) {
+                    throw new InterruptedException ();
+                }
+                Thread.yield ();
+            }
+        }
+    }
+
+    static class ForwardingTask extends AbstractLoopTask {
+
+        final BlockingQueue<Integer> queue = new LinkedBlockingQueue<> ();
+        private final BlockingQueue<Integer> target;
+
+        ForwardingTask (final BlockingQueue<Integer> target) {
+
+            super ();
+
+            this.target = target;
+        }
+
+        @Override
+        protected boolean pass (final boolean wait) {
+
+            final Integer value = queue.poll ();
+            if (value == null) {
+                return false;
+            }
+
+            try {
+                ManagedBlocking.put (target, value);
+            } catch (final InterruptedException ex) {
+                Thread.currentThread ().interrupt ();
+            }
+
+            return true;
+        }
+    }
+
+    static class SlowSubscriberTask extends AbstractLoopTask {
+
+        final AtomicInteger handled = new AtomicInteger ();
+        private final BlockingQueue<Integer> queue;
+
+        SlowSubscriberTask (final BlockingQueue<Integer> queue) {
+
+            super ();
+
+            this.queue = queue;
+        }
+
+        @Override
+        protected boolean pass (final boolean wait) {
+
+            final Integer value = queue.poll ();
+            if (value == null) {
+                return false;
+            }
+
+            try {
+                ManagedBlocking.call (new Callable<Void> () {
+
+                    @Override
+                    public @Nullable
+                    Void call () throws Exception {
+
+                        Thread.sleep (1);
+                        return null;
+                    }
+                });
+            } catch (final Exception ex) {
+                Assert.fail (ex.getMessage ());
+            }
+
+            handled.incrementAndGet ();
+            return true;
+        }
+    }
+}
@@ -0,0 +1,102 @@
+/*******************************************************************************
+ * Copyright 2014 Reality Warp Software
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.rws.pirkolator.core.engine.group;
+
+import static com.rws.utility.common.Preconditions.notNull;
+
+import java.util.concurrent.LinkedBlockingQueue;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.rws.pirkolator.core.engine.MessageQueue;
+import com.rws.pirkolator.model.Message;
+
+public class QueueSelectorTest {
+
+    @Test
+    public void testRoundRobin () {
+
+        final MessageQueue[] queues = queues (3);
+        final RoundRobinQueueSelector selector = new RoundRobinQueueSelector ();
+        final Message message = new Message ();
+
+        for (int i = 0; i < 9; i++) {
+            Assert.assertSame (queues[i % 3], selector.select (queues, message));
+        }
+    }
+
+    @Test
+    public void testLeastDepth () throws InterruptedException {
+
+        final MessageQueue[] queues = queues (3);
+        queues[0].put (new Message ());
+        queues[0].put (new Message ());
+        queues[2].put (new Message ());
+
+        final LeastDepthQueueSelector selector = new LeastDepthQueueSelector ();
+        for (int i = 0; i < 3; i++) {
+            Assert.assertSame (queues[1], selector.select (queues, new Message ()));
+        }
+    }
+
+    /**
+     * The same key always selects the same queue, and adding a member only moves
+     * keys onto the new member.
+     */
+    @Test
+    public void testKeyAffinity () {
+
+        final MessageQueue[] three = queues (3);
+        final MessageQueue[] four = new MessageQueue[] { three[0], three[1], three[2], queues (1)[0] };
+        final KeyAffinityQueueSelector selector = new KeyAffinityQueueSelector ("key");
+
+        final int keys = 1000;
+        final MessageQueue[] before = new MessageQueue[keys];
+        for (int i = 0; i < keys; i++) {
+            before[i] = selector.select (three, keyed (i));
+            Assert.assertSame (before[i], selector.select (three, keyed (i)));
+        }
+
+        int moved = 0;
+        for (int i = 0; i < keys; i++) {
+            final MessageQueue after = selector.select (four, keyed (i));
+            if (after != before[i]) {
+                Assert.assertSame ("Key moved between existing members", four[3], after);
+                moved++;
+            }
+        }
+
+        Assert.assertTrue ("Expected some keys to move to the new member", moved > 0);
+        Assert.assertTrue ("Expected most keys to stay, but " + moved + " moved", moved < keys / 2);
+    }
+
+    private static Message keyed (final int key) {
+
+        final Message message = new Message ();
+        message.addHeader ("key", notNull (String.valueOf (key)));
+        return message;
+    }
+
+    private static MessageQueue[] queues (final int count) {
+
+        final MessageQueue[] queues = new MessageQueue[count];
+        for (int i = 0; i < count; i++) {
+            queues[i] = new MessageQueue (new LinkedBlockingQueue<Message> (), "queue-" + i, "test");
+        }
+        return queues;
+    }
+}
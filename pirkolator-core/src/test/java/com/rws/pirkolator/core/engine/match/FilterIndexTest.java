@@ -0,0 +1,101 @@
+/*******************************************************************************
+ * Copyright 2014 Reality Warp Software
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.rws.pirkolator.core.engine.match;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableSet;
+import com.rws.pirkolator.model.filter.IFilter;
+import com.rws.pirkolator.model.filter.NameFilter;
+import com.rws.pirkolator.model.filter.RequestFilter;
+import com.rws.pirkolator.model.filter.TypeFilter;
+
+public class FilterIndexTest {
+
+    @Test
+    public void testSubscriptionToSupertypeFound () {
+
+        final FilterIndex<String> index = new FilterIndex<> (FilterIndex.Side.Subscription);
+        index.add ("serializable", filters (new TypeFilter (Serializable.class)));
+        index.add ("number", filters (new TypeFilter (Number.class)));
+        index.add ("string", filters (new TypeFilter (String.class)));
+
+        final Set<String> candidates = index.candidates (filters (new TypeFilter (Integer.class)));
+
+        Assert.assertEquals (ImmutableSet.of ("serializable", "number"), candidates);
+    }
+
+    @Test
+    public void testPublicationOfSubtypeFound () {
+
+        final FilterIndex<String> index = new FilterIndex<> (FilterIndex.Side.Publication);
+        index.add ("integer", filters (new TypeFilter (Integer.class)));
+        index.add ("string", filters (new TypeFilter (String.class)));
+
+        Assert.assertEquals (ImmutableSet.of ("integer"), index.candidates (filters (new TypeFilter (Number.class))));
+        Assert.assertEquals (ImmutableSet.of ("integer", "string"),
+                index.candidates (filters (new TypeFilter (Serializable.class))));
+    }
+
+    @Test
+    public void testNameAndRequestKeys () {
+
+        final FilterIndex<String> index = new FilterIndex<> (FilterIndex.Side.Subscription);
+        index.add ("alpha", filters (new NameFilter ("alpha")));
+        index.add ("beta", filters (new NameFilter ("beta")));
+        index.add ("search", filters (new RequestFilter ("search")));
+
+        Assert.assertEquals (ImmutableSet.of ("beta"), index.candidates (filters (new NameFilter ("beta"))));
+        Assert.assertEquals (ImmutableSet.of ("search"), index.candidates (filters (new RequestFilter ("search"))));
+        Assert.assertTrue (index.candidates (filters (new RequestFilter ("other"))).isEmpty ());
+    }
+
+    /**
+     * Filters the index has no keys for are a candidate for every query.
+     */
+    @Test
+    public void testUnknownFilterAlwaysCandidate () {
+
+        final FilterIndex<String> index = new FilterIndex<> (FilterIndex.Side.Subscription);
+        index.add ("unknown", filters (new NameFilter ("alpha") {
+
+            private static final long serialVersionUID = 1L;
+        }));
+
+        Assert.assertEquals (ImmutableSet.of ("unknown"), index.candidates (filters (new NameFilter ("beta"))));
+    }
+
+    @Test
+    public void testRemove () {
+
+        final FilterIndex<String> index = new FilterIndex<> (FilterIndex.Side.Subscription);
+        index.add ("number", filters (new TypeFilter (Number.class)));
+        index.remove ("number");
+
+        Assert.assertEquals (0, index.size ());
+        Assert.assertTrue (index.candidates (filters (new TypeFilter (Integer.class))).isEmpty ());
+    }
+
+    private static Set<IFilter> filters (final IFilter filter) {
+
+        return Collections.singleton (filter);
+    }
+}
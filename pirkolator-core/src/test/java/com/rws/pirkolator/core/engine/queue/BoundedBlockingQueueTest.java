@@ -0,0 +1,152 @@
+/*******************************************************************************
+ * Copyright 2014 Reality Warp Software
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.rws.pirkolator.core.engine.queue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.rws.pirkolator.core.engine.QueuePolicy.Overflow;
+import com.rws.pirkolator.model.Message;
+
+public class BoundedBlockingQueueTest {
+
+    @Test
+    public void testDropNewest () throws InterruptedException {
+
+        final BoundedBlockingQueue<String> queue = new BoundedBlockingQueue<> (3, Overflow.DropNewest);
+        for (int i = 0; i < 5; i++) {
+            queue.put ("message-" + i);
+        }
+
+        Assert.assertEquals (3, queue.size ());
+        Assert.assertEquals (2, queue.getDroppedCount ());
+        Assert.assertEquals ("message-0", queue.take ());
+    }
+
+    @Test
+    public void testDropOldest () throws InterruptedException {
+
+        final BoundedBlockingQueue<String> queue = new BoundedBlockingQueue<> (3, Overflow.DropOldest);
+        for (int i = 0; i < 5; i++) {
+            queue.put ("message-" + i);
+        }
+
+        Assert.assertEquals (3, queue.size ());
+        Assert.assertEquals (2, queue.getDroppedCount ());
+        Assert.assertEquals ("message-2", queue.take ());
+    }
+
+    @Test
+    public void testBlockOfferFailsWhenFull () throws InterruptedException {
+
+        final BoundedBlockingQueue<String> queue = new BoundedBlockingQueue<> (1, Overflow.Block);
+        queue.put ("message-0");
+
+        Assert.assertFalse (queue.offer ("message-1"));
+        Assert.assertEquals (0, queue.getDroppedCount ());
+    }
+
+    @Test
+    public void testSpillToDiskKeepsOrder () throws InterruptedException {
+
+        final BoundedBlockingQueue<String> queue = new BoundedBlockingQueue<> (4, Overflow.SpillToDisk);
+        for (int i = 0; i < 100; i++) {
+            queue.put ("message-" + i);
+        }
+
+        Assert.assertEquals (100, queue.size ());
+        Assert.assertEquals (96, queue.getSpilledCount ());
+
+        // Mix single takes with batches so spilled messages are refilled both ways
+        final List<String> batch = new ArrayList<> ();
+        int expected = 0;
+        while (expected < 100) {
+            if (expected % 3 == 0) {
+                batch.clear ();
+                queue.drainTo (batch, 7);
+                for (final String message : batch) {
+                    Assert.assertEquals ("message-" + expected++, message);
+                }
+            } else {
+                Assert.assertEquals ("message-" + expected++, queue.take ());
+            }
+        }
+
+        Assert.assertEquals (0, queue.size ());
+        Assert.assertEquals (0, queue.getDroppedCount ());
+    }
+
+    /**
+     * Deferred content is transient, so a spilled message must be decoded
+     * before it is written or it comes back empty.
+     */
+    @Test
+    public void testSpillToDiskKeepsDeferredContent () throws InterruptedException {
+
+        final BoundedBlockingQueue<Message> queue = new BoundedBlockingQueue<> (1, Overflow.SpillToDisk);
+        for (int i = 0; i < 3; i++) {
+            final String content = "content-" + i;
+            final Message message = new Message ();
+            message.setContent (Collections.<Class<?>> singletonList (String.class), new Message.IContentDecoder () {
+
+                @Override
+                public Serializable[] decode () {
+
+                    return new Serializable[] { content };
+                }
+            });
+            queue.put (message);
+        }
+
+        Assert.assertEquals (2, queue.getSpilledCount ());
+
+        for (int i = 0; i < 3; i++) {
+            final Message message = queue.take ();
+            Assert.assertEquals (1, message.size ());
+            Assert.assertEquals ("content-" + i, message.get ().get (0));
+        }
+    }
+
+    @Test
+    public void testCloseDeletesSpillFile () throws IOException, InterruptedException {
+
+        final File directory = Files.createTempDirectory ("pirkolator-spill-test").toFile ();
+        try {
+            final BoundedBlockingQueue<String> queue =
+                    new BoundedBlockingQueue<> (2, Overflow.SpillToDisk, directory.getAbsolutePath ());
+            for (int i = 0; i < 5; i++) {
+                queue.put ("message-" + i);
+            }
+            Assert.assertEquals (1, directory.list ().length);
+
+            queue.close ();
+
+            Assert.assertEquals (0, directory.list ().length);
+            Assert.assertEquals (3, queue.getDroppedCount ());
+            Assert.assertEquals (2, queue.size ());
+        } finally {
+            directory.delete ();
+        }
+    }
+}
@@ -0,0 +1,96 @@
+/*******************************************************************************
+ * Copyright 2014 Reality Warp Software
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.rws.pirkolator.core.metric;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void testSmallValuesAreExact () {
+
+        final LatencyHistogram histogram = new LatencyHistogram ();
+        for (long i = 1; i <= 100; i++) {
+            histogram.record (i);
+        }
+
+        Assert.assertEquals (100, histogram.getCount ());
+        Assert.assertEquals (50, histogram.getValueAtPercentile (50.0));
+        Assert.assertEquals (99, histogram.getValueAtPercentile (99.0));
+        Assert.assertEquals (100, histogram.getValueAtPercentile (100.0));
+    }
+
+    /**
+     * Every value must land in a bucket whose reported value is no lower than
+     * the value and no more than 1/64 above it.
+     */
+    @Test
+    public void testBucketPrecision () {
+
+        for (long value = 1; value < LatencyHistogram.MAX_VALUE; value = value * 3 / 2 + 1) {
+            final int index = LatencyHistogram.indexOf (value);
+            final long reported = LatencyHistogram.highestValueOf (index);
+
+            Assert.assertTrue (index < LatencyHistogram.BUCKET_COUNT);
+            Assert.assertTrue ("Reported " + reported + " below " + value, reported >= value);
+            Assert.assertTrue ("Reported " + reported + " too far above " + value, reported - value <= value / 64);
+        }
+    }
+
+    @Test
+    public void testOutOfRangeValuesAreClamped () {
+
+        final LatencyHistogram histogram = new LatencyHistogram ();
+        histogram.record (-5);
+        histogram.record (Long.MAX_VALUE);
+
+        Assert.assertEquals (0, histogram.getValueAtPercentile (50.0));
+        Assert.assertEquals (LatencyHistogram.MAX_VALUE, histogram.getValueAtPercentile (100.0));
+    }
+
+    @Test
+    public void testIntervalSkipsUnstampedStage () {
+
+        final LatencyHistogram histogram = new LatencyHistogram ();
+        histogram.recordInterval (0, 5000);
+        Assert.assertEquals (0, histogram.getCount ());
+
+        histogram.recordInterval (1000, 5000);
+        Assert.assertEquals (1, histogram.getCount ());
+    }
+
+    @Test
+    public void testDrainResetsCounts () {
+
+        final LatencyHistogram histogram = new LatencyHistogram ();
+        for (int i = 0; i < 1000; i++) {
+            histogram.record (1000000);
+        }
+        histogram.record (50000000);
+
+        final long[] snapshot = new long[LatencyHistogram.BUCKET_COUNT];
+        final long total = histogram.drainTo (snapshot);
+
+        Assert.assertEquals (1001, total);
+        Assert.assertEquals (0, histogram.getCount ());
+
+        final long p99 = LatencyHistogram.valueAtPercentile (snapshot, total, 99.0);
+        final long p100 = LatencyHistogram.valueAtPercentile (snapshot, total, 100.0);
+        Assert.assertTrue (p99 >= 1000000 && p99 < 1020000);
+        Assert.assertTrue (p100 >= 50000000 && p100 < 51000000);
+    }
+}
@@ -0,0 +1,59 @@
+/*******************************************************************************
+ * Copyright 2014 Reality Warp Software
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.rws.pirkolator.core.metric;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.rws.pirkolator.core.engine.SystemResourceManager;
+import com.rws.pirkolator.model.metric.Series;
+import com.rws.pirkolator.schema.metric.ISeries;
+
+public class PeriodicSeriesManagerTest {
+
+    /**
+     * A removed latency runner no longer drains its histogram into its series.
+     */
+    @Test
+    public void testRemovedLatencyRunnerStops () throws InterruptedException {
+
+        final SystemResourceManager resourceManager = new SystemResourceManager ();
+        try {
+            final PeriodicSeriesManager manager = new PeriodicSeriesManager (resourceManager);
+            final LatencyHistogram histogram = new LatencyHistogram ();
+            final ISeries<Long, Long> p50 = new Series<> ("source");
+            final PeriodicLatencyRunner runner =
+                    manager.addPeriodicLatency (histogram, p50, new Series<Long, Long> ("source"),
+                            new Series<Long, Long> ("source"), 10);
+
+            histogram.record (1000);
+            final long deadline = System.currentTimeMillis () + 5000;
+            while (p50.isEmpty () && System.currentTimeMillis () < deadline) {
+                Thread.sleep (10);
+            }
+            Assert.assertEquals (1, p50.size ());
+
+            manager.removePeriodicLatency (runner);
+            histogram.record (2000);
+            Thread.sleep (100);
+
+            Assert.assertEquals (1, p50.size ());
+            Assert.assertEquals (1, histogram.getCount ());
+        } finally {
+            resourceManager.shutdownAll ();
+        }
+    }
+}
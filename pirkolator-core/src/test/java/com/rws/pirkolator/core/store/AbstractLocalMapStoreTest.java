@@ -0,0 +1,282 @@
+/*******************************************************************************
+ * Copyright 2014 Reality Warp Software
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.rws.pirkolator.core.store;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableMap;
+import com.rws.pirkolator.view.model.RequestView;
+import com.rws.utility.common.sort.SortUtils;
+
+public class AbstractLocalMapStoreTest {
+
+    @Test
+    public void testIndexedQueries () {
+
+        final TestStore store = new TestStore ();
+        store.put (view ("a", "alice", "Running", 30));
+        store.put (view ("b", "bob", "Running", 10));
+        store.put (view ("c", "alice", "Complete", 20));
+
+        Assert.assertTrue (store.isIndexed ("requestState"));
+        Assert.assertEquals (2, store.findByParam ("requestState", "Running").size ());
+        Assert.assertEquals (2, store.findByParam ("requesterId", "alice").size ());
+
+        final List<RequestView> matches =
+                store.findByParameterMap (ImmutableMap.<String, Object> of ("requesterId", "alice", "requestState",
+                        "Running"));
+        Assert.assertEquals (1, matches.size ());
+        Assert.assertEquals ("a", matches.get (0).getId ());
+
+        // Excludes views matching any parameter
+        final List<RequestView> excluded =
+                store.findByParamMap (ImmutableMap.<String, Object> of ("requesterId", "bob"));
+        Assert.assertEquals (2, excluded.size ());
+    }
+
+    @Test
+    public void testOrderedIndex () {
+
+        final TestStore store = new TestStore ();
+        store.put (view ("a", "alice", "Running", 30));
+        store.put (view ("b", "bob", "Running", 10));
+        store.put (view ("c", "alice", "Complete", 20));
+
+        final List<RequestView> ascending = store.findAllOrderedBy ("timeSubmitted", true);
+        Assert.assertEquals ("b", ascending.get (0).getId ());
+        Assert.assertEquals ("a", ascending.get (2).getId ());
+
+        final List<RequestView> range = store.findByRange ("timeSubmitted", Long.valueOf (15), Long.valueOf (30));
+        Assert.assertEquals (2, range.size ());
+        Assert.assertEquals ("c", range.get (0).getId ());
+        Assert.assertEquals ("a", range.get (1).getId ());
+    }
+
+    @Test
+    public void testIndexFollowsPutAndRemove () {
+
+        final TestStore store = new TestStore ();
+        final RequestView view = view ("a", "alice", "Running", 30);
+        store.put (view);
+
+        // Changed in place and put again
+        view.setRequestState ("Complete");
+        store.put (view);
+        Assert.assertTrue (store.findByParam ("requestState", "Running").isEmpty ());
+        Assert.assertEquals (1, store.findByParam ("requestState", "Complete").size ());
+
+        store.removeById ("a");
+        Assert.assertTrue (store.findByParam ("requestState", "Complete").isEmpty ());
+        Assert.assertTrue (store.findAllOrderedBy ("timeSubmitted", true).isEmpty ());
+    }
+
+    /**
+     * Query values are converted to the type of their property, and a value
+     * that cannot be converted matches no view instead of failing.
+     */
+    @Test
+    public void testQueryValuesConverted () {
+
+        final TestStore store = new TestStore ();
+        store.put (view ("a", "alice", "Running", 30));
+        store.put (view ("b", "bob", "Running", 10));
+        store.put (view ("c", "alice", "Complete", 20));
+
+        Assert.assertEquals ("a", store.findByParam ("timeSubmitted", "30").get (0).getId ());
+        Assert.assertEquals ("a", store.findByParam ("timeSubmitted", Integer.valueOf (30)).get (0).getId ());
+        Assert.assertTrue (store.findByParam ("timeSubmitted", "soon").isEmpty ());
+        Assert.assertEquals (1, store.findByParameterMap (ImmutableMap.<String, Object> of ("timeSubmitted", "20",
+                "requesterId", "alice")).size ());
+        Assert.assertEquals (2, store.findByParamMap (ImmutableMap.<String, Object> of ("timeSubmitted", "10"))
+                .size ());
+
+        final List<RequestView> range = store.findByRange ("timeSubmitted", "15", "30");
+        Assert.assertEquals (2, range.size ());
+        Assert.assertEquals ("c", range.get (0).getId ());
+        Assert.assertTrue (store.findByRange ("timeSubmitted", "soon", null).isEmpty ());
+
+        // Unindexed property read from each view
+        Assert.assertEquals (3, store.findByParam ("timeCompleted", "0").size ());
+        Assert.assertTrue (store.findByParam ("timeCompleted", "never").isEmpty ());
+    }
+
+    /**
+     * An ordered index needs a Comparable property, so it is refused up front
+     * rather than failing on the first put.
+     */
+    @Test (expected = IllegalArgumentException.class)
+    public void testOrderedIndexNeedsComparableProperty () {
+
+        new TestStore ().addIndex ("parameterList", true);
+    }
+
+    @Test
+    public void testUnindexedPropertyIsRead () {
+
+        final TestStore store = new TestStore ();
+        store.put (view ("a", "alice", "Running", 30));
+
+        Assert.assertFalse (store.isIndexed ("requestType"));
+        Assert.assertEquals (1, store.findByParam ("requestType", "test").size ());
+        Assert.assertEquals (1, store.findByParam ("label", "a").size ());
+    }
+
+    @Test
+    public void testFindPage () {
+
+        final TestStore store = new TestStore ();
+        for (int i = 0; i < 10; i++) {
+            store.put (view ("v" + i, i % 2 == 0 ? "alice" : "bob", "Running", 100 - i));
+        }
+
+        // Read from the ordered index
+        final StorePage<RequestView> indexed =
+                store.findPage (ImmutableMap.<String, Object> of (), SortUtils.getSortList ("-timeSubmitted"), 2, 3);
+        Assert.assertEquals (10, indexed.getTotalCount ());
+        Assert.assertEquals (3, indexed.size ());
+        Assert.assertEquals ("v2", indexed.getItemList ().get (0).getId ());
+        Assert.assertEquals ("v4", indexed.getItemList ().get (2).getId ());
+
+        // Selected from the matching views
+        final StorePage<RequestView> selected =
+                store.findPage (ImmutableMap.<String, Object> of ("requesterId", "alice"),
+                        SortUtils.getSortList ("timeSubmitted"), 1, 2);
+        Assert.assertEquals (5, selected.getTotalCount ());
+        Assert.assertEquals (2, selected.size ());
+        Assert.assertEquals ("v6", selected.getItemList ().get (0).getId ());
+        Assert.assertEquals ("v4", selected.getItemList ().get (1).getId ());
+
+        // Past the last match
+        Assert.assertTrue (store.findPage (ImmutableMap.<String, Object> of (), SortUtils.getSortList ("requesterId"),
+                20, 5).isEmpty ());
+    }
+
+    /**
+     * Views with equal sort keys are paged in id order, so reading page after
+     * page neither repeats nor skips a view, whether the page is read from the
+     * ordered index or selected from the matching views.
+     */
+    @Test
+    public void testFindPageWithDuplicateKeys () {
+
+        final TestStore store = new TestStore ();
+        for (int i = 0; i < 10; i++) {
+            store.put (view ("v" + i, "alice", "Running", i % 3));
+        }
+
+        final List<String> ascending = Arrays.asList ("v0", "v3", "v6", "v9", "v1", "v4", "v7", "v2", "v5", "v8");
+        final List<String> descending = Arrays.asList ("v2", "v5", "v8", "v1", "v4", "v7", "v0", "v3", "v6", "v9");
+        final Map<String, Object> all = ImmutableMap.<String, Object> of ();
+        final Map<String, Object> running = ImmutableMap.<String, Object> of ("requestState", "Running");
+
+        Assert.assertEquals (ascending, readPages (store, all, "timeSubmitted"));
+        Assert.assertEquals (ascending, readPages (store, running, "timeSubmitted"));
+        Assert.assertEquals (descending, readPages (store, all, "-timeSubmitted"));
+        Assert.assertEquals (descending, readPages (store, running, "-timeSubmitted"));
+    }
+
+    /**
+     * Strings in an ordered index are paged in the natural order used to sort
+     * pages without an index, so "a2" comes before "a10" and strings held equal,
+     * such as "a2" and "a02", are paged together in id order.
+     */
+    @Test
+    public void testFindPageIndexedMatchesUnindexed () {
+
+        final List<String> types = Arrays.asList ("a2", "a10", "a1", "a01", "b", "a02", "a2", "a10", "A3", "a9");
+
+        final TestStore indexedStore = new TestStore ();
+        indexedStore.addIndex ("requestType", true);
+        final TestStore unindexedStore = new TestStore ();
+        for (int i = 0; i < types.size (); i++) {
+            indexedStore.put (view ("v" + i, types.get (i)));
+            unindexedStore.put (view ("v" + i, types.get (i)));
+        }
+        Assert.assertFalse (unindexedStore.isIndexed ("requestType"));
+
+        final List<String> ascending = Arrays.asList ("v8", "v2", "v3", "v0", "v5", "v6", "v9", "v1", "v7", "v4");
+        final List<String> descending = Arrays.asList ("v4", "v1", "v7", "v9", "v0", "v5", "v6", "v2", "v3", "v8");
+        final Map<String, Object> all = ImmutableMap.<String, Object> of ();
+
+        Assert.assertEquals (ascending, readPages (indexedStore, all, "requestType"));
+        Assert.assertEquals (ascending, readPages (unindexedStore, all, "requestType"));
+        Assert.assertEquals (descending, readPages (indexedStore, all, "-requestType"));
+        Assert.assertEquals (descending, readPages (unindexedStore, all, "-requestType"));
+    }
+
+    /**
+     * @return ids of the views read three to a page
+     */
+    private static List<String> readPages (final TestStore store, final Map<String, Object> map, final String sort) {
+
+        final List<String> idList = new ArrayList<> ();
+        for (int offset = 0; offset < 10; offset += 3) {
+            final StorePage<RequestView> page = store.findPage (map, SortUtils.getSortList (sort), offset, 3);
+            for (final RequestView view : page.getItemList ()) {
+                idList.add (view.getId ());
+            }
+        }
+
+        return idList;
+    }
+
+    private static RequestView view (final String id, final String requesterId, final String state,
+            final long timeSubmitted) {
+
+        return new RequestView (id, id, "test", requesterId, state, timeSubmitted, 0, 0, 0);
+    }
+
+    private static RequestView view (final String id, final String requestType) {
+
+        return new RequestView (id, id, requestType, "alice", "Running", 0, 0, 0, 0);
+    }
+
+    /**
+     * Request view store over a plain map, so no grid is needed.
+     */
+    private static class TestStore extends AbstractLocalMapStore<RequestView> {
+
+        private final Map<String, RequestView> map = new ConcurrentHashMap<> ();
+
+        TestStore () {
+
+            super (RequestView.class);
+
+            addIndex ("requesterId", false);
+            addIndex ("requestState", false);
+            addIndex ("timeSubmitted", true);
+        }
+
+        @Override
+        public String getMapName () {
+
+            return "testStore";
+        }
+
+        @Override
+        public Map<String, RequestView> getMap () {
+
+            return map;
+        }
+    }
+}
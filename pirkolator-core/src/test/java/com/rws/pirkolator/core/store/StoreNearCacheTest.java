@@ -0,0 +1,94 @@
+/*******************************************************************************
+ * Copyright 2014 Reality Warp Software
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.rws.pirkolator.core.store;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+
+public class StoreNearCacheTest {
+
+    @Test
+    public void testHitsAndMisses () {
+
+        final StoreNearCache<String> cache = new StoreNearCache<> (10, 0);
+
+        Assert.assertNull (cache.get ("a"));
+        cache.put ("a", "view-a", cache.getVersion ());
+        Assert.assertEquals ("view-a", cache.get ("a"));
+        Assert.assertEquals ("view-a", cache.get ("a"));
+
+        Assert.assertEquals (2, cache.getHitCount ());
+        Assert.assertEquals (1, cache.getMissCount ());
+    }
+
+    @Test
+    public void testInvalidate () {
+
+        final StoreNearCache<String> cache = new StoreNearCache<> (10, 0);
+        cache.put ("a", "view-a", cache.getVersion ());
+        cache.putAll (ImmutableList.of ("view-a", "view-b"), cache.getVersion ());
+        Assert.assertNotNull (cache.getAll ());
+
+        cache.invalidate ("a");
+        Assert.assertNull (cache.get ("a"));
+        Assert.assertNull (cache.getAll ());
+        Assert.assertEquals (1, cache.getInvalidationCount ());
+    }
+
+    /**
+     * A view read before an invalidation must not be cached after it.
+     */
+    @Test
+    public void testStaleReadNotCached () {
+
+        final StoreNearCache<String> cache = new StoreNearCache<> (10, 0);
+
+        final long version = cache.getVersion ();
+        cache.invalidate ("a");
+        cache.put ("a", "old-a", version);
+        cache.putAll (ImmutableList.of ("old-a"), version);
+
+        Assert.assertNull (cache.get ("a"));
+        Assert.assertNull (cache.getAll ());
+    }
+
+    @Test
+    public void testSnapshotLimitedBySize () {
+
+        final StoreNearCache<String> cache = new StoreNearCache<> (2, 0);
+
+        cache.putAll (ImmutableList.of ("a", "b", "c"), cache.getVersion ());
+        Assert.assertNull (cache.getAll ());
+
+        cache.putAll (ImmutableList.of ("a", "b"), cache.getVersion ());
+        Assert.assertEquals (2, cache.getAll ().size ());
+    }
+
+    @Test
+    public void testTimeToLive () throws InterruptedException {
+
+        final StoreNearCache<String> cache = new StoreNearCache<> (10, 1);
+        cache.put ("a", "view-a", cache.getVersion ());
+        cache.putAll (ImmutableList.of ("view-a"), cache.getVersion ());
+
+        Thread.sleep (20);
+
+        Assert.assertNull (cache.get ("a"));
+        Assert.assertNull (cache.getAll ());
+    }
+}
@@ -0,0 +1,172 @@
+/*******************************************************************************
+ * Copyright 2014 Reality Warp Software
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.rws.pirkolator.core.utility.serial;
+
+import static com.rws.utility.common.Preconditions.notNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.UUID;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.rws.pirkolator.model.Message;
+import com.rws.pirkolator.model.MessageBatch;
+
+public class MessageEnvelopeTest {
+
+    @Test
+    public void testHeadersAndTypesReadWithoutContent () throws IOException {
+
+        final Message message = new Message ();
+        message.setSequence (42);
+        message.setCopy (true);
+        message.addHeader ("route", "north");
+        message.add ("first", Integer.valueOf (2), "third");
+
+        final Message read = read (write (message));
+
+        Assert.assertEquals (message.getId (), read.getId ());
+        Assert.assertEquals (message.getId (), read.getOriginalId ());
+        Assert.assertEquals (42, read.getSequence ());
+        Assert.assertTrue (read.isCopy ());
+        Assert.assertEquals (message.getTimestamp (), read.getTimestamp ());
+        Assert.assertEquals ("north", read.getHeader ("route"));
+        Assert.assertTrue (read.containsType (String.class));
+        Assert.assertTrue (read.containsType (Number.class));
+        Assert.assertFalse (read.isEmpty ());
+
+        // Nothing above needed the content
+        Assert.assertNotNull (read.getContentDecoder ());
+
+        Assert.assertEquals (Arrays.asList ("first", Integer.valueOf (2), "third"), read.get ());
+        Assert.assertNull (read.getContentDecoder ());
+    }
+
+    @Test
+    public void testUndecodedContentForwardedUnchanged () throws IOException {
+
+        final Message message = new Message ();
+        message.add ("payload");
+
+        final byte[] first = write (message);
+        final Message read = read (first);
+        final byte[] second = write (read);
+
+        Assert.assertNotNull (read.getContentDecoder ());
+        Assert.assertArrayEquals (first, second);
+        Assert.assertEquals ("payload", read (second).get (0));
+    }
+
+    @Test
+    public void testEmptyMessage () throws IOException {
+
+        final Message read = read (write (new Message ()));
+
+        Assert.assertTrue (read.isEmpty ());
+        Assert.assertEquals (0, read.size ());
+        Assert.assertEquals (-1, read.getSequence ());
+        Assert.assertNull (read.getHeader (Message.COPY_HEADER));
+    }
+
+    @Test
+    public void testBatch () throws IOException {
+
+        final Message first = new Message ();
+        first.add ("first");
+        final Message second = new Message ();
+        second.addHeader ("route", "south");
+        final UUID sourceId = UUID.randomUUID ();
+
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream ();
+        MessageEnvelope.writeBatch (new MessageBatch (notNull (sourceId), 7, notNull (Arrays.asList (first, second))),
+                new DataOutputStream (bytes));
+        final MessageBatch read =
+                MessageEnvelope.readBatch (new DataInputStream (new ByteArrayInputStream (bytes.toByteArray ())));
+
+        Assert.assertEquals (MessageEnvelope.BATCH_SEQUENCE_VERSION, bytes.toByteArray ()[0]);
+        Assert.assertEquals (sourceId, read.getSourceId ());
+        Assert.assertEquals (7, read.getSequence ());
+        Assert.assertEquals (2, read.size ());
+        Assert.assertEquals (first.getId (), read.getMessageList ().get (0).getId ());
+        Assert.assertEquals ("first", read.getMessageList ().get (0).get (0));
+        Assert.assertEquals ("south", read.getMessageList ().get (1).getHeader ("route"));
+        Assert.assertTrue (read.getMessageList ().get (1).isEmpty ());
+    }
+
+    @Test
+    public void testMessageWrittenAsVersion1 () throws IOException {
+
+        final Message message = new Message ();
+        message.add ("payload");
+
+        final byte[] bytes = write (message);
+
+        Assert.assertEquals (MessageEnvelope.BASE_VERSION, bytes[0]);
+        Assert.assertEquals ("payload", read (bytes).get (0));
+    }
+
+    /**
+     * A batch without a sequence is written, and read back, in the version 1
+     * layout that has no sequence field.
+     */
+    @Test
+    public void testVersion1Batch () throws IOException {
+
+        final Message message = new Message ();
+        message.add ("first");
+        final UUID sourceId = UUID.randomUUID ();
+
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream ();
+        MessageEnvelope.writeBatch (new MessageBatch (notNull (sourceId), notNull (Arrays.asList (message))),
+                new DataOutputStream (bytes));
+        final byte[] written = bytes.toByteArray ();
+        final MessageBatch read = MessageEnvelope.readBatch (new DataInputStream (new ByteArrayInputStream (written)));
+
+        Assert.assertEquals (MessageEnvelope.BASE_VERSION, written[0]);
+        // Version, source id and message count, with no sequence between them
+        Assert.assertEquals (1, new DataInputStream (new ByteArrayInputStream (written, 17, 4)).readInt ());
+        Assert.assertEquals (sourceId, read.getSourceId ());
+        Assert.assertEquals (MessageBatch.NO_SEQUENCE, read.getSequence ());
+        Assert.assertEquals (1, read.size ());
+        Assert.assertEquals ("first", read.getMessageList ().get (0).get (0));
+    }
+
+    @Test (expected = IOException.class)
+    public void testUnsupportedVersion () throws IOException {
+
+        final byte[] bytes = write (new Message ());
+        bytes[0] = MessageEnvelope.VERSION + 1;
+        read (bytes);
+    }
+
+    private static byte[] write (final Message message) throws IOException {
+
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream ();
+        MessageEnvelope.write (message, new DataOutputStream (bytes));
+        return notNull (bytes.toByteArray ());
+    }
+
+    private static Message read (final byte[] bytes) throws IOException {
+
+        return MessageEnvelope.read (new DataInputStream (new ByteArrayInputStream (bytes)));
+    }
+}
@@ -0,0 +1,90 @@
+/*******************************************************************************
+ * Copyright 2014 Reality Warp Software
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.rws.pirkolator.model;
+
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+import com.google.common.base.Objects;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * This class holds the acknowledgements a hub returns to a publisher for the
+ * messages its subscribers received within one linger period, so a batch costs
+ * one grid operation instead of one per message.
+ * 
+ * @author jpirkey
+ * @since 1.0.0
+ */
+public final class AckBatch implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    // *************************************************************************
+    // ** Member variables
+    // *************************************************************************
+
+    /** Key of the hub that received the messages **/
+    private final String systemName;
+    private final ImmutableList<UUID> ackIdList;
+
+    // *************************************************************************
+    // ** Constructors
+    // *************************************************************************
+
+    public AckBatch (final String systemName, final Collection<UUID> ackIds) {
+
+        super ();
+
+        this.systemName = systemName;
+        ackIdList = ImmutableList.copyOf (ackIds);
+    }
+
+    // *************************************************************************
+    // ** Member properties
+    // *************************************************************************
+
+    public String getSystemName () {
+
+        return systemName;
+    }
+
+    /**
+     * @return ack ids of the received messages
+     */
+    public List<UUID> getAckIdList () {
+
+        return ackIdList;
+    }
+
+    public int size () {
+
+        return ackIdList.size ();
+    }
+
+    // *************************************************************************
+    // ** Class methods
+    // *************************************************************************
+
+    @Override
+    public String toString () {
+
+        return Objects.toStringHelper (this).add ("systemName", systemName).add ("size", ackIdList.size ())
+                .toString ();
+    }
+}
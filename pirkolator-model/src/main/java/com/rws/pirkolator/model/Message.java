@@ -15,31 +15,53 @@
  ******************************************************************************/
 package com.rws.pirkolator.model;
 
+import static com.google.common.base.Preconditions.checkElementIndex;
 import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
 
+import java.io.IOException;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
-import java.util.concurrent.ConcurrentHashMap;
 
 import javax.annotation.Nullable;
 
 import com.google.common.base.Objects;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterators;
 import com.rws.pirkolator.schema.IMessage;
 
 /**
  * This final class provides the {@link IMessage} implementation.
  * 
+ * <p>A message is kept compact because one is allocated for every publish.  The
+ * content is held in an array, the headers the framework sets on every message
+ * (sequence, copy flag and timestamp) are held as primitives and any other
+ * headers are held in a small table of key and value slots.  The read-only views
+ * of the content and types are built once and cached until the content changes.
+ * The header table is copied on write and published through a volatile field,
+ * so a header set by one thread, even on a frozen message, is seen whole by
+ * readers on other threads.
+ * 
+ * <p>A message may be frozen once it is published so it can be shared by
+ * reference instead of copied.  A frozen message rejects new content and hands
+ * out read-only views of its content and types; headers and stage times stay
+ * writable so the infrastructure can still route and time it.  Freezing is not serialized or copied, so
+ * a copy of a frozen message is mutable.
+ * 
+ * <p>A message read from the wire may defer its content to an {@link IContentDecoder}.
+ * The types are known up front, so type checks and header reads do not decode
+ * the content; it is decoded once, on the first read of the content.
+ * 
  * @author pirk
  * @since 1.0.0
  */
@@ -47,6 +69,21 @@ public final class Message implements IMessage {
 
     private static final long serialVersionUID = 1L;
 
+    /** Header holding the sequence number given to the message by its publisher **/
+    public static final String SEQUENCE_HEADER = "count";
+
+    /** Header holding true if the message is a copy of the published message **/
+    public static final String COPY_HEADER = "copy";
+
+    /** Header holding the time the message was created in milliseconds **/
+    public static final String TIMESTAMP_HEADER = "timestamp";
+
+    private static final int INITIAL_CAPACITY = 2;
+    private static final long NO_SEQUENCE = -1;
+    private static final byte COPY_UNSET = 0;
+    private static final byte COPY_FALSE = 1;
+    private static final byte COPY_TRUE = 2;
+
     // *************************************************************************
     // ** Member variables
     // *************************************************************************
@@ -59,11 +96,55 @@ public final class Message implements IMessage {
     private UUID originalId;
 
     /**
-     * Collections *
+     * Well-known headers *
+     */
+    private long sequence = NO_SEQUENCE;
+    private byte copy = COPY_UNSET;
+    private long timestamp;
+
+    /**
+     * Stage times from System.nanoTime (), 0 until stamped; they only compare
+     * within one JVM so they are neither serialized nor copied *
+     */
+    private transient long enteredNanos;
+    private transient long dequeuedNanos;
+    private transient long routedNanos;
+
+    /**
+     * Other headers as alternating keys and values; the array is replaced, never
+     * changed in place, once it has been published *
+     */
+    @Nullable
+    private volatile String[] headerSlots;
+
+    /**
+     * Content and the distinct types of the content *
+     */
+    @Nullable
+    private Serializable[] objects;
+    private int objectCount;
+    @Nullable
+    private Class<?>[] types;
+    private int typeCount;
+
+    /**
+     * Decoder of content not yet read, null once decoded *
      */
-    private final Map<String, String> headerMap = new ConcurrentHashMap<> ();
-    private final List<Serializable> objectList = new LinkedList<> ();
-    private final Set<Class<?>> typeSet = new HashSet<> (5);
+    @Nullable
+    private transient volatile IContentDecoder contentDecoder;
+
+    /**
+     * Cached read-only views, rebuilt after the content changes *
+     */
+    @Nullable
+    private transient List<Serializable> objectView;
+    @Nullable
+    private transient Set<Class<?>> typeView;
+
+    /**
+     * Read-only state *
+     */
+    private transient volatile boolean frozen;
 
     // *************************************************************************
     // ** Constructors
@@ -75,6 +156,21 @@ public final class Message implements IMessage {
         final UUID tmp = UUID.randomUUID ();
         checkNotNull (tmp);
         id = tmp;
+        timestamp = System.currentTimeMillis ();
+    }
+
+    /**
+     * Restores a message with known ids, such as a message read from the wire.
+     * 
+     * @param id
+     * @param originalId or null if the message is not a copy
+     */
+    public Message (final UUID id, @Nullable final UUID originalId) {
+
+        super ();
+        this.id = id;
+        this.originalId = originalId;
+        timestamp = System.currentTimeMillis ();
     }
 
     // *************************************************************************
@@ -90,36 +186,247 @@ public final class Message implements IMessage {
     @Override
     public UUID getOriginalId () {
 
-        UUID tmp = null;
-        if (originalId == null) {
-            tmp = originalId;
-        } else {
-            tmp = id;
+        final UUID tmp = originalId;
+        if (tmp == null) {
+            return id;
         }
 
-        return checkNotNull (tmp);
+        return tmp;
+    }
+
+    public boolean isFrozen () {
+
+        return frozen;
+    }
+
+    /**
+     * @return decoder of content not yet decoded, or null if the content is decoded
+     */
+    public @Nullable
+    IContentDecoder getContentDecoder () {
+
+        return contentDecoder;
+    }
+
+    /**
+     * @return the sequence number set by the publisher or -1 if none was set
+     */
+    public long getSequence () {
+
+        return sequence;
+    }
+
+    public void setSequence (final long sequence) {
+
+        this.sequence = sequence;
+    }
+
+    public boolean isCopy () {
+
+        return copy == COPY_TRUE;
+    }
+
+    public void setCopy (final boolean copy) {
+
+        this.copy = copy ? COPY_TRUE : COPY_FALSE;
+    }
+
+    /**
+     * @return the time this message was created in milliseconds
+     */
+    public long getTimestamp () {
+
+        return timestamp;
+    }
+
+    public void setTimestamp (final long timestamp) {
+
+        this.timestamp = timestamp;
+    }
+
+    /**
+     * @return the nano time the message entered its publisher's channel or 0
+     */
+    public long getEnteredNanos () {
+
+        return enteredNanos;
+    }
+
+    public void setEnteredNanos (final long enteredNanos) {
+
+        this.enteredNanos = enteredNanos;
+    }
+
+    /**
+     * @return the nano time the distributor took the message from its sending queue or 0
+     */
+    public long getDequeuedNanos () {
+
+        return dequeuedNanos;
+    }
+
+    public void setDequeuedNanos (final long dequeuedNanos) {
+
+        this.dequeuedNanos = dequeuedNanos;
+    }
+
+    /**
+     * @return the nano time the message was put on the subscribers' receiving queues or 0
+     */
+    public long getRoutedNanos () {
+
+        return routedNanos;
+    }
+
+    public void setRoutedNanos (final long routedNanos) {
+
+        this.routedNanos = routedNanos;
     }
 
     // *************************************************************************
     // ** Header methods
     // *************************************************************************
 
+    /**
+     * Adds or replaces a header.  The well-known headers are stored as
+     * primitives, so the value of the sequence and timestamp headers must be a
+     * number.
+     * 
+     * @param name
+     * @param value
+     */
     public void addHeader (final String name, final String value) {
 
-        headerMap.put (name, value);
+        if (SEQUENCE_HEADER.equals (name)) {
+            sequence = Long.parseLong (value);
+        } else if (COPY_HEADER.equals (name)) {
+            setCopy (Boolean.parseBoolean (value));
+        } else if (TIMESTAMP_HEADER.equals (name)) {
+            timestamp = Long.parseLong (value);
+        } else {
+            putHeader (name, value);
+        }
     }
 
     @Override
     public @Nullable
     String getHeader (final String name) {
 
-        return headerMap.get (name);
+        if (SEQUENCE_HEADER.equals (name)) {
+            return sequence == NO_SEQUENCE ? null : Long.toString (sequence);
+        } else if (COPY_HEADER.equals (name)) {
+            return copy == COPY_UNSET ? null : Boolean.toString (copy == COPY_TRUE);
+        } else if (TIMESTAMP_HEADER.equals (name)) {
+            return Long.toString (timestamp);
+        }
+
+        final String[] slots = headerSlots;
+        final int index = headerIndex (slots, name);
+        if (index < 0) {
+            return null;
+        }
+
+        return checkNotNull (slots)[index + 1];
     }
 
     @Override
     public Map<String, String> getHeaderMap () {
 
-        return new HashMap<> (headerMap);
+        final Map<String, String> map = new HashMap<> ();
+        final String[] slots = headerSlots;
+        if (slots != null) {
+            for (int i = 0; i < slots.length; i += 2) {
+                map.put (slots[i], slots[i + 1]);
+            }
+        }
+
+        if (sequence != NO_SEQUENCE) {
+            map.put (SEQUENCE_HEADER, Long.toString (sequence));
+        }
+        if (copy != COPY_UNSET) {
+            map.put (COPY_HEADER, Boolean.toString (copy == COPY_TRUE));
+        }
+        map.put (TIMESTAMP_HEADER, Long.toString (timestamp));
+
+        return map;
+    }
+
+    /**
+     * @return number of headers other than the sequence, copy and timestamp headers
+     */
+    public int getCustomHeaderCount () {
+
+        final String[] slots = headerSlots;
+        return slots == null ? 0 : slots.length / 2;
+    }
+
+    /**
+     * Reads a header other than the well-known headers without building the
+     * header map, e.g. to write the message.  Headers are only ever added, so
+     * an index below a count read earlier stays valid.
+     * 
+     * @param index of the header, from 0 to {@link #getCustomHeaderCount()}
+     */
+    public String getCustomHeaderName (final int index) {
+
+        final String[] slots = headerSlots;
+        checkElementIndex (index, slots == null ? 0 : slots.length / 2);
+        return checkNotNull (checkNotNull (slots)[index * 2]);
+    }
+
+    public String getCustomHeaderValue (final int index) {
+
+        final String[] slots = headerSlots;
+        checkElementIndex (index, slots == null ? 0 : slots.length / 2);
+        return checkNotNull (checkNotNull (slots)[index * 2 + 1]);
+    }
+
+    /**
+     * Publishes a new header table with the header set; writers are serialized
+     * so concurrent puts are not lost.
+     */
+    private synchronized void putHeader (final String name, final String value) {
+
+        final String[] slots = headerSlots;
+        final int index = headerIndex (slots, name);
+
+        final String[] updated;
+        if (index >= 0) {
+            updated = checkNotNull (slots).clone ();
+        } else if (slots == null) {
+            updated = new String[2];
+        } else {
+            updated = Arrays.copyOf (slots, slots.length + 2);
+        }
+
+        final int keyIndex = index >= 0 ? index : updated.length - 2;
+        updated[keyIndex] = name;
+        updated[keyIndex + 1] = value;
+        headerSlots = updated;
+    }
+
+    /**
+     * @return slot of the header's key, or -1 if the table has no such header
+     */
+    private static int headerIndex (final @Nullable String[] slots, final String name) {
+
+        if (slots == null) {
+            return -1;
+        }
+
+        // Header names are usually constants, so try identity before equality
+        for (int i = 0; i < slots.length; i += 2) {
+            if (slots[i] == name) {
+                return i;
+            }
+        }
+        for (int i = 0; i < slots.length; i += 2) {
+            if (name.equals (slots[i])) {
+                return i;
+            }
+        }
+
+        return -1;
     }
 
     // *************************************************************************
@@ -129,8 +436,19 @@ public final class Message implements IMessage {
     @Override
     public boolean containsType (final Class<?> type) {
 
-        for (final Class<?> c : typeSet) {
-            if (type.isAssignableFrom (c)) {
+        final Class<?>[] tmp = types;
+        if (tmp == null) {
+            return false;
+        }
+
+        // Messages rarely hold more than one or two types; try an exact match first
+        for (int i = 0; i < typeCount; i++) {
+            if (tmp[i] == type) {
+                return true;
+            }
+        }
+        for (int i = 0; i < typeCount; i++) {
+            if (type.isAssignableFrom (tmp[i])) {
                 return true;
             }
         }
@@ -141,7 +459,18 @@ public final class Message implements IMessage {
     @Override
     public Set<Class<?>> getTypes () {
 
-        return typeSet;
+        Set<Class<?>> tmp = typeView;
+        if (tmp == null) {
+            final Class<?>[] array = types;
+            if (array == null) {
+                tmp = ImmutableSet.of ();
+            } else {
+                tmp = ImmutableSet.copyOf (Arrays.asList (array).subList (0, typeCount));
+            }
+            typeView = tmp;
+        }
+
+        return checkNotNull (tmp);
     }
 
     // *************************************************************************
@@ -151,30 +480,61 @@ public final class Message implements IMessage {
     @Override
     public boolean isEmpty () {
 
-        return objectList.size () <= 0;
+        return objectCount <= 0 && contentDecoder == null;
     }
 
-    @Override
-    public List<Serializable> get () {
+    /**
+     * @return number of objects in the message
+     */
+    public int size () {
 
-        return ImmutableList.copyOf (objectList);
+        decodeContent ();
+        return objectCount;
     }
 
-    public boolean isCopy () {
+    /**
+     * Reads a single object without building the read-only view.
+     * 
+     * @param index of the object, in the order it was added
+     */
+    public Serializable get (final int index) {
+
+        decodeContent ();
+        checkElementIndex (index, objectCount);
+        return checkNotNull (checkNotNull (objects)[index]);
+    }
+
+    @Override
+    public List<Serializable> get () {
+
+        decodeContent ();
 
-        final String copy = headerMap.get ("copy");
-        if (copy != null) {
-            final boolean isCopy = Boolean.valueOf (copy);
-            return isCopy;
+        // The view is shared by every reader until the content changes
+        List<Serializable> tmp = objectView;
+        if (tmp == null) {
+            final Serializable[] array = objects;
+            if (array == null) {
+                tmp = ImmutableList.of ();
+            } else {
+                tmp = ImmutableList.copyOf (Arrays.asList (array).subList (0, objectCount));
+            }
+            objectView = tmp;
         }
 
-        return false;
+        return checkNotNull (tmp);
     }
 
     public <T> List<T> get (final Class<T> type) {
 
-        final List<T> newList = new ArrayList<> ();
-        for (final Object obj : objectList) {
+        if (!containsType (type)) {
+            return new ArrayList<> (0);
+        }
+
+        decodeContent ();
+        final Serializable[] array = checkNotNull (objects);
+        final List<T> newList = new ArrayList<> (objectCount);
+        for (int i = 0; i < objectCount; i++) {
+            final Object obj = array[i];
             if (type.isInstance (obj)) {
                 newList.add (type.cast (obj));
             }
@@ -186,11 +546,11 @@ public final class Message implements IMessage {
     @Override
     public Iterator<Serializable> iterate () {
 
-        final Iterator<Serializable> iterator = objectList.iterator ();
+        final Iterator<Serializable> iterator = get ().iterator ();
         if (iterator == null) {
             return Iterators.emptyIterator ();
         }
-        return Iterators.unmodifiableIterator (iterator);
+        return iterator;
     }
 
     @Override
@@ -209,8 +569,20 @@ public final class Message implements IMessage {
 
     public void add (final Serializable object) {
 
-        typeSet.add (object.getClass ());
-        objectList.add (object);
+        checkState (!frozen, "Message %s is frozen and cannot be changed", id);
+        decodeContent ();
+
+        Serializable[] array = objects;
+        if (array == null) {
+            array = new Serializable[INITIAL_CAPACITY];
+        } else if (objectCount == array.length) {
+            array = Arrays.copyOf (array, objectCount * 2);
+        }
+        array[objectCount++] = object;
+        objects = array;
+        objectView = null;
+
+        addType (object.getClass ());
     }
 
     public void add (final Serializable... objects) {
@@ -227,6 +599,94 @@ public final class Message implements IMessage {
         }
     }
 
+    /**
+     * Defers the content of an empty message to a decoder that is run on the
+     * first read of the content.
+     * 
+     * @param contentTypes distinct types of the content, in the order they were added
+     * @param decoder
+     */
+    public void setContent (final List<Class<?>> contentTypes, final IContentDecoder decoder) {
+
+        checkState (!frozen, "Message %s is frozen and cannot be changed", id);
+        checkState (objectCount == 0 && contentDecoder == null, "Message %s already has content", id);
+
+        for (final Class<?> type : contentTypes) {
+            addType (checkNotNull (type));
+        }
+        contentDecoder = decoder;
+    }
+
+    /**
+     * Decodes content deferred by {@link #setContent(List, IContentDecoder)}
+     * now instead of on its first read.
+     */
+    public void decodeContent () {
+
+        if (contentDecoder != null) {
+            decodePending ();
+        }
+    }
+
+    /**
+     * Makes the content of this message read-only.  Call this before the message
+     * is shared with other threads.
+     */
+    public synchronized void freeze () {
+
+        if (!frozen) {
+            // Build the shared views before readers on other threads can see them;
+            // deferred content builds its view when it is decoded
+            if (contentDecoder == null) {
+                get ();
+            }
+            getTypes ();
+            frozen = true;
+        }
+    }
+
+    private synchronized void decodePending () {
+
+        final IContentDecoder decoder = contentDecoder;
+        if (decoder == null) {
+            return;
+        }
+
+        final Serializable[] decoded = decoder.decode ();
+        objects = decoded;
+        objectCount = decoded.length;
+        objectView = ImmutableList.copyOf (decoded);
+
+        // Clearing the volatile decoder publishes the content to other readers
+        contentDecoder = null;
+    }
+
+    private void addType (final Class<?> type) {
+
+        Class<?>[] array = types;
+        if (array == null) {
+            array = new Class<?>[INITIAL_CAPACITY];
+        } else {
+            for (int i = 0; i < typeCount; i++) {
+                if (array[i] == type) {
+                    return;
+                }
+            }
+            if (typeCount == array.length) {
+                array = Arrays.copyOf (array, typeCount * 2);
+            }
+        }
+        array[typeCount++] = type;
+        types = array;
+        typeView = null;
+    }
+
+    private void writeObject (final ObjectOutputStream out) throws IOException {
+
+        decodeContent ();
+        out.defaultWriteObject ();
+    }
+
     // *************************************************************************
     // ** Class methods
     // *************************************************************************
@@ -234,7 +694,7 @@ public final class Message implements IMessage {
     @Override
     public int hashCode () {
 
-        return Objects.hashCode (super.hashCode (), id, originalId, headerMap, objectList, typeSet);
+        return Objects.hashCode (super.hashCode (), id, originalId);
     }
 
     @Override
@@ -244,9 +704,7 @@ public final class Message implements IMessage {
             if (!super.equals (object))
                 return false;
             final Message that = (Message) object;
-            return Objects.equal (id, that.id) && Objects.equal (originalId, that.originalId)
-                    && Objects.equal (headerMap, that.headerMap) && Objects.equal (objectList, that.objectList)
-                    && Objects.equal (typeSet, that.typeSet);
+            return Objects.equal (id, that.id) && Objects.equal (originalId, that.originalId);
         }
         return false;
     }
@@ -255,8 +713,22 @@ public final class Message implements IMessage {
     public String toString () {
 
         return Objects.toStringHelper (this).add ("super", super.toString ()).add ("id", id)
-                .add ("originalId", originalId).add ("headerMap", headerMap).add ("objectList", objectList)
-                .add ("typeSet", typeSet).toString ();
+                .add ("originalId", originalId).add ("headerMap", getHeaderMap ()).add ("objectList", get ())
+                .add ("typeSet", getTypes ()).toString ();
     }
 
+    // *************************************************************************
+    // ** Member classes
+    // *************************************************************************
+
+    /**
+     * Decodes the deferred content of a message.
+     */
+    public interface IContentDecoder {
+
+        /**
+         * @return the content, in the order it was added; never containing null
+         */
+        Serializable[] decode ();
+    }
 }
@@ -0,0 +1,109 @@
+/*******************************************************************************
+ * Copyright 2014 Reality Warp Software
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.rws.pirkolator.model;
+
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+import com.google.common.base.Objects;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * This class holds messages sent across the grid together, so a batch costs
+ * one publish and one event on each receiver instead of one per message.
+ * 
+ * @author jpirkey
+ * @since 1.0.0
+ */
+public final class MessageBatch implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /** Sequence of a batch that is not numbered **/
+    public static final long NO_SEQUENCE = -1;
+
+    // *************************************************************************
+    // ** Member variables
+    // *************************************************************************
+
+    /** Id of the queue that sent the batch **/
+    private final UUID sourceId;
+    private final ImmutableList<Message> messageList;
+
+    /** Position of the batch in its source's sequence, or NO_SEQUENCE **/
+    private final long sequence;
+
+    // *************************************************************************
+    // ** Constructors
+    // *************************************************************************
+
+    public MessageBatch (final UUID sourceId, final Collection<? extends Message> messages) {
+
+        this (sourceId, NO_SEQUENCE, messages);
+    }
+
+    public MessageBatch (final UUID sourceId, final long sequence, final Collection<? extends Message> messages) {
+
+        super ();
+
+        this.sourceId = sourceId;
+        this.sequence = sequence;
+        messageList = ImmutableList.copyOf (messages);
+    }
+
+    // *************************************************************************
+    // ** Member properties
+    // *************************************************************************
+
+    public UUID getSourceId () {
+
+        return sourceId;
+    }
+
+    /**
+     * @return position of the batch in its source's sequence, or {@link #NO_SEQUENCE}
+     */
+    public long getSequence () {
+
+        return sequence;
+    }
+
+    /**
+     * @return the messages in the order they were sent
+     */
+    public List<Message> getMessageList () {
+
+        return messageList;
+    }
+
+    public int size () {
+
+        return messageList.size ();
+    }
+
+    // *************************************************************************
+    // ** Class methods
+    // *************************************************************************
+
+    @Override
+    public String toString () {
+
+        return Objects.toStringHelper (this).add ("sourceId", sourceId).add ("sequence", sequence)
+                .add ("size", messageList.size ()).toString ();
+    }
+}
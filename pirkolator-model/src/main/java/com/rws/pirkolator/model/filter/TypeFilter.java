@@ -22,7 +22,9 @@ import java.io.IOException;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
 import java.util.Collections;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.annotation.Nullable;
 
@@ -49,6 +51,10 @@ public class TypeFilter implements IContentFilter, Externalizable {
     private final Set<Class<?>> typeSet = Sets.newConcurrentHashSet ();
     private IFilter.MatchType matchType;
 
+    /** <p>Content classes already tested against the type set, cleared when the types change.
+     * <br/><b>Key = content {@link Class}</b> **/
+    private final transient Map<Class<?>, Boolean> supportedTypeMap = new ConcurrentHashMap<> ();
+
     // *************************************************************************
     // ** Constructors
     // *************************************************************************
@@ -92,21 +98,25 @@ public class TypeFilter implements IContentFilter, Externalizable {
 
         typeSet.clear ();
         typeSet.addAll (types);
+        supportedTypeMap.clear ();
     }
 
     public void addType (final Class<?> type) {
 
         typeSet.add (type);
+        supportedTypeMap.clear ();
     }
 
     public void addTypes (final Class<?>... types) {
 
         Collections.addAll (typeSet, types);
+        supportedTypeMap.clear ();
     }
 
     public void addTypeFilters (final Set<Class<?>> types) {
 
         typeSet.addAll (types);
+        supportedTypeMap.clear ();
     }
 
     @Override
@@ -124,18 +134,9 @@ public class TypeFilter implements IContentFilter, Externalizable {
     public boolean supports (final Message message) {
 
         for (final Class<?> type : message.getTypes ()) {
-
-            // Exact match for performance
-            if (typeSet.contains (type)) {
+            if (supportsType (type)) {
                 return true;
             }
-
-            for (final Class<?> t : typeSet) {
-
-                if (t.isAssignableFrom (type)) {
-                    return true;
-                }
-            }
         }
 
         return false;
@@ -144,21 +145,32 @@ public class TypeFilter implements IContentFilter, Externalizable {
     @Override
     public boolean supportsObject (final Object obj, final String[] propertyList) {
 
-        final Class<?> type = obj.getClass ();
-        
-        // Exact match for speed
-        if (typeSet.contains (type)) {
-            return true;
-        }
+        return supportsType (obj.getClass ());
+    }
 
-        for (final Class<?> t : typeSet) {
+    /**
+     * @return true if the type is one of the filter's types or a subtype of one
+     */
+    public boolean supportsType (final Class<?> type) {
 
-            if (t.isAssignableFrom (type)) {
-                return true;
+        final Boolean cached = supportedTypeMap.get (type);
+        if (cached != null) {
+            return cached.booleanValue ();
+        }
+
+        // Exact match for speed
+        boolean supported = typeSet.contains (type);
+        if (!supported) {
+            for (final Class<?> t : typeSet) {
+                if (t.isAssignableFrom (type)) {
+                    supported = true;
+                    break;
+                }
             }
         }
 
-        return false;
+        supportedTypeMap.put (type, Boolean.valueOf (supported));
+        return supported;
     }
 
     // *************************************************************************
@@ -239,6 +251,7 @@ public class TypeFilter implements IContentFilter, Externalizable {
         matchType = Externalizables.readObjectAs (in, MatchType.class);
 
         typeSet.clear ();
+        supportedTypeMap.clear ();
         final int size = in.readInt ();
         for (int i = 0; i < size; i++) {
             typeSet.add ((Class<?>) in.readObject ());
@@ -0,0 +1,89 @@
+/*******************************************************************************
+ * Copyright 2014 Reality Warp Software
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.rws.pirkolator.model;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class MessageTest {
+
+    @Test
+    public void testCustomHeaders () {
+
+        final Message message = new Message ();
+        message.addHeader ("first", "1");
+        message.addHeader ("second", "2");
+        message.addHeader ("first", "one");
+
+        Assert.assertEquals (2, message.getCustomHeaderCount ());
+        Assert.assertEquals ("first", message.getCustomHeaderName (0));
+        Assert.assertEquals ("one", message.getCustomHeaderValue (0));
+        Assert.assertEquals ("2", message.getHeader ("second"));
+        Assert.assertNull (message.getHeader ("third"));
+
+        final Map<String, String> headerMap = message.getHeaderMap ();
+        Assert.assertEquals ("one", headerMap.get ("first"));
+        Assert.assertEquals ("2", headerMap.get ("second"));
+    }
+
+    /**
+     * Headers set on a shared, frozen message while other threads read it are
+     * seen whole; a reader never finds a key without its value.
+     */
+    @Test
+    public void testHeadersReadWhileWritten () throws InterruptedException {
+
+        final Message message = new Message ();
+        message.freeze ();
+
+        final AtomicBoolean writing = new AtomicBoolean (true);
+        final AtomicReference<Throwable> failure = new AtomicReference<> ();
+        final Thread reader = new Thread (new Runnable () {
+
+            @Override
+            public void run () {
+
+                try {
+                    while (writing.get ()) {
+                        final int count = message.getCustomHeaderCount ();
+                        for (int i = 0; i < count; i++) {
+                            final String name = message.getCustomHeaderName (i);
+                            Assert.assertEquals (name.substring ("header-".length ()),
+                                    message.getCustomHeaderValue (i));
+                        }
+                    }
+                } catch (final Throwable ex) {
+                    failure.set (ex);
+                }
+            }
+        });
+        reader.start ();
+
+        for (int i = 0; i < 2000; i++) {
+            message.addHeader ("header-" + i, String.valueOf (i));
+        }
+        writing.set (false);
+        reader.join ();
+
+        Assert.assertNull (failure.get ());
+        Assert.assertEquals (2000, message.getCustomHeaderCount ());
+        Assert.assertEquals ("1999", message.getHeader ("header-1999"));
+    }
+}
@@ -15,19 +15,38 @@
  ******************************************************************************/
 package com.rws.utility.common.sort;
 
-import java.lang.reflect.InvocationTargetException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Method;
+import java.math.BigDecimal;
 import java.math.BigInteger;
-import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
+ * Compares views by a list of sort keys, in order, until one differs.
+ * 
+ * <p>The getters of the sort properties are resolved once per view class into
+ * {@link MethodHandle}s, so a comparison reads each property with an exact
+ * handle invocation rather than a reflective lookup.  Use
+ * {@link #forType(Class, List)} when the view class is known to resolve them up
+ * front; otherwise they are resolved on the first comparison.
+ * 
+ * <p>Each key is compared in its own direction:
+ * <ul>
+ * <li>Strings are compared in natural order, so digit runs compare by their
+ * numeric value ("item9" before "item10"), without allocating.</li>
+ * <li>Numbers of different types are compared by value.</li>
+ * <li>Other values are compared by their natural ordering.</li>
+ * <li>Null values, and properties the view does not have, sort last.</li>
+ * </ul>
+ *
  * Created by IntelliJ IDEA.
  * User: kwitten
  * Date: 11/2/13
@@ -36,114 +55,321 @@ import org.slf4j.LoggerFactory;
 public class ViewComparator<T> implements Comparator<T> {
 
     private static final Logger LOG = LoggerFactory.getLogger (ViewComparator.class);
-    private static final Pattern PATTERN = Pattern.compile ("(\\D*)(\\d*)");
 
-    private final List<Sort> mCompareParams = new ArrayList<> ();
+    private static final MethodType GETTER_TYPE = MethodType.methodType (Object.class, Object.class);
+
+    /** Getter of a property the view does not have; always returns null **/
+    private static final MethodHandle MISSING_GETTER = MethodHandles.dropArguments (
+            MethodHandles.constant (Object.class, null), 0, Object.class);
+
+    /** <p>Getters resolved for each view class.
+     * <br/><b>Key = property name</b> **/
+    private static final ClassValue<ConcurrentMap<String, MethodHandle>> GETTER_CACHE =
+            new ClassValue<ConcurrentMap<String, MethodHandle>> () {
+
+                @Override
+                protected ConcurrentMap<String, MethodHandle> computeValue (final Class<?> type) {
+
+                    return new ConcurrentHashMap<> ();
+                }
+            };
+
+    // *************************************************************************
+    // ** Member variables
+    // *************************************************************************
+
+    private final String[] propertyNames;
+
+    /** 1 for ascending, -1 for descending **/
+    private final int[] directions;
+
+    /** Getters of the last view class compared **/
+    private volatile Getters getters;
+
+    // *************************************************************************
+    // ** Constructors
+    // *************************************************************************
 
     public ViewComparator (final List<Sort> params) {
 
-        mCompareParams.addAll (params);
+        super ();
+
+        propertyNames = new String[params.size ()];
+        directions = new int[params.size ()];
+        for (int i = 0; i < propertyNames.length; i++) {
+            final Sort sort = params.get (i);
+            propertyNames[i] = sort.getPropertyName ();
+            directions[i] = sort.getSortOrder () == SortOrder.DESCENDING ? -1 : 1;
+        }
     }
 
+    // *************************************************************************
+    // ** Member methods
+    // *************************************************************************
+
     @Override
     public int compare (final T o1, final T o2) {
 
-        // TODO jpirkey Add number aware compare
-
-        int val;
-        int desc;
+        final MethodHandle[] handles1 = getGetters (o1.getClass ());
+        final MethodHandle[] handles2 = o1.getClass () == o2.getClass () ? handles1 : getGetters (o2.getClass ());
 
         // Compare the parameters in order until one is not equal and return that
-        for (final Sort param : mCompareParams) {
+        for (int i = 0; i < propertyNames.length; i++) {
+
+            final Object val1 = get (handles1[i], o1);
+            final Object val2 = get (handles2[i], o2);
+
+            if (val1 == null || val2 == null) {
+                if (val1 == val2) {
+                    // Both values are null, so continue to next parameter
+                    continue;
+                }
 
-            if (param.getSortOrder () == SortOrder.DESCENDING) {
-                desc = -1;
-            } else {
-                desc = 1;
+                // Nulls sort last in either direction
+                return val1 == null ? 1 : -1;
             }
 
-            // Get the values for comparison
-            final Comparable<Object> val1 = getValueForParameter (o1, param.getPropertyName ());
-            final Comparable<Object> val2 = getValueForParameter (o2, param.getPropertyName ());
+            final int val = compareValues (val1, val2) * directions[i];
+            if (val != 0) {
+                return val;
+            }
+        }
+
+        // All parameters were equal
+        return 0;
+    }
+
+    /**
+     * Compares strings in natural order.
+     */
+    public int compare (final String s1, final String s2) {
+
+        return compareNatural (s1, s2);
+    }
+
+    private MethodHandle[] getGetters (final Class<?> type) {
+
+        final Getters current = getters;
+        if (current != null && current.type == type) {
+            return current.handles;
+        }
+
+        final Getters resolved = new Getters (type, resolve (type, propertyNames));
+        getters = resolved;
+        return resolved.handles;
+    }
+
+    // *************************************************************************
+    // ** Class methods
+    // *************************************************************************
 
-            if (val1 == null && val2 == null) {
-                // If both values are null, so continue to next parameter
+    /**
+     * @return comparator whose getters are resolved for the view class up front
+     */
+    public static <T> ViewComparator<T> forType (final Class<T> type, final List<Sort> params) {
+
+        final ViewComparator<T> comparator = new ViewComparator<> (params);
+        comparator.getGetters (type);
+        return comparator;
+    }
+
+    /**
+     * Compares strings in natural order without allocating.  Runs of digits are
+     * compared by numeric value, whatever their length or leading zeros, and a
+     * run of digits sorts before any other character.  Otherwise characters are
+     * compared by value, and a string that is a prefix of the other sorts first.
+     */
+    public static int compareNatural (final String s1, final String s2) {
+
+        final int length1 = s1.length ();
+        final int length2 = s2.length ();
+        int i1 = 0;
+        int i2 = 0;
+
+        while (i1 < length1 && i2 < length2) {
+            final char c1 = s1.charAt (i1);
+            final char c2 = s2.charAt (i2);
+            final boolean digit1 = isDigit (c1);
+            final boolean digit2 = isDigit (c2);
+
+            if (digit1 && digit2) {
+                // Skip leading zeros, then the longer run is the greater number
+                int start1 = i1;
+                while (start1 < length1 && s1.charAt (start1) == '0') {
+                    start1++;
+                }
+                int start2 = i2;
+                while (start2 < length2 && s2.charAt (start2) == '0') {
+                    start2++;
+                }
+
+                int end1 = start1;
+                while (end1 < length1 && isDigit (s1.charAt (end1))) {
+                    end1++;
+                }
+                int end2 = start2;
+                while (end2 < length2 && isDigit (s2.charAt (end2))) {
+                    end2++;
+                }
+
+                final int runLength = end1 - start1;
+                if (runLength != end2 - start2) {
+                    return runLength < end2 - start2 ? -1 : 1;
+                }
+
+                for (int k = 0; k < runLength; k++) {
+                    final char d1 = s1.charAt (start1 + k);
+                    final char d2 = s2.charAt (start2 + k);
+                    if (d1 != d2) {
+                        return d1 < d2 ? -1 : 1;
+                    }
+                }
+
+                i1 = end1;
+                i2 = end2;
                 continue;
             }
 
-            // If first is null and second is not, return -1
-            if (val1 == null) {
-                return -1;
+            if (digit1 != digit2) {
+                return digit1 ? -1 : 1;
             }
 
-            final Object tmp1 = val1;
-            final Object tmp2 = val2;
-            if (tmp1 instanceof String && tmp2 instanceof String) {
-                return compare ((String) tmp1, (String) tmp2);
+            if (c1 != c2) {
+                return c1 < c2 ? -1 : 1;
             }
 
-            val = val1.compareTo (val2) * desc;
-            if (val == 0) {
-                // They are equal, so continue to next parameter
-                continue;
-            }
+            i1++;
+            i2++;
+        }
+
+        // Nothing comes before something
+        final boolean end1 = i1 >= length1;
+        final boolean end2 = i2 >= length2;
+        return end1 && end2 ? 0 : end1 ? -1 : 1;
+    }
+
+    @SuppressWarnings ("unchecked")
+    private static int compareValues (final Object val1, final Object val2) {
 
-            // Just return the comparison value for this
-            return val;
+        if (val1 instanceof String && val2 instanceof String) {
+            return compareNatural ((String) val1, (String) val2);
+        }
+
+        if (val1 instanceof Number && val2 instanceof Number && val1.getClass () != val2.getClass ()) {
+            return compareNumbers ((Number) val1, (Number) val2);
+        }
+
+        if (val1 instanceof Comparable) {
+            return ((Comparable<Object>) val1).compareTo (val2);
         }
 
-        // All parameters were equal
         return 0;
     }
 
-    public int compare (final String s1, final String s2) {
+    private static int compareNumbers (final Number n1, final Number n2) {
 
-        final Matcher m1 = PATTERN.matcher (s1);
-        final Matcher m2 = PATTERN.matcher (s2);
+        if (isIntegral (n1) && isIntegral (n2)) {
+            return Long.compare (n1.longValue (), n2.longValue ());
+        }
 
-        // The only way find() could fail is at the end of a string
-        while (m1.find () && m2.find ()) {
-            // matcher.group(1) fetches any non-digits captured by the
-            // first parentheses in PATTERN.
-            final int nonDigitCompare = m1.group (1).compareTo (m2.group (1));
-            if (0 != nonDigitCompare) {
-                return nonDigitCompare;
+        final double d1 = n1.doubleValue ();
+        final double d2 = n2.doubleValue ();
+        if (isBig (n1) || isBig (n2)) {
+            if (isFinite (d1) && isFinite (d2)) {
+                return new BigDecimal (n1.toString ()).compareTo (new BigDecimal (n2.toString ()));
             }
+        }
 
-            // matcher.group(2) fetches any digits captured by the
-            // second parentheses in PATTERN.
-            if (m1.group (2).isEmpty ()) {
-                return m2.group (2).isEmpty () ? 0 : -1;
-            } else if (m2.group (2).isEmpty ()) {
-                return +1;
-            }
+        return Double.compare (d1, d2);
+    }
+
+    private static boolean isIntegral (final Number number) {
+
+        return number instanceof Long || number instanceof Integer || number instanceof Short
+                || number instanceof Byte;
+    }
+
+    private static boolean isBig (final Number number) {
+
+        return number instanceof BigDecimal || number instanceof BigInteger;
+    }
+
+    private static boolean isFinite (final double value) {
 
-            final BigInteger n1 = new BigInteger (m1.group (2));
-            final BigInteger n2 = new BigInteger (m2.group (2));
-            final int numberCompare = n1.compareTo (n2);
-            if (0 != numberCompare) {
-                return numberCompare;
+        return !Double.isNaN (value) && !Double.isInfinite (value);
+    }
+
+    private static boolean isDigit (final char c) {
+
+        return c >= '0' && c <= '9';
+    }
+
+    private static Object get (final MethodHandle handle, final Object obj) {
+
+        try {
+            return handle.invokeExact (obj);
+        } catch (final RuntimeException | Error ex) {
+            throw ex;
+        } catch (final Throwable ex) {
+            throw new IllegalStateException ("Error evaluating comparator parameter", ex);
+        }
+    }
+
+    private static MethodHandle[] resolve (final Class<?> type, final String[] propertyNames) {
+
+        final ConcurrentMap<String, MethodHandle> cache = GETTER_CACHE.get (type);
+        final MethodHandle[] handles = new MethodHandle[propertyNames.length];
+
+        for (int i = 0; i < propertyNames.length; i++) {
+            final String param = propertyNames[i];
+            MethodHandle handle = cache.get (param);
+            if (handle == null) {
+                handle = lookup (type, param);
+                cache.putIfAbsent (param, handle);
             }
+            handles[i] = handle;
         }
 
-        // Handle if one string is a prefix of the other.
-        // Nothing comes before something.
-        return m1.hitEnd () && m2.hitEnd () ? 0 : m1.hitEnd () ? -1 : +1;
+        return handles;
     }
 
-    // Use reflection to call getter for a parameter
-    private Comparable<Object> getValueForParameter (final Object obj, final String param) {
+    // Use reflection once to find the getter for a parameter
+    private static MethodHandle lookup (final Class<?> type, final String param) {
+
+        if (param == null || param.isEmpty ()) {
+            return MISSING_GETTER;
+        }
 
         try {
             final String methodName = Character.toUpperCase (param.charAt (0)) + param.substring (1);
-            final Method method = obj.getClass ().getMethod ("get" + methodName);
+            final Method method = type.getMethod ("get" + methodName);
 
-            return (Comparable<Object>) method.invoke (obj);
+            // Public getters may be declared by a package-private class
+            method.setAccessible (true);
+            return MethodHandles.lookup ().unreflect (method).asType (GETTER_TYPE);
 
-        } catch (NoSuchMethodException | InvocationTargetException | IllegalAccessException e) {
-            LOG.error ("Error evaluating comparator parameter", e);
+        } catch (NoSuchMethodException | IllegalAccessException | SecurityException e) {
+            LOG.error ("Error evaluating comparator parameter " + param + " of " + type.getName (), e);
         }
 
-        return null;
+        return MISSING_GETTER;
+    }
+
+    // *************************************************************************
+    // ** Member classes
+    // *************************************************************************
+
+    private static class Getters {
+
+        final Class<?> type;
+        final MethodHandle[] handles;
+
+        Getters (final Class<?> type, final MethodHandle[] handles) {
+
+            super ();
+
+            this.type = type;
+            this.handles = handles;
+        }
     }
 }
@@ -0,0 +1,170 @@
+/*******************************************************************************
+ * Copyright 2014 Reality Warp Software
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.rws.utility.common.sort;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ViewComparatorTest {
+
+    @Test
+    public void testDescendingOrder () {
+
+        final List<Item> itemList = items (new Item ("a", 1), new Item ("b", 3), new Item ("c", 2));
+        Collections.sort (itemList, ViewComparator.forType (Item.class, SortUtils.getSortList ("-value")));
+
+        Assert.assertEquals (Arrays.asList ("b", "c", "a"), names (itemList));
+    }
+
+    /**
+     * Later keys only order the views whose earlier keys are equal, each in its
+     * own direction.
+     */
+    @Test
+    public void testLaterKeys () {
+
+        final List<Item> itemList =
+                items (new Item ("a", 1), new Item ("b", 2), new Item ("c", 1), new Item ("d", 2));
+        Collections.sort (itemList, ViewComparator.forType (Item.class, SortUtils.getSortList ("value,-name")));
+
+        Assert.assertEquals (Arrays.asList ("c", "a", "d", "b"), names (itemList));
+    }
+
+    @Test
+    public void testMixedNumberTypes () {
+
+        final ViewComparator<Item> comparator =
+                ViewComparator.forType (Item.class, SortUtils.getSortList ("value"));
+
+        Assert.assertTrue (comparator.compare (new Item ("a", Integer.valueOf (2)), new Item ("b", Long.valueOf (3)))
+                < 0);
+        Assert.assertTrue (comparator.compare (new Item ("a", Double.valueOf (2.5)),
+                new Item ("b", Integer.valueOf (2))) > 0);
+        Assert.assertEquals (0, comparator.compare (new Item ("a", Long.valueOf (7)),
+                new Item ("b", Short.valueOf ((short) 7))));
+        Assert.assertEquals (0, comparator.compare (new Item ("a", new BigDecimal ("1.50")),
+                new Item ("b", Double.valueOf (1.5))));
+
+        // Beyond the precision of a double
+        Assert.assertTrue (comparator.compare (new Item ("a", new BigInteger ("9007199254740993")),
+                new Item ("b", Double.valueOf (9007199254740992.0))) > 0);
+    }
+
+    /**
+     * Null values sort last whichever the direction, and so do the views of a
+     * class without the property.
+     */
+    @Test
+    public void testNullsLast () {
+
+        final List<Item> itemList = items (new Item ("a", null), new Item ("b", 2), new Item ("c", 1));
+
+        Collections.sort (itemList, ViewComparator.forType (Item.class, SortUtils.getSortList ("value")));
+        Assert.assertEquals (Arrays.asList ("c", "b", "a"), names (itemList));
+
+        Collections.sort (itemList, ViewComparator.forType (Item.class, SortUtils.getSortList ("-value")));
+        Assert.assertEquals (Arrays.asList ("b", "c", "a"), names (itemList));
+
+        final ViewComparator<Object> comparator = new ViewComparator<> (SortUtils.getSortList ("value"));
+        Assert.assertTrue (comparator.compare (new Object (), new Item ("b", 2)) > 0);
+    }
+
+    @Test
+    public void testCompareNaturalDigitRuns () {
+
+        Assert.assertTrue (ViewComparator.compareNatural ("item9", "item10") < 0);
+        Assert.assertTrue (ViewComparator.compareNatural ("item10", "item9") > 0);
+        Assert.assertTrue (ViewComparator.compareNatural ("a2b", "a2c") < 0);
+        Assert.assertTrue (ViewComparator.compareNatural ("99999999999999999999", "100000000000000000000") < 0);
+    }
+
+    /**
+     * Leading zeros do not change the value of a digit run.
+     */
+    @Test
+    public void testCompareNaturalLeadingZeros () {
+
+        Assert.assertEquals (0, ViewComparator.compareNatural ("item007", "item7"));
+        Assert.assertTrue (ViewComparator.compareNatural ("item007", "item10") < 0);
+        Assert.assertEquals (0, ViewComparator.compareNatural ("000", "0"));
+    }
+
+    @Test
+    public void testCompareNaturalPrefixes () {
+
+        Assert.assertTrue (ViewComparator.compareNatural ("item", "item1") < 0);
+        Assert.assertTrue (ViewComparator.compareNatural ("item1", "item") > 0);
+        Assert.assertTrue (ViewComparator.compareNatural ("", "a") < 0);
+        Assert.assertEquals (0, ViewComparator.compareNatural ("", ""));
+    }
+
+    /**
+     * A run of digits sorts before any other character.
+     */
+    @Test
+    public void testCompareNaturalDigitsBeforeLetters () {
+
+        Assert.assertTrue (ViewComparator.compareNatural ("a1", "ab") < 0);
+        Assert.assertTrue (ViewComparator.compareNatural ("ab", "a1") > 0);
+        Assert.assertTrue (ViewComparator.compareNatural ("9", "A") < 0);
+    }
+
+    private static List<Item> items (final Item... items) {
+
+        return new ArrayList<> (Arrays.asList (items));
+    }
+
+    private static List<String> names (final List<Item> itemList) {
+
+        final List<String> nameList = new ArrayList<> ();
+        for (final Item item : itemList) {
+            nameList.add (item.getName ());
+        }
+
+        return nameList;
+    }
+
+    public static class Item {
+
+        private final String name;
+        private final Number value;
+
+        Item (final String name, final Number value) {
+
+            super ();
+
+            this.name = name;
+            this.value = value;
+        }
+
+        public String getName () {
+
+            return name;
+        }
+
+        public Number getValue () {
+
+            return value;
+        }
+    }
+}